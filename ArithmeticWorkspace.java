@@ -0,0 +1,339 @@
+/**
+ * Reusable scratch buffers for the modular arithmetic, so that a thread
+ * running many exponentiations or primality tests allocates nothing once the
+ * buffers have grown to the size of its operands.
+ *
+ * <p>
+ * A workspace holds the limb buffers an exponentiation works in (the
+ * reduction scratch, the accumulator and the table of odd powers), a
+ * reusable exponent recoding, a Montgomery context with the Miller-Rabin and
+ * Baillie-PSW tests built on it, all rebound to each new modulus in place,
+ * the buffers random bases are drawn into and the generator they are drawn
+ * from, a few {@code NaturalNumberLimbs} temporaries, and the constants 0 to
+ * 3. Each buffer is allocated on first use and replaced only by a larger
+ * one, so after the first call at a given size the workspace overloads of
+ * {@code CryptoUtilities} allocate nothing when their operands are
+ * {@code NaturalNumberLimbs}, except for whatever {@code SecureRandom}
+ * does inside when the generator reseeds, once per megabyte of bases.
+ * Operands of another type are converted on every call.
+ * </p>
+ *
+ * <p>
+ * A workspace is not thread-safe: confine each one to a single thread at a
+ * time, typically one per worker, and never pass it to two calls that run
+ * at once.
+ * </p>
+ *
+ * @author Jamal Aden
+ *
+ */
+public final class ArithmeticWorkspace {
+
+    /**
+     * Number of {@code NaturalNumberLimbs} temporaries.
+     */
+    private static final int TEMPORARIES = 3;
+
+    /**
+     * Largest value among the constants.
+     */
+    private static final int MAX_CONSTANT = 3;
+
+    /**
+     * Reduction scratch.
+     */
+    private int[] scratch = new int[0];
+
+    /**
+     * Accumulator residue.
+     */
+    private int[] accumulator = new int[0];
+
+    /**
+     * A limb buffer for anything else.
+     */
+    private int[] spare = new int[0];
+
+    /**
+     * Odd powers of the base, {@code ModularContext.MAX_TABLE_SIZE} residues.
+     */
+    private int[][] table = new int[ModularContext.MAX_TABLE_SIZE][0];
+
+    /**
+     * Witness bases.
+     */
+    private int[][] bases = new int[0][0];
+
+    /**
+     * Generator the random bases are drawn from; null until needed.
+     */
+    private ChaCha20Random random;
+
+    /**
+     * Recoded exponent.
+     */
+    private ModularContext.Recoding recoding;
+
+    /**
+     * Montgomery context, rebound to each odd modulus; null until needed.
+     */
+    private RebindableMontgomeryContext montgomery;
+
+    /**
+     * Miller-Rabin test sharing {@code montgomery}; null until needed.
+     */
+    private MillerRabin millerRabin;
+
+    /**
+     * Baillie-PSW test sharing {@code millerRabin}; null until needed.
+     */
+    private BailliePsw bailliePsw;
+
+    /**
+     * Temporaries.
+     */
+    private final NaturalNumberLimbs[] temporaries;
+
+    /**
+     * The constants 0 to {@code MAX_CONSTANT}.
+     */
+    private final NaturalNumberLimbs[] constants;
+
+    /**
+     * Builds an empty workspace, whose buffers grow on first use.
+     */
+    public ArithmeticWorkspace() {
+        this.recoding = new ModularContext.Recoding(0);
+        this.temporaries = new NaturalNumberLimbs[TEMPORARIES];
+        for (int i = 0; i < TEMPORARIES; i++) {
+            this.temporaries[i] = new NaturalNumberLimbs();
+        }
+        this.constants = new NaturalNumberLimbs[MAX_CONSTANT + 1];
+        for (int i = 0; i <= MAX_CONSTANT; i++) {
+            this.constants[i] = new NaturalNumberLimbs(i);
+        }
+    }
+
+    /**
+     * Builds a workspace with its buffers already sized for operands of up
+     * to {@code bits} bits, so that even the first call at that size
+     * allocates no buffers.
+     *
+     * @param bits
+     *            operand size in bits
+     * @requires bits > 0
+     */
+    public ArithmeticWorkspace(int bits) {
+        this();
+        assert bits > 0 : "Violation of: bits > 0";
+        int limbs = (bits + LimbArithmetic.LIMB_BITS - 1)
+                / LimbArithmetic.LIMB_BITS;
+        this.scratch(MontgomeryContext.scratchLength(limbs));
+        this.accumulator(limbs);
+        this.spare(limbs);
+        this.table(limbs);
+        this.bases(MillerRabin.WORST_CASE_ROUNDS, limbs + 1);
+        this.random();
+        this.montgomery = new RebindableMontgomeryContext(limbs);
+        this.millerRabin = new MillerRabin(this.montgomery, limbs);
+        this.recoding = new ModularContext.Recoding(bits);
+    }
+
+    /**
+     * Returns the reduction scratch, grown to at least {@code length} limbs.
+     *
+     * @param length
+     *            limbs needed
+     * @return the scratch
+     */
+    int[] scratch(int length) {
+        if (this.scratch.length < length) {
+            this.scratch = new int[length];
+        }
+        return this.scratch;
+    }
+
+    /**
+     * Returns the accumulator, grown to at least {@code width} limbs.
+     *
+     * @param width
+     *            residue width
+     * @return the accumulator
+     */
+    int[] accumulator(int width) {
+        if (this.accumulator.length < width) {
+            this.accumulator = new int[width];
+        }
+        return this.accumulator;
+    }
+
+    /**
+     * Returns the spare limb buffer, grown to at least {@code length} limbs.
+     *
+     * @param length
+     *            limbs needed
+     * @return the buffer
+     */
+    int[] spare(int length) {
+        if (this.spare.length < length) {
+            this.spare = new int[length];
+        }
+        return this.spare;
+    }
+
+    /**
+     * Returns the table of odd powers, {@code ModularContext.MAX_TABLE_SIZE}
+     * residues of at least {@code width} limbs.
+     *
+     * @param width
+     *            residue width
+     * @return the table
+     */
+    int[][] table(int width) {
+        if (this.table[0].length < width) {
+            this.table = new int[ModularContext.MAX_TABLE_SIZE][width];
+        }
+        return this.table;
+    }
+
+    /**
+     * Returns at least {@code count} base buffers of at least {@code length}
+     * limbs.
+     *
+     * @param count
+     *            number of bases
+     * @param length
+     *            limbs per base
+     * @return the bases
+     */
+    int[][] bases(int count, int length) {
+        if (this.bases.length < count
+                || this.bases.length > 0 && this.bases[0].length < length) {
+            this.bases = new int[Math.max(count, this.bases.length)][length];
+        }
+        return this.bases;
+    }
+
+    /**
+     * Returns the generator random bases are drawn from, making it, keyed
+     * from {@code SecureRandom}, on first use.
+     *
+     * @return the generator
+     */
+    ChaCha20Random random() {
+        if (this.random == null) {
+            this.random = SecureRandomNumbers.newGenerator();
+        }
+        return this.random;
+    }
+
+    /**
+     * Returns the reusable exponent recoding.
+     *
+     * @return the recoding
+     */
+    ModularContext.Recoding recoding() {
+        return this.recoding;
+    }
+
+    /**
+     * Makes sure the Montgomery context and Miller-Rabin test have room for
+     * moduli of {@code length} limbs.
+     *
+     * @param length
+     *            modulus length in limbs
+     */
+    private void reserveModulus(int length) {
+        if (this.montgomery == null || this.montgomery.capacity() < length) {
+            this.montgomery = new RebindableMontgomeryContext(length);
+            this.millerRabin = null;
+            this.bailliePsw = null;
+        }
+        if (this.millerRabin == null) {
+            this.millerRabin = new MillerRabin(this.montgomery,
+                    this.montgomery.capacity());
+        }
+    }
+
+    /**
+     * Returns the workspace's Montgomery context, bound to modulus m.
+     *
+     * @param m
+     *            limbs of the modulus
+     * @param mLen
+     *            normalized length of m
+     * @return the context
+     * @requires m > 1 and m is odd
+     */
+    RebindableMontgomeryContext montgomery(int[] m, int mLen) {
+        this.reserveModulus(mLen);
+        this.montgomery.bind(m, mLen,
+                this.scratch(MontgomeryContext.scratchLength(mLen)));
+        return this.montgomery;
+    }
+
+    /**
+     * Returns the workspace's Miller-Rabin test, bound to n; this rebinds the
+     * workspace's Montgomery context to n as well.
+     *
+     * @param n
+     *            limbs of the number to be tested
+     * @param nLen
+     *            normalized length of n
+     * @return the test
+     * @requires n > 3 and n is odd
+     */
+    MillerRabin millerRabin(int[] n, int nLen) {
+        this.montgomery(n, nLen);
+        this.millerRabin.bind(n, nLen,
+                this.scratch(MontgomeryContext.scratchLength(nLen)));
+        return this.millerRabin;
+    }
+
+    /**
+     * Returns the workspace's Baillie-PSW test, bound to n; this rebinds the
+     * workspace's Miller-Rabin test and Montgomery context to n as well.
+     *
+     * @param n
+     *            limbs of the number to be tested
+     * @param nLen
+     *            normalized length of n
+     * @return the test
+     * @requires n > 3 and n is odd
+     */
+    BailliePsw bailliePsw(int[] n, int nLen) {
+        this.montgomery(n, nLen);
+        if (this.bailliePsw == null) {
+            this.bailliePsw = new BailliePsw(this.millerRabin, this.montgomery,
+                    this.montgomery.capacity());
+        }
+        this.bailliePsw.bind(n, nLen,
+                this.scratch(MontgomeryContext.scratchLength(nLen)));
+        return this.bailliePsw;
+    }
+
+    /**
+     * Returns one of the temporaries.
+     *
+     * @param index
+     *            which temporary
+     * @return the temporary, holding whatever it was last given
+     * @requires 0 <= index < TEMPORARIES
+     */
+    NaturalNumberLimbs temporary(int index) {
+        return this.temporaries[index];
+    }
+
+    /**
+     * Returns a small constant; callers must not modify it.
+     *
+     * @param value
+     *            the constant's value
+     * @return the constant
+     * @requires 0 <= value <= MAX_CONSTANT
+     */
+    NaturalNumberLimbs constant(int value) {
+        return this.constants[value];
+    }
+
+}
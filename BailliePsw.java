@@ -0,0 +1,679 @@
+import components.naturalnumber.NaturalNumber;
+
+/**
+ * Baillie-PSW probable-prime test for one odd number n: a strong
+ * probable-prime test to base 2 followed by a strong Lucas probable-prime
+ * test.
+ *
+ * <p>
+ * The Lucas parameters are chosen by Selfridge's method A: D is the first of
+ * 5, -7, 9, -11, ... with Jacobi symbol (D/n) = -1, P = 1 and Q = (1 - D) / 4.
+ * With n + 1 = 2^s * d and d odd, n passes the Lucas test if U_d = 0 or
+ * V_(2^r * d) = 0 (mod n) for some 0 <= r < s. U_d, V_d and Q^d are computed
+ * together by doubling and incrementing the index along the bits of d,
+ * entirely in Montgomery form. Since D and Q are small, each bit costs two
+ * or three full modular multiplications (two when Q = -1), and the whole
+ * test about as much as three Miller-Rabin rounds. No composite is known to
+ * pass both halves, and none exists below 2^64.
+ * </p>
+ *
+ * <p>
+ * A perfect square has no D with (D/n) = -1, so after a few values of D have
+ * failed, n is checked for being a square; a Jacobi symbol of 0 or a Q that
+ * shares a factor with n proves n composite outright. Like
+ * {@code MillerRabin}, an {@code ArithmeticWorkspace} keeps one test of its
+ * own, which it rebinds to each number it checks.
+ * </p>
+ *
+ * @author Jamal Aden
+ *
+ */
+public final class BailliePsw {
+
+    /**
+     * The limb 1.
+     */
+    private static final int[] ONE = {1};
+
+    /**
+     * The limb 2, the base of the strong probable-prime test.
+     */
+    private static final int[] TWO = {2};
+
+    /**
+     * Values of D tried before n is checked for being a perfect square.
+     */
+    private static final int TRIES_BEFORE_SQUARE_CHECK = 8;
+
+    /**
+     * The base-2 test, bound to the same number and context.
+     */
+    private final MillerRabin millerRabin;
+
+    /**
+     * Montgomery context for n.
+     */
+    private final ModularContext context;
+
+    /**
+     * The number being tested, as limbs; at least {@code length} long.
+     */
+    private final int[] n;
+
+    /**
+     * Normalized length of n.
+     */
+    private int length;
+
+    /**
+     * Odd part of n + 1.
+     */
+    private final int[] d;
+
+    /**
+     * Normalized length of d.
+     */
+    private int dLength;
+
+    /**
+     * Number of factors of 2 in n + 1.
+     */
+    private int s;
+
+    /**
+     * Whether choosing the parameters already proved n composite.
+     */
+    private boolean composite;
+
+    /**
+     * The Lucas parameter D.
+     */
+    private int discriminant;
+
+    /**
+     * The Lucas parameter Q = (1 - D) / 4.
+     */
+    private int q;
+
+    /**
+     * U_k.
+     */
+    private final int[] u;
+
+    /**
+     * V_k.
+     */
+    private final int[] v;
+
+    /**
+     * Q^k.
+     */
+    private final int[] qk;
+
+    /**
+     * Scratch residue.
+     */
+    private final int[] w;
+
+    /**
+     * A residue times a small factor, before reduction.
+     */
+    private final int[] product;
+
+    /**
+     * Division scratch for reducing {@code product}, dividend.
+     */
+    private final int[] un;
+
+    /**
+     * Division scratch for reducing {@code product}, divisor.
+     */
+    private final int[] vn;
+
+    /**
+     * Prepares the test for {@code n}.
+     *
+     * @param n
+     *            the number to be tested
+     * @requires n > 3 and n is odd
+     */
+    public BailliePsw(NaturalNumber n) {
+        this(NaturalNumberLimbs.valueOf(n).toLimbs(), new MontgomeryContext(n));
+    }
+
+    /**
+     * Prepares the test for the number whose limbs are {@code n}.
+     *
+     * @param n
+     *            limbs of the number to be tested, normalized
+     * @param context
+     *            Montgomery context for n
+     */
+    private BailliePsw(int[] n, MontgomeryContext context) {
+        this(new MillerRabin(n, context), context, n.length);
+        this.setNumber(n, n.length);
+    }
+
+    /**
+     * Builds an unbound test with room for numbers of up to
+     * {@code capacity} limbs, for an {@code ArithmeticWorkspace} to
+     * {@code bind} to each number it tests.
+     *
+     * @param millerRabin
+     *            base-2 test, rebound along with this one
+     * @param context
+     *            the Montgomery context {@code millerRabin} works in
+     * @param capacity
+     *            largest number length, in limbs
+     */
+    BailliePsw(MillerRabin millerRabin, ModularContext context,
+            int capacity) {
+        this.millerRabin = millerRabin;
+        this.context = context;
+        this.n = new int[capacity];
+        this.d = new int[capacity + 1];
+        this.u = new int[capacity];
+        this.v = new int[capacity];
+        this.qk = new int[capacity];
+        this.w = new int[capacity];
+        this.product = new int[capacity + 1];
+        this.un = new int[capacity + 2];
+        this.vn = new int[capacity];
+    }
+
+    /**
+     * Rebinds this test and its base-2 test to the number with limbs
+     * {@code n}, for a Montgomery context already rebound to n.
+     *
+     * @param n
+     *            limbs of the number to be tested
+     * @param nLen
+     *            normalized length of n, at most the capacity
+     * @param t
+     *            scratch of {@code MontgomeryContext.scratchLength(nLen)}
+     *            limbs
+     * @requires n > 3 and n is odd and [the context is bound to n]
+     */
+    void bind(int[] n, int nLen, int[] t) {
+        this.millerRabin.bind(n, nLen, t);
+        this.setNumber(n, nLen);
+    }
+
+    /**
+     * Factors n + 1 = 2^s * d and chooses the Lucas parameters.
+     *
+     * @param n
+     *            limbs of the number to be tested
+     * @param nLen
+     *            normalized length of n
+     */
+    private void setNumber(int[] n, int nLen) {
+        assert nLen > 0 && (n[0] & 1) == 1 : "Violation of: n is odd";
+        assert LimbArithmetic.bitLength(n, nLen) > 2 : ""
+                + "Violation of: n > 3";
+        System.arraycopy(n, 0, this.n, 0, nLen);
+        this.length = nLen;
+        int[] nPlusOne = this.d;
+        int len = LimbArithmetic.add(n, nLen, ONE, 1, nPlusOne);
+        int zeros = 0;
+        while (!LimbArithmetic.testBit(nPlusOne, len, zeros)) {
+            zeros++;
+        }
+        this.s = zeros;
+        this.dLength = LimbArithmetic.shiftRight(nPlusOne, len, zeros,
+                this.d);
+
+        /*
+         * Selfridge's method A: D = 5, -7, 9, -11, ... until (D/n) = -1
+         */
+        this.composite = false;
+        int dValue = 5;
+        int tries = 0;
+        int symbol = jacobi(dValue, n, nLen);
+        while (symbol != -1 && !this.composite) {
+            if (symbol == 0 && !isSmall(n, nLen, Math.abs(dValue))) {
+                this.composite = true;
+            } else {
+                tries++;
+                if (tries == TRIES_BEFORE_SQUARE_CHECK && isSquare(n, nLen)) {
+                    this.composite = true;
+                }
+                dValue = dValue > 0 ? -(dValue + 2) : -dValue + 2;
+                symbol = jacobi(dValue, n, nLen);
+            }
+        }
+        this.discriminant = dValue;
+        this.q = (1 - dValue) / 4;
+        int qAbs = Math.abs(this.q);
+        if (!this.composite && qAbs > 1) {
+            long rem = LimbArithmetic.divideInt(n, nLen, qAbs, null);
+            if (smallGcd(qAbs, rem) != 1 && !isSmall(n, nLen, qAbs)) {
+                this.composite = true;
+            }
+        }
+    }
+
+    /**
+     * Reports whether the number with limbs n equals {@code value}.
+     *
+     * @param n
+     *            the limbs
+     * @param nLen
+     *            normalized length of n
+     * @param value
+     *            a nonnegative int
+     * @return true iff n = value
+     */
+    private static boolean isSmall(int[] n, int nLen, int value) {
+        return nLen == 1 && n[0] == value;
+    }
+
+    /**
+     * Computes the greatest common divisor of two nonnegative numbers.
+     *
+     * @param a
+     *            one number
+     * @param b
+     *            the other
+     * @return gcd(a, b)
+     */
+    private static long smallGcd(long a, long b) {
+        long x = a;
+        long y = b;
+        while (y != 0) {
+            long r = x % y;
+            x = y;
+            y = r;
+        }
+        return x;
+    }
+
+    /**
+     * Computes r = c * x mod n for a small signed factor c, in time linear in
+     * the length of n.
+     *
+     * @param x
+     *            residue below n
+     * @param c
+     *            the factor, with |c| < 2^31
+     * @param r
+     *            result; may be x
+     */
+    private void multiplySmall(int[] x, int c, int[] r) {
+        int k = this.length;
+        int xLen = LimbArithmetic.normalize(x, k);
+        int cAbs = Math.abs(c);
+        if (cAbs == 1 || xLen == 0) {
+            if (r != x) {
+                System.arraycopy(x, 0, r, 0, k);
+            }
+        } else {
+            int pLen = LimbArithmetic.multiplyInt(x, xLen, cAbs, 0,
+                    this.product);
+            int rLen = LimbArithmetic.divide(this.product, pLen, this.n, k,
+                    null, r, this.un, this.vn);
+            for (int i = rLen; i < k; i++) {
+                r[i] = 0;
+            }
+        }
+        if (c < 0) {
+            this.negate(r);
+        }
+    }
+
+    /**
+     * Replaces x by -x mod n.
+     *
+     * @param x
+     *            residue below n
+     */
+    private void negate(int[] x) {
+        if (!this.isZero(x)) {
+            final long mask = LimbArithmetic.MASK;
+            final int shift = LimbArithmetic.LIMB_BITS;
+            long borrow = 0;
+            for (int j = 0; j < this.length; j++) {
+                long diff = (this.n[j] & mask) - (x[j] & mask) + borrow;
+                x[j] = (int) diff;
+                borrow = diff >> shift;
+            }
+        }
+    }
+
+    /**
+     * Computes the Jacobi symbol (a/n).
+     *
+     * @param a
+     *            the numerator, any int
+     * @param n
+     *            limbs of the denominator
+     * @param nLen
+     *            normalized length of n
+     * @return (a/n), one of -1, 0 and 1
+     * @requires n is odd and n > 0
+     */
+    static int jacobi(int a, int[] n, int nLen) {
+        assert nLen > 0 && (n[0] & 1) == 1 : "Violation of: n is odd";
+        final int mod4 = 3;
+        final int mod8 = 7;
+        int low = n[0];
+        int result = 1;
+        long x = a;
+        if (x < 0) {
+            x = -x;
+            if ((low & mod4) == mod4) {
+                result = -result;
+            }
+        }
+        if (x == 0) {
+            return isSmall(n, nLen, 1) ? 1 : 0;
+        }
+        int twos = Long.numberOfTrailingZeros(x);
+        x >>>= twos;
+        if ((twos & 1) == 1 && ((low & mod8) == 3 || (low & mod8) == 5)) {
+            result = -result;
+        }
+
+        /*
+         * Quadratic reciprocity turns (x/n) into (n mod x / x), after which
+         * everything fits in a long
+         */
+        if ((x & mod4) == mod4 && (low & mod4) == mod4) {
+            result = -result;
+        }
+        long y = LimbArithmetic.divideInt(n, nLen, (int) x, null);
+        long m = x;
+        while (y != 0) {
+            twos = Long.numberOfTrailingZeros(y);
+            y >>>= twos;
+            if ((twos & 1) == 1 && ((m & mod8) == 3 || (m & mod8) == 5)) {
+                result = -result;
+            }
+            if ((y & mod4) == mod4 && (m & mod4) == mod4) {
+                result = -result;
+            }
+            long r = m % y;
+            m = y;
+            y = r;
+        }
+        return m == 1 ? result : 0;
+    }
+
+    /**
+     * Reports whether the number with limbs n is a perfect square, by
+     * Newton's method for the integer square root.
+     *
+     * @param n
+     *            the limbs
+     * @param nLen
+     *            normalized length of n
+     * @return true iff n = k^2 for some k
+     */
+    static boolean isSquare(int[] n, int nLen) {
+        int bits = LimbArithmetic.bitLength(n, nLen);
+        int xLen = (bits + 1) / 2 / LimbArithmetic.LIMB_BITS + 1;
+        int[] x = new int[xLen + 1];
+        xLen = LimbArithmetic.shiftLeft(ONE, 1, (bits + 1) / 2, x);
+        int[] quotient = new int[nLen + 1];
+        int[] remainder = new int[nLen];
+        int[] y = new int[xLen + 1];
+        boolean converged = false;
+        while (!converged) {
+            /*
+             * y = (x + n / x) / 2 decreases strictly until x = isqrt(n)
+             */
+            LimbArithmetic.divide(n, nLen, x, xLen, quotient, remainder);
+            int qLen = LimbArithmetic.normalize(quotient, quotient.length);
+            int yLen = LimbArithmetic.add(x, xLen, quotient, qLen, y);
+            yLen = LimbArithmetic.shiftRight(y, yLen, 1, y);
+            if (LimbArithmetic.compare(y, yLen, x, xLen) >= 0) {
+                converged = true;
+            } else {
+                System.arraycopy(y, 0, x, 0, yLen);
+                for (int i = yLen; i < x.length; i++) {
+                    x[i] = 0;
+                }
+                xLen = yLen;
+            }
+        }
+        int[] square = new int[2 * xLen];
+        int squareLen = LimbArithmetic.multiply(x, xLen, x, xLen, square);
+        return LimbArithmetic.compare(square, squareLen, n, nLen) == 0;
+    }
+
+    /**
+     * Computes r = x + y mod n.
+     *
+     * @param x
+     *            residue below n
+     * @param y
+     *            residue below n
+     * @param r
+     *            result; may be x or y
+     */
+    private void add(int[] x, int[] y, int[] r) {
+        final long mask = LimbArithmetic.MASK;
+        final int shift = LimbArithmetic.LIMB_BITS;
+        int k = this.length;
+        long c = 0;
+        for (int j = 0; j < k; j++) {
+            c += (x[j] & mask) + (y[j] & mask);
+            r[j] = (int) c;
+            c >>>= shift;
+        }
+        if (c != 0 || LimbArithmetic.compare(r, LimbArithmetic.normalize(r, k),
+                this.n, k) >= 0) {
+            long borrow = 0;
+            for (int j = 0; j < k; j++) {
+                long diff = (r[j] & mask) - (this.n[j] & mask) + borrow;
+                r[j] = (int) diff;
+                borrow = diff >> shift;
+            }
+        }
+    }
+
+    /**
+     * Computes r = x - y mod n.
+     *
+     * @param x
+     *            residue below n
+     * @param y
+     *            residue below n
+     * @param r
+     *            result; may be x or y
+     */
+    private void subtract(int[] x, int[] y, int[] r) {
+        final long mask = LimbArithmetic.MASK;
+        final int shift = LimbArithmetic.LIMB_BITS;
+        int k = this.length;
+        long borrow = 0;
+        for (int j = 0; j < k; j++) {
+            long diff = (x[j] & mask) - (y[j] & mask) + borrow;
+            r[j] = (int) diff;
+            borrow = diff >> shift;
+        }
+        if (borrow != 0) {
+            long c = 0;
+            for (int j = 0; j < k; j++) {
+                c += (r[j] & mask) + (this.n[j] & mask);
+                r[j] = (int) c;
+                c >>>= shift;
+            }
+        }
+    }
+
+    /**
+     * Replaces x by x / 2 mod n, that is by x / 2 or (x + n) / 2.
+     *
+     * @param x
+     *            residue below n
+     */
+    private void half(int[] x) {
+        final long mask = LimbArithmetic.MASK;
+        final int shift = LimbArithmetic.LIMB_BITS;
+        int k = this.length;
+        long c = 0;
+        if ((x[0] & 1) != 0) {
+            for (int j = 0; j < k; j++) {
+                c += (x[j] & mask) + (this.n[j] & mask);
+                x[j] = (int) c;
+                c >>>= shift;
+            }
+        }
+        for (int j = 0; j < k - 1; j++) {
+            x[j] = (x[j] >>> 1) | (x[j + 1] << (shift - 1));
+        }
+        x[k - 1] = (x[k - 1] >>> 1) | ((int) c << (shift - 1));
+    }
+
+    /**
+     * Reports whether a residue is zero.
+     *
+     * @param x
+     *            the residue
+     * @return true iff x = 0
+     */
+    private boolean isZero(int[] x) {
+        for (int i = 0; i < this.length; i++) {
+            if (x[i] != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Runs the strong Lucas probable-prime test with the chosen parameters.
+     *
+     * @param t
+     *            scratch of {@code context.scratchLength()} limbs
+     * @return true iff n is a strong Lucas probable prime
+     */
+    private boolean isStrongLucasProbablePrime(int[] t) {
+        ModularContext c = this.context;
+        int[] uk = this.u;
+        int[] vk = this.v;
+        int[] power = this.qk;
+        int[] x = this.w;
+        boolean unitQ = Math.abs(this.q) == 1;
+        long multiplications = 0;
+
+        /*
+         * Start at index 1: U_1 = 1, V_1 = P = 1, Q^1 = Q. D and Q are small,
+         * so multiplying by them is linear; and when Q = -1 (D = 5, about
+         * half of all n), Q^2k = 1 needs no squaring either
+         */
+        c.one(uk);
+        c.one(vk);
+        c.one(power);
+        this.multiplySmall(power, this.q, power);
+        for (int i = LimbArithmetic.bitLength(this.d, this.dLength)
+                - 2; i >= 0; i--) {
+            /*
+             * k -> 2k: U_2k = U_k V_k, V_2k = V_k^2 - 2 Q^k, Q^2k = (Q^k)^2
+             */
+            c.multiply(uk, vk, uk, t);
+            c.multiply(vk, vk, vk, t);
+            this.add(power, power, x);
+            this.subtract(vk, x, vk);
+            multiplications += 2;
+            if (unitQ) {
+                c.one(power);
+            } else {
+                c.multiply(power, power, power, t);
+                multiplications++;
+            }
+            if (LimbArithmetic.testBit(this.d, this.dLength, i)) {
+                /*
+                 * k -> k + 1: U = (P U + V) / 2, V = (D U + P V) / 2
+                 */
+                this.multiplySmall(uk, this.discriminant, x);
+                this.add(uk, vk, uk);
+                this.half(uk);
+                this.add(x, vk, vk);
+                this.half(vk);
+                this.multiplySmall(power, this.q, power);
+            }
+        }
+        boolean probablePrime = this.isZero(uk) || this.isZero(vk);
+        for (int r = 1; r < this.s && !probablePrime; r++) {
+            c.multiply(vk, vk, vk, t);
+            this.add(power, power, x);
+            this.subtract(vk, x, vk);
+            multiplications++;
+            probablePrime = this.isZero(vk);
+            if (unitQ) {
+                c.one(power);
+            } else if (!probablePrime && r + 1 < this.s) {
+                c.multiply(power, power, power, t);
+                multiplications++;
+            }
+        }
+        if (CryptoMetrics.isEnabled()) {
+            CryptoMetrics.recordMultiplications(multiplications);
+        }
+        return probablePrime;
+    }
+
+    /**
+     * Runs both halves of the test in the given buffers, recording the stage
+     * that rejects n, if any, in {@code PrimalityStatistics}.
+     *
+     * @param table
+     *            scratch for the base-2 exponentiation: at least
+     *            {@code ModularContext.MAX_TABLE_SIZE} residues
+     * @param x
+     *            scratch residue
+     * @param t
+     *            scratch of {@code context.scratchLength()} limbs
+     * @return true means n is very likely prime; false means n is definitely
+     *         composite
+     */
+    private boolean isProbablePrime(int[][] table, int[] x, int[] t) {
+        if (this.millerRabin.isStrongWitness(TWO, 1, table, x, t)) {
+            PrimalityStatistics
+                    .recordRejected(PrimalityStatistics.Stage.WITNESS);
+            return false;
+        }
+        if (this.composite || !this.isStrongLucasProbablePrime(t)) {
+            PrimalityStatistics
+                    .recordRejected(PrimalityStatistics.Stage.LUCAS);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Reports whether n is a Baillie-PSW probable prime. A rejection is
+     * recorded in {@code PrimalityStatistics} as {@code WITNESS} when base 2
+     * is a witness and as {@code LUCAS} otherwise.
+     *
+     * @return true means n is very likely prime; false means n is definitely
+     *         composite
+     */
+    public boolean isProbablePrime() {
+        int k = this.context.width();
+        return this.isProbablePrime(
+                new int[ModularContext.MAX_TABLE_SIZE][k], new int[k],
+                new int[this.context.scratchLength()]);
+    }
+
+    /**
+     * Reports whether n is a Baillie-PSW probable prime, like
+     * {@code isProbablePrime()}, but with the exponentiation buffers taken
+     * from {@code workspace}; this allocates nothing unless n is checked for
+     * being a perfect square.
+     *
+     * @param workspace
+     *            the buffers to work in
+     * @return true means n is very likely prime; false means n is definitely
+     *         composite
+     */
+    boolean isProbablePrime(ArithmeticWorkspace workspace) {
+        int k = this.context.width();
+        return this.isProbablePrime(workspace.table(k),
+                workspace.accumulator(k),
+                workspace.scratch(this.context.scratchLength()));
+    }
+
+}
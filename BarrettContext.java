@@ -0,0 +1,257 @@
+import components.naturalnumber.NaturalNumber;
+
+/**
+ * Modular arithmetic for a fixed modulus m that reduces every product by
+ * Barrett's method: with k the number of 32-bit limbs of m, b = 2^32 and mu =
+ * floor(b^(2k) / m) computed once, a product x < b^(2k) is reduced with two
+ * half-products and a subtraction instead of a long division.
+ *
+ * <p>
+ * Like {@code DivisionContext} it works for any m > 1 and keeps residues as
+ * plain values in [0, m), so entering and leaving the context costs nothing.
+ * It replaces long division wherever Montgomery is unavailable, that is for
+ * even moduli; for odd ones {@code MontgomeryContext} is still faster here,
+ * even for a single exponentiation.
+ * Only the top limbs of q1 * mu and the bottom limbs of q3 * m are computed
+ * (Handbook of Applied Cryptography, 14.42 and 14.45); the quotient estimate
+ * can come out up to two short, which the final subtractions absorb.
+ * </p>
+ *
+ * <p>
+ * Contexts are immutable and may be shared between threads.
+ * </p>
+ *
+ * @author Jamal Aden
+ *
+ */
+public final class BarrettContext extends ModularContext {
+
+    /**
+     * Limbs of the modulus, exactly {@code width} long.
+     */
+    private final int[] modulus;
+
+    /**
+     * Number of limbs in the modulus, k.
+     */
+    private final int width;
+
+    /**
+     * mu = floor(b^(2k) / m), exactly {@code muLength} limbs.
+     */
+    private final int[] mu;
+
+    /**
+     * Normalized length of mu, k or k + 1.
+     */
+    private final int muLength;
+
+    /**
+     * Builds the context for modulus {@code m}.
+     *
+     * @param m
+     *            the modulus
+     * @requires m > 1
+     */
+    public BarrettContext(NaturalNumber m) {
+        assert m != null : "Violation of: m is not null";
+        NaturalNumberLimbs localM = NaturalNumberLimbs.valueOf(m);
+        assert localM.bitLength() > 1 : "Violation of: m > 1";
+        this.modulus = localM.toLimbs();
+        this.width = this.modulus.length;
+        int k = this.width;
+        int[] power = new int[2 * k + 1];
+        power[2 * k] = 1;
+        int[] quotient = new int[k + 2];
+        LimbArithmetic.divide(power, 2 * k + 1, this.modulus, k, quotient,
+                new int[k]);
+        this.muLength = LimbArithmetic.normalize(quotient, k + 2);
+        this.mu = new int[this.muLength];
+        System.arraycopy(quotient, 0, this.mu, 0, this.muLength);
+    }
+
+    @Override
+    public NaturalNumber modulus() {
+        NaturalNumberLimbs m = new NaturalNumberLimbs();
+        m.setLimbs(this.modulus, this.width);
+        return m;
+    }
+
+    @Override
+    int width() {
+        return this.width;
+    }
+
+    /*
+     * Scratch holds the double-width product (2k limbs), then q1 * mu (up to
+     * 2k + 2 limbs), the low limbs of q3 * m and the remainder (k + 1 limbs
+     * each); while the product is being computed, the space after it is the
+     * multiplication's scratch instead.
+     */
+    @Override
+    int scratchLength() {
+        final int extra = 4;
+        int k = this.width;
+        return 2 * k + Math.max(4 * k + extra,
+                LimbArithmetic.multiplyScratchLength(k));
+    }
+
+    @Override
+    void multiply(int[] x, int[] y, int[] r, int[] t) {
+        int k = this.width;
+        int pLen = LimbArithmetic.multiply(x, LimbArithmetic.normalize(x, k),
+                y, LimbArithmetic.normalize(y, k), t, t, 2 * k);
+        this.reduce(t, pLen, r, t, 2 * k);
+    }
+
+    /**
+     * Computes r = x mod m by Barrett reduction.
+     *
+     * @param x
+     *            the value, below b^(2k); not modified
+     * @param xLen
+     *            its normalized length
+     * @param r
+     *            result, {@code width} limbs
+     * @param t
+     *            scratch, of which {@code 4k + 4} limbs from {@code offset}
+     *            are used; must not overlap x
+     * @param offset
+     *            where the scratch starts in t
+     */
+    private void reduce(int[] x, int xLen, int[] r, int[] t, int offset) {
+        final long mask = LimbArithmetic.MASK;
+        final int shift = LimbArithmetic.LIMB_BITS;
+        int k = this.width;
+        int[] m = this.modulus;
+        if (LimbArithmetic.compare(x, xLen, m, k) < 0) {
+            System.arraycopy(x, 0, r, 0, xLen);
+            for (int i = xLen; i < k; i++) {
+                r[i] = 0;
+            }
+            return;
+        }
+
+        /*
+         * q3 = floor(floor(x / b^(k-1)) * mu / b^(k+1)), skipping the partial
+         * products that only reach limbs below k - 1 of q1 * mu
+         */
+        int q1Len = xLen - (k - 1);
+        int q2 = offset;
+        int q2Len = q1Len + this.muLength;
+        for (int i = 0; i < q2Len; i++) {
+            t[q2 + i] = 0;
+        }
+        for (int i = 0; i < q1Len; i++) {
+            long xi = x[k - 1 + i] & mask;
+            int jStart = Math.max(0, k - 1 - i);
+            long c = 0;
+            for (int j = jStart; j < this.muLength; j++) {
+                c += xi * (this.mu[j] & mask) + (t[q2 + i + j] & mask);
+                t[q2 + i + j] = (int) c;
+                c >>>= shift;
+            }
+            for (int p = i + this.muLength; c != 0 && p < q2Len; p++) {
+                c += t[q2 + p] & mask;
+                t[q2 + p] = (int) c;
+                c >>>= shift;
+            }
+        }
+        int q3 = q2 + k + 1;
+        int q3Len = Math.max(q2Len - (k + 1), 0);
+
+        /*
+         * rem = (x - q3 * m) mod b^(k+1), with only the low k + 1 limbs of
+         * q3 * m formed
+         */
+        int low = q2 + q2Len;
+        for (int i = 0; i <= k; i++) {
+            t[low + i] = 0;
+        }
+        int rows = Math.min(q3Len, k + 1);
+        for (int i = 0; i < rows; i++) {
+            long qi = t[q3 + i] & mask;
+            int end = Math.min(k, k + 1 - i);
+            long c = 0;
+            for (int j = 0; j < end; j++) {
+                c += qi * (m[j] & mask) + (t[low + i + j] & mask);
+                t[low + i + j] = (int) c;
+                c >>>= shift;
+            }
+            if (i + end <= k) {
+                t[low + i + end] += (int) c;
+            }
+        }
+        int rem = low + k + 1;
+        long borrow = 0;
+        for (int i = 0; i <= k; i++) {
+            long xi = i < xLen ? x[i] & mask : 0;
+            long diff = xi - (t[low + i] & mask) + borrow;
+            t[rem + i] = (int) diff;
+            borrow = diff >> shift;
+        }
+
+        /*
+         * The estimate q3 is at most two short, so rem < 3m < b^(k+1)
+         */
+        while (t[rem + k] != 0 || this.atLeastModulus(t, rem)) {
+            borrow = 0;
+            for (int j = 0; j <= k; j++) {
+                long diff = (t[rem + j] & mask) - (j < k ? m[j] & mask : 0)
+                        + borrow;
+                t[rem + j] = (int) diff;
+                borrow = diff >> shift;
+            }
+        }
+        System.arraycopy(t, rem, r, 0, k);
+    }
+
+    /**
+     * Reports whether the k limbs of t from {@code from} are at least m.
+     *
+     * @param t
+     *            the array
+     * @param from
+     *            index of the least significant limb
+     * @return true iff t[from..from+k) >= m
+     */
+    private boolean atLeastModulus(int[] t, int from) {
+        for (int j = this.width - 1; j >= 0; j--) {
+            int a = t[from + j];
+            int b = this.modulus[j];
+            if (a != b) {
+                return Integer.compareUnsigned(a, b) > 0;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    void toResidue(int[] a, int aLen, int[] r, int[] t) {
+        if (aLen <= 2 * this.width) {
+            this.reduce(a, aLen, r, t, 0);
+        } else {
+            int rLen = LimbArithmetic.divide(a, aLen, this.modulus,
+                    this.width, null, r);
+            for (int i = rLen; i < this.width; i++) {
+                r[i] = 0;
+            }
+        }
+    }
+
+    @Override
+    void fromResidue(int[] x, int[] r, int[] t) {
+        if (r != x) {
+            System.arraycopy(x, 0, r, 0, this.width);
+        }
+    }
+
+    @Override
+    void one(int[] r) {
+        r[0] = 1;
+        for (int i = 1; i < this.width; i++) {
+            r[i] = 0;
+        }
+    }
+
+}
@@ -0,0 +1,796 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+import components.naturalnumber.NaturalNumber;
+
+/**
+ * Bernstein's batch GCD: for moduli N_1, ..., N_k, finds every
+ * gcd(N_i, product of the others) at once, so a corpus of RSA moduli can be
+ * screened for shared primes without a GCD per pair.
+ *
+ * <p>
+ * A product tree is built bottom up, each node the product of its two
+ * children and the root the product P of all of the moduli. A remainder tree
+ * then carries P back down, each node reduced modulo the square of its
+ * product-tree node, so that leaf i ends up with P mod N_i^2. Then
+ * (P mod N_i^2) / N_i is the product of the others modulo N_i, and its GCD
+ * with N_i is the answer. Long divisions go through a Newton reciprocal
+ * ({@code DivideArithmetic}), so each level of either tree costs a constant
+ * number of multiplications of its total length, and the whole
+ * O(M(n) log k) for k moduli of n limbs in all, where M is the cost of
+ * multiplication, instead of the O(n^2) of k^2 / 2 GCDs. With the Karatsuba
+ * and Toom-3 products of {@code MultiplyArithmetic}, M(n) is about n^1.47,
+ * so the whole is subquadratic; it would be quasi-linear with an FFT
+ * multiplication, which this package does not have.
+ * </p>
+ *
+ * <p>
+ * The nodes of each level are computed in parallel on a fork-join pool. A
+ * level whose limbs would take more than {@code inMemoryBytes} is kept in a
+ * memory-mapped temporary file instead of on the heap, so only the levels in
+ * use need to fit in memory, and the operating system pages the rest. The
+ * files are deleted as soon as their level has been used. The moduli can be
+ * read from an {@code Iterator} and the GCDs handed to a {@code Consumer},
+ * the leaf level being written as the moduli arrive, so a corpus larger than
+ * the heap only ever has a few entries of it there, besides a length and an
+ * offset per modulus.
+ * </p>
+ *
+ * @author Jamal Aden
+ *
+ */
+public final class BatchGcd {
+
+    /**
+     * Default share of the maximum heap one level may take before it is
+     * spilled: one eighth.
+     */
+    private static final int DEFAULT_HEAP_FRACTION = 8;
+
+    /**
+     * Nodes below which a level task is not split further.
+     */
+    private static final int TASK_NODES = 8;
+
+    /**
+     * Number of GCDs computed in parallel before they are handed out in
+     * order.
+     */
+    private static final int RESULT_NODES = 1 << 12;
+
+    /**
+     * Limbs in one mapped region of a spill file; a mapping cannot exceed
+     * 2 GiB, so files are mapped in 1 GiB regions.
+     */
+    private static final int REGION_LIMBS = 1 << 28;
+
+    /**
+     * Bytes in a limb.
+     */
+    private static final int LIMB_BYTES = Integer.BYTES;
+
+    /**
+     * The pool the levels are computed in.
+     */
+    private final ForkJoinPool pool;
+
+    /**
+     * Size in bytes above which a level is spilled.
+     */
+    private final long inMemoryBytes;
+
+    /**
+     * Directory for the spill files.
+     */
+    private final Path spillDirectory;
+
+    /**
+     * Builds a batch GCD running on the common pool, spilling levels larger
+     * than an eighth of the maximum heap to the default temporary directory.
+     */
+    public BatchGcd() {
+        this(ForkJoinPool.commonPool(),
+                Runtime.getRuntime().maxMemory() / DEFAULT_HEAP_FRACTION,
+                Paths.get(System.getProperty("java.io.tmpdir")));
+    }
+
+    /**
+     * Builds a batch GCD.
+     *
+     * @param pool
+     *            the pool to compute the levels in
+     * @param inMemoryBytes
+     *            largest level, in bytes of limbs, kept on the heap
+     * @param spillDirectory
+     *            where larger levels are mapped from
+     * @requires inMemoryBytes >= 0
+     */
+    public BatchGcd(ForkJoinPool pool, long inMemoryBytes,
+            Path spillDirectory) {
+        assert pool != null : "Violation of: pool is not null";
+        assert inMemoryBytes >= 0 : "Violation of: inMemoryBytes >= 0";
+        assert spillDirectory != null : ""
+                + "Violation of: spillDirectory is not null";
+        this.pool = pool;
+        this.inMemoryBytes = inMemoryBytes;
+        this.spillDirectory = spillDirectory;
+    }
+
+    /**
+     * One level of a tree: a sequence of magnitudes, each written once into a
+     * slot of known capacity, or added one after the other at the end.
+     */
+    private abstract static class Level implements AutoCloseable {
+
+        /**
+         * Normalized length of each entry, with room to grow.
+         */
+        private int[] lengths;
+
+        /**
+         * Number of entries.
+         */
+        private int size;
+
+        /**
+         * Builds a level of {@code size} empty entries.
+         *
+         * @param size
+         *            number of entries
+         */
+        Level(int size) {
+            this.lengths = new int[size];
+            this.size = size;
+        }
+
+        /**
+         * Reports the number of entries.
+         *
+         * @return number of entries
+         */
+        final int size() {
+            return this.size;
+        }
+
+        /**
+         * Reports the length of an entry.
+         *
+         * @param i
+         *            the entry
+         * @return its normalized length
+         */
+        final int length(int i) {
+            return this.lengths[i];
+        }
+
+        /**
+         * Reads an entry.
+         *
+         * @param i
+         *            the entry
+         * @return its limbs, exactly {@code length(i)} of them
+         */
+        abstract int[] get(int i);
+
+        /**
+         * Writes an entry; each entry is written once, and different entries
+         * may be written by different threads at once.
+         *
+         * @param i
+         *            the entry
+         * @param a
+         *            its limbs
+         * @param aLen
+         *            normalized length of a, at most the slot's capacity
+         */
+        final void put(int i, int[] a, int aLen) {
+            this.store(i, a, aLen);
+            this.lengths[i] = aLen;
+        }
+
+        /**
+         * Adds an entry at the end, from one thread; {@code finish} must be
+         * called after the last one before any entry is read.
+         *
+         * @param a
+         *            its limbs
+         * @param aLen
+         *            normalized length of a
+         * @throws IOException
+         *             if the entry cannot be written
+         */
+        final void add(int[] a, int aLen) throws IOException {
+            if (this.size == this.lengths.length) {
+                this.lengths = Arrays.copyOf(this.lengths,
+                        2 * this.size + 1);
+            }
+            this.append(this.size, a, aLen);
+            this.lengths[this.size] = aLen;
+            this.size++;
+        }
+
+        /**
+         * Stores the limbs of an entry.
+         *
+         * @param i
+         *            the entry
+         * @param a
+         *            its limbs
+         * @param aLen
+         *            number of limbs
+         */
+        abstract void store(int i, int[] a, int aLen);
+
+        /**
+         * Stores the limbs of a new entry after the others.
+         *
+         * @param i
+         *            the entry, the current size
+         * @param a
+         *            its limbs
+         * @param aLen
+         *            number of limbs
+         * @throws IOException
+         *             if the entry cannot be written
+         */
+        abstract void append(int i, int[] a, int aLen) throws IOException;
+
+        /**
+         * Makes the entries added so far readable.
+         *
+         * @throws IOException
+         *             if they cannot be mapped
+         */
+        void finish() throws IOException {
+        }
+
+        @Override
+        public void close() throws IOException {
+        }
+
+    }
+
+    /**
+     * A level kept on the heap.
+     */
+    private static final class HeapLevel extends Level {
+
+        /**
+         * The entries, with room to grow.
+         */
+        private int[][] entries;
+
+        /**
+         * Builds an empty level.
+         *
+         * @param size
+         *            number of entries
+         */
+        HeapLevel(int size) {
+            super(size);
+            this.entries = new int[size][];
+        }
+
+        @Override
+        int[] get(int i) {
+            return this.entries[i];
+        }
+
+        @Override
+        void store(int i, int[] a, int aLen) {
+            int[] entry = new int[aLen];
+            System.arraycopy(a, 0, entry, 0, aLen);
+            this.entries[i] = entry;
+        }
+
+        @Override
+        void append(int i, int[] a, int aLen) {
+            if (i == this.entries.length) {
+                this.entries = Arrays.copyOf(this.entries, 2 * i + 1);
+            }
+            this.store(i, a, aLen);
+        }
+
+    }
+
+    /**
+     * A level kept in a memory-mapped temporary file, deleted on close.
+     */
+    private static final class MappedLevel extends Level {
+
+        /**
+         * The file, opened to be deleted when closed.
+         */
+        private final FileChannel channel;
+
+        /**
+         * The file mapped in regions of {@code REGION_LIMBS}.
+         */
+        private IntBuffer[] regions;
+
+        /**
+         * Index of the first limb of each entry's slot, with room to grow.
+         */
+        private long[] offsets;
+
+        /**
+         * Number of limbs in the file.
+         */
+        private long end;
+
+        /**
+         * Creates the file and maps it.
+         *
+         * @param capacities
+         *            largest length of each entry
+         * @param directory
+         *            where the file goes
+         * @throws IOException
+         *             if the file cannot be created or mapped
+         */
+        MappedLevel(int[] capacities, Path directory) throws IOException {
+            super(capacities.length);
+            this.offsets = new long[capacities.length];
+            for (int i = 0; i < capacities.length; i++) {
+                this.offsets[i] = this.end;
+                this.end += capacities[i];
+            }
+            this.channel = open(directory);
+            this.finish();
+        }
+
+        /**
+         * Creates the file for a level with no entries yet, to be added.
+         *
+         * @param directory
+         *            where the file goes
+         * @throws IOException
+         *             if the file cannot be created
+         */
+        MappedLevel(Path directory) throws IOException {
+            super(0);
+            this.offsets = new long[0];
+            this.regions = new IntBuffer[0];
+            this.channel = open(directory);
+        }
+
+        /**
+         * Creates a spill file, to be deleted when closed.
+         *
+         * @param directory
+         *            where the file goes
+         * @return the file, open for reading and writing
+         * @throws IOException
+         *             if the file cannot be created
+         */
+        private static FileChannel open(Path directory) throws IOException {
+            Path file = Files.createTempFile(directory, "batchgcd", ".limbs");
+            return FileChannel.open(file, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE,
+                    StandardOpenOption.DELETE_ON_CLOSE);
+        }
+
+        @Override
+        void finish() throws IOException {
+            int count = (int) ((this.end + REGION_LIMBS - 1) / REGION_LIMBS);
+            this.regions = new IntBuffer[count];
+            for (int r = 0; r < count; r++) {
+                long first = (long) r * REGION_LIMBS;
+                long limbs = Math.min(REGION_LIMBS, this.end - first);
+                this.regions[r] = this.channel
+                        .map(FileChannel.MapMode.READ_WRITE,
+                                first * LIMB_BYTES, limbs * LIMB_BYTES)
+                        .order(ByteOrder.nativeOrder()).asIntBuffer();
+            }
+        }
+
+        /**
+         * Copies limbs between the file and an array, region by region.
+         *
+         * @param at
+         *            index of the first limb in the file
+         * @param a
+         *            the array
+         * @param aLen
+         *            number of limbs
+         * @param write
+         *            true to copy from a into the file, false the other way
+         */
+        private void copy(long at, int[] a, int aLen, boolean write) {
+            int done = 0;
+            while (done < aLen) {
+                long limb = at + done;
+                IntBuffer region = this.regions[(int) (limb / REGION_LIMBS)]
+                        .duplicate();
+                region.position((int) (limb % REGION_LIMBS));
+                int run = Math.min(aLen - done, region.remaining());
+                if (write) {
+                    region.put(a, done, run);
+                } else {
+                    region.get(a, done, run);
+                }
+                done += run;
+            }
+        }
+
+        @Override
+        int[] get(int i) {
+            int[] entry = new int[this.length(i)];
+            this.copy(this.offsets[i], entry, entry.length, false);
+            return entry;
+        }
+
+        @Override
+        void store(int i, int[] a, int aLen) {
+            this.copy(this.offsets[i], a, aLen, true);
+        }
+
+        @Override
+        void append(int i, int[] a, int aLen) throws IOException {
+            if (i == this.offsets.length) {
+                this.offsets = Arrays.copyOf(this.offsets, 2 * i + 1);
+            }
+            this.offsets[i] = this.end;
+            ByteBuffer bytes = ByteBuffer.allocate(aLen * LIMB_BYTES)
+                    .order(ByteOrder.nativeOrder());
+            bytes.asIntBuffer().put(a, 0, aLen);
+            long position = this.end * LIMB_BYTES;
+            while (bytes.hasRemaining()) {
+                position += this.channel.write(bytes, position);
+            }
+            this.end += aLen;
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.channel.close();
+        }
+
+    }
+
+    /**
+     * Runs a body for each node of a level, splitting the range in halves
+     * down to {@code TASK_NODES} nodes.
+     */
+    private static final class NodesTask extends RecursiveAction {
+
+        /**
+         * Serialization id.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * What to do for one node.
+         */
+        private final transient IntConsumer body;
+
+        /**
+         * First node, inclusive.
+         */
+        private final int from;
+
+        /**
+         * Last node, exclusive.
+         */
+        private final int to;
+
+        /**
+         * Builds a task.
+         *
+         * @param body
+         *            what to do for one node
+         * @param from
+         *            first node, inclusive
+         * @param to
+         *            last node, exclusive
+         */
+        NodesTask(IntConsumer body, int from, int to) {
+            this.body = body;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.to - this.from <= TASK_NODES) {
+                for (int i = this.from; i < this.to; i++) {
+                    this.body.accept(i);
+                }
+            } else {
+                int middle = (this.from + this.to) >>> 1;
+                invokeAll(new NodesTask(this.body, this.from, middle),
+                        new NodesTask(this.body, middle, this.to));
+            }
+        }
+
+    }
+
+    /**
+     * Creates a level on the heap or, if it would be too large, in a spill
+     * file.
+     *
+     * @param capacities
+     *            largest length of each entry
+     * @return the level
+     * @throws IOException
+     *             if the spill file cannot be created
+     */
+    private Level newLevel(int[] capacities) throws IOException {
+        long limbs = 0;
+        for (int capacity : capacities) {
+            limbs += capacity;
+        }
+        if (limbs * LIMB_BYTES > this.inMemoryBytes) {
+            return new MappedLevel(capacities, this.spillDirectory);
+        }
+        return new HeapLevel(capacities.length);
+    }
+
+    /**
+     * Runs {@code body} for nodes from to to - 1 in the pool.
+     *
+     * @param from
+     *            first node, inclusive
+     * @param to
+     *            last node, exclusive
+     * @param body
+     *            what to do for one node
+     */
+    private void forEachNode(int from, int to, IntConsumer body) {
+        this.pool.invoke(new NodesTask(body, from, to));
+    }
+
+    /**
+     * Builds the level above {@code below} in the product tree.
+     *
+     * @param below
+     *            the level below
+     * @return the products of its pairs, the last entry carried up alone if
+     *         the count is odd
+     * @throws IOException
+     *             if a spill file cannot be created
+     */
+    private Level products(Level below) throws IOException {
+        int count = (below.size() + 1) / 2;
+        int[] capacities = new int[count];
+        for (int i = 0; i < count; i++) {
+            capacities[i] = below.length(2 * i);
+            if (2 * i + 1 < below.size()) {
+                capacities[i] += below.length(2 * i + 1);
+            }
+        }
+        Level level = this.newLevel(capacities);
+        this.forEachNode(0, count, i -> {
+            int[] a = below.get(2 * i);
+            if (2 * i + 1 < below.size()) {
+                int[] b = below.get(2 * i + 1);
+                int[] product = new int[a.length + b.length];
+                level.put(i, product, LimbArithmetic.multiply(a, a.length,
+                        b, b.length, product));
+            } else {
+                level.put(i, a, a.length);
+            }
+        });
+        return level;
+    }
+
+    /**
+     * Builds a level of the remainder tree: entry i is the entry above it
+     * reduced modulo the square of product-tree entry i.
+     *
+     * @param above
+     *            the remainder level above
+     * @param products
+     *            the product level at this height
+     * @return the remainders
+     * @throws IOException
+     *             if a spill file cannot be created
+     */
+    private Level remainders(Level above, Level products) throws IOException {
+        int count = products.size();
+        int[] capacities = new int[count];
+        for (int i = 0; i < count; i++) {
+            capacities[i] = Math.min(2 * products.length(i),
+                    above.length(i / 2));
+        }
+        Level level = this.newLevel(capacities);
+        this.forEachNode(0, count, i -> {
+            int[] x = products.get(i);
+            int[] square = new int[2 * x.length];
+            int squareLen = LimbArithmetic.multiply(x, x.length, x, x.length,
+                    square);
+            int[] a = above.get(i / 2);
+            int[] r = new int[Math.min(squareLen, a.length)];
+            int rLen = DivideArithmetic.divide(a, a.length, square,
+                    squareLen, null, r);
+            level.put(i, r, rLen);
+        });
+        return level;
+    }
+
+    /**
+     * Builds the leaf level from the moduli, on the heap until they would
+     * take more than {@code inMemoryBytes}, and in a spill file from then on.
+     *
+     * @param moduli
+     *            the moduli
+     * @return the level, finished
+     * @throws IOException
+     *             if the spill file cannot be written or mapped
+     * @updates moduli
+     * @requires [every modulus > 1]
+     */
+    private Level leaves(Iterator<? extends NaturalNumber> moduli)
+            throws IOException {
+        Level level = new HeapLevel(0);
+        boolean spilled = false;
+        boolean built = false;
+        long limbs = 0;
+        try {
+            while (moduli.hasNext()) {
+                NaturalNumberLimbs n = NaturalNumberLimbs.valueOf(
+                        moduli.next());
+                assert n.bitLength() > 1 : ""
+                        + "Violation of: every modulus > 1";
+                limbs += n.limbCount();
+                if (!spilled && limbs * LIMB_BYTES > this.inMemoryBytes) {
+                    Level file = new MappedLevel(this.spillDirectory);
+                    for (int i = 0; i < level.size(); i++) {
+                        file.add(level.get(i), level.length(i));
+                    }
+                    level = file;
+                    spilled = true;
+                }
+                level.add(n.limbArray(), n.limbCount());
+            }
+            level.finish();
+            built = true;
+        } finally {
+            if (!built) {
+                level.close();
+            }
+        }
+        return level;
+    }
+
+    /**
+     * Computes gcd((rem / n) mod n, n), which for rem = P mod n^2 is the GCD
+     * of n with P / n.
+     *
+     * @param n
+     *            the modulus
+     * @param rem
+     *            the remainder of the product of all of the moduli modulo
+     *            n^2
+     * @return the GCD
+     */
+    private static NaturalNumber gcd(int[] n, int[] rem) {
+        int[] q = new int[rem.length + 1];
+        DivideArithmetic.divide(rem, rem.length, n, n.length, q,
+                new int[n.length]);
+        int qLen = LimbArithmetic.normalize(q, q.length);
+        int[] g = new int[Math.max(Math.max(qLen, n.length), 2)];
+        int gLen = GcdArithmetic.gcd(q, qLen, n, n.length, g);
+        NaturalNumberLimbs gcd = new NaturalNumberLimbs();
+        gcd.setLimbs(g, gLen);
+        return gcd;
+    }
+
+    /**
+     * Computes, for each modulus, its GCD with the product of all of the
+     * others: 1 when it shares no prime with any of them, a shared prime (or
+     * product of shared primes) when it does, and the modulus itself when
+     * all of its primes are shared, as for a repeated modulus.
+     *
+     * @param moduli
+     *            the moduli
+     * @return the GCDs, in the order of the moduli
+     * @throws IOException
+     *             if a spill file cannot be created or mapped
+     * @requires [every entry of moduli > 1]
+     * @ensures <pre>
+     * |gcds| = |moduli|  and
+     * for all i: gcds[i] = [greatest common divisor of moduli[i] and the
+     *     product of moduli[j] for all j /= i]
+     * </pre>
+     */
+    public NaturalNumber[] gcds(NaturalNumber[] moduli) throws IOException {
+        assert moduli != null : "Violation of: moduli is not null";
+        List<NaturalNumber> result = new ArrayList<>(moduli.length);
+        this.gcds(Arrays.asList(moduli).iterator(), result::add);
+        return result.toArray(new NaturalNumber[0]);
+    }
+
+    /**
+     * Computes, for each modulus that {@code moduli} yields, its GCD with
+     * the product of all of the others, as {@code gcds(NaturalNumber[])}
+     * does, handing the GCDs to {@code results} in the order of the moduli on
+     * the calling thread. The moduli are read once, each as it is written to
+     * the leaf level, so they need not all be in memory at once.
+     *
+     * @param moduli
+     *            the moduli
+     * @param results
+     *            what to do with each GCD
+     * @throws IOException
+     *             if a spill file cannot be created or mapped
+     * @updates moduli
+     * @requires [every modulus > 1]
+     * @ensures <pre>
+     * [results has been given, in order, for each modulus N yielded by
+     *  #moduli, the greatest common divisor of N and the product of the
+     *  other moduli]
+     * </pre>
+     */
+    public void gcds(Iterator<? extends NaturalNumber> moduli,
+            Consumer<? super NaturalNumber> results) throws IOException {
+        assert moduli != null : "Violation of: moduli is not null";
+        assert results != null : "Violation of: results is not null";
+        List<Level> tree = new ArrayList<>();
+        try (Level leaves = this.leaves(moduli)) {
+            int count = leaves.size();
+            if (count == 0) {
+                return;
+            }
+            try {
+                Level level = leaves;
+                tree.add(level);
+                while (level.size() > 1) {
+                    level = this.products(level);
+                    tree.add(level);
+                }
+
+                /*
+                 * Walk back down, the root being its own remainder; each
+                 * product level is replaced in the list by the remainders
+                 * computed from it, and the level above is closed as soon as
+                 * it is used, except the leaves, which the GCDs need
+                 */
+                for (int k = tree.size() - 2; k >= 0; k--) {
+                    Level below = this.remainders(tree.get(k + 1),
+                            tree.get(k));
+                    tree.remove(k + 1).close();
+                    Level used = tree.set(k, below);
+                    if (used != leaves) {
+                        used.close();
+                    }
+                }
+                Level remainders = tree.get(0);
+                NaturalNumber[] block = new NaturalNumber[Math.min(count,
+                        RESULT_NODES)];
+                for (int from = 0; from < count; from += block.length) {
+                    int first = from;
+                    int to = Math.min(count, from + block.length);
+                    this.forEachNode(from, to, i -> block[i - first] = gcd(
+                            leaves.get(i), remainders.get(i)));
+                    for (int i = 0; i < to - from; i++) {
+                        results.accept(block[i]);
+                        block[i] = null;
+                    }
+                }
+            } finally {
+                for (Level level : tree) {
+                    if (level != leaves) {
+                        level.close();
+                    }
+                }
+            }
+        }
+    }
+
+}
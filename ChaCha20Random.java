@@ -0,0 +1,255 @@
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+/**
+ * Deterministic random bit generator built on the ChaCha20 block function
+ * (RFC 8439) with fast key erasure: each refill computes {@code BLOCKS}
+ * blocks under the current key, the first 256 bits of them become the next
+ * key, and the rest are handed out, each word zeroed in the buffer as it
+ * goes. The key is drawn from a {@code SecureRandom} at construction, and
+ * fresh bits from it are mixed into the key again every
+ * {@code RESEED_WORDS} words of output.
+ *
+ * <p>
+ * So the state of a generator, as a heap snapshot would show it, says
+ * nothing about output already handed out, and output after the next
+ * reseed depends on bits it does not hold. Until then it does determine the
+ * output, as the state of any such generator does. Drawing allocates
+ * nothing in this class. A generator is not thread-safe; each
+ * {@code ArithmeticWorkspace} owns one.
+ * </p>
+ *
+ * @author Jamal Aden
+ *
+ */
+final class ChaCha20Random {
+
+    /**
+     * The constant words "expand 32-byte k".
+     */
+    private static final int[] SIGMA = {0x61707865, 0x3320646e, 0x79622d32,
+        0x6b206574};
+
+    /**
+     * Words in a block.
+     */
+    static final int BLOCK_WORDS = 16;
+
+    /**
+     * Words in the key.
+     */
+    private static final int KEY_WORDS = 8;
+
+    /**
+     * Position of the key in the state.
+     */
+    private static final int KEY = 4;
+
+    /**
+     * Position of the block counter in the state.
+     */
+    private static final int COUNTER = 12;
+
+    /**
+     * Blocks computed per refill, under one key.
+     */
+    static final int BLOCKS = 8;
+
+    /**
+     * Words of output after which fresh bits are mixed into the key: about
+     * 1 MiB, as arc4random does.
+     */
+    static final int RESEED_WORDS = 1 << 18;
+
+    /**
+     * Number of double rounds (a column round and a diagonal round each).
+     */
+    private static final int DOUBLE_ROUNDS = 10;
+
+    /**
+     * First rotation distance of the quarter round.
+     */
+    private static final int R1 = 16;
+
+    /**
+     * Second rotation distance of the quarter round.
+     */
+    private static final int R2 = 12;
+
+    /**
+     * Third rotation distance of the quarter round.
+     */
+    private static final int R3 = 8;
+
+    /**
+     * Fourth rotation distance of the quarter round.
+     */
+    private static final int R4 = 7;
+
+    /**
+     * Mask selecting a byte.
+     */
+    private static final int BYTE_MASK = 0xFF;
+
+    /**
+     * Source of the key and of the bits mixed into it.
+     */
+    private final SecureRandom seed;
+
+    /**
+     * Input state: constants, key, counter and a zero nonce.
+     */
+    private final int[] state = new int[BLOCK_WORDS];
+
+    /**
+     * Output of the last refill; words handed out, and the next key, are
+     * zeroed.
+     */
+    private final int[] buffer = new int[BLOCKS * BLOCK_WORDS];
+
+    /**
+     * Bytes drawn from {@code seed} at a reseed, zeroed once used.
+     */
+    private final byte[] fresh = new byte[KEY_WORDS * Integer.BYTES];
+
+    /**
+     * Number of words of {@code buffer} already handed out or used as key.
+     */
+    private int used = BLOCKS * BLOCK_WORDS;
+
+    /**
+     * Words handed out since the last reseed.
+     */
+    private int sinceReseed;
+
+    /**
+     * Builds a generator keyed from {@code seed}.
+     *
+     * @param seed
+     *            source of the key; kept, to reseed from
+     */
+    ChaCha20Random(SecureRandom seed) {
+        assert seed != null : "Violation of: seed is not null";
+        this.seed = seed;
+        System.arraycopy(SIGMA, 0, this.state, 0, SIGMA.length);
+        this.reseed();
+    }
+
+    /**
+     * Sets {@code r[0..length)} to uniformly random limbs.
+     *
+     * @param r
+     *            the limbs to set
+     * @param length
+     *            number of limbs
+     * @replaces r[0..length)
+     */
+    void nextInts(int[] r, int length) {
+        for (int i = 0; i < length; i++) {
+            if (this.used == this.buffer.length) {
+                this.refill();
+            }
+            r[i] = this.buffer[this.used];
+            this.buffer[this.used] = 0;
+            this.used++;
+        }
+        this.sinceReseed += length;
+    }
+
+    /**
+     * Mixes 256 fresh bits from {@code seed} into the key.
+     */
+    private void reseed() {
+        this.seed.nextBytes(this.fresh);
+        for (int i = 0; i < KEY_WORDS; i++) {
+            int word = 0;
+            for (int j = Integer.BYTES - 1; j >= 0; j--) {
+                word = (word << Byte.SIZE)
+                        | (this.fresh[i * Integer.BYTES + j] & BYTE_MASK);
+            }
+            this.state[KEY + i] ^= word;
+        }
+        Arrays.fill(this.fresh, (byte) 0);
+        this.sinceReseed = 0;
+    }
+
+    /**
+     * Computes the next {@code BLOCKS} blocks, and replaces the key with the
+     * first eight words of them.
+     */
+    private void refill() {
+        if (this.sinceReseed >= RESEED_WORDS) {
+            this.reseed();
+        }
+        for (int b = 0; b < BLOCKS; b++) {
+            this.state[COUNTER] = b;
+            block(this.state, this.buffer, b * BLOCK_WORDS);
+        }
+        System.arraycopy(this.buffer, 0, this.state, KEY, KEY_WORDS);
+        Arrays.fill(this.buffer, 0, KEY_WORDS, 0);
+        this.used = KEY_WORDS;
+    }
+
+    /**
+     * The ChaCha20 block function: {@code output[offset..offset + 16)} is
+     * set to the keystream block for {@code input}.
+     *
+     * @param input
+     *            the 16 input words: constants, key, counter and nonce
+     * @param output
+     *            where the block goes
+     * @param offset
+     *            where it starts in output
+     * @replaces output[offset..offset + 16)
+     */
+    static void block(int[] input, int[] output, int offset) {
+        System.arraycopy(input, 0, output, offset, BLOCK_WORDS);
+        for (int i = 0; i < DOUBLE_ROUNDS; i++) {
+            quarterRound(output, offset, 0, 4, 8, 12);
+            quarterRound(output, offset, 1, 5, 9, 13);
+            quarterRound(output, offset, 2, 6, 10, 14);
+            quarterRound(output, offset, 3, 7, 11, 15);
+            quarterRound(output, offset, 0, 5, 10, 15);
+            quarterRound(output, offset, 1, 6, 11, 12);
+            quarterRound(output, offset, 2, 7, 8, 13);
+            quarterRound(output, offset, 3, 4, 9, 14);
+        }
+        for (int i = 0; i < BLOCK_WORDS; i++) {
+            output[offset + i] += input[i];
+        }
+    }
+
+    /**
+     * The ChaCha quarter round on words a, b, c and d of the state at
+     * {@code offset} in {@code x}.
+     *
+     * @param x
+     *            holds the working state
+     * @param offset
+     *            where the state starts in x
+     * @param a
+     *            index of the first word
+     * @param b
+     *            index of the second word
+     * @param c
+     *            index of the third word
+     * @param d
+     *            index of the fourth word
+     */
+    private static void quarterRound(int[] x, int offset, int a, int b,
+            int c, int d) {
+        int i = offset + a;
+        int j = offset + b;
+        int k = offset + c;
+        int l = offset + d;
+        x[i] += x[j];
+        x[l] = Integer.rotateLeft(x[l] ^ x[i], R1);
+        x[k] += x[l];
+        x[j] = Integer.rotateLeft(x[j] ^ x[k], R2);
+        x[i] += x[j];
+        x[l] = Integer.rotateLeft(x[l] ^ x[i], R3);
+        x[k] += x[l];
+        x[j] = Integer.rotateLeft(x[j] ^ x[k], R4);
+    }
+
+}
@@ -0,0 +1,634 @@
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Switchable counters and latency histograms for the number-theory hot
+ * paths: exponentiations and the modular multiplications inside them,
+ * witness tests, primality tests, and wall time per prime found. Together
+ * with the candidate counts of {@code PrimalityStatistics} they show whether
+ * a slow prime search spends its time on candidates, rounds or arithmetic.
+ *
+ * <p>
+ * Recording is off by default, or on from startup with
+ * {@code -Dcryptoutilities.metrics=true}. The switch covers the candidate
+ * counts of {@code PrimalityStatistics} too. While off, each instrumented
+ * entry point pays a volatile read per record call; nothing is timed or
+ * counted. While on, counters are striped ({@code LongAdder}), so concurrent
+ * searches record without contending, and multiplications are added once per
+ * exponentiation rather than once per multiply. Histograms bucket
+ * nanoseconds by powers of two, so a percentile is known to within a factor
+ * of two.
+ * </p>
+ *
+ * <p>
+ * {@code snapshot()} reads everything at once; {@code registerMBean()}
+ * publishes the same view, and the switch, over JMX as
+ * {@code CryptoUtilities:type=CryptoMetrics}.
+ * </p>
+ *
+ * @author Jamal Aden
+ *
+ */
+public final class CryptoMetrics {
+
+    /**
+     * Name the MXBean is registered under.
+     */
+    public static final String OBJECT_NAME = ""
+            + "CryptoUtilities:type=CryptoMetrics";
+
+    /**
+     * Whether recording is on.
+     */
+    private static volatile boolean enabled = Boolean
+            .getBoolean("cryptoutilities.metrics");
+
+    /**
+     * Number of modular exponentiations.
+     */
+    private static final LongAdder EXPONENTIATIONS = new LongAdder();
+
+    /**
+     * Number of modular multiplications, squarings included.
+     */
+    private static final LongAdder MODULAR_MULTIPLICATIONS = new LongAdder();
+
+    /**
+     * Number of witness tests: isWitnessToCompositeness calls and
+     * Miller-Rabin rounds.
+     */
+    private static final LongAdder WITNESS_TESTS = new LongAdder();
+
+    /**
+     * Latency of single powerMod calls.
+     */
+    private static final Histogram POWER_MOD = new Histogram();
+
+    /**
+     * Latency of isPrime2 calls.
+     */
+    private static final Histogram PRIMALITY_TEST = new Histogram();
+
+    /**
+     * Wall time of generateNextLikelyPrime calls, one per prime found.
+     */
+    private static final Histogram PRIME_SEARCH = new Histogram();
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private CryptoMetrics() {
+    }
+
+    /**
+     * Latency histogram with one bucket per power of two nanoseconds.
+     */
+    private static final class Histogram {
+
+        /**
+         * Number of buckets; bucket b counts latencies in [2^(b-1), 2^b).
+         */
+        private static final int BUCKETS = Long.SIZE;
+
+        /**
+         * Counts per bucket.
+         */
+        private final LongAdder[] buckets = new LongAdder[BUCKETS];
+
+        /**
+         * Sum of all latencies.
+         */
+        private final LongAdder total = new LongAdder();
+
+        /**
+         * Largest latency.
+         */
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+        /**
+         * Builds an empty histogram.
+         */
+        Histogram() {
+            for (int b = 0; b < BUCKETS; b++) {
+                this.buckets[b] = new LongAdder();
+            }
+        }
+
+        /**
+         * Records one latency.
+         *
+         * @param nanos
+         *            the latency
+         */
+        void record(long nanos) {
+            long value = Math.max(nanos, 0);
+            this.buckets[Long.SIZE - Long.numberOfLeadingZeros(value)]
+                    .increment();
+            this.total.add(value);
+            this.max.accumulate(value);
+        }
+
+        /**
+         * Summarizes the latencies recorded so far.
+         *
+         * @return the summary
+         */
+        Latency summary() {
+            long[] counts = new long[BUCKETS];
+            long count = 0;
+            for (int b = 0; b < BUCKETS; b++) {
+                counts[b] = this.buckets[b].sum();
+                count += counts[b];
+            }
+            return new Latency(count, this.total.sum(), this.max.get(),
+                    percentile(counts, count, 0.50),
+                    percentile(counts, count, 0.90),
+                    percentile(counts, count, 0.99));
+        }
+
+        /**
+         * Estimates a percentile as the upper end of the bucket it falls in.
+         *
+         * @param counts
+         *            counts per bucket
+         * @param count
+         *            their sum
+         * @param fraction
+         *            the percentile, in (0, 1)
+         * @return upper bound of the percentile, in nanoseconds
+         */
+        private static long percentile(long[] counts, long count,
+                double fraction) {
+            long rank = (long) Math.ceil(fraction * count);
+            long seen = 0;
+            int b = 0;
+            while (b < BUCKETS - 1 && seen + counts[b] < rank) {
+                seen += counts[b];
+                b++;
+            }
+            return count == 0 ? 0 : (1L << b) - 1;
+        }
+
+        /**
+         * Forgets every latency.
+         */
+        void reset() {
+            for (LongAdder bucket : this.buckets) {
+                bucket.reset();
+            }
+            this.total.reset();
+            this.max.reset();
+        }
+
+    }
+
+    /**
+     * Summary of one latency histogram, in nanoseconds.
+     */
+    public static final class Latency {
+
+        /**
+         * Number of latencies recorded.
+         */
+        private final long count;
+
+        /**
+         * Their sum.
+         */
+        private final long totalNanos;
+
+        /**
+         * The largest.
+         */
+        private final long maxNanos;
+
+        /**
+         * Upper bound of the median.
+         */
+        private final long p50Nanos;
+
+        /**
+         * Upper bound of the 90th percentile.
+         */
+        private final long p90Nanos;
+
+        /**
+         * Upper bound of the 99th percentile.
+         */
+        private final long p99Nanos;
+
+        /**
+         * Builds a summary.
+         *
+         * @param count
+         *            number of latencies
+         * @param totalNanos
+         *            their sum
+         * @param maxNanos
+         *            the largest
+         * @param p50Nanos
+         *            upper bound of the median
+         * @param p90Nanos
+         *            upper bound of the 90th percentile
+         * @param p99Nanos
+         *            upper bound of the 99th percentile
+         */
+        Latency(long count, long totalNanos, long maxNanos, long p50Nanos,
+                long p90Nanos, long p99Nanos) {
+            this.count = count;
+            this.totalNanos = totalNanos;
+            this.maxNanos = maxNanos;
+            this.p50Nanos = p50Nanos;
+            this.p90Nanos = p90Nanos;
+            this.p99Nanos = p99Nanos;
+        }
+
+        /**
+         * Reports the number of latencies recorded.
+         *
+         * @return count
+         */
+        public long getCount() {
+            return this.count;
+        }
+
+        /**
+         * Reports the sum of the latencies.
+         *
+         * @return total in nanoseconds
+         */
+        public long getTotalNanos() {
+            return this.totalNanos;
+        }
+
+        /**
+         * Reports the mean latency.
+         *
+         * @return mean in nanoseconds, 0 if none were recorded
+         */
+        public long getMeanNanos() {
+            return this.count == 0 ? 0 : this.totalNanos / this.count;
+        }
+
+        /**
+         * Reports the largest latency.
+         *
+         * @return maximum in nanoseconds
+         */
+        public long getMaxNanos() {
+            return this.maxNanos;
+        }
+
+        /**
+         * Reports an upper bound of the median latency.
+         *
+         * @return median bound in nanoseconds
+         */
+        public long getP50Nanos() {
+            return this.p50Nanos;
+        }
+
+        /**
+         * Reports an upper bound of the 90th percentile latency.
+         *
+         * @return 90th percentile bound in nanoseconds
+         */
+        public long getP90Nanos() {
+            return this.p90Nanos;
+        }
+
+        /**
+         * Reports an upper bound of the 99th percentile latency.
+         *
+         * @return 99th percentile bound in nanoseconds
+         */
+        public long getP99Nanos() {
+            return this.p99Nanos;
+        }
+
+        @Override
+        public String toString() {
+            return "count=" + this.count + " mean=" + this.getMeanNanos()
+                    + "ns p50<=" + this.p50Nanos + "ns p90<=" + this.p90Nanos
+                    + "ns p99<=" + this.p99Nanos + "ns max=" + this.maxNanos
+                    + "ns";
+        }
+
+    }
+
+    /**
+     * All counters and histograms read at one moment. Counters being updated
+     * concurrently may be caught partway, so related counts can disagree by
+     * the few operations in flight.
+     */
+    public static final class Snapshot {
+
+        /**
+         * Modular exponentiations.
+         */
+        private final long exponentiations;
+
+        /**
+         * Modular multiplications.
+         */
+        private final long modularMultiplications;
+
+        /**
+         * Witness tests.
+         */
+        private final long witnessTests;
+
+        /**
+         * Candidates examined by the primality tests and prime searches.
+         */
+        private final long candidatesTested;
+
+        /**
+         * Candidates rejected, by stage name.
+         */
+        private final Map<String, Long> candidatesRejected;
+
+        /**
+         * Latency of powerMod.
+         */
+        private final Latency powerModLatency;
+
+        /**
+         * Latency of isPrime2.
+         */
+        private final Latency primalityTestLatency;
+
+        /**
+         * Wall time per prime found.
+         */
+        private final Latency timePerPrime;
+
+        /**
+         * Reads every counter and histogram.
+         */
+        Snapshot() {
+            this.exponentiations = EXPONENTIATIONS.sum();
+            this.modularMultiplications = MODULAR_MULTIPLICATIONS.sum();
+            this.witnessTests = WITNESS_TESTS.sum();
+            this.candidatesTested = PrimalityStatistics.tested();
+            Map<String, Long> rejected = new LinkedHashMap<>();
+            for (PrimalityStatistics.Stage stage : PrimalityStatistics.Stage
+                    .values()) {
+                rejected.put(stage.name(),
+                        PrimalityStatistics.rejected(stage));
+            }
+            this.candidatesRejected = Collections.unmodifiableMap(rejected);
+            this.powerModLatency = POWER_MOD.summary();
+            this.primalityTestLatency = PRIMALITY_TEST.summary();
+            this.timePerPrime = PRIME_SEARCH.summary();
+        }
+
+        /**
+         * Reports the number of modular exponentiations.
+         *
+         * @return exponentiations
+         */
+        public long getExponentiations() {
+            return this.exponentiations;
+        }
+
+        /**
+         * Reports the number of modular multiplications, squarings included.
+         *
+         * @return modular multiplications
+         */
+        public long getModularMultiplications() {
+            return this.modularMultiplications;
+        }
+
+        /**
+         * Reports the number of witness tests: isWitnessToCompositeness calls
+         * and Miller-Rabin rounds.
+         *
+         * @return witness tests
+         */
+        public long getWitnessTests() {
+            return this.witnessTests;
+        }
+
+        /**
+         * Reports the number of candidates the primality tests and prime
+         * searches examined; recorded only while metrics are enabled.
+         *
+         * @return candidates tested
+         */
+        public long getCandidatesTested() {
+            return this.candidatesTested;
+        }
+
+        /**
+         * Reports the number of candidates each stage rejected; recorded
+         * only while metrics are enabled.
+         *
+         * @return rejections by {@code PrimalityStatistics.Stage} name
+         */
+        public Map<String, Long> getCandidatesRejected() {
+            return this.candidatesRejected;
+        }
+
+        /**
+         * Reports the latency of single powerMod calls.
+         *
+         * @return powerMod latency
+         */
+        public Latency getPowerModLatency() {
+            return this.powerModLatency;
+        }
+
+        /**
+         * Reports the latency of isPrime2 calls.
+         *
+         * @return primality test latency
+         */
+        public Latency getPrimalityTestLatency() {
+            return this.primalityTestLatency;
+        }
+
+        /**
+         * Reports the wall time of each generateNextLikelyPrime call.
+         *
+         * @return time per prime found
+         */
+        public Latency getTimePerPrime() {
+            return this.timePerPrime;
+        }
+
+        @Override
+        public String toString() {
+            return "exponentiations=" + this.exponentiations
+                    + " modularMultiplications=" + this.modularMultiplications
+                    + " witnessTests=" + this.witnessTests
+                    + " candidatesTested=" + this.candidatesTested
+                    + " candidatesRejected=" + this.candidatesRejected
+                    + "\npowerMod: " + this.powerModLatency
+                    + "\nisPrime2: " + this.primalityTestLatency
+                    + "\nper prime: " + this.timePerPrime;
+        }
+
+    }
+
+    /**
+     * The JMX view of the metrics.
+     */
+    private static final class Bean implements CryptoMetricsMXBean {
+
+        @Override
+        public boolean isEnabled() {
+            return CryptoMetrics.isEnabled();
+        }
+
+        @Override
+        public void setEnabled(boolean on) {
+            CryptoMetrics.setEnabled(on);
+        }
+
+        @Override
+        public Snapshot getSnapshot() {
+            return CryptoMetrics.snapshot();
+        }
+
+        @Override
+        public void reset() {
+            CryptoMetrics.reset();
+        }
+
+    }
+
+    /**
+     * Reports whether recording is on.
+     *
+     * @return true iff metrics are being recorded
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Turns recording on or off. Counts recorded so far are kept.
+     *
+     * @param on
+     *            whether to record
+     */
+    public static void setEnabled(boolean on) {
+        enabled = on;
+    }
+
+    /**
+     * Reads every counter and histogram.
+     *
+     * @return the snapshot
+     */
+    public static Snapshot snapshot() {
+        return new Snapshot();
+    }
+
+    /**
+     * Resets every counter and histogram, those of
+     * {@code PrimalityStatistics} included, to zero.
+     */
+    public static void reset() {
+        EXPONENTIATIONS.reset();
+        MODULAR_MULTIPLICATIONS.reset();
+        WITNESS_TESTS.reset();
+        POWER_MOD.reset();
+        PRIMALITY_TEST.reset();
+        PRIME_SEARCH.reset();
+        PrimalityStatistics.reset();
+    }
+
+    /**
+     * Registers the metrics with the platform MBean server under
+     * {@code OBJECT_NAME}; does nothing if they already are.
+     *
+     * @throws IllegalStateException
+     *             if the MBean server refuses the registration
+     */
+    public static void registerMBean() {
+        try {
+            ManagementFactory.getPlatformMBeanServer()
+                    .registerMBean(new Bean(), new ObjectName(OBJECT_NAME));
+        } catch (InstanceAlreadyExistsException e) {
+            // Registered earlier; the existing bean reads the same counters
+        } catch (JMException e) {
+            throw new IllegalStateException(
+                    "Cannot register " + OBJECT_NAME, e);
+        }
+    }
+
+    /**
+     * Records one modular exponentiation; callers check
+     * {@code isEnabled()} first.
+     *
+     * @param multiplications
+     *            modular multiplications it took
+     */
+    static void recordExponentiation(long multiplications) {
+        EXPONENTIATIONS.increment();
+        MODULAR_MULTIPLICATIONS.add(multiplications);
+    }
+
+    /**
+     * Records modular multiplications done outside an exponentiation;
+     * callers check {@code isEnabled()} first.
+     *
+     * @param multiplications
+     *            number of modular multiplications
+     */
+    static void recordMultiplications(long multiplications) {
+        MODULAR_MULTIPLICATIONS.add(multiplications);
+    }
+
+    /**
+     * Records one witness test; callers check {@code isEnabled()} first.
+     */
+    static void recordWitnessTest() {
+        WITNESS_TESTS.increment();
+    }
+
+    /**
+     * Records the latency of one powerMod call; callers check
+     * {@code isEnabled()} first.
+     *
+     * @param nanos
+     *            its latency
+     */
+    static void recordPowerMod(long nanos) {
+        POWER_MOD.record(nanos);
+    }
+
+    /**
+     * Records the latency of one isPrime2 call; callers check
+     * {@code isEnabled()} first.
+     *
+     * @param nanos
+     *            its latency
+     */
+    static void recordPrimalityTest(long nanos) {
+        PRIMALITY_TEST.record(nanos);
+    }
+
+    /**
+     * Records the wall time it took to find one prime; callers check
+     * {@code isEnabled()} first.
+     *
+     * @param nanos
+     *            the time
+     */
+    static void recordPrimeFound(long nanos) {
+        PRIME_SEARCH.record(nanos);
+    }
+
+}
@@ -0,0 +1,37 @@
+/**
+ * JMX management interface of {@code CryptoMetrics}: the recording switch, a
+ * snapshot of every counter and histogram, and a reset.
+ *
+ * @author Jamal Aden
+ *
+ */
+public interface CryptoMetricsMXBean {
+
+    /**
+     * Reports whether recording is on.
+     *
+     * @return true iff metrics are being recorded
+     */
+    boolean isEnabled();
+
+    /**
+     * Turns recording on or off.
+     *
+     * @param on
+     *            whether to record
+     */
+    void setEnabled(boolean on);
+
+    /**
+     * Reads every counter and histogram.
+     *
+     * @return the snapshot
+     */
+    CryptoMetrics.Snapshot getSnapshot();
+
+    /**
+     * Resets every counter and histogram to zero.
+     */
+    void reset();
+
+}
@@ -1,7 +1,10 @@
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+
 import components.naturalnumber.NaturalNumber;
 import components.naturalnumber.NaturalNumber2;
-import components.random.Random;
-import components.random.Random1L;
 import components.simplereader.SimpleReader;
 import components.simplereader.SimpleReader1L;
 import components.simplewriter.SimpleWriter;
@@ -27,9 +30,23 @@ public final class CryptoUtilities {
     private static final int THREE = 3;
 
     /**
-     * Pseudo-random number generator.
+     * The probable-prime test that decides a number surviving the cheap
+     * stages of a primality check.
      */
-    private static final Random GENERATOR = new Random1L();
+    public enum PrimalityTest {
+        /**
+         * Miller-Rabin: fixed bases below 2^64, otherwise
+         * {@code MillerRabin.WORST_CASE_ROUNDS} random bases, as
+         * {@code isPrime2} does; a prime search, whose candidates are
+         * random, uses the fewer rounds of {@code MillerRabin.roundsFor}.
+         */
+        MILLER_RABIN,
+        /**
+         * Baillie-PSW: a strong test to base 2 and a strong Lucas test, about
+         * three exponentiations in all.
+         */
+        BAILLIE_PSW
+    }
 
     /**
      * Returns a random number uniformly distributed in the interval [0, n].
@@ -44,38 +61,48 @@ public final class CryptoUtilities {
      */
     public static NaturalNumber randomNumber(NaturalNumber n) {
         assert !n.isZero() : "Violation of: n > 0";
-        final int base = 10;
-        NaturalNumber result;
-        int d = n.divideBy10();
-        if (n.isZero()) {
-            /*
-             * Incoming n has only one digit and it is d, so generate a random
-             * number uniformly distributed in [0, d]
-             */
-            int x = (int) ((d + 1) * GENERATOR.nextDouble());
-            result = new NaturalNumber2(x);
-            n.multiplyBy10(d);
-        } else {
-            /*
-             * Incoming n has more than one digit, so generate a random number
-             * (NaturalNumber) uniformly distributed in [0, n], and another
-             * (int) uniformly distributed in [0, 9] (i.e., a random digit)
-             */
-            result = randomNumber(n);
-            int lastDigit = (int) (base * GENERATOR.nextDouble());
-            result.multiplyBy10(lastDigit);
-            n.multiplyBy10(d);
-            if (result.compareTo(n) > 0) {
-                /*
-                 * In this case, we need to try again because generated number
-                 * is greater than n; the recursive call's argument is not
-                 * "smaller" than the incoming value of n, but this recursive
-                 * call has no more than a 90% chance of being made (and for
-                 * large n, far less than that), so the probability of
-                 * termination is 1
-                 */
-                result = randomNumber(n);
-            }
+
+        /*
+         * One bulk draw from a per-thread secure generator, just wide enough
+         * for n, drawn again (less than half the time) while it exceeds n
+         */
+        NaturalNumberLimbs localN = NaturalNumberLimbs.valueOf(n);
+        int[] r = new int[localN.limbCount()];
+        int rLen = SecureRandomNumbers.uniform(localN.limbArray(),
+                localN.limbCount(), r);
+        NaturalNumber result = n.newInstance();
+        NaturalNumberLimbs.assign(result, r, rLen);
+        return result;
+    }
+
+    /**
+     * Returns random numbers uniformly and independently distributed in the
+     * interval [0, n], all drawn at once.
+     *
+     * @param n
+     *            top end of interval
+     * @param count
+     *            number of random numbers
+     * @return random numbers in interval
+     * @requires n > 0 and count >= 0
+     * @ensures <pre>
+     * |randomNumbers| = count  and
+     * [each entry of randomNumbers is a random number uniformly distributed
+     *  in [0, n], independent of the others]
+     * </pre>
+     */
+    public static NaturalNumber[] randomNumbers(NaturalNumber n, int count) {
+        assert !n.isZero() : "Violation of: n > 0";
+        assert count >= 0 : "Violation of: count >= 0";
+
+        NaturalNumberLimbs localN = NaturalNumberLimbs.valueOf(n);
+        int[][] r = new int[count][localN.limbCount()];
+        SecureRandomNumbers.uniform(localN.limbArray(), localN.limbCount(), r);
+        NaturalNumber[] result = new NaturalNumber[count];
+        for (int k = 0; k < count; k++) {
+            result[k] = n.newInstance();
+            NaturalNumberLimbs.assign(result[k], r[k],
+                    LimbArithmetic.normalize(r[k], r[k].length));
         }
         return result;
     }
@@ -94,22 +121,100 @@ public final class CryptoUtilities {
     public static void reduceToGCD(NaturalNumber n, NaturalNumber m) {
 
         /*
-         * Use Euclid's algorithm; in pseudocode: if m = 0 then GCD(n, m) = n
-         * else GCD(n, m) = GCD(m, n mod m)
+         * Lehmer's algorithm while the numbers are longer than two limbs,
+         * then binary GCD on 64-bit words; iterative, in fixed buffers
          */
-        if (!m.isZero()) {
-            // n2  used to not change n when finding the remainder.
-            NaturalNumber n2 = n.newInstance();
-            n2.copyFrom(n);
-            NaturalNumber modulo = n2.divide(m);
-
-            // Creates a recursive call to reduceToGCD with m and the remainder.
-            if (!modulo.isZero()) {
-                reduceToGCD(m, modulo);
-            }
-            n.transferFrom(m);
+        NaturalNumberLimbs localN = NaturalNumberLimbs.valueOf(n);
+        NaturalNumberLimbs localM = NaturalNumberLimbs.valueOf(m);
+        int[] g = new int[Math.max(
+                Math.max(localN.limbCount(), localM.limbCount()), 2)];
+        int gLen = GcdArithmetic.gcd(localN.limbArray(), localN.limbCount(),
+                localM.limbArray(), localM.limbCount(), g);
+        NaturalNumberLimbs.assign(n, g, gLen);
+        m.clear();
+
+    }
+
+    /**
+     * Finds the greatest common divisor of n and m, together with
+     * coefficients that express it in terms of #n and #m.
+     *
+     * @param n
+     *            one number
+     * @param m
+     *            the other number
+     * @param x
+     *            coefficient of #n
+     * @param y
+     *            coefficient of #m
+     * @updates n
+     * @clears m
+     * @replaces x, y
+     * @requires n > 0
+     * @ensures <pre>
+     * n = [greatest common divisor of #n and #m]  and
+     * #n * x = #m * y + n  and
+     * [if #m > 0 then 0 < x <= #m / n else x = 1]
+     * </pre>
+     */
+    public static void extendedGCD(NaturalNumber n, NaturalNumber m,
+            NaturalNumber x, NaturalNumber y) {
+        assert !n.isZero() : "Violation of: n > 0";
+
+        NaturalNumberLimbs localN = NaturalNumberLimbs.valueOf(n);
+        NaturalNumberLimbs localM = NaturalNumberLimbs.valueOf(m);
+        int len = Math.max(localN.limbCount(), localM.limbCount());
+        int[] g = new int[len];
+        int[] xLimbs = new int[len + 1];
+        int[] lengths = new int[2];
+        GcdArithmetic.extendedGcd(localN.limbArray(), localN.limbCount(),
+                localM.limbArray(), localM.limbCount(), g, xLimbs, lengths);
+        NaturalNumberLimbs.assign(x, xLimbs, lengths[1]);
+        /*
+         * y = (#n * x - n) / #m, exact by the choice of x
+         */
+        y.copyFrom(n);
+        y.multiply(x);
+        NaturalNumberLimbs.assign(n, g, lengths[0]);
+        if (m.isZero()) {
+            y.clear();
+        } else {
+            y.subtract(n);
+            y.divide(m);
         }
+        m.clear();
+    }
+
+    /**
+     * Replaces n by its multiplicative inverse modulo m.
+     *
+     * @param n
+     *            number to invert
+     * @param m
+     *            the modulus
+     * @updates n
+     * @requires m > 1 and [n and m are relatively prime]
+     * @ensures 0 < n < m and (#n * n) mod m = 1
+     */
+    public static void modInverse(NaturalNumber n, NaturalNumber m) {
+        assert m.compareTo(new NaturalNumber2(1)) > 0 : "Violation of: m > 1";
 
+        NaturalNumberLimbs localM = NaturalNumberLimbs.valueOf(m);
+        NaturalNumberLimbs quotient = new NaturalNumberLimbs();
+        quotient.copyFrom(n);
+        NaturalNumberLimbs reduced = NaturalNumberLimbs
+                .valueOf(quotient.divide(localM));
+        assert !reduced.isZero() : ""
+                + "Violation of: n and m are relatively prime";
+        int len = localM.limbCount();
+        int[] g = new int[len];
+        int[] x = new int[len + 1];
+        int[] lengths = new int[2];
+        GcdArithmetic.extendedGcd(reduced.limbArray(), reduced.limbCount(),
+                localM.limbArray(), len, g, x, lengths);
+        assert lengths[0] == 1 && g[0] == 1 : ""
+                + "Violation of: n and m are relatively prime";
+        NaturalNumberLimbs.assign(n, x, lengths[1]);
     }
 
     /**
@@ -121,6 +226,10 @@ public final class CryptoUtilities {
      * @ensures isEven = (n mod 2 = 0)
      */
     public static boolean isEven(NaturalNumber n) {
+        if (n instanceof NaturalNumberLimbs) {
+            // Binary limbs answer parity from the low bit, no digit ops needed
+            return !((NaturalNumberLimbs) n).isOdd();
+        }
         // Initially assume the number is even
         boolean isEven = true;
         //Divide last digit by 10
@@ -150,42 +259,120 @@ public final class CryptoUtilities {
     public static void powerMod(NaturalNumber n, NaturalNumber p,
             NaturalNumber m) {
         assert m.compareTo(new NaturalNumber2(1)) > 0 : "Violation of: m > 1";
-        if (p.isZero()) {
-            // base case condition
-            n.setFromInt(1);
-        } else {
-            // Creates copy of n to use in method later
-            NaturalNumber originalN = n.newInstance();
-            originalN.copyFrom(n);
-
-            // checks if p is even by checking if it is divisible by 2.
-            if (isEven(p)) {
-                // For an even p, divide it by 2 for the recursive call.
-                NaturalNumber pDiv2 = p.newInstance();
-                pDiv2.copyFrom(p);
-                pDiv2.divide(new NaturalNumber2(2));
-                powerMod(n, pDiv2, m); // Recursive call to handle n^(p/2)
-
-                NaturalNumber temp = n.newInstance();
-                temp.copyFrom(n);
-                n.multiply(temp);
-            } else {
-                // For odd cases subtract it by 1 to make it even.
-                NaturalNumber pMinusOne = p.newInstance();
-                pMinusOne.copyFrom(p);
-                pMinusOne.decrement();
-
-                powerMod(n, pMinusOne, m); // Recursive call for p-1
+        /*
+         * Iterative sliding-window exponentiation over the bits of p; an odd
+         * modulus reduces with Montgomery multiplication, an even one with
+         * Barrett reduction
+         */
+        ModularContext.create(m).powerMod(n, p);
+    }
 
-                n.multiply(originalN);
-            }
+    /**
+     * Updates n to its p-th power modulo the modulus of {@code context},
+     * reusing the context's precomputed reduction constants; contexts come
+     * from {@code ModularContext.create}, which also lets the reduction
+     * strategy be chosen.
+     *
+     * @param n
+     *            number to be raised to a power
+     * @param p
+     *            the power
+     * @param context
+     *            modular context for the modulus m
+     * @updates n
+     * @ensures n = #n ^ (p) mod m
+     */
+    public static void powerMod(NaturalNumber n, NaturalNumber p,
+            ModularContext context) {
+        context.powerMod(n, p);
+    }
 
-            // makes sure n is within the bounds of m.
-            NaturalNumber mResult = n.divide(m);
-            n.copyFrom(mResult);
+    /**
+     * Updates n to its p-th power modulo m, working in the buffers of
+     * {@code workspace}. For an odd m the workspace's Montgomery context is
+     * rebound to m, so once the workspace has grown to the size of the
+     * operands nothing is allocated when n, p and m are
+     * {@code NaturalNumberLimbs} and n < m; an even m gets a new context on
+     * every call.
+     *
+     * @param n
+     *            number to be raised to a power
+     * @param p
+     *            the power
+     * @param m
+     *            the modulus
+     * @param workspace
+     *            the buffers to work in, used by one thread at a time
+     * @updates n
+     * @requires m > 1
+     * @ensures n = #n ^ (p) mod m
+     */
+    public static void powerMod(NaturalNumber n, NaturalNumber p,
+            NaturalNumber m, ArithmeticWorkspace workspace) {
+        assert workspace != null : "Violation of: workspace is not null";
+        assert m.compareTo(workspace.constant(1)) > 0 : ""
+                + "Violation of: m > 1";
+        NaturalNumberLimbs localM = NaturalNumberLimbs.valueOf(m);
+        if (localM.isOdd()) {
+            workspace.montgomery(localM.limbArray(), localM.limbCount())
+                    .powerMod(n, p, workspace);
+        } else {
+            ModularContext.create(m).powerMod(n, p, workspace);
         }
     }
 
+    /**
+     * Sets each {@code results[i]} to {@code n[i]} raised to the p-th power
+     * modulo m. The modulus constants and the windowed recoding of p are
+     * computed once for the whole batch, and the bases are worked through in
+     * chunks on the common fork-join pool.
+     *
+     * @param n
+     *            numbers to be raised to a power
+     * @param p
+     *            the power
+     * @param m
+     *            the modulus
+     * @param results
+     *            where the powers go; may be n
+     * @updates results
+     * @requires m > 1 and |results| = |n|
+     * @ensures for all i: results[i] = #n[i] ^ (p) mod m
+     */
+    public static void powerMod(NaturalNumber[] n, NaturalNumber p,
+            NaturalNumber m, NaturalNumber[] results) {
+        assert m.compareTo(new NaturalNumber2(1)) > 0 : "Violation of: m > 1";
+        assert n.length == results.length : ""
+                + "Violation of: |results| = |n|";
+        ModularContext.create(m).powerMod(n, p, results,
+                ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Sets {@code result} to the product of {@code n[i]} raised to the
+     * {@code p[i]}-th power, over all i, modulo m. The powers are
+     * interleaved over one chain of squarings (Shamir's trick), so checking
+     * a relation such as g^a * y^b costs about one exponentiation, not two.
+     *
+     * @param n
+     *            the bases
+     * @param p
+     *            the powers, one per base
+     * @param m
+     *            the modulus
+     * @param result
+     *            where the product goes
+     * @replaces result
+     * @requires m > 1 and |p| = |n|
+     * @ensures result = [product of #n[i] ^ (#p[i]) for all i] mod m
+     */
+    public static void multiPowerMod(NaturalNumber[] n, NaturalNumber[] p,
+            NaturalNumber m, NaturalNumber result) {
+        assert m.compareTo(new NaturalNumber2(1)) > 0 : "Violation of: m > 1";
+        assert n.length == p.length : "Violation of: |p| = |n|";
+        ModularContext.create(m).multiPowerMod(n, p, result);
+    }
+
     /**
      * Reports whether w is a "witness" that n is composite, in the sense that
      * either it is a square root of 1 (mod n), or it fails to satisfy the
@@ -210,6 +397,14 @@ public final class CryptoUtilities {
         assert w.compareTo(n) < 0 : "Violation of: w < n - 1";
         n.increment();
 
+        if (!isEven(n)) {
+            // Both exponentiations share one Montgomery context for n
+            return isWitnessToCompositeness(w, n, new MontgomeryContext(n));
+        }
+        if (CryptoMetrics.isEnabled()) {
+            CryptoMetrics.recordWitnessTest();
+        }
+
         // sets isWitnessTo to false by default
         boolean isWitnessTo = false;
         NaturalNumber one = n.newInstance();
@@ -240,6 +435,103 @@ public final class CryptoUtilities {
         // Returns isWitnessTo
     }
 
+    /**
+     * Reports whether w is a "witness" that n is composite, as
+     * {@code isWitnessToCompositeness(w, n)} does, reusing a Montgomery
+     * context for n across calls.
+     *
+     * @param w
+     *            witness candidate
+     * @param n
+     *            number being checked
+     * @param context
+     *            Montgomery context for n
+     * @return true iff w is a "witness" that n is composite
+     * @requires n > 2 and n is odd and 1 < w < n - 1 and
+     *           [context.modulus() = n]
+     * @ensures <pre>
+     * isWitnessToCompositeness =
+     *     (w ^ 2 mod n = 1)  or  (w ^ (n-1) mod n /= 1)
+     * </pre>
+     */
+    public static boolean isWitnessToCompositeness(NaturalNumber w,
+            NaturalNumber n, MontgomeryContext context) {
+        assert context.modulus().compareTo(n) == 0 : ""
+                + "Violation of: context.modulus() = n";
+        if (CryptoMetrics.isEnabled()) {
+            CryptoMetrics.recordWitnessTest();
+        }
+        NaturalNumber one = n.newInstance();
+        one.setFromInt(1);
+        NaturalNumber two = n.newInstance();
+        two.setFromInt(2);
+        NaturalNumber nSubtract = n.newInstance();
+        nSubtract.copyFrom(n);
+        nSubtract.decrement();
+
+        NaturalNumber wTwoMod = w.newInstance();
+        wTwoMod.copyFrom(w);
+        NaturalNumber wMinus = w.newInstance();
+        wMinus.copyFrom(w);
+        context.powerMod(wTwoMod, two); // w^2 mod n
+        context.powerMod(wMinus, nSubtract); // w^(n-1) mod n
+
+        return wTwoMod.compareTo(one) == 0 || wMinus.compareTo(one) != 0;
+    }
+
+    /**
+     * Reports whether w is a "witness" that n is composite, as
+     * {@code isWitnessToCompositeness(w, n)} does, working in the buffers of
+     * {@code workspace}: the copies of w and n - 1 and the constants are the
+     * workspace's, and an odd n rebinds its Montgomery context, so nothing
+     * is allocated for NaturalNumberLimbs arguments once the workspace has
+     * grown to their size. An even n takes the allocating path.
+     *
+     * @param w
+     *            witness candidate
+     * @param n
+     *            number being checked
+     * @param workspace
+     *            the buffers to work in, used by one thread at a time
+     * @return true iff w is a "witness" that n is composite
+     * @requires n > 2 and 1 < w < n - 1
+     * @ensures <pre>
+     * isWitnessToCompositeness =
+     *     (w ^ 2 mod n = 1)  or  (w ^ (n-1) mod n /= 1)
+     * </pre>
+     */
+    public static boolean isWitnessToCompositeness(NaturalNumber w,
+            NaturalNumber n, ArithmeticWorkspace workspace) {
+        assert workspace != null : "Violation of: workspace is not null";
+        assert n.compareTo(workspace.constant(2)) > 0 : ""
+                + "Violation of: n > 2";
+        assert workspace.constant(1).compareTo(w) < 0 : ""
+                + "Violation of: 1 < w";
+        NaturalNumberLimbs localN = NaturalNumberLimbs.valueOf(n);
+        if (!localN.isOdd()) {
+            return isWitnessToCompositeness(w, n);
+        }
+        NaturalNumberLimbs nSubtract = workspace.temporary(0);
+        nSubtract.copyFrom(localN);
+        nSubtract.decrement();
+        assert w.compareTo(nSubtract) < 0 : "Violation of: w < n - 1";
+        if (CryptoMetrics.isEnabled()) {
+            CryptoMetrics.recordWitnessTest();
+        }
+
+        NaturalNumberLimbs wTwoMod = workspace.temporary(1);
+        wTwoMod.copyFrom(w);
+        NaturalNumberLimbs wMinus = workspace.temporary(2);
+        wMinus.copyFrom(w);
+        ModularContext context = workspace.montgomery(localN.limbArray(),
+                localN.limbCount());
+        context.powerMod(wTwoMod, workspace.constant(2), workspace);
+        context.powerMod(wMinus, nSubtract, workspace);
+
+        NaturalNumber one = workspace.constant(1);
+        return wTwoMod.compareTo(one) == 0 || wMinus.compareTo(one) != 0;
+    }
+
     /**
      * Reports whether n is a prime; may be wrong with "low" probability.
      *
@@ -272,7 +564,9 @@ public final class CryptoUtilities {
              * odd n >= 5: simply check whether 2 is a witness that n is
              * composite (which works surprisingly well :-)
              */
-            isPrime = !isWitnessToCompositeness(new NaturalNumber2(2), n);
+            NaturalNumber two = n.newInstance();
+            two.setFromInt(2);
+            isPrime = !isWitnessToCompositeness(two, n);
         }
         return isPrime;
     }
@@ -294,50 +588,209 @@ public final class CryptoUtilities {
     public static boolean isPrime2(NaturalNumber n) {
         assert n.compareTo(new NaturalNumber2(1)) > 0 : "Violation of: n > 1";
 
+        return isProbablePrime(n, PrimalityTest.MILLER_RABIN, null, null);
+    }
+
+    /**
+     * Reports whether n is a prime; may be wrong with "low" probability. Works
+     * like {@code isPrime2(n)}, with the final test chosen by {@code test}.
+     *
+     * @param n
+     *            number to be checked
+     * @param test
+     *            the probable-prime test to decide with
+     * @return true means n is very likely prime; false means n is definitely
+     *         composite
+     * @requires n > 1
+     * @ensures <pre>
+     * isPrime = [n is a prime number, with small probability of error
+     *         if it is reported to be prime, and no chance of error if it is
+     *         reported to be composite]
+     * </pre>
+     */
+    public static boolean isPrime(NaturalNumber n, PrimalityTest test) {
+        assert n.compareTo(new NaturalNumber2(1)) > 0 : "Violation of: n > 1";
+        assert test != null : "Violation of: test is not null";
+
+        return isProbablePrime(n, test, null, null);
+    }
+
+    /**
+     * Reports whether n is a prime; may be wrong with "low" probability. Works
+     * like {@code isPrime2(n)}, but in the buffers of {@code workspace},
+     * whose Miller-Rabin test is rebound to n: once the workspace has grown
+     * to the size of n, testing a {@code NaturalNumberLimbs} allocates
+     * nothing.
+     *
+     * @param n
+     *            number to be checked
+     * @param workspace
+     *            the buffers to work in, used by one thread at a time
+     * @return true means n is very likely prime; false means n is definitely
+     *         composite
+     * @requires n > 1
+     * @ensures <pre>
+     * isPrime2 = [n is a prime number, with small probability of error
+     *         if it is reported to be prime, and no chance of error if it is
+     *         reported to be composite]
+     * </pre>
+     */
+    public static boolean isPrime2(NaturalNumber n,
+            ArithmeticWorkspace workspace) {
+        assert workspace != null : "Violation of: workspace is not null";
+        assert n.compareTo(workspace.constant(1)) > 0 : ""
+                + "Violation of: n > 1";
+
+        return isProbablePrime(n, PrimalityTest.MILLER_RABIN, null,
+                workspace);
+    }
+
+    /**
+     * Reports whether n is a prime; may be wrong with "low" probability. Works
+     * like {@code isPrime2(n)}, but runs the witness rounds in parallel on
+     * {@code executor} and stops at the first witness found.
+     *
+     * @param n
+     *            number to be checked
+     * @param executor
+     *            the executor to run witness rounds on
+     * @return true means n is very likely prime; false means n is definitely
+     *         composite
+     * @requires n > 1
+     * @ensures <pre>
+     * isPrime2 = [n is a prime number, with small probability of error
+     *         if it is reported to be prime, and no chance of error if it is
+     *         reported to be composite]
+     * </pre>
+     */
+    public static boolean isPrime2(NaturalNumber n, ExecutorService executor) {
+        assert n.compareTo(new NaturalNumber2(1)) > 0 : "Violation of: n > 1";
+        assert executor != null : "Violation of: executor is not null";
+
+        return isProbablePrime(n, PrimalityTest.MILLER_RABIN, executor,
+                null);
+    }
+
+    /**
+     * Shared body of the {@code isPrime} and {@code isPrime2} overloads.
+     *
+     * @param n
+     *            number to be checked
+     * @param test
+     *            the probable-prime test to decide with
+     * @param executor
+     *            the executor to run witness rounds on, or null to run them
+     *            in the calling thread; Miller-Rabin only
+     * @param workspace
+     *            the buffers to run them in, or null to allocate them;
+     *            ignored with an executor
+     * @return true means n is very likely prime; false means n is definitely
+     *         composite
+     * @requires n > 1
+     */
+    private static boolean isProbablePrime(NaturalNumber n,
+            PrimalityTest test, ExecutorService executor,
+            ArithmeticWorkspace workspace) {
         /*
-         * Use the ability to generate random numbers (provided by the
-         * randomNumber method above) to generate several witness candidates --
-         * say, 10 to 50 candidates -- guessing that n is prime only if none of
-         * these candidates is a witness to n being composite (based on fact #3
-         * as described in the project description); use the code for isPrime1
-         * as a guide for how to do this, and pay attention to the requires
-         * clause of isWitnessToCompositeness
+         * Cheap stages first: evens, then trial division by the small-prime
+         * table, and only then the probable-prime test: Miller-Rabin (n - 1 =
+         * 2^s * d factored once, one exponentiation per base, bases fixed
+         * below 2^64 and random above, with the worst-case round count since
+         * n may have been chosen to fool the test) or Baillie-PSW
          */
+        boolean timed = CryptoMetrics.isEnabled();
+        long start = timed ? System.nanoTime() : 0;
+        PrimalityStatistics.recordTested();
         boolean primeCandidate = true;
-        final int minimumPrime = 2;
-        //  checks if n is less than or equal to 2
-        if (n.compareTo(new NaturalNumber2(minimumPrime)) <= 0) {
-            primeCandidate = n.compareTo(new NaturalNumber2(minimumPrime)) == 0;
-        } else if (isEven(n)) {
+        NaturalNumberLimbs localN = NaturalNumberLimbs.valueOf(n);
+        //  checks if n is less than or equal to 3
+        if (localN.bitLength() <= 2) {
+            primeCandidate = true;
+        } else if (!localN.isOdd()) {
             // if n is even and > than 2 prime would evaluate to being false
             primeCandidate = false;
+            PrimalityStatistics.recordRejected(PrimalityStatistics.Stage.EVEN);
         } else {
-            //N subtract is n-1 helps create randomnity
-            NaturalNumber nSubtract = n.newInstance();
-            nSubtract.copyFrom(n);
-            nSubtract.decrement();
-            NaturalNumber one = n.newInstance(); // signifies 1
-            one.setFromInt(1);
-
-            final int witnessCount = 50; // quantity of witnessCount to test
-            for (int i = 0; i < witnessCount && primeCandidate; i++) {
-                NaturalNumber candidate = randomNumber(nSubtract);
-
-                // Make sure the candidate is in the expected range
-                if (candidate.compareTo(one) > 0
-                        && candidate.compareTo(nSubtract) < 0) {
-                    if (isWitnessToCompositeness(candidate, n)) {
-                        primeCandidate = false;
-                    }
+            int bound = SmallPrimes.trialDivisionBound();
+            if (SmallPrimes.smallFactor(localN.limbArray(),
+                    localN.limbCount(), bound) != 0) {
+                primeCandidate = false;
+                PrimalityStatistics.recordRejected(
+                        PrimalityStatistics.Stage.TRIAL_DIVISION);
+            } else if (localN.bitLength() <= LimbArithmetic.LIMB_BITS
+                    && (localN.limbArray()[0]
+                            & LimbArithmetic.MASK) < (long) bound * bound) {
+                // Trial division up to sqrt(n) already proved n prime
+                primeCandidate = true;
+            } else if (test == PrimalityTest.BAILLIE_PSW) {
+                // BailliePsw records the stage that rejects n itself
+                if (workspace != null) {
+                    primeCandidate = workspace
+                            .bailliePsw(localN.limbArray(),
+                                    localN.limbCount())
+                            .isProbablePrime(workspace);
+                } else {
+                    primeCandidate = new BailliePsw(localN).isProbablePrime();
+                }
+            } else {
+                if (executor != null) {
+                    primeCandidate = new MillerRabin(localN)
+                            .isProbablePrime(executor);
+                } else if (workspace != null) {
+                    primeCandidate = workspace
+                            .millerRabin(localN.limbArray(),
+                                    localN.limbCount())
+                            .isProbablePrime(workspace, false);
+                } else {
+                    primeCandidate = new MillerRabin(localN).isProbablePrime();
+                }
+                if (!primeCandidate) {
+                    PrimalityStatistics.recordRejected(
+                            PrimalityStatistics.Stage.WITNESS);
                 }
             }
         }
+        if (timed) {
+            CryptoMetrics.recordPrimalityTest(System.nanoTime() - start);
+        }
         // Returns result of primal test
         return primeCandidate;
     }
 
     /**
-     * Generates a likely prime number at least as large as some given number.
+     * Reports whether a sieve survivor passes {@code test}, recording a
+     * rejection in {@code PrimalityStatistics}.
+     *
+     * @param candidate
+     *            the survivor, odd and above the sieve primes
+     * @param test
+     *            the probable-prime test to decide with
+     * @param workspace
+     *            the buffers to run the test in
+     * @return true means candidate is very likely prime; false means it is
+     *         definitely composite
+     */
+    static boolean isLikelyPrimeSurvivor(NaturalNumberLimbs candidate,
+            PrimalityTest test, ArithmeticWorkspace workspace) {
+        int[] limbs = candidate.limbArray();
+        int length = candidate.limbCount();
+        if (test == PrimalityTest.BAILLIE_PSW) {
+            return workspace.bailliePsw(limbs, length)
+                    .isProbablePrime(workspace);
+        }
+        // A sieve survivor is a random candidate, so the FIPS rounds do
+        boolean probablePrime = workspace.millerRabin(limbs, length)
+                .isProbablePrime(workspace, true);
+        if (!probablePrime) {
+            PrimalityStatistics
+                    .recordRejected(PrimalityStatistics.Stage.WITNESS);
+        }
+        return probablePrime;
+    }
+
+    /**
+     * Generates a likely prime number at least as large as some given number,
+     * deciding candidates with the Baillie-PSW test.
      *
      * @param n
      *            minimum value of likely prime
@@ -346,14 +799,37 @@ public final class CryptoUtilities {
      * @ensures n >= #n and [n is very likely a prime number]
      */
     public static void generateNextLikelyPrime(NaturalNumber n) {
+        generateNextLikelyPrime(n, PrimalityTest.BAILLIE_PSW);
+    }
+
+    /**
+     * Generates a likely prime number at least as large as some given number,
+     * deciding candidates with {@code test}.
+     *
+     * @param n
+     *            minimum value of likely prime
+     * @param test
+     *            the probable-prime test to decide with
+     * @updates n
+     * @requires n > 1
+     * @ensures n >= #n and [n is very likely a prime number]
+     */
+    public static void generateNextLikelyPrime(NaturalNumber n,
+            PrimalityTest test) {
         assert n.compareTo(new NaturalNumber2(1)) > 0 : "Violation of: n > 1";
+        assert test != null : "Violation of: test is not null";
+        boolean timed = CryptoMetrics.isEnabled();
+        long begin = timed ? System.nanoTime() : 0;
 
         /*
-         * Use isPrime2 to check numbers, starting at n and increasing through
-         * the odd numbers only (why?), until n is likely prime
+         * Check the odd numbers only (why?), starting just past n. Above the
+         * sieve primes, whole windows of candidates are sieved at once and
+         * only the survivors get the probable-prime test; below them,
+         * isPrime checks one candidate at a time
          */
 
-        NaturalNumber two = new NaturalNumber2(2);
+        NaturalNumber two = n.newInstance();
+        two.setFromInt(2);
 
         if (isEven(n)) {
             n.increment();
@@ -362,18 +838,321 @@ public final class CryptoUtilities {
             n.add(two);
         }
 
-        while (!isPrime2(n)) {
-            n.add(two); // This replaces the two increment() calls
+        NaturalNumberLimbs start = NaturalNumberLimbs.valueOf(n);
+        if (isAboveSievePrimes(start)) {
+            NaturalNumberLimbs prime = sieveSearch(start, test, false);
+            NaturalNumberLimbs.assign(n, prime.limbArray(), prime.limbCount());
+        } else {
+            while (!isPrime(n, test)) {
+                n.add(two); // This replaces the two increment() calls
+            }
+        }
+        if (timed) {
+            CryptoMetrics.recordPrimeFound(System.nanoTime() - begin);
         }
     }
 
     /**
-     * Main method.
+     * Generates a likely prime number at least as large as some given number,
+     * testing candidates in parallel on the workers of {@code pool}. The
+     * prime found is the same one {@code generateNextLikelyPrime(n)} finds,
+     * with the same Baillie-PSW test.
+     *
+     * @param n
+     *            minimum value of likely prime
+     * @param pool
+     *            the pool to search in
+     * @updates n
+     * @requires n > 1
+     * @ensures n >= #n and [n is very likely a prime number]
+     */
+    public static void generateNextLikelyPrime(NaturalNumber n,
+            ForkJoinPool pool) {
+        assert n.compareTo(new NaturalNumber2(1)) > 0 : "Violation of: n > 1";
+        assert pool != null : "Violation of: pool is not null";
+        boolean timed = CryptoMetrics.isEnabled();
+        long begin = timed ? System.nanoTime() : 0;
+
+        NaturalNumber two = n.newInstance();
+        two.setFromInt(2);
+
+        if (isEven(n)) {
+            n.increment();
+        } else {
+            n.add(two);
+        }
+
+        NaturalNumberLimbs start = NaturalNumberLimbs.valueOf(n);
+        if (isAboveSievePrimes(start)) {
+            NaturalNumberLimbs prime = ParallelPrimeSearch.nextLikelyPrime(
+                    start, pool, PrimalityTest.BAILLIE_PSW);
+            NaturalNumberLimbs.assign(n, prime.limbArray(), prime.limbCount());
+        } else {
+            // Primes are dense down here; not worth starting the workers
+            while (!isPrime(n, PrimalityTest.BAILLIE_PSW)) {
+                n.add(two);
+            }
+        }
+        if (timed) {
+            CryptoMetrics.recordPrimeFound(System.nanoTime() - begin);
+        }
+    }
+
+    /**
+     * Generates a likely safe prime at least as large as some given number: a
+     * prime p = 2q + 1 with q prime too, as used for Diffie-Hellman groups.
+     * Candidates are decided with the Baillie-PSW test.
+     *
+     * @param n
+     *            minimum value of likely safe prime
+     * @updates n
+     * @requires n > 1
+     * @ensures <pre>
+     * n >= #n  and  [n and (n - 1) / 2 are very likely prime numbers]
+     * </pre>
+     */
+    public static void generateNextLikelySafePrime(NaturalNumber n) {
+        generateNextLikelySafePrime(n, PrimalityTest.BAILLIE_PSW);
+    }
+
+    /**
+     * Generates a likely safe prime at least as large as some given number,
+     * deciding candidates with {@code test}.
+     *
+     * @param n
+     *            minimum value of likely safe prime
+     * @param test
+     *            the probable-prime test to decide with
+     * @updates n
+     * @requires n > 1
+     * @ensures <pre>
+     * n >= #n  and  [n and (n - 1) / 2 are very likely prime numbers]
+     * </pre>
+     */
+    public static void generateNextLikelySafePrime(NaturalNumber n,
+            PrimalityTest test) {
+        assert n.compareTo(new NaturalNumber2(1)) > 0 : "Violation of: n > 1";
+        assert test != null : "Violation of: test is not null";
+        generateNextLikelySafePrime(n, test, null);
+    }
+
+    /**
+     * Generates a likely safe prime at least as large as some given number,
+     * sieving and testing candidates in parallel on the workers of
+     * {@code pool}. The safe prime found is the same one
+     * {@code generateNextLikelySafePrime(n)} finds, with the same Baillie-PSW
+     * test.
+     *
+     * @param n
+     *            minimum value of likely safe prime
+     * @param pool
+     *            the pool to search in
+     * @updates n
+     * @requires n > 1
+     * @ensures <pre>
+     * n >= #n  and  [n and (n - 1) / 2 are very likely prime numbers]
+     * </pre>
+     */
+    public static void generateNextLikelySafePrime(NaturalNumber n,
+            ForkJoinPool pool) {
+        assert n.compareTo(new NaturalNumber2(1)) > 0 : "Violation of: n > 1";
+        assert pool != null : "Violation of: pool is not null";
+        generateNextLikelySafePrime(n, PrimalityTest.BAILLIE_PSW, pool);
+    }
+
+    /**
+     * Generates a likely safe prime at least as large as n, in the calling
+     * thread or, given a pool, on its workers.
+     *
+     * @param n
+     *            minimum value of likely safe prime
+     * @param test
+     *            the probable-prime test to decide with
+     * @param pool
+     *            the pool to search in, or null to search in the calling
+     *            thread
+     * @updates n
+     * @requires n > 1
+     * @ensures <pre>
+     * n >= #n  and  [n and (n - 1) / 2 are very likely prime numbers]
+     * </pre>
+     */
+    private static void generateNextLikelySafePrime(NaturalNumber n,
+            PrimalityTest test, ForkJoinPool pool) {
+        boolean timed = CryptoMetrics.isEnabled();
+        long begin = timed ? System.nanoTime() : 0;
+
+        /*
+         * Search over q rather than p: 2q + 1 >= n exactly when q >= n / 2
+         * (rounded down), and q must be odd, except for the one safe prime
+         * 5 = 2 * 2 + 1. Above the sieve primes, q and 2q + 1 are sieved
+         * together, so only pairs with no small factor in either member are
+         * tested at all
+         */
+        NaturalNumberLimbs q = new NaturalNumberLimbs(n);
+        q.divide(new NaturalNumberLimbs(2));
+        NaturalNumberLimbs safePrime;
+        if (q.compareTo(new NaturalNumberLimbs(2)) <= 0) {
+            safePrime = new NaturalNumberLimbs(5);
+        } else {
+            if (!q.isOdd()) {
+                q.increment();
+            }
+            if (!isAboveSievePrimes(q)) {
+                // Pairs are dense down here; not worth the sieve
+                NaturalNumberLimbs two = new NaturalNumberLimbs(2);
+                while (!isPrime(q, test) || !isPrime(doubledPlusOne(q), test)) {
+                    q.add(two);
+                }
+            } else if (pool != null) {
+                q = ParallelPrimeSearch.nextLikelySophieGermainPrime(q, pool,
+                        test);
+            } else {
+                q = sieveSearch(q, test, true);
+            }
+            safePrime = doubledPlusOne(q);
+        }
+        NaturalNumberLimbs.assign(n, safePrime.limbArray(),
+                safePrime.limbCount());
+        if (timed) {
+            CryptoMetrics.recordPrimeFound(System.nanoTime() - begin);
+        }
+    }
+
+    /**
+     * Reports whether a sieve survivor q and 2q + 1 are both likely primes,
+     * recording a rejection in {@code PrimalityStatistics}. Both get a single
+     * base-2 strong test first, which throws out nearly every pair with a
+     * composite member for one exponentiation each; only a pair that passes
+     * both has q decided with {@code test}. That also decides 2q + 1: by
+     * Pocklington's theorem, if q is prime, q > sqrt(2q + 1), 2^(2q) = 1
+     * (mod 2q + 1), which the base-2 test checked, and gcd(2^2 - 1, 2q + 1) =
+     * 1, which the sieve checked, then 2q + 1 is prime.
+     *
+     * @param q
+     *            the survivor, odd and above the sieve primes
+     * @param test
+     *            the probable-prime test to decide q with
+     * @param workspace
+     *            the buffers to run the tests in
+     * @return true means q and 2q + 1 are very likely prime; false means one
+     *         of them is definitely composite
+     */
+    static boolean isLikelySophieGermainSurvivor(NaturalNumberLimbs q,
+            PrimalityTest test, ArithmeticWorkspace workspace) {
+        boolean probablePrime = workspace
+                .millerRabin(q.limbArray(), q.limbCount())
+                .isBaseTwoProbablePrime(workspace);
+        if (probablePrime) {
+            NaturalNumberLimbs p = doubledPlusOne(q);
+            probablePrime = workspace
+                    .millerRabin(p.limbArray(), p.limbCount())
+                    .isBaseTwoProbablePrime(workspace);
+        }
+        if (!probablePrime) {
+            PrimalityStatistics
+                    .recordRejected(PrimalityStatistics.Stage.WITNESS);
+            return false;
+        }
+        return isLikelyPrimeSurvivor(q, test, workspace);
+    }
+
+    /**
+     * Computes 2q + 1.
+     *
+     * @param q
+     *            the number to double
+     * @return 2q + 1
+     */
+    private static NaturalNumberLimbs doubledPlusOne(NaturalNumberLimbs q) {
+        int[] limbs = new int[q.limbCount() + 1];
+        int length = LimbArithmetic.multiplyInt(q.limbArray(), q.limbCount(),
+                2, 1, limbs);
+        NaturalNumberLimbs result = new NaturalNumberLimbs();
+        result.setLimbs(limbs, length);
+        return result;
+    }
+
+    /**
+     * Finds the smallest sieve survivor among start, start + 2, start + 4,
+     * ... that is a likely prime or, with {@code safe}, the smaller prime of
+     * a likely safe-prime pair, recording the sieve's work in
+     * {@code PrimalityStatistics}.
+     *
+     * @param start
+     *            first candidate, odd and above the sieve primes
+     * @param test
+     *            the probable-prime test to decide with
+     * @param safe
+     *            whether 2c + 1 must be prime along with each candidate c
+     * @return the candidate found
+     */
+    private static NaturalNumberLimbs sieveSearch(NaturalNumberLimbs start,
+            PrimalityTest test, boolean safe) {
+        PrimeSieve sieve = new PrimeSieve(start, PrimeSieve.DEFAULT_WINDOW,
+                PrimeSieve.DEFAULT_PRIME_COUNT, safe);
+        NaturalNumberLimbs candidate = new NaturalNumberLimbs();
+        ArithmeticWorkspace workspace = new ArithmeticWorkspace();
+        boolean found = false;
+        while (!found) {
+            int survivors = 0;
+            int i = sieve.nextSurvivor(0);
+            while (i >= 0 && !found) {
+                survivors++;
+                sieve.candidate(i, candidate);
+                if (safe) {
+                    found = isLikelySophieGermainSurvivor(candidate, test,
+                            workspace);
+                } else {
+                    found = isLikelyPrimeSurvivor(candidate, test, workspace);
+                }
+                if (!found) {
+                    i = sieve.nextSurvivor(i + 1);
+                }
+            }
+            int examined = found ? i + 1 : sieve.window();
+            PrimalityStatistics.recordTested(examined);
+            PrimalityStatistics.recordRejected(
+                    PrimalityStatistics.Stage.SIEVE, examined - survivors);
+            if (!found) {
+                sieve.advance(1);
+            }
+        }
+        return candidate;
+    }
+
+    /**
+     * Reports whether {@code n} is above every prime of a default-sized
+     * {@code PrimeSieve}, so a sieve may start at it.
+     *
+     * @param n
+     *            the number to check
+     * @return true iff n > PrimeSieve.largestPrime(DEFAULT_PRIME_COUNT)
+     */
+    private static boolean isAboveSievePrimes(NaturalNumberLimbs n) {
+        return n.bitLength() > LimbArithmetic.LIMB_BITS
+                || (n.limbArray()[0] & LimbArithmetic.MASK) > PrimeSieve
+                        .largestPrime(PrimeSieve.DEFAULT_PRIME_COUNT);
+    }
+
+    /**
+     * Main method. With no arguments, checks numbers typed in one at a time;
+     * with {@code --batch input [output [workers [maxInFlight]]]}, screens a
+     * file of numbers as {@code PrimeScreen} describes.
      *
      * @param args
      *            the command line arguments
+     * @throws IOException
+     *             if batch input or output fails
      */
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
+        if (args.length > 0 && args[0].equals("--batch")) {
+            /*
+             * Batch mode: screen a file of numbers without interaction
+             */
+            PrimeScreen.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
         SimpleReader in = new SimpleReader1L();
         SimpleWriter out = new SimpleWriter1L();
 
@@ -405,7 +1184,7 @@ public final class CryptoUtilities {
          */
         while (true) {
             out.print("n = ");
-            NaturalNumber n = new NaturalNumber2(in.nextLine());
+            NaturalNumber n = new NaturalNumberLimbs(in.nextLine());
             if (n.compareTo(new NaturalNumber2(2)) < 0) {
                 out.println("Bye!");
                 break;
@@ -0,0 +1,228 @@
+/**
+ * Quotients and remainders of long magnitudes, in the layout of
+ * {@code LimbArithmetic}, in a few multiplications instead of the quadratic
+ * work of Knuth's Algorithm D.
+ *
+ * <p>
+ * The reciprocal floor(2^(k + j) / b) of a k-bit divisor, to the j bits the
+ * quotient needs, is approximated from below by Newton's iteration
+ * x' = x(2 - bx / 2^(k + j)), started from a reciprocal to a little over half
+ * the precision, so each step doubles the precision and the whole costs a
+ * few products of the final length; below {@code RECIPROCAL_THRESHOLD} limbs
+ * of precision it is computed exactly by Algorithm D. The quotient is then
+ * the dividend times the reciprocal, shifted, as in Barrett's reduction; it
+ * is short by a few units at most, which final subtractions fix. The
+ * products are those of {@code MultiplyArithmetic}, so division is within a
+ * constant factor of multiplication, Karatsuba and Toom-3 included.
+ * </p>
+ *
+ * <p>
+ * When the divisor or the quotient is shorter than a threshold, in limbs,
+ * read once from the system property
+ * {@code cryptoutilities.newtonDivisionThreshold}, Algorithm D is faster and
+ * is used instead; the default is the crossover measured on random
+ * dividends of twice the divisor's length. Unlike {@code MultiplyArithmetic},
+ * this class allocates its temporaries.
+ * </p>
+ *
+ * @author Jamal Aden
+ *
+ */
+final class DivideArithmetic {
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private DivideArithmetic() {
+    }
+
+    /**
+     * Smallest threshold accepted from the system property.
+     */
+    private static final int MINIMUM_THRESHOLD = 8;
+
+    /**
+     * Length of the divisor and of the quotient, in limbs, from which
+     * division goes through the reciprocal.
+     */
+    static final int NEWTON_THRESHOLD = Math.max(MINIMUM_THRESHOLD,
+            Integer.getInteger("cryptoutilities.newtonDivisionThreshold",
+                    1536));
+
+    /**
+     * Precision, in limbs, below which a reciprocal is computed by
+     * Algorithm D instead of a Newton step; the divisor is then no longer
+     * than the precision, so this is cheaper than a general division.
+     */
+    private static final int RECIPROCAL_THRESHOLD = 64;
+
+    /**
+     * Bits of the divisor beyond the precision sought that its reciprocal
+     * depends on; the rest can only move it by one.
+     */
+    private static final int GUARD_BITS = 2;
+
+    /**
+     * Bits of precision beyond half that each Newton step starts from, so
+     * that the errors of the steps do not build up.
+     */
+    private static final int NEWTON_GUARD_BITS = 4;
+
+    /**
+     * The magnitude 1.
+     */
+    private static final int[] ONE = {1};
+
+    /**
+     * Computes q = a / b and r = a mod b.
+     *
+     * @param a
+     *            dividend
+     * @param aLen
+     *            its length
+     * @param b
+     *            divisor
+     * @param bLen
+     *            its normalized length, positive
+     * @param q
+     *            quotient, with room for aLen - bLen + 1 limbs, or null;
+     *            limbs above the quotient length are zeroed
+     * @param r
+     *            remainder, with room for bLen limbs; must not be q
+     * @return length of r
+     */
+    static int divide(int[] a, int aLen, int[] b, int bLen, int[] q,
+            int[] r) {
+        assert bLen > 0 && b[bLen - 1] != 0 : "Violation of: b > 0";
+        int length = LimbArithmetic.normalize(a, aLen);
+        if (bLen < NEWTON_THRESHOLD || length - bLen < NEWTON_THRESHOLD) {
+            return LimbArithmetic.divide(a, aLen, b, bLen, q, r);
+        }
+        int k = LimbArithmetic.bitLength(b, bLen);
+        int j = LimbArithmetic.bitLength(a, length) - k + 1;
+        int[] mu = new int[reciprocalLength(j)];
+        int muLen = reciprocal(b, bLen, k, j, mu);
+
+        /*
+         * With mu = floor(2^(k + j) / b) and a < 2^(k + j - 1), the estimate
+         * floor(floor(a / 2^(k - 1)) * mu / 2^(j + 1)) is at most the
+         * quotient, and short of it by at most 2; each unit mu is short by
+         * adds at most half a unit to that
+         */
+        int[] top = new int[length];
+        int topLen = LimbArithmetic.shiftRight(a, length, k - 1, top);
+        int[] quotient = new int[topLen + muLen + 1];
+        int quotientLen = LimbArithmetic.multiply(top, topLen, mu, muLen,
+                quotient);
+        quotientLen = LimbArithmetic.shiftRight(quotient, quotientLen, j + 1,
+                quotient);
+        int[] product = new int[quotientLen + bLen];
+        int productLen = LimbArithmetic.multiply(quotient, quotientLen, b,
+                bLen, product);
+        int[] rem = new int[length];
+        int remLen = LimbArithmetic.subtract(a, length, product, productLen,
+                rem);
+        while (LimbArithmetic.compare(rem, remLen, b, bLen) >= 0) {
+            remLen = LimbArithmetic.subtract(rem, remLen, b, bLen, rem);
+            quotientLen = LimbArithmetic.add(quotient, quotientLen, ONE, 1,
+                    quotient);
+        }
+        if (q != null) {
+            System.arraycopy(quotient, 0, q, 0, quotientLen);
+            for (int i = quotientLen; i <= aLen - bLen; i++) {
+                q[i] = 0;
+            }
+        }
+        System.arraycopy(rem, 0, r, 0, remLen);
+        return remLen;
+    }
+
+    /**
+     * Reports the room {@code reciprocal} needs for a reciprocal to j bits.
+     *
+     * @param j
+     *            the precision
+     * @return length in limbs
+     */
+    private static int reciprocalLength(int j) {
+        return j / LimbArithmetic.LIMB_BITS + 3;
+    }
+
+    /**
+     * Returns 2^e.
+     *
+     * @param e
+     *            the exponent, non-negative
+     * @return its limbs, normalized
+     */
+    private static int[] powerOfTwo(int e) {
+        int[] power = new int[e / LimbArithmetic.LIMB_BITS + 1];
+        power[power.length - 1] = 1 << (e % LimbArithmetic.LIMB_BITS);
+        return power;
+    }
+
+    /**
+     * Computes mu, at most floor(2^(k + j) / b) and short of it by a few
+     * units at most.
+     *
+     * @param b
+     *            the divisor
+     * @param bLen
+     *            its normalized length
+     * @param k
+     *            its bit length
+     * @param j
+     *            the precision, positive
+     * @param mu
+     *            result, with room for {@code reciprocalLength(j)} limbs
+     * @return length of mu
+     */
+    private static int reciprocal(int[] b, int bLen, int k, int j,
+            int[] mu) {
+        if (k > j + GUARD_BITS) {
+            /*
+             * Only the top j + 2 bits of b matter: the reciprocal of b
+             * shifted down to them is at most one more than the one sought
+             */
+            int[] top = new int[bLen];
+            int topLen = LimbArithmetic.shiftRight(b, bLen,
+                    k - j - GUARD_BITS, top);
+            int muLen = reciprocal(top, topLen, j + GUARD_BITS, j, mu);
+            return LimbArithmetic.subtract(mu, muLen, ONE, 1, mu);
+        }
+        if (j < RECIPROCAL_THRESHOLD * LimbArithmetic.LIMB_BITS) {
+            int[] power = powerOfTwo(k + j);
+            int muLen = power.length - bLen + 1;
+            LimbArithmetic.divide(power, power.length, b, bLen, mu,
+                    new int[bLen]);
+            return LimbArithmetic.normalize(mu, muLen);
+        }
+
+        /*
+         * With y the reciprocal to h bits, a few units short, and
+         * e = 2^(k + h) - by, the Newton step from x = y 2^(j - h) is
+         * x + xe / 2^(k + h) = y 2^(j - h) + ye / 2^(k + 2h - j), which
+         * squares the error and stays below; h is a little over j / 2, so
+         * the square is well under one unit, and only the top h bits or so
+         * of e count
+         */
+        int h = j / 2 + NEWTON_GUARD_BITS;
+        int[] y = new int[reciprocalLength(h)];
+        int yLen = reciprocal(b, bLen, k, h, y);
+        int[] power = powerOfTwo(k + h);
+        int[] product = new int[yLen + bLen];
+        int productLen = LimbArithmetic.multiply(y, yLen, b, bLen, product);
+        int[] e = new int[power.length];
+        int eLen = LimbArithmetic.subtract(power, power.length, product,
+                productLen, e);
+        int drop = Math.max(0, k - h - NEWTON_GUARD_BITS);
+        eLen = LimbArithmetic.shiftRight(e, eLen, drop, e);
+        int[] step = new int[yLen + eLen];
+        int stepLen = LimbArithmetic.multiply(y, yLen, e, eLen, step);
+        stepLen = LimbArithmetic.shiftRight(step, stepLen,
+                k + 2 * h - j - drop, step);
+        int muLen = LimbArithmetic.shiftLeft(y, yLen, j - h, mu);
+        return LimbArithmetic.add(mu, muLen, step, stepLen, mu);
+    }
+
+}
@@ -0,0 +1,142 @@
+import components.naturalnumber.NaturalNumber;
+
+/**
+ * Modular arithmetic for a fixed modulus m that reduces every product with a
+ * long division, the way {@code NaturalNumber.divide} does. It works for any
+ * m > 1; {@code BarrettContext} does the same job faster, and this plain path
+ * stays selectable as {@code ModularContext.Reduction.DIVISION}.
+ *
+ * <p>
+ * Residues are plain values in [0, m). Contexts are immutable and may be
+ * shared between threads.
+ * </p>
+ *
+ * @author Jamal Aden
+ *
+ */
+public final class DivisionContext extends ModularContext {
+
+    /**
+     * Limbs of the modulus, exactly {@code width} long.
+     */
+    private final int[] modulus;
+
+    /**
+     * Number of limbs in the modulus.
+     */
+    private final int width;
+
+    /**
+     * The modulus shifted left so its top bit is set (Knuth's Algorithm D
+     * normalization, done once instead of per division).
+     */
+    private final int[] normalizedModulus;
+
+    /**
+     * The shift applied to get {@code normalizedModulus}.
+     */
+    private final int shift;
+
+    /**
+     * Builds the context for modulus {@code m}.
+     *
+     * @param m
+     *            the modulus
+     * @requires m > 1
+     */
+    public DivisionContext(NaturalNumber m) {
+        assert m != null : "Violation of: m is not null";
+        NaturalNumberLimbs localM = NaturalNumberLimbs.valueOf(m);
+        assert localM.bitLength() > 1 : "Violation of: m > 1";
+        this.modulus = localM.toLimbs();
+        this.width = this.modulus.length;
+        this.normalizedModulus = new int[this.width];
+        this.shift = LimbArithmetic.normalizeDivisor(this.modulus, this.width,
+                this.normalizedModulus);
+    }
+
+    @Override
+    public NaturalNumber modulus() {
+        NaturalNumberLimbs m = new NaturalNumberLimbs();
+        m.setLimbs(this.modulus, this.width);
+        return m;
+    }
+
+    @Override
+    int width() {
+        return this.width;
+    }
+
+    /*
+     * Scratch holds the double-width product, which is then normalized and
+     * divided in place, followed by the multiplication's scratch.
+     */
+    @Override
+    int scratchLength() {
+        return 2 * this.width + 1
+                + LimbArithmetic.multiplyScratchLength(this.width);
+    }
+
+    @Override
+    void multiply(int[] x, int[] y, int[] r, int[] t) {
+        int k = this.width;
+        int pLen = LimbArithmetic.multiply(x, LimbArithmetic.normalize(x, k),
+                y, LimbArithmetic.normalize(y, k), t, t, 2 * k + 1);
+        this.reduce(t, pLen, r);
+    }
+
+    /**
+     * Computes r = a mod m in place.
+     *
+     * @param a
+     *            the value to reduce, with room for one limb beyond aLen;
+     *            destroyed
+     * @param aLen
+     *            its normalized length
+     * @param r
+     *            result, {@code width} limbs
+     */
+    private void reduce(int[] a, int aLen, int[] r) {
+        int k = this.width;
+        int rLen;
+        if (LimbArithmetic.compare(a, aLen, this.modulus, k) < 0) {
+            System.arraycopy(a, 0, r, 0, aLen);
+            rLen = aLen;
+        } else if (k == 1) {
+            r[0] = (int) LimbArithmetic.divideInt(a, aLen, this.modulus[0],
+                    null);
+            rLen = 1;
+        } else {
+            LimbArithmetic.normalizeDividend(a, aLen, this.shift);
+            rLen = LimbArithmetic.divideNormalized(a, aLen,
+                    this.normalizedModulus, k, this.shift, null, r);
+        }
+        for (int i = rLen; i < k; i++) {
+            r[i] = 0;
+        }
+    }
+
+    @Override
+    void toResidue(int[] a, int aLen, int[] r, int[] t) {
+        // Batch callers pass bases below m^2, which fit in the scratch
+        int[] copy = aLen < t.length ? t : new int[aLen + 1];
+        System.arraycopy(a, 0, copy, 0, aLen);
+        this.reduce(copy, aLen, r);
+    }
+
+    @Override
+    void fromResidue(int[] x, int[] r, int[] t) {
+        if (r != x) {
+            System.arraycopy(x, 0, r, 0, this.width);
+        }
+    }
+
+    @Override
+    void one(int[] r) {
+        r[0] = 1;
+        for (int i = 1; i < this.width; i++) {
+            r[i] = 0;
+        }
+    }
+
+}
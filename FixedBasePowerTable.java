@@ -0,0 +1,324 @@
+import components.naturalnumber.NaturalNumber;
+
+/**
+ * Precomputed powers of one fixed base modulo one fixed modulus, so that
+ * later exponentiations of that base need far fewer squarings than
+ * {@code powerMod} (Lim-Lee comb method).
+ *
+ * <p>
+ * Exponents of up to {@code l} bits are cut into {@code h} rows of
+ * a = ceil(l / h) bits, and every row into {@code v} blocks of b = ceil(a /
+ * v) bits. For each of the 2^h - 1 nonzero column patterns u the table holds
+ * the product of g^(2^(i a)) over the bits i set in u, and v copies of that
+ * row raised by 2^(j b). An exponentiation then takes b - 1 squarings and at
+ * most v b multiplications, against about l squarings for a sliding window.
+ * Memory is v (2^h - 1) residues: raising h halves the work and doubles the
+ * table, raising v trades squarings for table rows more gently.
+ * </p>
+ *
+ * <p>
+ * Tables are immutable once built, and every call works in its own scratch,
+ * so one table may be shared by any number of threads. Exponents longer than
+ * the table was built for still work, by ordinary sliding-window
+ * exponentiation.
+ * </p>
+ *
+ * @author Jamal Aden
+ *
+ */
+public final class FixedBasePowerTable {
+
+    /**
+     * Default number of rows, h.
+     */
+    public static final int DEFAULT_ROWS = 5;
+
+    /**
+     * Default number of blocks per row, v.
+     */
+    public static final int DEFAULT_BLOCKS = 2;
+
+    /**
+     * Largest number of rows supported; the table grows as 2^h.
+     */
+    public static final int MAX_ROWS = 12;
+
+    /**
+     * The modular context for m.
+     */
+    private final ModularContext context;
+
+    /**
+     * The base g, reduced below m.
+     */
+    private final NaturalNumberLimbs base;
+
+    /**
+     * Longest exponent the table covers, l.
+     */
+    private final int exponentBits;
+
+    /**
+     * Number of rows, h.
+     */
+    private final int rows;
+
+    /**
+     * Number of blocks per row, v.
+     */
+    private final int blocks;
+
+    /**
+     * Row length in bits, a = ceil(l / h).
+     */
+    private final int rowBits;
+
+    /**
+     * Block length in bits, b = ceil(a / v).
+     */
+    private final int blockBits;
+
+    /**
+     * Residues of the comb: entry {@code j * 2^h + u} is the product over the
+     * bits i of u of g^(2^(i a + j b)); entries with u = 0 are unused.
+     */
+    private final int[][] table;
+
+    /**
+     * Builds the table for base g modulo m, covering exponents of up to
+     * {@code exponentBits} bits, with the default shape, cut down to fit
+     * exponents too short for it.
+     *
+     * @param g
+     *            the base
+     * @param m
+     *            the modulus
+     * @param exponentBits
+     *            longest exponent to be served from the table, in bits
+     * @requires m > 1 and exponentBits > 0
+     */
+    public FixedBasePowerTable(NaturalNumber g, NaturalNumber m,
+            int exponentBits) {
+        this(g, ModularContext.create(m), exponentBits,
+                defaultRows(exponentBits), defaultBlocks(exponentBits));
+    }
+
+    /**
+     * Reports the number of rows for the default shape: {@code DEFAULT_ROWS},
+     * but no more than there are exponent bits.
+     *
+     * @param exponentBits
+     *            longest exponent to be served from the table, in bits
+     * @return h
+     * @requires exponentBits > 0
+     */
+    private static int defaultRows(int exponentBits) {
+        return Math.min(DEFAULT_ROWS, exponentBits);
+    }
+
+    /**
+     * Reports the number of blocks per row for the default shape:
+     * {@code DEFAULT_BLOCKS}, but no more than there are bits in a row.
+     *
+     * @param exponentBits
+     *            longest exponent to be served from the table, in bits
+     * @return v
+     * @requires exponentBits > 0
+     */
+    private static int defaultBlocks(int exponentBits) {
+        int h = defaultRows(exponentBits);
+        return Math.min(DEFAULT_BLOCKS, (exponentBits + h - 1) / h);
+    }
+
+    /**
+     * Builds the table for base g modulo the modulus of {@code context},
+     * covering exponents of up to {@code exponentBits} bits, with h rows of v
+     * blocks each.
+     *
+     * @param g
+     *            the base
+     * @param context
+     *            modular context for the modulus m
+     * @param exponentBits
+     *            longest exponent to be served from the table, in bits
+     * @param h
+     *            number of rows; the table holds v (2^h - 1) residues
+     * @param v
+     *            number of blocks per row
+     * @requires <pre>
+     * exponentBits > 0  and  1 <= h <= MAX_ROWS  and
+     * 1 <= v <= ceil(exponentBits / h)
+     * </pre>
+     */
+    public FixedBasePowerTable(NaturalNumber g, ModularContext context,
+            int exponentBits, int h, int v) {
+        assert g != null : "Violation of: g is not null";
+        assert context != null : "Violation of: context is not null";
+        assert exponentBits > 0 : "Violation of: exponentBits > 0";
+        assert 1 <= h && h <= MAX_ROWS : "Violation of: 1 <= h <= MAX_ROWS";
+        this.context = context;
+        this.exponentBits = exponentBits;
+        this.rows = h;
+        this.rowBits = (exponentBits + h - 1) / h;
+        assert 1 <= v && v <= this.rowBits : ""
+                + "Violation of: 1 <= v <= ceil(exponentBits / h)";
+        this.blocks = v;
+        this.blockBits = (this.rowBits + v - 1) / v;
+
+        int w = context.width();
+        int[] t = new int[context.scratchLength()];
+        NaturalNumberLimbs localG = NaturalNumberLimbs.valueOf(g);
+        int[] residue = new int[w];
+        context.toResidue(localG.limbArray(), localG.limbCount(), residue, t);
+        int[] reduced = new int[w];
+        context.fromResidue(residue, reduced, t);
+        this.base = new NaturalNumberLimbs();
+        this.base.setLimbs(reduced, LimbArithmetic.normalize(reduced, w));
+
+        /*
+         * Single-bit entries first: g^(2^(i a)) by a squarings from the row
+         * below, then g^(2^(i a + j b)) by b squarings from the block before
+         */
+        int columns = 1 << h;
+        this.table = new int[v * columns][];
+        this.table[1] = residue;
+        for (int j = 0; j < v; j++) {
+            for (int i = 0; i < h; i++) {
+                int index = j * columns + (1 << i);
+                if (index != 1) {
+                    int from;
+                    int squarings;
+                    if (j == 0) {
+                        from = 1 << (i - 1);
+                        squarings = this.rowBits;
+                    } else {
+                        from = index - columns;
+                        squarings = this.blockBits;
+                    }
+                    int[] power = this.table[from].clone();
+                    for (int s = 0; s < squarings; s++) {
+                        context.multiply(power, power, power, t);
+                    }
+                    this.table[index] = power;
+                }
+            }
+            /*
+             * Every other entry is the entry for u without its top bit times
+             * the entry for that bit
+             */
+            for (int u = 3; u < columns; u++) {
+                int top = Integer.highestOneBit(u);
+                if (u != top) {
+                    int[] product = new int[w];
+                    context.multiply(this.table[j * columns + u - top],
+                            this.table[j * columns + top], product, t);
+                    this.table[j * columns + u] = product;
+                }
+            }
+        }
+    }
+
+    /**
+     * Reports the longest exponent served from the table.
+     *
+     * @return exponent length in bits
+     */
+    public int exponentBits() {
+        return this.exponentBits;
+    }
+
+    /**
+     * Reports the number of residues stored, v (2^h - 1).
+     *
+     * @return table entries
+     */
+    public int tableEntries() {
+        return this.blocks * ((1 << this.rows) - 1);
+    }
+
+    /**
+     * Reports the number of modular multiplications (squarings included) an
+     * exponentiation with a full-length exponent takes at most.
+     *
+     * @return multiplications per exponentiation, worst case
+     */
+    public int multiplicationsPerPower() {
+        return this.blockBits - 1 + this.blocks * this.blockBits;
+    }
+
+    /**
+     * Sets {@code result} to the base raised to the p-th power modulo m.
+     *
+     * @param p
+     *            the power
+     * @param result
+     *            where the power goes
+     * @replaces result
+     * @ensures result = g ^ (p) mod m
+     */
+    public void powerMod(NaturalNumber p, NaturalNumber result) {
+        assert p != null : "Violation of: p is not null";
+        assert result != null : "Violation of: result is not null";
+        assert p != result : "Violation of: p is not result";
+
+        NaturalNumberLimbs e = NaturalNumberLimbs.valueOf(p);
+        int[] eLimbs = e.limbArray();
+        int eLen = e.limbCount();
+        if (LimbArithmetic.bitLength(eLimbs, eLen) > this.exponentBits) {
+            result.copyFrom(this.base);
+            this.context.powerMod(result, e);
+            return;
+        }
+
+        ModularContext c = this.context;
+        int w = c.width();
+        int[] t = new int[c.scratchLength()];
+        int[] acc = new int[w];
+        c.one(acc);
+        int a = this.rowBits;
+        int b = this.blockBits;
+        int columns = 1 << this.rows;
+        boolean isOne = true;
+        int products = 0;
+        for (int k = b - 1; k >= 0; k--) {
+            if (!isOne) {
+                c.multiply(acc, acc, acc, t);
+                products++;
+            }
+            for (int j = this.blocks - 1; j >= 0; j--) {
+                int bit = j * b + k;
+                if (bit >= a) {
+                    continue;
+                }
+                /*
+                 * Column pattern: bit (i a + j b + k) of the exponent for
+                 * each row i
+                 */
+                int u = 0;
+                for (int i = this.rows - 1; i >= 0; i--) {
+                    u <<= 1;
+                    if (LimbArithmetic.testBit(eLimbs, eLen, i * a + bit)) {
+                        u |= 1;
+                    }
+                }
+                if (u != 0) {
+                    int[] entry = this.table[j * columns + u];
+                    if (isOne) {
+                        System.arraycopy(entry, 0, acc, 0, w);
+                        isOne = false;
+                    } else {
+                        c.multiply(acc, entry, acc, t);
+                        products++;
+                    }
+                }
+            }
+        }
+        if (CryptoMetrics.isEnabled()) {
+            CryptoMetrics.recordExponentiation(products);
+        }
+        c.fromResidue(acc, acc, t);
+        NaturalNumberLimbs.assign(result, acc,
+                LimbArithmetic.normalize(acc, w));
+    }
+
+}
@@ -0,0 +1,360 @@
+/**
+ * Greatest common divisors of magnitudes stored as limbs, in the layout of
+ * {@code LimbArithmetic}.
+ *
+ * <p>
+ * {@code gcd} runs Lehmer's algorithm (Knuth, Algorithm 4.5.2L) while both
+ * operands are longer than two limbs: the leading 32 bits of the pair drive a
+ * run of single-precision Euclid steps, which are then applied to the full
+ * numbers at once as a 2 x 2 cofactor matrix. Once the numbers fit in a
+ * {@code long}, binary GCD finishes the job. {@code extendedGcd} is plain
+ * Euclid, but iterative and working in a fixed set of buffers. Neither uses
+ * the stack or allocates per step.
+ * </p>
+ *
+ * @author Jamal Aden
+ *
+ */
+final class GcdArithmetic {
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private GcdArithmetic() {
+    }
+
+    /**
+     * Number of limbs that fit in a {@code long}.
+     */
+    private static final int LONG_LIMBS = 2;
+
+    /**
+     * Computes the greatest common divisor of two unsigned 64-bit values with
+     * the binary (Stein) algorithm.
+     *
+     * @param a
+     *            one value, unsigned
+     * @param b
+     *            the other value, unsigned
+     * @return gcd(a, b), unsigned
+     */
+    static long binaryGcd(long a, long b) {
+        if (a == 0) {
+            return b;
+        }
+        if (b == 0) {
+            return a;
+        }
+        int shift = Long.numberOfTrailingZeros(a | b);
+        long u = a >>> Long.numberOfTrailingZeros(a);
+        long v = b;
+        do {
+            v >>>= Long.numberOfTrailingZeros(v);
+            if (Long.compareUnsigned(u, v) > 0) {
+                long t = u;
+                u = v;
+                v = t;
+            }
+            v -= u;
+        } while (v != 0);
+        return u << shift;
+    }
+
+    /**
+     * Computes g = gcd(a, b).
+     *
+     * @param a
+     *            one number
+     * @param aLen
+     *            its normalized length
+     * @param b
+     *            the other number
+     * @param bLen
+     *            its normalized length
+     * @param g
+     *            result, with room for max(aLen, bLen, 2) limbs; may be a or
+     *            b
+     * @return length of g
+     */
+    static int gcd(int[] a, int aLen, int[] b, int bLen, int[] g) {
+        int len = Math.max(aLen, bLen) + 1;
+        int[] u = new int[len + 1];
+        int[] v = new int[len + 1];
+        int[] w = new int[len + 1];
+        int[] z = new int[len + 1];
+        int[] un = new int[len + 1];
+        int[] vn = new int[len];
+        int uLen = aLen;
+        int vLen = bLen;
+        System.arraycopy(a, 0, u, 0, aLen);
+        System.arraycopy(b, 0, v, 0, bLen);
+        if (LimbArithmetic.compare(u, uLen, v, vLen) < 0) {
+            int[] t = u;
+            u = v;
+            v = t;
+            uLen = bLen;
+            vLen = aLen;
+        }
+        /*
+         * Invariant: u >= v
+         */
+        while (vLen > LONG_LIMBS) {
+            int shift = LimbArithmetic.bitLength(u, uLen)
+                    - LimbArithmetic.LIMB_BITS;
+            long uHat = leadingBits(u, uLen, shift);
+            long vHat = leadingBits(v, vLen, shift);
+            long ca = 1;
+            long cb = 0;
+            long cc = 0;
+            long cd = 1;
+            while (vHat + cc != 0 && vHat + cd != 0) {
+                long q = (uHat + ca) / (vHat + cc);
+                if (q != (uHat + cb) / (vHat + cd)) {
+                    break;
+                }
+                long t = ca - q * cc;
+                ca = cc;
+                cc = t;
+                t = cb - q * cd;
+                cb = cd;
+                cd = t;
+                t = uHat - q * vHat;
+                uHat = vHat;
+                vHat = t;
+            }
+            if (cb == 0) {
+                /*
+                 * The leading bits did not settle even one quotient (v is
+                 * much shorter than u, typically), so take a full step
+                 */
+                int wLen = LimbArithmetic.divide(u, uLen, v, vLen, null, w, un,
+                        vn);
+                int[] t = u;
+                u = v;
+                uLen = vLen;
+                v = w;
+                vLen = wLen;
+                w = t;
+            } else {
+                int wLen = combine(ca, u, uLen, cb, v, vLen, w, un);
+                int zLen = combine(cc, u, uLen, cd, v, vLen, z, un);
+                int[] t = u;
+                u = w;
+                uLen = wLen;
+                w = t;
+                t = v;
+                v = z;
+                vLen = zLen;
+                z = t;
+            }
+        }
+        int gLen;
+        if (vLen == 0) {
+            System.arraycopy(u, 0, g, 0, uLen);
+            gLen = uLen;
+        } else {
+            if (uLen > LONG_LIMBS) {
+                int wLen = LimbArithmetic.divide(u, uLen, v, vLen, null, w, un,
+                        vn);
+                u = v;
+                uLen = vLen;
+                v = w;
+                vLen = wLen;
+            }
+            long r = binaryGcd(toLong(u, uLen), toLong(v, vLen));
+            g[0] = (int) r;
+            gLen = 1;
+            if ((r >>> LimbArithmetic.LIMB_BITS) != 0) {
+                g[1] = (int) (r >>> LimbArithmetic.LIMB_BITS);
+                gLen = 2;
+            }
+        }
+        return gLen;
+    }
+
+    /**
+     * Computes the greatest common divisor g of n and m together with a
+     * cofactor x such that n * x = g (mod m), by the extended Euclidean
+     * algorithm.
+     *
+     * <p>
+     * Euclid's cofactors alternate in sign, so only their magnitudes are
+     * kept, and the sign is read off the number of steps at the end.
+     * </p>
+     *
+     * @param n
+     *            one number
+     * @param nLen
+     *            its normalized length, positive
+     * @param m
+     *            the other number
+     * @param mLen
+     *            its normalized length
+     * @param g
+     *            result: gcd(n, m), with room for max(nLen, mLen) limbs
+     * @param x
+     *            result: the cofactor, with room for max(nLen, mLen) + 1
+     *            limbs
+     * @param lengths
+     *            result: lengths[0] = length of g, lengths[1] = length of x
+     * @ensures <pre>
+     * 0 < x <= m / g  and  n * x = g (mod m), or x = 1 when m = 0
+     * </pre>
+     */
+    static void extendedGcd(int[] n, int nLen, int[] m, int mLen, int[] g,
+            int[] x, int[] lengths) {
+        assert nLen > 0 : "Violation of: n > 0";
+        int len = Math.max(nLen, mLen) + 1;
+        int[] r0 = new int[len];
+        int[] r1 = new int[len];
+        int[] r2 = new int[len];
+        int[] q = new int[len];
+        int[] s0 = new int[2 * len];
+        int[] s1 = new int[2 * len];
+        int[] s2 = new int[2 * len];
+        int[] un = new int[len + 1];
+        int[] vn = new int[len];
+        System.arraycopy(n, 0, r0, 0, nLen);
+        System.arraycopy(m, 0, r1, 0, mLen);
+        int r0Len = nLen;
+        int r1Len = mLen;
+        s0[0] = 1;
+        int s0Len = 1;
+        int s1Len = 0;
+        boolean negative = false;
+        while (r1Len > 0) {
+            int r2Len = LimbArithmetic.divide(r0, r0Len, r1, r1Len, q, r2, un,
+                    vn);
+            int qLen = 0;
+            if (r0Len >= r1Len) {
+                qLen = LimbArithmetic.normalize(q, r0Len - r1Len + 1);
+            }
+            /*
+             * |s2| = |s0| + q * |s1|, with the opposite sign of s1
+             */
+            int s2Len = LimbArithmetic.multiply(q, qLen, s1, s1Len, s2);
+            s2Len = LimbArithmetic.add(s2, s2Len, s0, s0Len, s2);
+            int[] t = r0;
+            r0 = r1;
+            r0Len = r1Len;
+            r1 = r2;
+            r1Len = r2Len;
+            r2 = t;
+            t = s0;
+            s0 = s1;
+            s0Len = s1Len;
+            s1 = s2;
+            s1Len = s2Len;
+            s2 = t;
+            negative = !negative;
+        }
+        /*
+         * r0 = g and s0 = |s| where n * s = g (mod m), s negative iff
+         * negative; bring s into (0, m / g]
+         */
+        System.arraycopy(r0, 0, g, 0, r0Len);
+        lengths[0] = r0Len;
+        if (mLen == 0) {
+            x[0] = 1;
+            lengths[1] = 1;
+        } else {
+            int[] mOverG = new int[len];
+            LimbArithmetic.divide(m, mLen, r0, r0Len, mOverG, r2, un, vn);
+            int mOverGLen = LimbArithmetic.normalize(mOverG, mLen - r0Len + 1);
+            int xLen = LimbArithmetic.divide(s0, s0Len, mOverG, mOverGLen,
+                    null, x, new int[s0Len + 1], new int[mOverGLen]);
+            if (negative && xLen > 0) {
+                xLen = LimbArithmetic.subtract(mOverG, mOverGLen, x, xLen, x);
+            } else if (xLen == 0) {
+                System.arraycopy(mOverG, 0, x, 0, mOverGLen);
+                xLen = mOverGLen;
+            }
+            lengths[1] = xLen;
+        }
+    }
+
+    /**
+     * Extracts 32 bits of {@code a} starting at bit {@code shift}.
+     *
+     * @param a
+     *            the number
+     * @param aLen
+     *            its normalized length
+     * @param shift
+     *            position of the lowest bit wanted
+     * @return floor(a / 2^shift) mod 2^32
+     */
+    private static long leadingBits(int[] a, int aLen, int shift) {
+        int i = shift / LimbArithmetic.LIMB_BITS;
+        int offset = shift % LimbArithmetic.LIMB_BITS;
+        long bits = 0;
+        if (i < aLen) {
+            bits = (a[i] & LimbArithmetic.MASK) >>> offset;
+            if (offset != 0 && i + 1 < aLen) {
+                bits |= (a[i + 1] & LimbArithmetic.MASK)
+                        << (LimbArithmetic.LIMB_BITS - offset);
+            }
+        }
+        return bits & LimbArithmetic.MASK;
+    }
+
+    /**
+     * Computes r = x * u + y * v for single-precision cofactors x and y of a
+     * Lehmer step, whose result is known to be nonnegative.
+     *
+     * @param x
+     *            cofactor of u, |x| < 2^32
+     * @param u
+     *            first number
+     * @param uLen
+     *            its normalized length
+     * @param y
+     *            cofactor of v, |y| < 2^32
+     * @param v
+     *            second number
+     * @param vLen
+     *            its normalized length
+     * @param r
+     *            result, with room for max(uLen, vLen) + 2 limbs
+     * @param t
+     *            scratch, with room for vLen + 1 limbs
+     * @return length of r
+     */
+    private static int combine(long x, int[] u, int uLen, long y, int[] v,
+            int vLen, int[] r, int[] t) {
+        assert Math.abs(x) <= LimbArithmetic.MASK
+                && Math.abs(y) <= LimbArithmetic.MASK : ""
+                        + "Violation of: |x|, |y| < 2^32";
+        int rLen = LimbArithmetic.multiplyInt(u, uLen, (int) Math.abs(x), 0,
+                r);
+        int tLen = LimbArithmetic.multiplyInt(v, vLen, (int) Math.abs(y), 0,
+                t);
+        if (x < 0) {
+            rLen = LimbArithmetic.subtract(t, tLen, r, rLen, r);
+        } else if (y < 0) {
+            rLen = LimbArithmetic.subtract(r, rLen, t, tLen, r);
+        } else {
+            rLen = LimbArithmetic.add(r, rLen, t, tLen, r);
+        }
+        return rLen;
+    }
+
+    /**
+     * Reads a number of at most two limbs as an unsigned {@code long}.
+     *
+     * @param a
+     *            the number
+     * @param aLen
+     *            its normalized length, at most 2
+     * @return the value of a
+     */
+    private static long toLong(int[] a, int aLen) {
+        long value = 0;
+        for (int i = aLen - 1; i >= 0; i--) {
+            value = (value << LimbArithmetic.LIMB_BITS)
+                    | (a[i] & LimbArithmetic.MASK);
+        }
+        return value;
+    }
+
+}
@@ -0,0 +1,680 @@
+/**
+ * Word-level arithmetic on unsigned magnitudes stored as little-endian
+ * {@code int[]} limbs (limb 0 is the least significant 32 bits).
+ *
+ * <p>
+ * Every magnitude is passed as an array together with its length in limbs;
+ * limbs at or beyond that length are ignored. Unless a method says otherwise,
+ * the result array may be the same as an input array, and lengths returned
+ * are normalized (no most significant zero limbs).
+ * </p>
+ *
+ * @author Jamal Aden
+ *
+ */
+final class LimbArithmetic {
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private LimbArithmetic() {
+    }
+
+    /**
+     * Number of bits in one limb.
+     */
+    static final int LIMB_BITS = 32;
+
+    /**
+     * Mask selecting the unsigned value of a limb widened to {@code long}.
+     */
+    static final long MASK = 0xFFFFFFFFL;
+
+    /**
+     * Largest power of ten that fits in one limb, used for decimal
+     * conversion.
+     */
+    static final int DECIMAL_CHUNK = 1_000_000_000;
+
+    /**
+     * Number of decimal digits in {@code DECIMAL_CHUNK}.
+     */
+    static final int DECIMAL_CHUNK_DIGITS = 9;
+
+    /**
+     * Returns the length of {@code a} once most significant zero limbs are
+     * dropped.
+     *
+     * @param a
+     *            the limbs
+     * @param len
+     *            the current length
+     * @return normalized length
+     */
+    static int normalize(int[] a, int len) {
+        int n = len;
+        while (n > 0 && a[n - 1] == 0) {
+            n--;
+        }
+        return n;
+    }
+
+    /**
+     * Compares two normalized magnitudes.
+     *
+     * @param a
+     *            first magnitude
+     * @param aLen
+     *            its length
+     * @param b
+     *            second magnitude
+     * @param bLen
+     *            its length
+     * @return negative, zero or positive as a is less than, equal to or
+     *         greater than b
+     */
+    static int compare(int[] a, int aLen, int[] b, int bLen) {
+        if (aLen != bLen) {
+            return aLen < bLen ? -1 : 1;
+        }
+        for (int i = aLen - 1; i >= 0; i--) {
+            if (a[i] != b[i]) {
+                return Integer.compareUnsigned(a[i], b[i]);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Computes r = a + b.
+     *
+     * @param a
+     *            first addend
+     * @param aLen
+     *            its length
+     * @param b
+     *            second addend
+     * @param bLen
+     *            its length
+     * @param r
+     *            result, with room for max(aLen, bLen) + 1 limbs
+     * @return length of r
+     */
+    static int add(int[] a, int aLen, int[] b, int bLen, int[] r) {
+        if (aLen < bLen) {
+            return add(b, bLen, a, aLen, r);
+        }
+        long carry = 0;
+        int i = 0;
+        for (; i < bLen; i++) {
+            carry += (a[i] & MASK) + (b[i] & MASK);
+            r[i] = (int) carry;
+            carry >>>= LIMB_BITS;
+        }
+        for (; i < aLen; i++) {
+            carry += a[i] & MASK;
+            r[i] = (int) carry;
+            carry >>>= LIMB_BITS;
+        }
+        if (carry != 0) {
+            r[i] = (int) carry;
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Computes r = a - b.
+     *
+     * @param a
+     *            minuend
+     * @param aLen
+     *            its length
+     * @param b
+     *            subtrahend, no greater than a
+     * @param bLen
+     *            its length
+     * @param r
+     *            result, with room for aLen limbs
+     * @return length of r
+     */
+    static int subtract(int[] a, int aLen, int[] b, int bLen, int[] r) {
+        long borrow = 0;
+        int i = 0;
+        for (; i < bLen; i++) {
+            long diff = (a[i] & MASK) - (b[i] & MASK) + borrow;
+            r[i] = (int) diff;
+            borrow = diff >> LIMB_BITS;
+        }
+        for (; i < aLen; i++) {
+            long diff = (a[i] & MASK) + borrow;
+            r[i] = (int) diff;
+            borrow = diff >> LIMB_BITS;
+        }
+        assert borrow == 0 : "Violation of: a >= b";
+        return normalize(r, aLen);
+    }
+
+    /**
+     * Computes r = a * k + c for a single-limb multiplier and addend.
+     *
+     * @param a
+     *            multiplicand
+     * @param aLen
+     *            its length
+     * @param k
+     *            unsigned multiplier limb
+     * @param c
+     *            unsigned addend limb
+     * @param r
+     *            result, with room for aLen + 1 limbs
+     * @return length of r
+     */
+    static int multiplyInt(int[] a, int aLen, int k, int c, int[] r) {
+        long kk = k & MASK;
+        long carry = c & MASK;
+        for (int i = 0; i < aLen; i++) {
+            carry += (a[i] & MASK) * kk;
+            r[i] = (int) carry;
+            carry >>>= LIMB_BITS;
+        }
+        r[aLen] = (int) carry;
+        return normalize(r, aLen + 1);
+    }
+
+    /**
+     * Computes r = a * b. Short factors are multiplied with the schoolbook
+     * method and long ones by {@code MultiplyArithmetic}, which squares when
+     * a and b are the same array with the same length.
+     *
+     * @param a
+     *            first factor
+     * @param aLen
+     *            its length
+     * @param b
+     *            second factor
+     * @param bLen
+     *            its length
+     * @param r
+     *            result, with room for aLen + bLen limbs; must not be a or b
+     * @return length of r
+     */
+    static int multiply(int[] a, int aLen, int[] b, int bLen, int[] r) {
+        int length = multiplyScratchLength(Math.max(aLen, bLen));
+        return multiply(a, aLen, b, bLen, r,
+                length == 0 ? null : new int[length], 0);
+    }
+
+    /**
+     * Computes r = a * b as {@code multiply(a, aLen, b, bLen, r)} does, in
+     * the given scratch.
+     *
+     * @param a
+     *            first factor
+     * @param aLen
+     *            its length
+     * @param b
+     *            second factor
+     * @param bLen
+     *            its length
+     * @param r
+     *            result, with room for aLen + bLen limbs; must not be a or b
+     * @param t
+     *            scratch, of which
+     *            {@code multiplyScratchLength(max(aLen, bLen))} limbs from
+     *            {@code offset} are used; must not overlap a, b or r, and
+     *            may be null when that length is zero
+     * @param offset
+     *            where the scratch starts in t
+     * @return length of r
+     */
+    static int multiply(int[] a, int aLen, int[] b, int bLen, int[] r,
+            int[] t, int offset) {
+        assert r != a && r != b : "Violation of: r is not an operand";
+        if (aLen == 0 || bLen == 0) {
+            return 0;
+        }
+        MultiplyArithmetic.multiply(a, 0, aLen, b, 0, bLen, r, 0, t, offset);
+        return normalize(r, aLen + bLen);
+    }
+
+    /**
+     * Reports how much scratch {@code multiply} needs for factors of up to
+     * len limbs; zero when they are short enough for the schoolbook method.
+     *
+     * @param len
+     *            length of the longer factor
+     * @return scratch length in limbs
+     */
+    static int multiplyScratchLength(int len) {
+        return MultiplyArithmetic.scratchLength(len);
+    }
+
+    /**
+     * Divides a by a single positive limb, computing q = a / d.
+     *
+     * @param a
+     *            dividend
+     * @param aLen
+     *            its length
+     * @param d
+     *            unsigned divisor limb, not zero
+     * @param q
+     *            quotient, with room for aLen limbs (may be null when only
+     *            the remainder is wanted)
+     * @return a mod d, as an unsigned value
+     */
+    static long divideInt(int[] a, int aLen, int d, int[] q) {
+        assert d != 0 : "Violation of: d /= 0";
+        long dd = d & MASK;
+        long rem = 0;
+        if (d > 0) {
+            /*
+             * Divisor below 2^31 keeps every partial dividend below 2^63, so
+             * signed division is exact and cheaper than the unsigned form
+             */
+            for (int i = aLen - 1; i >= 0; i--) {
+                long cur = (rem << LIMB_BITS) | (a[i] & MASK);
+                if (q != null) {
+                    q[i] = (int) (cur / dd);
+                }
+                rem = cur % dd;
+            }
+        } else {
+            for (int i = aLen - 1; i >= 0; i--) {
+                long cur = (rem << LIMB_BITS) | (a[i] & MASK);
+                if (q != null) {
+                    q[i] = (int) Long.divideUnsigned(cur, dd);
+                }
+                rem = Long.remainderUnsigned(cur, dd);
+            }
+        }
+        return rem;
+    }
+
+    /**
+     * Computes q = a / b and r = a mod b with Knuth's Algorithm D, allocating
+     * its own scratch space.
+     *
+     * @param a
+     *            dividend
+     * @param aLen
+     *            its length
+     * @param b
+     *            divisor
+     * @param bLen
+     *            its length, positive
+     * @param q
+     *            quotient, with room for aLen - bLen + 1 limbs, or null
+     * @param r
+     *            remainder, with room for bLen limbs; must not be q
+     * @return length of r
+     */
+    static int divide(int[] a, int aLen, int[] b, int bLen, int[] q,
+            int[] r) {
+        return divide(a, aLen, b, bLen, q, r, new int[aLen + 1],
+                new int[bLen]);
+    }
+
+    /**
+     * Computes q = a / b and r = a mod b with Knuth's Algorithm D.
+     *
+     * @param a
+     *            dividend
+     * @param aLen
+     *            its length
+     * @param b
+     *            divisor
+     * @param bLen
+     *            its length, positive
+     * @param q
+     *            quotient, with room for aLen - bLen + 1 limbs, or null;
+     *            limbs above the quotient length are zeroed
+     * @param r
+     *            remainder, with room for bLen limbs; must not be q
+     * @param un
+     *            scratch, with room for aLen + 1 limbs
+     * @param vn
+     *            scratch, with room for bLen limbs
+     * @return length of r
+     */
+    static int divide(int[] a, int aLen, int[] b, int bLen, int[] q, int[] r,
+            int[] un, int[] vn) {
+        assert bLen > 0 && b[bLen - 1] != 0 : "Violation of: b > 0";
+        if (compare(a, aLen, b, bLen) < 0) {
+            if (q != null) {
+                for (int i = 0; i <= aLen - bLen; i++) {
+                    q[i] = 0;
+                }
+            }
+            System.arraycopy(a, 0, r, 0, aLen);
+            return aLen;
+        }
+        if (bLen == 1) {
+            long rem = divideInt(a, aLen, b[0], q);
+            r[0] = (int) rem;
+            return rem == 0 ? 0 : 1;
+        }
+        /*
+         * Normalize so the divisor's top bit is set; this bounds each
+         * estimated quotient digit to within 2 of the true digit
+         */
+        int s = Integer.numberOfLeadingZeros(b[bLen - 1]);
+        shiftLeftInto(b, bLen, s, vn);
+        un[aLen] = shiftLeftInto(a, aLen, s, un);
+        return divideNormalized(un, aLen, vn, bLen, s, q, r);
+    }
+
+    /**
+     * Computes the divisor half of Knuth's Algorithm D normalization, for
+     * callers that divide many times by the same divisor.
+     *
+     * @param b
+     *            divisor, of at least 2 limbs
+     * @param bLen
+     *            its normalized length
+     * @param vn
+     *            result: b shifted left so its top bit is set, bLen limbs
+     * @return the shift applied
+     */
+    static int normalizeDivisor(int[] b, int bLen, int[] vn) {
+        int s = Integer.numberOfLeadingZeros(b[bLen - 1]);
+        shiftLeftInto(b, bLen, s, vn);
+        return s;
+    }
+
+    /**
+     * Prepares a dividend in place for {@code divideNormalized}: shifts its
+     * aLen limbs left by s and stores the overflow limb at index aLen.
+     *
+     * @param a
+     *            dividend, with room for aLen + 1 limbs
+     * @param aLen
+     *            its length
+     * @param s
+     *            shift returned by {@code normalizeDivisor}
+     */
+    static void normalizeDividend(int[] a, int aLen, int s) {
+        if (aLen == 0) {
+            a[0] = 0;
+        } else {
+            a[aLen] = shiftLeftInto(a, aLen, s, a);
+        }
+    }
+
+    /**
+     * Runs the main loop of Knuth's Algorithm D on operands already
+     * normalized by {@code normalizeDivisor} and {@code normalizeDividend}.
+     *
+     * @param un
+     *            normalized dividend, aLen + 1 limbs; destroyed
+     * @param aLen
+     *            length of the dividend before normalization, at least bLen
+     * @param vn
+     *            normalized divisor
+     * @param bLen
+     *            its length, at least 2
+     * @param s
+     *            normalization shift
+     * @param q
+     *            quotient, with room for aLen - bLen + 1 limbs, or null
+     * @param r
+     *            remainder, with room for bLen limbs; may be un
+     * @return length of r
+     */
+    static int divideNormalized(int[] un, int aLen, int[] vn, int bLen, int s,
+            int[] q, int[] r) {
+        long vTop = vn[bLen - 1] & MASK;
+        long vNext = vn[bLen - 2] & MASK;
+        for (int j = aLen - bLen; j >= 0; j--) {
+            long num = ((un[j + bLen] & MASK) << LIMB_BITS)
+                    | (un[j + bLen - 1] & MASK);
+            long qhat = Long.divideUnsigned(num, vTop);
+            long rhat = num - qhat * vTop;
+            while (qhat > MASK || Long.compareUnsigned(qhat * vNext,
+                    (rhat << LIMB_BITS) | (un[j + bLen - 2] & MASK)) > 0) {
+                qhat--;
+                rhat += vTop;
+                if (rhat > MASK) {
+                    break;
+                }
+            }
+            /*
+             * Multiply and subtract qhat * vn from the current window of un
+             */
+            long borrow = 0;
+            long t;
+            for (int i = 0; i < bLen; i++) {
+                long p = qhat * (vn[i] & MASK);
+                t = (un[i + j] & MASK) - borrow - (p & MASK);
+                un[i + j] = (int) t;
+                borrow = (p >>> LIMB_BITS) - (t >> LIMB_BITS);
+            }
+            t = (un[j + bLen] & MASK) - borrow;
+            un[j + bLen] = (int) t;
+            if (t < 0) {
+                /*
+                 * qhat was one too large (probability about 2 / 2^32): add
+                 * the divisor back
+                 */
+                qhat--;
+                long carry = 0;
+                for (int i = 0; i < bLen; i++) {
+                    carry += (un[i + j] & MASK) + (vn[i] & MASK);
+                    un[i + j] = (int) carry;
+                    carry >>>= LIMB_BITS;
+                }
+                un[j + bLen] += (int) carry;
+            }
+            if (q != null) {
+                q[j] = (int) qhat;
+            }
+        }
+        /*
+         * Denormalize the remainder
+         */
+        if (s == 0) {
+            System.arraycopy(un, 0, r, 0, bLen);
+        } else {
+            for (int i = 0; i < bLen - 1; i++) {
+                r[i] = (un[i] >>> s) | (un[i + 1] << (LIMB_BITS - s));
+            }
+            r[bLen - 1] = un[bLen - 1] >>> s;
+        }
+        return normalize(r, bLen);
+    }
+
+    /**
+     * Shifts a left by fewer than 32 bits into r without growing it, and
+     * returns the bits shifted out of the top limb.
+     *
+     * @param a
+     *            source
+     * @param aLen
+     *            its length
+     * @param s
+     *            shift, 0 <= s < 32
+     * @param r
+     *            result, with room for aLen limbs
+     * @return the limb shifted out at the top
+     */
+    private static int shiftLeftInto(int[] a, int aLen, int s, int[] r) {
+        if (s == 0) {
+            System.arraycopy(a, 0, r, 0, aLen);
+            return 0;
+        }
+        int out = a[aLen - 1] >>> (LIMB_BITS - s);
+        for (int i = aLen - 1; i > 0; i--) {
+            r[i] = (a[i] << s) | (a[i - 1] >>> (LIMB_BITS - s));
+        }
+        r[0] = a[0] << s;
+        return out;
+    }
+
+    /**
+     * Computes r = a * 2^bits.
+     *
+     * @param a
+     *            source
+     * @param aLen
+     *            its length
+     * @param bits
+     *            shift amount, non-negative
+     * @param r
+     *            result, with room for aLen + bits / 32 + 1 limbs
+     * @return length of r
+     */
+    static int shiftLeft(int[] a, int aLen, int bits, int[] r) {
+        if (aLen == 0) {
+            return 0;
+        }
+        int words = bits >>> 5;
+        int s = bits & (LIMB_BITS - 1);
+        int top = 0;
+        if (s == 0) {
+            System.arraycopy(a, 0, r, words, aLen);
+        } else {
+            top = a[aLen - 1] >>> (LIMB_BITS - s);
+            for (int i = aLen - 1; i > 0; i--) {
+                r[i + words] = (a[i] << s) | (a[i - 1] >>> (LIMB_BITS - s));
+            }
+            r[words] = a[0] << s;
+        }
+        for (int i = 0; i < words; i++) {
+            r[i] = 0;
+        }
+        int len = aLen + words;
+        if (top != 0) {
+            r[len] = top;
+            len++;
+        }
+        return len;
+    }
+
+    /**
+     * Computes r = a / 2^bits, discarding the bits shifted out.
+     *
+     * @param a
+     *            source
+     * @param aLen
+     *            its length
+     * @param bits
+     *            shift amount, non-negative
+     * @param r
+     *            result, with room for aLen limbs
+     * @return length of r
+     */
+    static int shiftRight(int[] a, int aLen, int bits, int[] r) {
+        int words = bits >>> 5;
+        if (words >= aLen) {
+            return 0;
+        }
+        int s = bits & (LIMB_BITS - 1);
+        int len = aLen - words;
+        if (s == 0) {
+            System.arraycopy(a, words, r, 0, len);
+        } else {
+            for (int i = 0; i < len - 1; i++) {
+                r[i] = (a[i + words] >>> s)
+                        | (a[i + words + 1] << (LIMB_BITS - s));
+            }
+            r[len - 1] = a[aLen - 1] >>> s;
+        }
+        return normalize(r, len);
+    }
+
+    /**
+     * Reports the number of significant bits in a.
+     *
+     * @param a
+     *            the magnitude
+     * @param aLen
+     *            its normalized length
+     * @return bit length of a (0 for zero)
+     */
+    static int bitLength(int[] a, int aLen) {
+        if (aLen == 0) {
+            return 0;
+        }
+        return aLen * LIMB_BITS - Integer.numberOfLeadingZeros(a[aLen - 1]);
+    }
+
+    /**
+     * Reports whether bit i of a is set.
+     *
+     * @param a
+     *            the magnitude
+     * @param aLen
+     *            its length
+     * @param i
+     *            bit index, non-negative
+     * @return true iff bit i of a is 1
+     */
+    static boolean testBit(int[] a, int aLen, int i) {
+        int word = i >>> 5;
+        return word < aLen && ((a[word] >>> (i & (LIMB_BITS - 1))) & 1) != 0;
+    }
+
+    /**
+     * Parses a decimal string of digits into limbs.
+     *
+     * @param s
+     *            decimal digits, without sign or leading zeros
+     * @return the limbs, normalized so the array length is the magnitude's
+     *         length
+     */
+    static int[] fromDecimal(String s) {
+        int[] r = new int[s.length() / DECIMAL_CHUNK_DIGITS + 2];
+        int len = 0;
+        int first = s.length() % DECIMAL_CHUNK_DIGITS;
+        if (first == 0) {
+            first = DECIMAL_CHUNK_DIGITS;
+        }
+        for (int pos = 0; pos < s.length(); pos += first,
+                first = DECIMAL_CHUNK_DIGITS) {
+            int chunk = Integer.parseInt(s.substring(pos, pos + first));
+            int scale = first == DECIMAL_CHUNK_DIGITS ? DECIMAL_CHUNK
+                    : (int) Math.pow(10, first);
+            len = multiplyInt(r, len, scale, chunk, r);
+        }
+        int[] exact = new int[len];
+        System.arraycopy(r, 0, exact, 0, len);
+        return exact;
+    }
+
+    /**
+     * Formats a magnitude as a decimal string.
+     *
+     * @param a
+     *            the magnitude
+     * @param aLen
+     *            its normalized length
+     * @return decimal digits of a, "0" for zero
+     */
+    static String toDecimal(int[] a, int aLen) {
+        if (aLen == 0) {
+            return "0";
+        }
+        int[] work = new int[aLen];
+        System.arraycopy(a, 0, work, 0, aLen);
+        int len = aLen;
+        int[] chunks = new int[aLen * 2 + 1];
+        int count = 0;
+        while (len > 0) {
+            chunks[count] = (int) divideInt(work, len, DECIMAL_CHUNK, work);
+            count++;
+            len = normalize(work, len);
+        }
+        StringBuilder sb = new StringBuilder(count * DECIMAL_CHUNK_DIGITS);
+        sb.append(chunks[count - 1]);
+        for (int i = count - 2; i >= 0; i--) {
+            String part = Integer.toString(chunks[i]);
+            for (int k = part.length(); k < DECIMAL_CHUNK_DIGITS; k++) {
+                sb.append('0');
+            }
+            sb.append(part);
+        }
+        return sb.toString();
+    }
+
+}
@@ -0,0 +1,560 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import components.naturalnumber.NaturalNumber;
+
+/**
+ * Miller-Rabin strong probable-prime test for one odd number n.
+ *
+ * <p>
+ * Construction factors n - 1 = 2^s * d and recodes d once and builds a
+ * Montgomery context for n, so each base then costs a single exponentiation
+ * a^d mod n followed by at most s - 1 squarings. Numbers below 2^64 are
+ * decided exactly with a fixed base set; larger ones use random bases.
+ * </p>
+ *
+ * <p>
+ * How many random bases depends on where n came from. A composite passes one
+ * round with probability at most 1/4 whatever it is, and much less for most
+ * composites, so a random candidate from a prime search needs only the few
+ * rounds FIPS 186-5 sets for its bit length. A number supplied from outside
+ * may have been built to reach the 1/4 bound, and gets
+ * {@code WORST_CASE_ROUNDS} rounds.
+ * </p>
+ *
+ * <p>
+ * The rounds are independent, so {@code isProbablePrime(ExecutorService)} can
+ * run them concurrently and stop at the first witness. Random bases come from
+ * {@code SecureRandomNumbers}, which keeps a generator per thread, so tests
+ * may run on any number of threads at once. An {@code ArithmeticWorkspace}
+ * keeps one test of its own, which it rebinds to each number it checks, and
+ * draws the bases from its own generator instead.
+ * </p>
+ *
+ * @author Jamal Aden
+ *
+ */
+public final class MillerRabin {
+
+    /**
+     * Bases that make the test exact for every n < 3.3 * 10^24, which covers
+     * all n < 2^64.
+     */
+    private static final int[] DETERMINISTIC_BASES = {2, 3, 5, 7, 11, 13, 17,
+        19, 23, 29, 31, 37};
+
+    /**
+     * Bit length at or below which {@code DETERMINISTIC_BASES} are used.
+     */
+    private static final int DETERMINISTIC_BITS = 64;
+
+    /**
+     * Minimum bit lengths for the round counts in {@code ROUNDS}.
+     */
+    private static final int[] ROUNDS_MIN_BITS = {1536, 1024, 512, 256, 0};
+
+    /**
+     * Random-base rounds keeping the error probability for a random odd
+     * candidate below 2^-100; at each size at least the minimum FIPS 186-5
+     * sets for prime generation. They bound nothing for chosen composites.
+     */
+    private static final int[] ROUNDS = {4, 5, 7, 16, 40};
+
+    /**
+     * Random-base rounds for a number that is not a random candidate: at
+     * most 4^-50 = 2^-100 error for every composite.
+     */
+    public static final int WORST_CASE_ROUNDS = 50;
+
+    /**
+     * The limb 2, added to each random base.
+     */
+    private static final int[] TWO = {2};
+
+    /**
+     * The limb 4, subtracted from n to bound the random bases.
+     */
+    private static final int[] FOUR = {4};
+
+    /**
+     * The number being tested, as limbs; at least {@code length} long.
+     */
+    private final int[] n;
+
+    /**
+     * Normalized length of n.
+     */
+    private int length;
+
+    /**
+     * Odd part of n - 1.
+     */
+    private final int[] d;
+
+    /**
+     * Number of factors of 2 in n - 1.
+     */
+    private int s;
+
+    /**
+     * d cut into sliding windows, once for all of the bases.
+     */
+    private final ModularContext.Recoding exponent;
+
+    /**
+     * Montgomery context for n.
+     */
+    private final ModularContext context;
+
+    /**
+     * Residue of 1 in {@code context}.
+     */
+    private final int[] one;
+
+    /**
+     * Residue of n - 1 in {@code context}.
+     */
+    private final int[] minusOne;
+
+    /**
+     * Prepares the test for {@code n}.
+     *
+     * @param n
+     *            the number to be tested
+     * @requires n > 3 and n is odd
+     */
+    public MillerRabin(NaturalNumber n) {
+        this(NaturalNumberLimbs.valueOf(n).toLimbs(), new MontgomeryContext(n));
+    }
+
+    /**
+     * Prepares the test for the number whose limbs are {@code n}, reusing an
+     * existing Montgomery context for it.
+     *
+     * @param n
+     *            limbs of the number to be tested, normalized
+     * @param context
+     *            Montgomery context for n
+     */
+    MillerRabin(int[] n, MontgomeryContext context) {
+        this(context, n.length);
+        this.setNumber(n, n.length, new int[context.scratchLength()]);
+    }
+
+    /**
+     * Builds an unbound test with room for numbers of up to
+     * {@code capacity} limbs, for an {@code ArithmeticWorkspace} to
+     * {@code bind} to each number it tests.
+     *
+     * @param context
+     *            Montgomery context, which the workspace rebinds to each
+     *            number before the test
+     * @param capacity
+     *            largest number length, in limbs
+     */
+    MillerRabin(ModularContext context, int capacity) {
+        this.context = context;
+        this.n = new int[capacity];
+        this.d = new int[capacity];
+        this.one = new int[capacity];
+        this.minusOne = new int[capacity];
+        this.exponent = new ModularContext.Recoding(
+                capacity * LimbArithmetic.LIMB_BITS);
+    }
+
+    /**
+     * Rebinds this test to the number with limbs {@code n}, for a Montgomery
+     * context already rebound to n; allocates nothing.
+     *
+     * @param n
+     *            limbs of the number to be tested
+     * @param nLen
+     *            normalized length of n, at most the capacity
+     * @param t
+     *            scratch of {@code MontgomeryContext.scratchLength(nLen)}
+     *            limbs
+     * @requires n > 3 and n is odd and [the context is bound to n]
+     */
+    void bind(int[] n, int nLen, int[] t) {
+        this.setNumber(n, nLen, t);
+    }
+
+    /**
+     * Factors n - 1 = 2^s * d and sets up the residues of 1 and n - 1, for a
+     * context already bound to n.
+     *
+     * @param n
+     *            limbs of the number to be tested
+     * @param nLen
+     *            normalized length of n
+     * @param t
+     *            scratch of {@code context.scratchLength()} limbs
+     */
+    private void setNumber(int[] n, int nLen, int[] t) {
+        assert nLen > 0 && (n[0] & 1) == 1 : "Violation of: n is odd";
+        assert LimbArithmetic.bitLength(n, nLen) > 2 : ""
+                + "Violation of: n > 3";
+        System.arraycopy(n, 0, this.n, 0, nLen);
+        this.length = nLen;
+        int[] nMinusOne = this.minusOne;
+        System.arraycopy(n, 0, nMinusOne, 0, nLen);
+        nMinusOne[0]--;
+        int zeros = 0;
+        while (!LimbArithmetic.testBit(nMinusOne, nLen, zeros)) {
+            zeros++;
+        }
+        this.s = zeros;
+        int dLen = LimbArithmetic.shiftRight(nMinusOne, nLen, zeros, this.d);
+        assert dLen > 0;
+        this.exponent.recode(this.d, dLen);
+        this.context.one(this.one);
+        this.context.toResidue(nMinusOne,
+                LimbArithmetic.normalize(nMinusOne, nLen), this.minusOne, t);
+    }
+
+    /**
+     * Reports the number of random-base rounds used for numbers of the given
+     * size.
+     *
+     * @param bits
+     *            bit length of the number being tested
+     * @param randomCandidate
+     *            whether the number is a random candidate of a prime search,
+     *            rather than one that may have been chosen adversarially
+     * @return number of rounds
+     */
+    public static int roundsFor(int bits, boolean randomCandidate) {
+        if (!randomCandidate) {
+            return WORST_CASE_ROUNDS;
+        }
+        int i = 0;
+        while (bits < ROUNDS_MIN_BITS[i]) {
+            i++;
+        }
+        return ROUNDS[i];
+    }
+
+    /**
+     * Reports whether {@code a} is a strong witness that n is composite.
+     *
+     * @param a
+     *            the base
+     * @return true iff a proves n composite
+     * @requires 1 < a < n - 1
+     * @ensures <pre>
+     * isStrongWitness = (a ^ d mod n /= 1  and
+     *     for all 0 <= r < s: a ^ (2^r * d) mod n /= n - 1)
+     * </pre>
+     */
+    public boolean isStrongWitness(NaturalNumber a) {
+        NaturalNumberLimbs localA = NaturalNumberLimbs.valueOf(a);
+        return this.isStrongWitness(localA.limbArray(), localA.limbCount(),
+                new int[this.context.scratchLength()]);
+    }
+
+    /**
+     * Reports whether the base with limbs {@code a} is a strong witness that n
+     * is composite.
+     *
+     * @param a
+     *            limbs of the base
+     * @param aLen
+     *            normalized length of a
+     * @param t
+     *            scratch of {@code context.scratchLength()} limbs
+     * @return true iff a proves n composite
+     */
+    boolean isStrongWitness(int[] a, int aLen, int[] t) {
+        int w = this.context.width();
+        return this.isStrongWitness(a, aLen,
+                new int[this.exponent.tableSize()][w], new int[w], t);
+    }
+
+    /**
+     * Reports whether the base with limbs {@code a} is a strong witness that n
+     * is composite, working only in the given buffers.
+     *
+     * @param a
+     *            limbs of the base
+     * @param aLen
+     *            normalized length of a
+     * @param table
+     *            scratch: at least {@code exponent.tableSize()} residues
+     * @param x
+     *            scratch residue
+     * @param t
+     *            scratch of {@code context.scratchLength()} limbs
+     * @return true iff a proves n composite
+     */
+    boolean isStrongWitness(int[] a, int aLen, int[][] table,
+            int[] x, int[] t) {
+        int w = this.context.width();
+        this.context.toResidue(a, aLen, table[0], t);
+        this.context.power(table[0], this.exponent, table, x, t);
+        boolean counting = CryptoMetrics.isEnabled();
+        if (counting) {
+            CryptoMetrics.recordWitnessTest();
+        }
+        if (sameResidue(x, this.one, w) || sameResidue(x, this.minusOne, w)) {
+            return false;
+        }
+        for (int r = 1; r < this.s; r++) {
+            this.context.multiply(x, x, x, t);
+            if (counting) {
+                CryptoMetrics.recordMultiplications(1);
+            }
+            if (sameResidue(x, this.minusOne, w)) {
+                return false;
+            }
+            if (sameResidue(x, this.one, w)) {
+                /*
+                 * A nontrivial square root of 1 was just squared away
+                 */
+                return true;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reports whether two residues are equal.
+     *
+     * @param x
+     *            one residue
+     * @param y
+     *            the other residue
+     * @param width
+     *            number of limbs in a residue
+     * @return true iff x = y
+     */
+    private static boolean sameResidue(int[] x, int[] y, int width) {
+        for (int i = 0; i < width; i++) {
+            if (x[i] != y[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reports how many bases are tried: those of the fixed set that lie in
+     * [2, n - 2] below 2^64, otherwise
+     * {@code roundsFor(bitLength(n), randomCandidate)}.
+     *
+     * @param randomCandidate
+     *            whether n is a random candidate of a prime search
+     * @return number of bases
+     */
+    private int baseCount(boolean randomCandidate) {
+        int bits = LimbArithmetic.bitLength(this.n, this.length);
+        if (bits > DETERMINISTIC_BITS) {
+            return roundsFor(bits, randomCandidate);
+        }
+        int count = 0;
+        for (int base : DETERMINISTIC_BASES) {
+            /*
+             * Only bases in [2, n - 2] are meaningful; skipping the rest is
+             * safe because base 2 alone decides every n < 2047
+             */
+            if (bits > LimbArithmetic.LIMB_BITS
+                    || base + 1L < (this.n[0] & LimbArithmetic.MASK)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Chooses the bases to try: the fixed set below 2^64, otherwise bases
+     * drawn uniformly from [2, n - 2]. Each base fills {@code length + 1}
+     * limbs, zero-padded.
+     *
+     * @param bases
+     *            where the bases go, at least {@code count} of them, each
+     *            with room for {@code length + 1} limbs
+     * @param count
+     *            number of bases, from {@code baseCount}
+     * @param bound
+     *            scratch of {@code length} limbs
+     * @param random
+     *            the generator to draw random bases from, or null to draw
+     *            them from {@code SecureRandom}
+     */
+    private void chooseBases(int[][] bases, int count, int[] bound,
+            ChaCha20Random random) {
+        int len = this.length;
+        int bits = LimbArithmetic.bitLength(this.n, len);
+        if (bits <= DETERMINISTIC_BITS) {
+            int k = 0;
+            for (int base : DETERMINISTIC_BASES) {
+                if (k < count) {
+                    int[] a = bases[k];
+                    a[0] = base;
+                    for (int i = 1; i <= len; i++) {
+                        a[i] = 0;
+                    }
+                    k++;
+                }
+            }
+        } else {
+            /*
+             * Bases uniform in [2, n - 2], all drawn in one batch
+             */
+            LimbArithmetic.subtract(this.n, len, FOUR, 1, bound);
+            int boundLen = LimbArithmetic.normalize(bound, len);
+            if (random == null) {
+                SecureRandomNumbers.uniform(bound, boundLen, bases);
+            } else {
+                SecureRandomNumbers.uniform(bound, boundLen, bases, count,
+                        random);
+            }
+            for (int k = 0; k < count; k++) {
+                int[] a = bases[k];
+                for (int i = boundLen; i <= len; i++) {
+                    a[i] = 0;
+                }
+                LimbArithmetic.add(a, LimbArithmetic.normalize(a, len), TWO,
+                        1, a);
+            }
+        }
+    }
+
+    /**
+     * Chooses the bases to try for a number that may have been chosen
+     * adversarially, into new arrays.
+     *
+     * @return the bases, as limbs
+     */
+    private int[][] bases() {
+        int count = this.baseCount(false);
+        int[][] bases = new int[count][this.length + 1];
+        this.chooseBases(bases, count, new int[this.length], null);
+        return bases;
+    }
+
+    /**
+     * Reports whether n is a probable prime: exactly for n < 2^64, and
+     * otherwise with {@code WORST_CASE_ROUNDS} random bases.
+     *
+     * @return true means n is very likely prime; false means n is definitely
+     *         composite
+     */
+    public boolean isProbablePrime() {
+        int[] t = new int[this.context.scratchLength()];
+        boolean probablePrime = true;
+        for (int[] a : this.bases()) {
+            if (probablePrime) {
+                probablePrime = !this.isStrongWitness(a,
+                        LimbArithmetic.normalize(a, a.length), t);
+            }
+        }
+        return probablePrime;
+    }
+
+    /**
+     * Reports whether n is a strong probable prime to base 2, a single round
+     * with the buffers taken from {@code workspace}: the cheapest way to
+     * throw out most composites before a full test.
+     *
+     * @param workspace
+     *            the buffers to work in
+     * @return false means n is definitely composite
+     */
+    boolean isBaseTwoProbablePrime(ArithmeticWorkspace workspace) {
+        int w = this.context.width();
+        return !this.isStrongWitness(TWO, 1, workspace.table(w),
+                workspace.accumulator(w),
+                workspace.scratch(this.context.scratchLength()));
+    }
+
+    /**
+     * Reports whether n is a probable prime, like {@code isProbablePrime()},
+     * but with every buffer, and the generator of the random bases, taken
+     * from {@code workspace}, and with only
+     * {@code roundsFor(bitLength(n), true)} rounds when n is a random
+     * candidate; once the workspace has grown to the size of n this
+     * allocates nothing.
+     *
+     * @param workspace
+     *            the buffers to work in
+     * @param randomCandidate
+     *            whether n is a random candidate of a prime search
+     * @return true means n is very likely prime; false means n is definitely
+     *         composite
+     */
+    boolean isProbablePrime(ArithmeticWorkspace workspace,
+            boolean randomCandidate) {
+        int w = this.context.width();
+        int count = this.baseCount(randomCandidate);
+        int[][] bases = workspace.bases(count, this.length + 1);
+        this.chooseBases(bases, count, workspace.spare(this.length),
+                workspace.random());
+        int[][] table = workspace.table(w);
+        int[] x = workspace.accumulator(w);
+        int[] t = workspace.scratch(this.context.scratchLength());
+        boolean probablePrime = true;
+        for (int k = 0; k < count && probablePrime; k++) {
+            int[] a = bases[k];
+            probablePrime = !this.isStrongWitness(a,
+                    LimbArithmetic.normalize(a, this.length + 1), table, x,
+                    t);
+        }
+        return probablePrime;
+    }
+
+    /**
+     * Reports whether n is a probable prime, like {@code isProbablePrime()},
+     * but with the rounds run as tasks on {@code executor}. As soon as one
+     * round finds a witness the remaining rounds are cancelled.
+     *
+     * @param executor
+     *            the executor to run the rounds on
+     * @return true means n is very likely prime; false means n is definitely
+     *         composite
+     * @throws CancellationException
+     *             if the calling thread is interrupted while waiting; its
+     *             interrupt status is set again
+     */
+    public boolean isProbablePrime(ExecutorService executor) {
+        assert executor != null : "Violation of: executor is not null";
+        CompletionService<Boolean> rounds = new ExecutorCompletionService<>(
+                executor);
+        List<Future<Boolean>> pending = new ArrayList<>();
+        for (int[] a : this.bases()) {
+            pending.add(rounds.submit(() -> this.isStrongWitness(a,
+                    LimbArithmetic.normalize(a, a.length),
+                    new int[this.context.scratchLength()])));
+        }
+        boolean probablePrime = true;
+        try {
+            for (int i = 0; i < pending.size() && probablePrime; i++) {
+                probablePrime = !rounds.take().get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException(
+                    "Interrupted while waiting for witness rounds");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        } finally {
+            for (Future<Boolean> round : pending) {
+                round.cancel(true);
+            }
+        }
+        return probablePrime;
+    }
+
+}
@@ -0,0 +1,817 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import components.naturalnumber.NaturalNumber;
+
+/**
+ * Modular arithmetic for one fixed modulus m, with the exponentiation built
+ * on top of it.
+ *
+ * <p>
+ * Subclasses choose how residues are represented and reduced (plain division,
+ * Barrett, Montgomery form), and {@code create} picks one by
+ * {@code Reduction} strategy; every residue is an {@code int[]} of exactly
+ * {@code width()} little-endian limbs. The exponentiation here is an
+ * iterative left-to-right sliding-window method: it scans the exponent's bits
+ * directly, precomputes the odd powers of the base up to the window size, and
+ * allocates nothing per exponent bit.
+ * </p>
+ *
+ * <p>
+ * For a product of several powers, {@code multiPowerMod} interleaves the
+ * exponentiations so that they share one chain of squarings.
+ * </p>
+ *
+ * <p>
+ * For many bases under one exponent, the batch {@code powerMod} overloads
+ * recode the exponent into windows once and then run through the bases in
+ * chunks, each chunk with one set of scratch buffers, optionally spread over
+ * a fork-join pool.
+ * </p>
+ *
+ * @author Jamal Aden
+ *
+ */
+public abstract class ModularContext {
+
+    /**
+     * Exponent bit lengths above which the window size in the same position
+     * of {@code WINDOW_SIZES} pays off (the usual thresholds minimizing
+     * squarings plus multiplications, table setup included).
+     */
+    private static final int[] WINDOW_THRESHOLDS = {671, 239, 79, 23};
+
+    /**
+     * Window sizes matching {@code WINDOW_THRESHOLDS}.
+     */
+    private static final int[] WINDOW_SIZES = {6, 5, 4, 3};
+
+    /**
+     * Most odd powers of the base any recoding's table holds, for the
+     * largest of {@code WINDOW_SIZES}.
+     */
+    static final int MAX_TABLE_SIZE = 1 << (6 - 1);
+
+    /**
+     * Number of bases a batch task handles with one set of scratch buffers;
+     * also the smallest piece a parallel batch is split into.
+     */
+    static final int BATCH_CHUNK = 64;
+
+    /**
+     * An exponent cut into sliding windows once, so that it can be applied to
+     * many bases without rescanning its bits. A recoding may also be kept and
+     * recoded again for each new exponent, which allocates nothing once it
+     * has room for the longest exponent seen.
+     */
+    static final class Recoding {
+
+        /**
+         * Window size the digits were cut for.
+         */
+        private int window;
+
+        /**
+         * Pairs (squarings, digit), most significant first: square the
+         * accumulator that many times, then multiply it by base^digit, where
+         * digit is odd, or by nothing if digit is 0. The first digit loads the
+         * accumulator instead; its squarings are not done. Only the first
+         * {@code count} entries are meaningful.
+         */
+        private int[] steps;
+
+        /**
+         * Number of meaningful entries in {@code steps}.
+         */
+        private int count;
+
+        /**
+         * Modular multiplications the steps take, squarings included.
+         */
+        private int multiplications;
+
+        /**
+         * Builds an empty recoding with room for exponents of up to
+         * {@code bits} bits, standing for the exponent 0.
+         *
+         * @param bits
+         *            largest exponent bit length expected
+         */
+        Recoding(int bits) {
+            this.window = 1;
+            this.steps = new int[2 * (bits + 1)];
+        }
+
+        /**
+         * Recodes an exponent.
+         *
+         * @param e
+         *            exponent limbs
+         * @param eLen
+         *            normalized length of e
+         */
+        Recoding(int[] e, int eLen) {
+            this(LimbArithmetic.bitLength(e, eLen));
+            this.recode(e, eLen);
+        }
+
+        /**
+         * Replaces the recoded exponent by e, growing the steps only if e is
+         * longer than any exponent recoded before.
+         *
+         * @param e
+         *            exponent limbs
+         * @param eLen
+         *            normalized length of e
+         */
+        void recode(int[] e, int eLen) {
+            int bits = LimbArithmetic.bitLength(e, eLen);
+            this.window = windowSize(bits);
+            if (this.steps.length < 2 * (bits + 1)) {
+                this.steps = new int[2 * (bits + 1)];
+            }
+            int[] pairs = this.steps;
+            int pairCount = 0;
+            int squarings = 0;
+            int i = bits - 1;
+            while (i >= 0) {
+                if (!LimbArithmetic.testBit(e, eLen, i)) {
+                    squarings++;
+                    i--;
+                } else {
+                    /*
+                     * Longest window e[i..l] of at most k bits ending in a 1
+                     */
+                    int l = Math.max(i - this.window + 1, 0);
+                    while (!LimbArithmetic.testBit(e, eLen, l)) {
+                        l++;
+                    }
+                    int value = 0;
+                    for (int j = i; j >= l; j--) {
+                        value = (value << 1)
+                                | (LimbArithmetic.testBit(e, eLen, j) ? 1 : 0);
+                    }
+                    pairs[pairCount] = squarings + i - l + 1;
+                    pairs[pairCount + 1] = value;
+                    pairCount += 2;
+                    squarings = 0;
+                    i = l - 1;
+                }
+            }
+            if (squarings > 0) {
+                pairs[pairCount] = squarings;
+                pairs[pairCount + 1] = 0;
+                pairCount += 2;
+            }
+            this.count = pairCount;
+            int products = 0;
+            for (int s = 2; s < pairCount; s += 2) {
+                products += pairs[s] + (pairs[s + 1] != 0 ? 1 : 0);
+            }
+            this.multiplications = products;
+        }
+
+        /**
+         * Reports the number of odd powers of the base the table needs.
+         *
+         * @return table size
+         */
+        int tableSize() {
+            return 1 << (this.window - 1);
+        }
+
+    }
+
+    /**
+     * How a context reduces products modulo m.
+     */
+    public enum Reduction {
+        /**
+         * Montgomery for odd moduli, Barrett for even ones: the fastest
+         * available for every modulus.
+         */
+        AUTO,
+        /**
+         * Montgomery multiplication; odd moduli only.
+         */
+        MONTGOMERY,
+        /**
+         * Barrett reduction with a precomputed reciprocal.
+         */
+        BARRETT,
+        /**
+         * Long division of every product.
+         */
+        DIVISION
+    }
+
+    /**
+     * Constructor for subclasses in this package.
+     */
+    ModularContext() {
+    }
+
+    /**
+     * Builds the fastest context for modulus {@code m}, as
+     * {@code create(m, Reduction.AUTO)} does.
+     *
+     * @param m
+     *            the modulus
+     * @return a context for m
+     * @requires m > 1
+     */
+    public static ModularContext create(NaturalNumber m) {
+        return create(m, Reduction.AUTO);
+    }
+
+    /**
+     * Builds a context for modulus {@code m} that reduces products as
+     * {@code strategy} says.
+     *
+     * @param m
+     *            the modulus
+     * @param strategy
+     *            the reduction strategy
+     * @return a context for m
+     * @requires m > 1 and [m is odd if strategy = MONTGOMERY]
+     */
+    public static ModularContext create(NaturalNumber m,
+            Reduction strategy) {
+        assert m != null : "Violation of: m is not null";
+        assert strategy != null : "Violation of: strategy is not null";
+        NaturalNumberLimbs localM = NaturalNumberLimbs.valueOf(m);
+        ModularContext context;
+        switch (strategy) {
+            case MONTGOMERY:
+                context = new MontgomeryContext(localM);
+                break;
+            case BARRETT:
+                context = new BarrettContext(localM);
+                break;
+            case DIVISION:
+                context = new DivisionContext(localM);
+                break;
+            default:
+                /*
+                 * Montgomery needs an odd modulus but beats Barrett as soon as
+                 * there is one exponentiation to amortize its conversions
+                 * over; Barrett beats long division everywhere
+                 */
+                if (localM.isOdd()) {
+                    context = new MontgomeryContext(localM);
+                } else {
+                    context = new BarrettContext(localM);
+                }
+                break;
+        }
+        return context;
+    }
+
+    /**
+     * Returns the modulus this context reduces by.
+     *
+     * @return the modulus m
+     */
+    public abstract NaturalNumber modulus();
+
+    /**
+     * Reports the number of limbs in a residue.
+     *
+     * @return limb width of residues
+     */
+    abstract int width();
+
+    /**
+     * Reports the scratch length {@code multiply}, {@code toResidue} and
+     * {@code fromResidue} need.
+     *
+     * @return scratch length in limbs
+     */
+    abstract int scratchLength();
+
+    /**
+     * Computes the residue of the product of two residues.
+     *
+     * @param x
+     *            first residue
+     * @param y
+     *            second residue
+     * @param r
+     *            result residue; may be x or y
+     * @param t
+     *            scratch of {@code scratchLength()} limbs
+     */
+    abstract void multiply(int[] x, int[] y, int[] r, int[] t);
+
+    /**
+     * Converts a value into a residue.
+     *
+     * @param a
+     *            the value, of any size
+     * @param aLen
+     *            its normalized length
+     * @param r
+     *            result residue
+     * @param t
+     *            scratch of {@code scratchLength()} limbs
+     */
+    abstract void toResidue(int[] a, int aLen, int[] r, int[] t);
+
+    /**
+     * Converts a residue back into the value it stands for, in [0, m).
+     *
+     * @param x
+     *            the residue
+     * @param r
+     *            result, {@code width()} limbs; may be x
+     * @param t
+     *            scratch of {@code scratchLength()} limbs
+     */
+    abstract void fromResidue(int[] x, int[] r, int[] t);
+
+    /**
+     * Sets r to the residue of 1.
+     *
+     * @param r
+     *            result residue
+     */
+    abstract void one(int[] r);
+
+    /**
+     * Chooses the sliding-window size for an exponent.
+     *
+     * @param bits
+     *            bit length of the exponent
+     * @return window size in bits, at least 1
+     */
+    static int windowSize(int bits) {
+        for (int i = 0; i < WINDOW_THRESHOLDS.length; i++) {
+            if (bits > WINDOW_THRESHOLDS[i]) {
+                return WINDOW_SIZES[i];
+            }
+        }
+        return 1;
+    }
+
+    /**
+     * Computes the residue of base^e by left-to-right sliding-window
+     * exponentiation.
+     *
+     * @param base
+     *            residue of the base
+     * @param e
+     *            exponent limbs
+     * @param eLen
+     *            normalized length of e
+     * @param result
+     *            result residue; must not be base
+     * @param t
+     *            scratch of {@code scratchLength()} limbs
+     */
+    final void power(int[] base, int[] e, int eLen, int[] result, int[] t) {
+        Recoding recoding = new Recoding(e, eLen);
+        this.power(base, recoding,
+                new int[recoding.tableSize()][this.width()], result, t);
+    }
+
+    /**
+     * Computes the residue of base^e for a recoded exponent e.
+     *
+     * @param base
+     *            residue of the base
+     * @param e
+     *            the recoded exponent
+     * @param table
+     *            scratch: at least {@code e.tableSize()} residues, for the
+     *            odd powers of base; table[0] may be base
+     * @param result
+     *            result residue; must not be base or in table
+     * @param t
+     *            scratch of {@code scratchLength()} limbs
+     */
+    final void power(int[] base, Recoding e, int[][] table, int[] result,
+            int[] t) {
+        int[] steps = e.steps;
+        int count = e.count;
+        if (count == 0) {
+            this.one(result);
+            return;
+        }
+        if (table[0] != base) {
+            System.arraycopy(base, 0, table[0], 0, this.width());
+        }
+        int size = e.tableSize();
+        this.oddPowers(table, size, result, t);
+        System.arraycopy(table[steps[1] >>> 1], 0, result, 0, this.width());
+        if (CryptoMetrics.isEnabled()) {
+            int tableProducts = size > 1 ? size : 0;
+            CryptoMetrics.recordExponentiation(
+                    e.multiplications + tableProducts);
+        }
+        for (int s = 2; s < count; s += 2) {
+            for (int j = 0; j < steps[s]; j++) {
+                this.multiply(result, result, result, t);
+            }
+            if (steps[s + 1] != 0) {
+                this.multiply(result, table[steps[s + 1] >>> 1], result, t);
+            }
+        }
+    }
+
+    /**
+     * Fills a table with the odd powers base^1, base^3, ..., base^(2 size -
+     * 1) of the base in its first entry.
+     *
+     * @param table
+     *            the table, with the base in table[0]
+     * @param size
+     *            number of odd powers wanted
+     * @param square
+     *            scratch residue, for base^2
+     * @param t
+     *            scratch of {@code scratchLength()} limbs
+     */
+    private void oddPowers(int[][] table, int size, int[] square, int[] t) {
+        if (size > 1) {
+            this.multiply(table[0], table[0], square, t);
+            for (int i = 1; i < size; i++) {
+                this.multiply(table[i - 1], square, table[i], t);
+            }
+        }
+    }
+
+    /**
+     * Computes the residue of the product of base_i^e_i for several pairs by
+     * interleaved sliding windows: each exponent keeps its own recoding and
+     * table of odd powers, and a single accumulator runs down the bits of
+     * the longest exponent, squared once per bit and multiplied by a table
+     * entry wherever one of the exponents has a window ending at that bit.
+     * The squarings are shared, so k pairs cost one exponentiation's
+     * squarings plus each exponent's window multiplications.
+     *
+     * @param tables
+     *            one table per pair, at least {@code e[i].tableSize()}
+     *            residues, with the residue of base_i in tables[i][0]
+     * @param e
+     *            the recoded exponents
+     * @param result
+     *            result residue; must not be in any table
+     * @param t
+     *            scratch of {@code scratchLength()} limbs
+     */
+    final void multiPower(int[][][] tables, Recoding[] e, int[] result,
+            int[] t) {
+        int k = e.length;
+        int w = this.width();
+
+        /*
+         * A recoding's pairs give the distance from one window's low end to
+         * the next; position[i] is the bit where the next window of e[i]
+         * ends, and next[i] the index of its pair
+         */
+        int[] next = new int[k];
+        int[] position = new int[k];
+        int top = 0;
+        long products = 0;
+        for (int i = 0; i < k; i++) {
+            int bits = 0;
+            for (int s = 0; s < e[i].count; s += 2) {
+                bits += e[i].steps[s];
+            }
+            top = Math.max(top, bits);
+            position[i] = -1;
+            if (e[i].count > 0) {
+                position[i] = bits - e[i].steps[0];
+                int size = e[i].tableSize();
+                this.oddPowers(tables[i], size, result, t);
+                products += size > 1 ? size : 0;
+            }
+        }
+        boolean started = false;
+        for (int bit = top - 1; bit >= 0; bit--) {
+            if (started) {
+                this.multiply(result, result, result, t);
+                products++;
+            }
+            for (int i = 0; i < k; i++) {
+                if (position[i] == bit) {
+                    int[] steps = e[i].steps;
+                    int digit = steps[next[i] + 1];
+                    if (digit == 0) {
+                        // Trailing squarings only; nothing to multiply in
+                        assert bit == 0;
+                    } else if (started) {
+                        this.multiply(result, tables[i][digit >>> 1], result,
+                                t);
+                        products++;
+                    } else {
+                        System.arraycopy(tables[i][digit >>> 1], 0, result, 0,
+                                w);
+                        started = true;
+                    }
+                    next[i] += 2;
+                    position[i] = -1;
+                    if (next[i] < e[i].count) {
+                        position[i] = bit - steps[next[i]];
+                    }
+                }
+            }
+        }
+        if (!started) {
+            this.one(result);
+        }
+        if (CryptoMetrics.isEnabled()) {
+            CryptoMetrics.recordExponentiation(products);
+        }
+    }
+
+    /**
+     * Updates n to its p-th power modulo this context's modulus.
+     *
+     * @param n
+     *            number to be raised to a power
+     * @param p
+     *            the power
+     * @updates n
+     * @ensures n = #n ^ (p) mod [modulus of this context]
+     */
+    public final void powerMod(NaturalNumber n, NaturalNumber p) {
+        assert n != null : "Violation of: n is not null";
+        assert p != null : "Violation of: p is not null";
+        boolean timed = CryptoMetrics.isEnabled();
+        long start = timed ? System.nanoTime() : 0;
+        NaturalNumberLimbs base = NaturalNumberLimbs.valueOf(n);
+        NaturalNumberLimbs exponent = NaturalNumberLimbs.valueOf(p);
+        int[] t = new int[this.scratchLength()];
+        int[] b = new int[this.width()];
+        int[] acc = new int[this.width()];
+        this.toResidue(base.limbArray(), base.limbCount(), b, t);
+        this.power(b, exponent.limbArray(), exponent.limbCount(), acc, t);
+        this.fromResidue(acc, acc, t);
+        NaturalNumberLimbs.assign(n, acc,
+                LimbArithmetic.normalize(acc, this.width()));
+        if (timed) {
+            CryptoMetrics.recordPowerMod(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Updates n to its p-th power modulo this context's modulus, like
+     * {@code powerMod(n, p)}, but with every buffer taken from
+     * {@code workspace}. Once the workspace has grown to the size of the
+     * operands, nothing is allocated when n and p are
+     * {@code NaturalNumberLimbs} and n is below the modulus.
+     *
+     * @param n
+     *            number to be raised to a power
+     * @param p
+     *            the power
+     * @param workspace
+     *            the buffers to work in
+     * @updates n
+     * @ensures n = #n ^ (p) mod [modulus of this context]
+     */
+    public final void powerMod(NaturalNumber n, NaturalNumber p,
+            ArithmeticWorkspace workspace) {
+        assert n != null : "Violation of: n is not null";
+        assert p != null : "Violation of: p is not null";
+        assert workspace != null : "Violation of: workspace is not null";
+        boolean timed = CryptoMetrics.isEnabled();
+        long start = timed ? System.nanoTime() : 0;
+        NaturalNumberLimbs base = NaturalNumberLimbs.valueOf(n);
+        NaturalNumberLimbs exponent = NaturalNumberLimbs.valueOf(p);
+        int w = this.width();
+        int[] t = workspace.scratch(this.scratchLength());
+        int[][] table = workspace.table(w);
+        int[] acc = workspace.accumulator(w);
+        Recoding e = workspace.recoding();
+        e.recode(exponent.limbArray(), exponent.limbCount());
+        this.toResidue(base.limbArray(), base.limbCount(), table[0], t);
+        this.power(table[0], e, table, acc, t);
+        this.fromResidue(acc, acc, t);
+        NaturalNumberLimbs.assign(n, acc, LimbArithmetic.normalize(acc, w));
+        if (timed) {
+            CryptoMetrics.recordPowerMod(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Replaces {@code result} by the product of {@code bases[i]} raised to
+     * the {@code exponents[i]}-th power, over all i, modulo this context's
+     * modulus. The exponentiations share one chain of squarings, so two or
+     * three pairs cost little more than the longest exponentiation alone.
+     *
+     * @param bases
+     *            the bases
+     * @param exponents
+     *            the powers, one per base
+     * @param result
+     *            where the product goes; may be one of the bases or powers
+     * @replaces result
+     * @requires |exponents| = |bases|
+     * @ensures <pre>
+     * result = [product of #bases[i] ^ (#exponents[i]) for all i]
+     *     mod [modulus of this context]
+     * </pre>
+     */
+    public final void multiPowerMod(NaturalNumber[] bases,
+            NaturalNumber[] exponents, NaturalNumber result) {
+        assert bases != null : "Violation of: bases is not null";
+        assert exponents != null : "Violation of: exponents is not null";
+        assert result != null : "Violation of: result is not null";
+        assert bases.length == exponents.length : ""
+                + "Violation of: |exponents| = |bases|";
+        boolean timed = CryptoMetrics.isEnabled();
+        long start = timed ? System.nanoTime() : 0;
+        int k = bases.length;
+        int w = this.width();
+        int[] t = new int[this.scratchLength()];
+        Recoding[] e = new Recoding[k];
+        int[][][] tables = new int[k][][];
+        for (int i = 0; i < k; i++) {
+            NaturalNumberLimbs exponent = NaturalNumberLimbs
+                    .valueOf(exponents[i]);
+            e[i] = new Recoding(exponent.limbArray(), exponent.limbCount());
+            tables[i] = new int[e[i].tableSize()][w];
+            NaturalNumberLimbs base = NaturalNumberLimbs.valueOf(bases[i]);
+            this.toResidue(base.limbArray(), base.limbCount(), tables[i][0],
+                    t);
+        }
+        int[] acc = new int[w];
+        this.multiPower(tables, e, acc, t);
+        this.fromResidue(acc, acc, t);
+        NaturalNumberLimbs.assign(result, acc,
+                LimbArithmetic.normalize(acc, w));
+        if (timed) {
+            CryptoMetrics.recordPowerMod(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Raises the bases {@code bases[from..to)} to a recoded exponent, one
+     * base after another with a single set of scratch buffers.
+     *
+     * @param bases
+     *            the bases
+     * @param e
+     *            the recoded exponent
+     * @param results
+     *            where the powers go
+     * @param from
+     *            first index, inclusive
+     * @param to
+     *            last index, exclusive
+     */
+    private void powerRange(NaturalNumber[] bases, Recoding e,
+            NaturalNumber[] results, int from, int to) {
+        int w = this.width();
+        int[] t = new int[this.scratchLength()];
+        int[] b = new int[w];
+        int[] acc = new int[w];
+        int[][] table = new int[e.tableSize()][w];
+        for (int i = from; i < to; i++) {
+            NaturalNumberLimbs base = NaturalNumberLimbs.valueOf(bases[i]);
+            this.toResidue(base.limbArray(), base.limbCount(), b, t);
+            this.power(b, e, table, acc, t);
+            this.fromResidue(acc, acc, t);
+            NaturalNumberLimbs.assign(results[i], acc,
+                    LimbArithmetic.normalize(acc, w));
+        }
+    }
+
+    /**
+     * Sets each {@code results[i]} to {@code bases[i]} raised to the p-th
+     * power modulo this context's modulus. The exponent is recoded once for
+     * all of the bases. When the entries of both arrays are
+     * {@code NaturalNumberLimbs} (and the results have room), nothing is
+     * allocated per base.
+     *
+     * @param bases
+     *            numbers to be raised to a power
+     * @param p
+     *            the power
+     * @param results
+     *            where the powers go; may be bases
+     * @updates results
+     * @requires |results| = |bases|
+     * @ensures <pre>
+     * for all i: results[i] = #bases[i] ^ (p) mod [modulus of this context]
+     * </pre>
+     */
+    public final void powerMod(NaturalNumber[] bases, NaturalNumber p,
+            NaturalNumber[] results) {
+        assert bases.length == results.length : ""
+                + "Violation of: |results| = |bases|";
+        NaturalNumberLimbs exponent = NaturalNumberLimbs.valueOf(p);
+        this.powerRange(bases,
+                new Recoding(exponent.limbArray(), exponent.limbCount()),
+                results, 0, bases.length);
+    }
+
+    /**
+     * Sets each {@code results[i]} to {@code bases[i]} raised to the p-th
+     * power modulo this context's modulus, like
+     * {@code powerMod(bases, p, results)}, but with the bases split into
+     * chunks of {@code BATCH_CHUNK} run on the workers of {@code pool}.
+     *
+     * @param bases
+     *            numbers to be raised to a power
+     * @param p
+     *            the power
+     * @param results
+     *            where the powers go; may be bases
+     * @param pool
+     *            the pool to run the chunks in
+     * @updates results
+     * @requires |results| = |bases|
+     * @ensures <pre>
+     * for all i: results[i] = #bases[i] ^ (p) mod [modulus of this context]
+     * </pre>
+     */
+    public final void powerMod(NaturalNumber[] bases, NaturalNumber p,
+            NaturalNumber[] results, ForkJoinPool pool) {
+        assert bases.length == results.length : ""
+                + "Violation of: |results| = |bases|";
+        assert pool != null : "Violation of: pool is not null";
+        NaturalNumberLimbs exponent = NaturalNumberLimbs.valueOf(p);
+        Recoding e = new Recoding(exponent.limbArray(), exponent.limbCount());
+        pool.invoke(new BatchTask(bases, e, results, 0, bases.length));
+    }
+
+    /**
+     * A range of a parallel batch, split in halves down to
+     * {@code BATCH_CHUNK} bases.
+     */
+    private final class BatchTask extends RecursiveAction {
+
+        /**
+         * Serialization id.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The bases.
+         */
+        private final NaturalNumber[] bases;
+
+        /**
+         * The recoded exponent.
+         */
+        private final Recoding e;
+
+        /**
+         * Where the powers go.
+         */
+        private final NaturalNumber[] results;
+
+        /**
+         * First index, inclusive.
+         */
+        private final int from;
+
+        /**
+         * Last index, exclusive.
+         */
+        private final int to;
+
+        /**
+         * Builds the task for {@code bases[from..to)}.
+         *
+         * @param bases
+         *            the bases
+         * @param e
+         *            the recoded exponent
+         * @param results
+         *            where the powers go
+         * @param from
+         *            first index, inclusive
+         * @param to
+         *            last index, exclusive
+         */
+        BatchTask(NaturalNumber[] bases, Recoding e, NaturalNumber[] results,
+                int from, int to) {
+            this.bases = bases;
+            this.e = e;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.to - this.from <= BATCH_CHUNK) {
+                ModularContext.this.powerRange(this.bases, this.e,
+                        this.results, this.from, this.to);
+            } else {
+                int middle = (this.from + this.to) >>> 1;
+                invokeAll(
+                        new BatchTask(this.bases, this.e, this.results,
+                                this.from, middle),
+                        new BatchTask(this.bases, this.e, this.results, middle,
+                                this.to));
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,95 @@
+import components.naturalnumber.NaturalNumber;
+
+/**
+ * Precomputed Montgomery reduction constants for one odd modulus m, so that
+ * repeated modular multiplications mod m cost a multiply and a word-by-word
+ * shift instead of a long division.
+ *
+ * <p>
+ * With k the number of 32-bit limbs of m and R = 2^(32k), a context holds R
+ * mod m (the Montgomery form of 1), R^2 mod m (used to enter Montgomery form)
+ * and -m^(-1) mod 2^32 (used by each reduction step). Residues are kept in
+ * Montgomery form, x * R mod m. Contexts are immutable, so one context may be
+ * shared by any number of threads and calls.
+ * </p>
+ *
+ * <p>
+ * The arithmetic itself lives in a {@code RebindableMontgomeryContext}, bound
+ * to m once here and reachable only through a final field; an
+ * {@code ArithmeticWorkspace} uses one of those directly, rebinding it to
+ * each new modulus in place.
+ * </p>
+ *
+ * @author Jamal Aden
+ *
+ */
+public final class MontgomeryContext extends ModularContext {
+
+    /**
+     * The arithmetic, bound to m for good.
+     */
+    private final RebindableMontgomeryContext arithmetic;
+
+    /**
+     * Builds the context for modulus {@code m}.
+     *
+     * @param m
+     *            the modulus
+     * @requires m > 1 and m is odd
+     */
+    public MontgomeryContext(NaturalNumber m) {
+        NaturalNumberLimbs localM = NaturalNumberLimbs.valueOf(m);
+        int k = localM.limbCount();
+        this.arithmetic = new RebindableMontgomeryContext(k);
+        this.arithmetic.bind(localM.limbArray(), k,
+                new int[scratchLength(k)]);
+    }
+
+    /**
+     * Reports the scratch length of a context bound to a modulus of
+     * {@code width} limbs.
+     *
+     * @param width
+     *            modulus length, in limbs
+     * @return scratch length in limbs
+     */
+    static int scratchLength(int width) {
+        return RebindableMontgomeryContext.scratchLength(width);
+    }
+
+    @Override
+    public NaturalNumber modulus() {
+        return this.arithmetic.modulus();
+    }
+
+    @Override
+    int width() {
+        return this.arithmetic.width();
+    }
+
+    @Override
+    int scratchLength() {
+        return this.arithmetic.scratchLength();
+    }
+
+    @Override
+    void multiply(int[] x, int[] y, int[] r, int[] t) {
+        this.arithmetic.multiply(x, y, r, t);
+    }
+
+    @Override
+    void toResidue(int[] a, int aLen, int[] r, int[] t) {
+        this.arithmetic.toResidue(a, aLen, r, t);
+    }
+
+    @Override
+    void fromResidue(int[] x, int[] r, int[] t) {
+        this.arithmetic.fromResidue(x, r, t);
+    }
+
+    @Override
+    void one(int[] r) {
+        this.arithmetic.one(r);
+    }
+
+}
@@ -0,0 +1,872 @@
+/**
+ * Products and squares of magnitudes stored as limbs, in the layout of
+ * {@code LimbArithmetic}, for operands long enough that the schoolbook method
+ * is no longer the fastest.
+ *
+ * <p>
+ * {@code multiply} splits each operand in two and does three half-size
+ * products (Karatsuba), or in three and does five third-size products
+ * (Toom-3, evaluating at 0, 1, -1, -2 and infinity and interpolating with
+ * Bodrato's sequence), recursing until the operands drop below a threshold
+ * and the schoolbook method takes over. A square is recognized by both
+ * operands being the same limbs; it recurses into squares only, and its base
+ * case computes each cross product a_i * a_j once and doubles the sum, which
+ * is about half the work of a general product. The schoolbook loops sit in
+ * {@code multiply} and {@code square} themselves: the recursive methods call
+ * back into those, and a small dispatcher gets inlined into them by the JIT
+ * until the recursion is too deep for the optimizing compiler to take on,
+ * which made the large sizes several times slower.
+ * </p>
+ *
+ * <p>
+ * The thresholds, in limbs, are read once from the system properties
+ * {@code cryptoutilities.karatsubaThreshold},
+ * {@code cryptoutilities.toomThreshold},
+ * {@code cryptoutilities.karatsubaSquareThreshold} and
+ * {@code cryptoutilities.toomSquareThreshold}; the defaults are the
+ * crossovers measured by the {@code MultiplyBenchmark} of the benchmarks
+ * project, which is the way to re-tune them for another machine. Everything
+ * works in a caller-supplied scratch array, of {@code scratchLength} limbs,
+ * and nothing allocates.
+ * </p>
+ *
+ * @author Jamal Aden
+ *
+ */
+final class MultiplyArithmetic {
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private MultiplyArithmetic() {
+    }
+
+    /**
+     * Smallest threshold accepted from a system property; below it the
+     * recursion would not shrink its operands.
+     */
+    private static final int MINIMUM_THRESHOLD = 8;
+
+    /**
+     * Length of the shorter factor, in limbs, from which products use
+     * Karatsuba's method.
+     */
+    static final int KARATSUBA_THRESHOLD = threshold(
+            "cryptoutilities.karatsubaThreshold", 96);
+
+    /**
+     * Length of the shorter factor, in limbs, from which products use
+     * Toom-3.
+     */
+    static final int TOOM_THRESHOLD = threshold(
+            "cryptoutilities.toomThreshold", 768);
+
+    /**
+     * Length in limbs from which squares use Karatsuba's method.
+     */
+    static final int KARATSUBA_SQUARE_THRESHOLD = threshold(
+            "cryptoutilities.karatsubaSquareThreshold", 128);
+
+    /**
+     * Length in limbs from which squares use Toom-3.
+     */
+    static final int TOOM_SQUARE_THRESHOLD = threshold(
+            "cryptoutilities.toomSquareThreshold", 640);
+
+    /**
+     * Length below which nothing recurses, so no scratch is needed.
+     */
+    private static final int RECURSION_THRESHOLD = Math.min(
+            Math.min(KARATSUBA_THRESHOLD, TOOM_THRESHOLD),
+            Math.min(KARATSUBA_SQUARE_THRESHOLD, TOOM_SQUARE_THRESHOLD));
+
+    /**
+     * Scratch used by one Toom-3 level beyond four limbs per operand limb.
+     */
+    private static final int LEVEL_SLACK = 20;
+
+    /**
+     * 3^(-1) mod 2^32.
+     */
+    private static final long INVERSE_OF_3 = 0xAAAAAAABL;
+
+    /**
+     * Reads a threshold from a system property.
+     *
+     * @param property
+     *            the property name
+     * @param defaultValue
+     *            the value when the property is unset or not a number
+     * @return the threshold, at least {@code MINIMUM_THRESHOLD}
+     */
+    private static int threshold(String property, int defaultValue) {
+        return Math.max(MINIMUM_THRESHOLD,
+                Integer.getInteger(property, defaultValue));
+    }
+
+    /**
+     * Reports how much scratch {@code multiply} needs for factors of up to
+     * len limbs.
+     *
+     * @param len
+     *            length of the longer factor
+     * @return scratch length in limbs
+     */
+    static int scratchLength(int len) {
+        /*
+         * Each level uses at most 4n + LEVEL_SLACK limbs for operands of n
+         * limbs and recurses on at most n / 2 + 2 of them
+         */
+        int length = 0;
+        for (int n = len; n >= RECURSION_THRESHOLD; n = n / 2 + 2) {
+            length += 4 * n + LEVEL_SLACK;
+        }
+        return length;
+    }
+
+    /**
+     * Computes r = a * b, writing all aLen + bLen limbs of r (the top ones
+     * may be zero). When a and b are the same limbs, the square is computed.
+     *
+     * @param a
+     *            first factor
+     * @param aOffset
+     *            where it starts in a
+     * @param aLen
+     *            its length, at least 1
+     * @param b
+     *            second factor
+     * @param bOffset
+     *            where it starts in b
+     * @param bLen
+     *            its length, at least 1
+     * @param r
+     *            result; must not overlap a, b or the scratch
+     * @param rOffset
+     *            where it starts in r
+     * @param t
+     *            scratch, of which {@code scratchLength(max(aLen, bLen))}
+     *            limbs from {@code tOffset} are used
+     * @param tOffset
+     *            where the scratch starts in t
+     */
+    static void multiply(int[] a, int aOffset, int aLen, int[] b,
+            int bOffset, int bLen, int[] r, int rOffset, int[] t,
+            int tOffset) {
+        if (a == b && aOffset == bOffset && aLen == bLen) {
+            square(a, aOffset, aLen, r, rOffset, t, tOffset);
+            return;
+        }
+        if (aLen < bLen) {
+            multiply(b, bOffset, bLen, a, aOffset, aLen, r, rOffset, t,
+                    tOffset);
+            return;
+        }
+        if (bLen >= KARATSUBA_THRESHOLD) {
+            if (bLen <= (aLen + 1) / 2) {
+                unbalanced(a, aOffset, aLen, b, bOffset, bLen, r, rOffset, t,
+                        tOffset);
+            } else if (bLen >= TOOM_THRESHOLD
+                    && bLen > 2 * ((aLen + 2) / 3)) {
+                toom3(a, aOffset, aLen, b, bOffset, bLen, r, rOffset, t,
+                        tOffset);
+            } else {
+                karatsuba(a, aOffset, aLen, b, bOffset, bLen, r, rOffset, t,
+                        tOffset);
+            }
+            return;
+        }
+        final long mask = LimbArithmetic.MASK;
+        final int shift = LimbArithmetic.LIMB_BITS;
+        long bi = b[bOffset] & mask;
+        long carry = 0;
+        for (int j = 0; j < aLen; j++) {
+            carry += (a[aOffset + j] & mask) * bi;
+            r[rOffset + j] = (int) carry;
+            carry >>>= shift;
+        }
+        r[rOffset + aLen] = (int) carry;
+        for (int i = 1; i < bLen; i++) {
+            bi = b[bOffset + i] & mask;
+            carry = 0;
+            int ri = rOffset + i;
+            for (int j = 0; j < aLen; j++) {
+                carry += (a[aOffset + j] & mask) * bi + (r[ri + j] & mask);
+                r[ri + j] = (int) carry;
+                carry >>>= shift;
+            }
+            r[ri + aLen] = (int) carry;
+        }
+    }
+
+    /**
+     * Computes r = a^2, writing all 2 aLen limbs of r. Below the Karatsuba
+     * threshold it adds up each cross product a_i * a_j (i &lt; j) once,
+     * doubles the sum and adds the squares a_i^2.
+     *
+     * @param a
+     *            the number
+     * @param aOffset
+     *            where it starts in a
+     * @param aLen
+     *            its length, at least 1
+     * @param r
+     *            result; must not overlap a or the scratch
+     * @param rOffset
+     *            where it starts in r
+     * @param t
+     *            scratch, of which {@code scratchLength(aLen)} limbs from
+     *            {@code tOffset} are used
+     * @param tOffset
+     *            where the scratch starts in t
+     */
+    private static void square(int[] a, int aOffset, int aLen, int[] r,
+            int rOffset, int[] t, int tOffset) {
+        if (aLen >= TOOM_SQUARE_THRESHOLD) {
+            toom3Square(a, aOffset, aLen, r, rOffset, t, tOffset);
+            return;
+        }
+        if (aLen >= KARATSUBA_SQUARE_THRESHOLD) {
+            karatsubaSquare(a, aOffset, aLen, r, rOffset, t, tOffset);
+            return;
+        }
+        final long mask = LimbArithmetic.MASK;
+        final int shift = LimbArithmetic.LIMB_BITS;
+        r[rOffset] = 0;
+        r[rOffset + 2 * aLen - 1] = 0;
+        for (int i = 0; i < aLen; i++) {
+            long ai = a[aOffset + i] & mask;
+            long carry = 0;
+            int ri = rOffset + i;
+            if (i == 0) {
+                for (int j = 1; j < aLen; j++) {
+                    carry += (a[aOffset + j] & mask) * ai;
+                    r[ri + j] = (int) carry;
+                    carry >>>= shift;
+                }
+            } else {
+                for (int j = i + 1; j < aLen; j++) {
+                    carry += (a[aOffset + j] & mask) * ai + (r[ri + j] & mask);
+                    r[ri + j] = (int) carry;
+                    carry >>>= shift;
+                }
+            }
+            if (i + 1 < aLen) {
+                r[ri + aLen] = (int) carry;
+            }
+        }
+        int top = 0;
+        for (int i = rOffset; i < rOffset + 2 * aLen; i++) {
+            int limb = r[i];
+            r[i] = (limb << 1) | top;
+            top = limb >>> (shift - 1);
+        }
+        long carry = 0;
+        for (int i = 0; i < aLen; i++) {
+            long ai = a[aOffset + i] & mask;
+            long square = ai * ai;
+            int ri = rOffset + 2 * i;
+            carry += (square & mask) + (r[ri] & mask);
+            r[ri] = (int) carry;
+            carry >>>= shift;
+            carry += (square >>> shift) + (r[ri + 1] & mask);
+            r[ri + 1] = (int) carry;
+            carry >>>= shift;
+        }
+    }
+
+    /**
+     * Computes r = a * b when b is at most half as long as a, by cutting a
+     * into pieces as long as b and multiplying each by b.
+     *
+     * @param a
+     *            first factor
+     * @param aOffset
+     *            where it starts in a
+     * @param aLen
+     *            its length
+     * @param b
+     *            second factor
+     * @param bOffset
+     *            where it starts in b
+     * @param bLen
+     *            its length, at most (aLen + 1) / 2
+     * @param r
+     *            result, aLen + bLen limbs
+     * @param rOffset
+     *            where it starts in r
+     * @param t
+     *            scratch
+     * @param tOffset
+     *            where the scratch starts in t
+     */
+    private static void unbalanced(int[] a, int aOffset, int aLen, int[] b,
+            int bOffset, int bLen, int[] r, int rOffset, int[] t,
+            int tOffset) {
+        multiply(a, aOffset, bLen, b, bOffset, bLen, r, rOffset, t, tOffset);
+        for (int done = bLen; done < aLen; done += bLen) {
+            int piece = Math.min(bLen, aLen - done);
+            int pLen = piece + bLen;
+            multiply(a, aOffset + done, piece, b, bOffset, bLen, t, tOffset,
+                    t, tOffset + pLen);
+            int rDone = rOffset + done;
+            for (int i = bLen; i < pLen; i++) {
+                r[rDone + i] = 0;
+            }
+            addTo(r, rDone, pLen, t, tOffset, pLen);
+        }
+    }
+
+    /**
+     * Computes r = a * b by Karatsuba's method: with a = a1 X + a0 and b =
+     * b1 X + b0, the middle coefficient a0 b1 + a1 b0 is a0 b0 + a1 b1 - (a0
+     * - a1)(b0 - b1), one product instead of two.
+     *
+     * @param a
+     *            first factor
+     * @param aOffset
+     *            where it starts in a
+     * @param aLen
+     *            its length
+     * @param b
+     *            second factor
+     * @param bOffset
+     *            where it starts in b
+     * @param bLen
+     *            its length, above (aLen + 1) / 2 and at most aLen
+     * @param r
+     *            result, aLen + bLen limbs
+     * @param rOffset
+     *            where it starts in r
+     * @param t
+     *            scratch
+     * @param tOffset
+     *            where the scratch starts in t
+     */
+    private static void karatsuba(int[] a, int aOffset, int aLen, int[] b,
+            int bOffset, int bLen, int[] r, int rOffset, int[] t,
+            int tOffset) {
+        int h = (aLen + 1) / 2;
+        int rLen = aLen + bLen;
+        int da = tOffset;
+        int db = da + h;
+        int middle = db + h;
+        int product = middle + 2 * h + 1;
+        int next = product + 2 * h;
+
+        multiply(a, aOffset, h, b, bOffset, h, r, rOffset, t, tOffset);
+        multiply(a, aOffset + h, aLen - h, b, bOffset + h, bLen - h, r,
+                rOffset + 2 * h, t, tOffset);
+        boolean negative = difference(a, aOffset, h, a, aOffset + h,
+                aLen - h, t, da) != difference(b, bOffset, h, b, bOffset + h,
+                        bLen - h, t, db);
+        multiply(t, da, h, t, db, h, t, product, t, next);
+
+        System.arraycopy(r, rOffset, t, middle, 2 * h);
+        t[middle + 2 * h] = 0;
+        addTo(t, middle, 2 * h + 1, r, rOffset + 2 * h, rLen - 2 * h);
+        if (negative) {
+            addTo(t, middle, 2 * h + 1, t, product, 2 * h);
+        } else {
+            subtractFrom(t, middle, 2 * h + 1, t, product, 2 * h);
+        }
+        addTo(r, rOffset + h, rLen - h, t, middle,
+                Math.min(2 * h + 1, rLen - h));
+    }
+
+    /**
+     * Computes r = a^2 by Karatsuba's method, the middle coefficient being
+     * a0^2 + a1^2 - (a0 - a1)^2.
+     *
+     * @param a
+     *            the number
+     * @param aOffset
+     *            where it starts in a
+     * @param aLen
+     *            its length, at least 2
+     * @param r
+     *            result, 2 aLen limbs
+     * @param rOffset
+     *            where it starts in r
+     * @param t
+     *            scratch
+     * @param tOffset
+     *            where the scratch starts in t
+     */
+    private static void karatsubaSquare(int[] a, int aOffset, int aLen,
+            int[] r, int rOffset, int[] t, int tOffset) {
+        int h = (aLen + 1) / 2;
+        int rLen = 2 * aLen;
+        int d = tOffset;
+        int middle = d + h;
+        int product = middle + 2 * h + 1;
+        int next = product + 2 * h;
+
+        square(a, aOffset, h, r, rOffset, t, tOffset);
+        square(a, aOffset + h, aLen - h, r, rOffset + 2 * h, t, tOffset);
+        difference(a, aOffset, h, a, aOffset + h, aLen - h, t, d);
+        square(t, d, h, t, product, t, next);
+
+        System.arraycopy(r, rOffset, t, middle, 2 * h);
+        t[middle + 2 * h] = 0;
+        addTo(t, middle, 2 * h + 1, r, rOffset + 2 * h, rLen - 2 * h);
+        subtractFrom(t, middle, 2 * h + 1, t, product, 2 * h);
+        addTo(r, rOffset + h, rLen - h, t, middle,
+                Math.min(2 * h + 1, rLen - h));
+    }
+
+    /**
+     * Computes r = a * b by Toom-3: a and b are cut into three pieces, read
+     * as quadratics in X = 2^(32k), evaluated at 1, -1 and -2, and the
+     * product's five coefficients are interpolated from the five products
+     * at 0, 1, -1, -2 and infinity.
+     *
+     * @param a
+     *            first factor
+     * @param aOffset
+     *            where it starts in a
+     * @param aLen
+     *            its length
+     * @param b
+     *            second factor
+     * @param bOffset
+     *            where it starts in b
+     * @param bLen
+     *            its length, above 2k with k = ceil(aLen / 3), and at most
+     *            aLen
+     * @param r
+     *            result, aLen + bLen limbs
+     * @param rOffset
+     *            where it starts in r
+     * @param t
+     *            scratch
+     * @param tOffset
+     *            where the scratch starts in t
+     */
+    private static void toom3(int[] a, int aOffset, int aLen, int[] b,
+            int bOffset, int bLen, int[] r, int rOffset, int[] t,
+            int tOffset) {
+        int k = (aLen + 2) / 3;
+        int e = k + 1;
+        int w = 2 * k + 2;
+        int a1 = tOffset;
+        int b1 = a1 + e;
+        int aMinus1 = b1 + e;
+        int bMinus1 = aMinus1 + e;
+        int aMinus2 = bMinus1 + e;
+        int bMinus2 = aMinus2 + e;
+        int v1 = bMinus2 + e;
+        int vMinus1 = v1 + w;
+        int vMinus2 = vMinus1 + w;
+        int next = vMinus2 + w;
+
+        int aSigns = evaluate(a, aOffset, k, aLen - 2 * k, t, a1, aMinus1,
+                aMinus2, vMinus2);
+        int bSigns = evaluate(b, bOffset, k, bLen - 2 * k, t, b1, bMinus1,
+                bMinus2, vMinus2);
+        int signs = aSigns ^ bSigns;
+
+        multiply(a, aOffset, k, b, bOffset, k, r, rOffset, t, next);
+        multiply(a, aOffset + 2 * k, aLen - 2 * k, b, bOffset + 2 * k,
+                bLen - 2 * k, r, rOffset + 4 * k, t, next);
+        for (int i = rOffset + 2 * k; i < rOffset + 4 * k; i++) {
+            r[i] = 0;
+        }
+        multiply(t, a1, e, t, b1, e, t, v1, t, next);
+        multiply(t, aMinus1, e, t, bMinus1, e, t, vMinus1, t, next);
+        if ((signs & 1) != 0) {
+            negate(t, vMinus1, w);
+        }
+        multiply(t, aMinus2, e, t, bMinus2, e, t, vMinus2, t, next);
+        if ((signs & 2) != 0) {
+            negate(t, vMinus2, w);
+        }
+        interpolate(r, rOffset, aLen + bLen, k, t, v1, vMinus1, vMinus2);
+    }
+
+    /**
+     * Computes r = a^2 by Toom-3, as {@code toom3} with both factors a.
+     *
+     * @param a
+     *            the number
+     * @param aOffset
+     *            where it starts in a
+     * @param aLen
+     *            its length, at least 3
+     * @param r
+     *            result, 2 aLen limbs
+     * @param rOffset
+     *            where it starts in r
+     * @param t
+     *            scratch
+     * @param tOffset
+     *            where the scratch starts in t
+     */
+    private static void toom3Square(int[] a, int aOffset, int aLen, int[] r,
+            int rOffset, int[] t, int tOffset) {
+        int k = (aLen + 2) / 3;
+        int e = k + 1;
+        int w = 2 * k + 2;
+        int a1 = tOffset;
+        int aMinus1 = a1 + e;
+        int aMinus2 = aMinus1 + e;
+        int v1 = aMinus2 + e;
+        int vMinus1 = v1 + w;
+        int vMinus2 = vMinus1 + w;
+        int next = vMinus2 + w;
+
+        evaluate(a, aOffset, k, aLen - 2 * k, t, a1, aMinus1, aMinus2,
+                vMinus2);
+        square(a, aOffset, k, r, rOffset, t, next);
+        square(a, aOffset + 2 * k, aLen - 2 * k, r, rOffset + 4 * k, t,
+                next);
+        for (int i = rOffset + 2 * k; i < rOffset + 4 * k; i++) {
+            r[i] = 0;
+        }
+        square(t, a1, e, t, v1, t, next);
+        square(t, aMinus1, e, t, vMinus1, t, next);
+        square(t, aMinus2, e, t, vMinus2, t, next);
+        interpolate(r, rOffset, 2 * aLen, k, t, v1, vMinus1, vMinus2);
+    }
+
+    /**
+     * Evaluates x0 + x1 X + x2 X^2, the pieces of a Toom-3 operand, at 1,
+     * -1 and -2, each into k + 1 limbs.
+     *
+     * @param x
+     *            the operand
+     * @param xOffset
+     *            where it starts in x
+     * @param k
+     *            length of x0 and x1
+     * @param x2Len
+     *            length of x2, from 1 to k
+     * @param t
+     *            scratch holding the values
+     * @param at1
+     *            where x(1) goes in t
+     * @param atMinus1
+     *            where |x(-1)| goes in t
+     * @param atMinus2
+     *            where |x(-2)| goes in t
+     * @param temp
+     *            k + 1 limbs of t to work in
+     * @return bit 0 set if x(-1) &lt; 0, bit 1 set if x(-2) &lt; 0
+     */
+    private static int evaluate(int[] x, int xOffset, int k, int x2Len,
+            int[] t, int at1, int atMinus1, int atMinus2, int temp) {
+        int e = k + 1;
+        int x1 = xOffset + k;
+        int x2 = xOffset + 2 * k;
+        int signs = 0;
+
+        System.arraycopy(x, xOffset, t, at1, k);
+        t[at1 + k] = 0;
+        addTo(t, at1, e, x, x2, x2Len);
+        if (difference(t, at1, e, x, x1, k, t, atMinus1)) {
+            signs |= 1;
+        }
+        addTo(t, at1, e, x, x1, k);
+
+        shiftLeft(x, x2, x2Len, 2, t, atMinus2);
+        for (int i = atMinus2 + x2Len + 1; i < atMinus2 + e; i++) {
+            t[i] = 0;
+        }
+        addTo(t, atMinus2, e, x, xOffset, k);
+        shiftLeft(x, x1, k, 1, t, temp);
+        if (difference(t, atMinus2, e, t, temp, e, t, atMinus2)) {
+            signs |= 2;
+        }
+        return signs;
+    }
+
+    /**
+     * Finishes a Toom-3 product. The values at 0 and infinity are already in
+     * place in r, with the limbs between them zero; the values at 1, -1 and
+     * -2 are in t, each 2k + 2 limbs in two's complement. They are turned
+     * into the three middle coefficients and added into r.
+     *
+     * @param r
+     *            the product
+     * @param rOffset
+     *            where it starts in r
+     * @param rLen
+     *            its length
+     * @param k
+     *            length of the pieces
+     * @param t
+     *            scratch holding the values
+     * @param v1
+     *            where the value at 1 is in t
+     * @param vMinus1
+     *            where the value at -1 is in t
+     * @param vMinus2
+     *            where the value at -2 is in t
+     */
+    private static void interpolate(int[] r, int rOffset, int rLen, int k,
+            int[] t, int v1, int vMinus1, int vMinus2) {
+        int w = 2 * k + 2;
+        int infinity = rOffset + 4 * k;
+        int infinityLen = rLen - 4 * k;
+
+        // r3 = (v(-2) - v(1)) / 3
+        subtract(t, vMinus2, t, v1, t, vMinus2, w);
+        divideExactBy3(t, vMinus2, w);
+        // r1 = (v(1) - v(-1)) / 2
+        subtract(t, v1, t, vMinus1, t, v1, w);
+        halve(t, v1, w);
+        // r2 = v(-1) - v(0)
+        subtractFrom(t, vMinus1, w, r, rOffset, 2 * k);
+        // r3 = (r2 - r3) / 2 + 2 v(infinity)
+        subtract(t, vMinus1, t, vMinus2, t, vMinus2, w);
+        halve(t, vMinus2, w);
+        addTo(t, vMinus2, w, r, infinity, infinityLen);
+        addTo(t, vMinus2, w, r, infinity, infinityLen);
+        // r2 = r2 + r1 - v(infinity)
+        addTo(t, vMinus1, w, t, v1, w);
+        subtractFrom(t, vMinus1, w, r, infinity, infinityLen);
+        // r1 = r1 - r3
+        subtract(t, v1, t, vMinus2, t, v1, w);
+
+        addTo(r, rOffset + k, rLen - k, t, v1, Math.min(w, rLen - k));
+        addTo(r, rOffset + 2 * k, rLen - 2 * k, t, vMinus1,
+                Math.min(w, rLen - 2 * k));
+        addTo(r, rOffset + 3 * k, rLen - 3 * k, t, vMinus2,
+                Math.min(w, rLen - 3 * k));
+    }
+
+    /**
+     * Computes d = |x - y|, with y zero-extended to xLen limbs.
+     *
+     * @param x
+     *            first operand
+     * @param xOffset
+     *            where it starts in x
+     * @param xLen
+     *            its length
+     * @param y
+     *            second operand
+     * @param yOffset
+     *            where it starts in y
+     * @param yLen
+     *            its length, at most xLen
+     * @param d
+     *            result, xLen limbs; may be x or y at the same offset
+     * @param dOffset
+     *            where it starts in d
+     * @return whether y &gt; x
+     */
+    private static boolean difference(int[] x, int xOffset, int xLen,
+            int[] y, int yOffset, int yLen, int[] d, int dOffset) {
+        final long mask = LimbArithmetic.MASK;
+        final int shift = LimbArithmetic.LIMB_BITS;
+        int i = xLen - 1;
+        while (i >= 0 && x[xOffset + i] == (i < yLen ? y[yOffset + i] : 0)) {
+            i--;
+        }
+        boolean swap = i >= 0 && Integer.compareUnsigned(
+                i < yLen ? y[yOffset + i] : 0, x[xOffset + i]) > 0;
+        long borrow = 0;
+        for (int j = 0; j < xLen; j++) {
+            long xj = x[xOffset + j] & mask;
+            long yj = j < yLen ? y[yOffset + j] & mask : 0;
+            long diff = swap ? yj - xj + borrow : xj - yj + borrow;
+            d[dOffset + j] = (int) diff;
+            borrow = diff >> shift;
+        }
+        return swap;
+    }
+
+    /**
+     * Computes r = x * 2^bits into xLen + 1 limbs.
+     *
+     * @param x
+     *            the value
+     * @param xOffset
+     *            where it starts in x
+     * @param xLen
+     *            its length
+     * @param bits
+     *            shift, from 1 to 31
+     * @param r
+     *            result; must not overlap x
+     * @param rOffset
+     *            where it starts in r
+     */
+    private static void shiftLeft(int[] x, int xOffset, int xLen, int bits,
+            int[] r, int rOffset) {
+        int out = 0;
+        for (int i = 0; i < xLen; i++) {
+            int limb = x[xOffset + i];
+            r[rOffset + i] = (limb << bits) | out;
+            out = limb >>> (LimbArithmetic.LIMB_BITS - bits);
+        }
+        r[rOffset + xLen] = out;
+    }
+
+    /**
+     * Adds x into r, r = r + x, propagating the carry through r.
+     *
+     * @param r
+     *            the sum
+     * @param rOffset
+     *            where it starts in r
+     * @param rLen
+     *            its length
+     * @param x
+     *            the addend
+     * @param xOffset
+     *            where it starts in x
+     * @param xLen
+     *            its length, at most rLen
+     * @return the carry out of r, 0 or 1
+     */
+    private static int addTo(int[] r, int rOffset, int rLen, int[] x,
+            int xOffset, int xLen) {
+        final long mask = LimbArithmetic.MASK;
+        final int shift = LimbArithmetic.LIMB_BITS;
+        long carry = 0;
+        int i = 0;
+        for (; i < xLen; i++) {
+            carry += (r[rOffset + i] & mask) + (x[xOffset + i] & mask);
+            r[rOffset + i] = (int) carry;
+            carry >>>= shift;
+        }
+        for (; carry != 0 && i < rLen; i++) {
+            carry += r[rOffset + i] & mask;
+            r[rOffset + i] = (int) carry;
+            carry >>>= shift;
+        }
+        return (int) carry;
+    }
+
+    /**
+     * Subtracts x from r, r = r - x, propagating the borrow through r.
+     *
+     * @param r
+     *            the difference
+     * @param rOffset
+     *            where it starts in r
+     * @param rLen
+     *            its length
+     * @param x
+     *            the subtrahend
+     * @param xOffset
+     *            where it starts in x
+     * @param xLen
+     *            its length, at most rLen
+     * @return the borrow out of r, 0 or 1
+     */
+    private static int subtractFrom(int[] r, int rOffset, int rLen, int[] x,
+            int xOffset, int xLen) {
+        final long mask = LimbArithmetic.MASK;
+        final int shift = LimbArithmetic.LIMB_BITS;
+        long borrow = 0;
+        int i = 0;
+        for (; i < xLen; i++) {
+            borrow += (r[rOffset + i] & mask) - (x[xOffset + i] & mask);
+            r[rOffset + i] = (int) borrow;
+            borrow >>= shift;
+        }
+        for (; borrow != 0 && i < rLen; i++) {
+            borrow += r[rOffset + i] & mask;
+            r[rOffset + i] = (int) borrow;
+            borrow >>= shift;
+        }
+        return (int) -borrow;
+    }
+
+    /**
+     * Computes r = x - y over len limbs, modulo 2^(32 len).
+     *
+     * @param x
+     *            first operand
+     * @param xOffset
+     *            where it starts in x
+     * @param y
+     *            second operand
+     * @param yOffset
+     *            where it starts in y
+     * @param r
+     *            result; may be x or y at the same offset
+     * @param rOffset
+     *            where it starts in r
+     * @param len
+     *            number of limbs
+     */
+    private static void subtract(int[] x, int xOffset, int[] y, int yOffset,
+            int[] r, int rOffset, int len) {
+        final long mask = LimbArithmetic.MASK;
+        final int shift = LimbArithmetic.LIMB_BITS;
+        long borrow = 0;
+        for (int i = 0; i < len; i++) {
+            borrow += (x[xOffset + i] & mask) - (y[yOffset + i] & mask);
+            r[rOffset + i] = (int) borrow;
+            borrow >>= shift;
+        }
+    }
+
+    /**
+     * Negates x in place, modulo 2^(32 len).
+     *
+     * @param x
+     *            the value
+     * @param xOffset
+     *            where it starts in x
+     * @param len
+     *            number of limbs
+     */
+    private static void negate(int[] x, int xOffset, int len) {
+        long carry = 1;
+        for (int i = xOffset; i < xOffset + len; i++) {
+            carry += ~x[i] & LimbArithmetic.MASK;
+            x[i] = (int) carry;
+            carry >>>= LimbArithmetic.LIMB_BITS;
+        }
+    }
+
+    /**
+     * Halves a two's complement value in place, rounding toward minus
+     * infinity.
+     *
+     * @param x
+     *            the value
+     * @param xOffset
+     *            where it starts in x
+     * @param len
+     *            number of limbs
+     */
+    private static void halve(int[] x, int xOffset, int len) {
+        int last = xOffset + len - 1;
+        for (int i = xOffset; i < last; i++) {
+            x[i] = (x[i] >>> 1) | (x[i + 1] << (LimbArithmetic.LIMB_BITS - 1));
+        }
+        x[last] >>= 1;
+    }
+
+    /**
+     * Divides x in place by 3, modulo 2^(32 len), which is the exact
+     * quotient, in two's complement, whenever 3 divides x.
+     *
+     * @param x
+     *            the value
+     * @param xOffset
+     *            where it starts in x
+     * @param len
+     *            number of limbs
+     */
+    private static void divideExactBy3(int[] x, int xOffset, int len) {
+        final long mask = LimbArithmetic.MASK;
+        final int shift = LimbArithmetic.LIMB_BITS;
+        final long three = 3;
+        long carry = 0;
+        for (int i = xOffset; i < xOffset + len; i++) {
+            long s = (x[i] & mask) - carry;
+            long borrow = s >>> (2 * shift - 1);
+            long q = ((s & mask) * INVERSE_OF_3) & mask;
+            x[i] = (int) q;
+            carry = borrow + ((q * three) >>> shift);
+        }
+    }
+
+}
@@ -0,0 +1,476 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import components.naturalnumber.NaturalNumber;
+
+/**
+ * Binary encoding of natural numbers as DER INTEGERs (ITU-T X.690): a tag
+ * byte 0x02, the length of the contents, and the magnitude in big-endian
+ * bytes, with a leading zero byte when the top bit would otherwise be set.
+ * This is the encoding the fields of PKCS #1 keys, and most other formats
+ * that carry big integers, use.
+ *
+ * <p>
+ * Numbers are read from and written to {@code ByteBuffer}s, heap or direct,
+ * straight between the limbs of a {@code NaturalNumberLimbs} and the bytes,
+ * four at a time; there is no decimal conversion, so the cost is linear in
+ * the length instead of quadratic. Other {@code NaturalNumber}s go through
+ * their decimal form once, as they do everywhere else in this package.
+ * </p>
+ *
+ * <p>
+ * The bulk format, for prime pools and key sets, is one DER SEQUENCE of the
+ * elements, written to and read from a memory-mapped file. Since those hold
+ * secrets, a file is written whole to a new temporary file in the same
+ * directory, readable and writable by its owner only where the file system
+ * has POSIX permissions, and then moved over the target in one step; an
+ * existing file is never truncated or rewritten in place, so neither its old
+ * permissions nor a half-written file are ever seen. Reading is strict DER:
+ * any other encoding of a length or an integer, a negative integer, or data
+ * running past the end of its element is rejected.
+ * </p>
+ *
+ * @author Jamal Aden
+ *
+ */
+public final class NaturalNumberCodec {
+
+    /**
+     * Tag of a DER INTEGER.
+     */
+    static final int INTEGER = 0x02;
+
+    /**
+     * Tag of a DER SEQUENCE.
+     */
+    static final int SEQUENCE = 0x30;
+
+    /**
+     * Lengths below this take a single byte; longer ones take a byte giving
+     * the number of length bytes, with this bit set, and then those bytes.
+     */
+    private static final int LONG_LENGTH = 0x80;
+
+    /**
+     * Mask of the low byte of an int.
+     */
+    private static final int BYTE_MASK = 0xFF;
+
+    /**
+     * Number of bytes in a limb.
+     */
+    private static final int LIMB_BYTES = LimbArithmetic.LIMB_BITS / Byte.SIZE;
+
+    /**
+     * Largest element a file may hold: a mapping cannot exceed
+     * {@code Integer.MAX_VALUE} bytes.
+     */
+    private static final long MAX_FILE_BYTES = Integer.MAX_VALUE;
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private NaturalNumberCodec() {
+    }
+
+    /**
+     * Reports the length of the contents of the INTEGER for {@code n}: its
+     * magnitude bytes, plus one when the top bit of the first is set; zero
+     * takes a single zero byte.
+     *
+     * @param n
+     *            the number
+     * @return length of the contents in bytes
+     */
+    static int contentLength(NaturalNumberLimbs n) {
+        return n.bitLength() / Byte.SIZE + 1;
+    }
+
+    /**
+     * Reports the length of an element with {@code contentLength} bytes of
+     * contents: the tag, the length and the contents.
+     *
+     * @param contentLength
+     *            length of the contents in bytes
+     * @return length of the element in bytes
+     */
+    static int elementLength(int contentLength) {
+        int lengthBytes = 1;
+        if (contentLength >= LONG_LENGTH) {
+            lengthBytes += (Integer.SIZE
+                    - Integer.numberOfLeadingZeros(contentLength) + Byte.SIZE
+                    - 1) / Byte.SIZE;
+        }
+        return 1 + lengthBytes + contentLength;
+    }
+
+    /**
+     * Writes the tag and length of an element.
+     *
+     * @param tag
+     *            the tag
+     * @param contentLength
+     *            length of the contents in bytes
+     * @param buffer
+     *            the buffer to write to
+     * @updates buffer
+     * @requires buffer.remaining() >= elementLength(contentLength) -
+     *           contentLength
+     */
+    static void writeHeader(int tag, int contentLength, ByteBuffer buffer) {
+        buffer.put((byte) tag);
+        if (contentLength < LONG_LENGTH) {
+            buffer.put((byte) contentLength);
+        } else {
+            int lengthBytes = elementLength(contentLength) - contentLength - 2;
+            buffer.put((byte) (LONG_LENGTH | lengthBytes));
+            for (int i = lengthBytes - 1; i >= 0; i--) {
+                buffer.put((byte) (contentLength >>> (Byte.SIZE * i)));
+            }
+        }
+    }
+
+    /**
+     * Reads the tag and length of an element, checking that the tag is
+     * {@code tag}, that the length is in DER form, and that the contents fit
+     * in what is left of the buffer.
+     *
+     * @param tag
+     *            the expected tag
+     * @param buffer
+     *            the buffer to read from
+     * @return length of the contents in bytes
+     * @throws IllegalArgumentException
+     *             if the header is not a DER header with that tag, or the
+     *             contents run past the end of the buffer
+     * @updates buffer
+     */
+    static int readHeader(int tag, ByteBuffer buffer) {
+        if (buffer.remaining() < 2) {
+            throw new IllegalArgumentException("Truncated DER element");
+        }
+        int found = buffer.get() & BYTE_MASK;
+        if (found != tag) {
+            throw new IllegalArgumentException(String.format(
+                    "Expected DER tag 0x%02x, found 0x%02x", tag, found));
+        }
+        int length = buffer.get() & BYTE_MASK;
+        if (length >= LONG_LENGTH) {
+            int lengthBytes = length & ~LONG_LENGTH;
+            if (lengthBytes == 0 || lengthBytes > Integer.BYTES
+                    || buffer.remaining() < lengthBytes) {
+                throw new IllegalArgumentException("Bad DER length");
+            }
+            long longLength = 0;
+            for (int i = 0; i < lengthBytes; i++) {
+                longLength = (longLength << Byte.SIZE)
+                        | (buffer.get() & BYTE_MASK);
+            }
+            /*
+             * DER wants the shortest form: no leading zero byte, and the
+             * short form for anything that fits it
+             */
+            if (longLength < LONG_LENGTH
+                    || longLength >>> (Byte.SIZE * (lengthBytes - 1)) == 0
+                    || longLength > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Bad DER length");
+            }
+            length = (int) longLength;
+        }
+        if (length > buffer.remaining()) {
+            throw new IllegalArgumentException("Truncated DER element");
+        }
+        return length;
+    }
+
+    /**
+     * Reports the number of bytes {@code write} takes for {@code n}.
+     *
+     * @param n
+     *            the number
+     * @return length of the DER INTEGER for n
+     */
+    public static int encodedLength(NaturalNumber n) {
+        assert n != null : "Violation of: n is not null";
+        return elementLength(contentLength(NaturalNumberLimbs.valueOf(n)));
+    }
+
+    /**
+     * Writes {@code n} as a DER INTEGER at the position of {@code buffer},
+     * and moves the position past it. The buffer's byte order does not
+     * matter; the encoding is always big-endian.
+     *
+     * @param n
+     *            the number
+     * @param buffer
+     *            the buffer to write to
+     * @updates buffer
+     * @requires buffer.remaining() >= encodedLength(n)
+     */
+    public static void write(NaturalNumber n, ByteBuffer buffer) {
+        assert n != null : "Violation of: n is not null";
+        assert buffer != null : "Violation of: buffer is not null";
+        NaturalNumberLimbs localN = NaturalNumberLimbs.valueOf(n);
+        int contentLength = contentLength(localN);
+        assert buffer.remaining() >= elementLength(contentLength) : ""
+                + "Violation of: buffer.remaining() >= encodedLength(n)";
+        writeHeader(INTEGER, contentLength, buffer);
+        int[] limbs = localN.limbArray();
+        int length = localN.limbCount();
+        int magnitudeBytes = (localN.bitLength() + Byte.SIZE - 1) / Byte.SIZE;
+        if (magnitudeBytes < contentLength) {
+            buffer.put((byte) 0);
+        }
+        if (length == 0) {
+            return;
+        }
+        /*
+         * The top limb's significant bytes one at a time, then whole limbs
+         */
+        int top = limbs[length - 1];
+        for (int i = magnitudeBytes - (length - 1) * LIMB_BYTES
+                - 1; i >= 0; i--) {
+            buffer.put((byte) (top >>> (Byte.SIZE * i)));
+        }
+        boolean swap = buffer.order() != ByteOrder.BIG_ENDIAN;
+        for (int j = length - 2; j >= 0; j--) {
+            buffer.putInt(swap ? Integer.reverseBytes(limbs[j]) : limbs[j]);
+        }
+    }
+
+    /**
+     * Reads a DER INTEGER at the position of {@code buffer}, and moves the
+     * position past it.
+     *
+     * @param buffer
+     *            the buffer to read from
+     * @return the number read
+     * @throws IllegalArgumentException
+     *             if the bytes are not a DER INTEGER of at least zero, or it
+     *             runs past the end of the buffer; the position is then
+     *             unspecified
+     * @updates buffer
+     */
+    public static NaturalNumber read(ByteBuffer buffer) {
+        NaturalNumberLimbs n = new NaturalNumberLimbs();
+        read(buffer, n);
+        return n;
+    }
+
+    /**
+     * Reads a DER INTEGER at the position of {@code buffer} into
+     * {@code result}, and moves the position past it.
+     *
+     * @param buffer
+     *            the buffer to read from
+     * @param result
+     *            the number to set
+     * @throws IllegalArgumentException
+     *             if the bytes are not a DER INTEGER of at least zero, or it
+     *             runs past the end of the buffer; the position is then
+     *             unspecified and result unchanged
+     * @updates buffer
+     * @replaces result
+     */
+    public static void read(ByteBuffer buffer, NaturalNumber result) {
+        assert buffer != null : "Violation of: buffer is not null";
+        assert result != null : "Violation of: result is not null";
+        int contentLength = readHeader(INTEGER, buffer);
+        if (contentLength == 0) {
+            throw new IllegalArgumentException("Empty DER INTEGER");
+        }
+        int first = buffer.get() & BYTE_MASK;
+        int magnitudeBytes = contentLength - 1;
+        if (first >= LONG_LENGTH) {
+            throw new IllegalArgumentException("Negative DER INTEGER");
+        } else if (first == 0 && magnitudeBytes > 0) {
+            // The zero byte is only there to clear the sign bit
+            if ((buffer.get(buffer.position()) & LONG_LENGTH) == 0) {
+                throw new IllegalArgumentException(
+                        "DER INTEGER with a redundant leading zero");
+            }
+            first = buffer.get() & BYTE_MASK;
+        } else {
+            magnitudeBytes++;
+        }
+        int length = (magnitudeBytes + LIMB_BYTES - 1) / LIMB_BYTES;
+        int[] limbs = new int[length];
+        if (length > 0) {
+            int top = first;
+            for (int i = magnitudeBytes - (length - 1) * LIMB_BYTES
+                    - 1; i > 0; i--) {
+                top = (top << Byte.SIZE) | (buffer.get() & BYTE_MASK);
+            }
+            limbs[length - 1] = top;
+            boolean swap = buffer.order() != ByteOrder.BIG_ENDIAN;
+            for (int j = length - 2; j >= 0; j--) {
+                int limb = buffer.getInt();
+                limbs[j] = swap ? Integer.reverseBytes(limb) : limb;
+            }
+        }
+        NaturalNumberLimbs.assign(result, limbs,
+                LimbArithmetic.normalize(limbs, length));
+    }
+
+    /**
+     * Writes {@code values} to {@code file}, replacing it with an owner-only
+     * file, as one DER SEQUENCE of INTEGERs.
+     *
+     * @param values
+     *            the numbers to write
+     * @param file
+     *            the file to write
+     * @throws IOException
+     *             if the file cannot be written, or the sequence would not
+     *             fit in 2 GiB
+     */
+    public static void writeAll(NaturalNumber[] values, Path file)
+            throws IOException {
+        assert values != null : "Violation of: values is not null";
+        assert file != null : "Violation of: file is not null";
+        NaturalNumberLimbs[] local = new NaturalNumberLimbs[values.length];
+        long contentLength = 0;
+        for (int i = 0; i < values.length; i++) {
+            local[i] = NaturalNumberLimbs.valueOf(values[i]);
+            contentLength += elementLength(contentLength(local[i]));
+        }
+        writeSequence(file, contentLength, buffer -> {
+            for (NaturalNumberLimbs value : local) {
+                write(value, buffer);
+            }
+        });
+    }
+
+    /**
+     * Reads the numbers written to {@code file} by {@code writeAll}.
+     *
+     * @param file
+     *            the file to read
+     * @return the numbers, in the order they were written
+     * @throws IOException
+     *             if the file cannot be read or is not a DER SEQUENCE of
+     *             INTEGERs of at least zero
+     */
+    public static NaturalNumber[] readAll(Path file) throws IOException {
+        assert file != null : "Violation of: file is not null";
+        ByteBuffer buffer = open(file);
+        List<NaturalNumber> values = new ArrayList<>();
+        try {
+            int end = readSequence(buffer);
+            while (buffer.position() < end) {
+                values.add(read(buffer));
+            }
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Malformed number file " + file, e);
+        }
+        return values.toArray(new NaturalNumber[0]);
+    }
+
+    /**
+     * Reads the header of a SEQUENCE that must fill the rest of
+     * {@code buffer}.
+     *
+     * @param buffer
+     *            the buffer to read from
+     * @return position just past the sequence, the buffer's limit
+     * @throws IllegalArgumentException
+     *             if the buffer does not hold exactly one DER SEQUENCE
+     * @updates buffer
+     */
+    static int readSequence(ByteBuffer buffer) {
+        int length = readHeader(SEQUENCE, buffer);
+        if (length != buffer.remaining()) {
+            throw new IllegalArgumentException(
+                    "Trailing bytes after DER SEQUENCE");
+        }
+        return buffer.limit();
+    }
+
+    /**
+     * Replaces {@code file} with a DER SEQUENCE with {@code contentLength}
+     * bytes of contents, written by {@code elements}. The sequence is written
+     * to a new temporary file beside {@code file}, owner-only where POSIX
+     * permissions are supported, which is then moved over {@code file} in one
+     * step.
+     *
+     * @param file
+     *            the file to replace
+     * @param contentLength
+     *            length of the sequence's contents in bytes
+     * @param elements
+     *            writes exactly the contents at the position of the buffer
+     *            it is given
+     * @throws IOException
+     *             if the file cannot be written or moved, or the sequence
+     *             would not fit in 2 GiB; file is then unchanged
+     */
+    static void writeSequence(Path file, long contentLength,
+            Consumer<ByteBuffer> elements) throws IOException {
+        if (contentLength > MAX_FILE_BYTES - elementLength(0)
+                - Integer.BYTES) {
+            throw new IOException("Too large for one file: " + contentLength
+                    + " bytes of contents");
+        }
+        int size = elementLength((int) contentLength);
+        Path target = file.toAbsolutePath();
+        FileSystem fileSystem = target.getFileSystem();
+        FileAttribute<?>[] ownerOnly = {};
+        if (fileSystem.supportedFileAttributeViews().contains("posix")) {
+            ownerOnly = new FileAttribute<?>[] {PosixFilePermissions
+                    .asFileAttribute(PosixFilePermissions
+                            .fromString("rw-------"))};
+        }
+        Path temporary = Files.createTempFile(target.getParent(),
+                "." + target.getFileName(), ".tmp", ownerOnly);
+        try {
+            try (FileChannel channel = FileChannel.open(temporary,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                MappedByteBuffer buffer = channel
+                        .map(FileChannel.MapMode.READ_WRITE, 0, size);
+                writeHeader(SEQUENCE, (int) contentLength, buffer);
+                elements.accept(buffer);
+                assert !buffer.hasRemaining() : ""
+                        + "Violation of: elements wrote contentLength bytes";
+                buffer.force();
+            }
+            Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Maps {@code file} for reading.
+     *
+     * @param file
+     *            the file to read
+     * @return a read-only buffer over the whole file
+     * @throws IOException
+     *             if the file cannot be read or is larger than 2 GiB
+     */
+    static ByteBuffer open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > MAX_FILE_BYTES) {
+                throw new IOException("Too large for one mapping: " + file);
+            }
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+    }
+
+}
@@ -0,0 +1,524 @@
+import components.naturalnumber.NaturalNumber;
+import components.naturalnumber.NaturalNumberSecondary;
+
+/**
+ * {@code NaturalNumber} represented as an array of binary limbs, with
+ * implementations of primary methods and word-level overrides of the
+ * arithmetic secondary methods.
+ *
+ * <p>
+ * Besides the {@code NaturalNumber} contract, this class offers constant-time
+ * parity and bit access ({@code isOdd}, {@code testBit}, {@code bitLength})
+ * and shifts, which {@code CryptoUtilities} uses in place of decimal digit
+ * operations whenever it is handed a {@code NaturalNumberLimbs}.
+ * </p>
+ *
+ * @convention <pre>
+ * 0 <= $this.size <= |$this.limbs|  and
+ * [if $this.size > 0 then $this.limbs[$this.size - 1] /= 0]
+ * </pre>
+ * @correspondence <pre>
+ * this = [sum of ($this.limbs[i] as unsigned) * 2^(32 * i)
+ *         for 0 <= i < $this.size]
+ * </pre>
+ *
+ * @author Jamal Aden
+ *
+ */
+public class NaturalNumberLimbs extends NaturalNumberSecondary {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * Number of limbs allocated for a new representation.
+     */
+    private static final int INITIAL_CAPACITY = 4;
+
+    /**
+     * Radix of the kernel's {@code multiplyBy10}/{@code divideBy10}.
+     */
+    private static final int RADIX = 10;
+
+    /**
+     * Little-endian limbs of {@code this}.
+     */
+    private int[] limbs;
+
+    /**
+     * Number of significant limbs in {@code limbs}.
+     */
+    private int size;
+
+    /**
+     * Creator of initial representation.
+     */
+    private void createNewRep() {
+        this.limbs = new int[INITIAL_CAPACITY];
+        this.size = 0;
+    }
+
+    /**
+     * Makes sure {@code limbs} can hold at least {@code capacity} limbs,
+     * preserving the current value.
+     *
+     * @param capacity
+     *            required number of limbs
+     */
+    private void ensureCapacity(int capacity) {
+        if (this.limbs.length < capacity) {
+            int[] grown = new int[Math.max(capacity, 2 * this.limbs.length)];
+            System.arraycopy(this.limbs, 0, grown, 0, this.size);
+            this.limbs = grown;
+        }
+    }
+
+    /**
+     * Returns {@code n} as a {@code NaturalNumberLimbs}, converting it only if
+     * it has a different dynamic type.
+     *
+     * @param n
+     *            the number to view
+     * @return {@code n} itself, or a new {@code NaturalNumberLimbs} equal to
+     *         it
+     */
+    static NaturalNumberLimbs valueOf(NaturalNumber n) {
+        if (n instanceof NaturalNumberLimbs) {
+            return (NaturalNumberLimbs) n;
+        }
+        NaturalNumberLimbs result = new NaturalNumberLimbs();
+        result.setFromString(n.toString());
+        return result;
+    }
+
+    /**
+     * Replaces {@code n} by the magnitude in {@code mag}, avoiding decimal
+     * conversion when {@code n} is a {@code NaturalNumberLimbs}.
+     *
+     * @param n
+     *            the number to set
+     * @param mag
+     *            little-endian limbs
+     * @param len
+     *            normalized length of {@code mag}
+     */
+    static void assign(NaturalNumber n, int[] mag, int len) {
+        if (n instanceof NaturalNumberLimbs) {
+            ((NaturalNumberLimbs) n).setLimbs(mag, len);
+        } else {
+            n.setFromString(LimbArithmetic.toDecimal(mag, len));
+        }
+    }
+
+    /**
+     * Copies the limbs of {@code this} into a new array of exactly
+     * {@code size} limbs.
+     *
+     * @return the limbs of {@code this}
+     */
+    final int[] toLimbs() {
+        int[] result = new int[this.size];
+        System.arraycopy(this.limbs, 0, result, 0, this.size);
+        return result;
+    }
+
+    /**
+     * Gives read access to the representation, for the arithmetic routines
+     * in this package; callers must not modify it.
+     *
+     * @return the limb array, of which {@code limbCount()} are significant
+     */
+    final int[] limbArray() {
+        return this.limbs;
+    }
+
+    /**
+     * Reports the number of significant limbs.
+     *
+     * @return number of significant limbs
+     */
+    final int limbCount() {
+        return this.size;
+    }
+
+    /**
+     * Replaces {@code this} by the magnitude in {@code mag}.
+     *
+     * @param mag
+     *            little-endian limbs
+     * @param len
+     *            normalized length of {@code mag}
+     */
+    final void setLimbs(int[] mag, int len) {
+        assert len == LimbArithmetic.normalize(mag, len) : ""
+                + "Violation of: len is normalized";
+        if (this.limbs.length < len) {
+            this.limbs = new int[Math.max(len, INITIAL_CAPACITY)];
+        }
+        System.arraycopy(mag, 0, this.limbs, 0, len);
+        this.size = len;
+    }
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * No-argument constructor.
+     */
+    public NaturalNumberLimbs() {
+        this.createNewRep();
+    }
+
+    /**
+     * Constructor from {@code int}.
+     *
+     * @param i
+     *            {@code int} to initialize from
+     */
+    public NaturalNumberLimbs(int i) {
+        assert i >= 0 : "Violation of: i >= 0";
+        this.createNewRep();
+        this.setFromInt(i);
+    }
+
+    /**
+     * Constructor from {@code String}.
+     *
+     * @param s
+     *            {@code String} to initialize from
+     */
+    public NaturalNumberLimbs(String s) {
+        assert s != null : "Violation of: s is not null";
+        assert s.matches("0|[1-9]\\d*") : ""
+                + "Violation of: there exists n: NATURAL (s = TO_STRING(n))";
+        this.createNewRep();
+        this.setFromString(s);
+    }
+
+    /**
+     * Constructor from {@code NaturalNumber}.
+     *
+     * @param n
+     *            {@code NaturalNumber} to initialize from
+     */
+    public NaturalNumberLimbs(NaturalNumber n) {
+        assert n != null : "Violation of: n is not null";
+        this.createNewRep();
+        this.copyFrom(n);
+    }
+
+    /*
+     * Standard methods -------------------------------------------------------
+     */
+
+    @Override
+    public final NaturalNumber newInstance() {
+        try {
+            return this.getClass().getConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new AssertionError(
+                    "Cannot construct object of type " + this.getClass());
+        }
+    }
+
+    @Override
+    public final void clear() {
+        this.size = 0;
+    }
+
+    @Override
+    public final void transferFrom(NaturalNumber source) {
+        assert source != null : "Violation of: source is not null";
+        assert source != this : "Violation of: source is not this";
+        assert source instanceof NaturalNumberLimbs : ""
+                + "Violation of: source is of dynamic type NaturalNumberLimbs";
+        NaturalNumberLimbs localSource = (NaturalNumberLimbs) source;
+        this.limbs = localSource.limbs;
+        this.size = localSource.size;
+        localSource.createNewRep();
+    }
+
+    /*
+     * Kernel methods ---------------------------------------------------------
+     */
+
+    @Override
+    public final void multiplyBy10(int k) {
+        assert 0 <= k : "Violation of: 0 <= k";
+        assert k < RADIX : "Violation of: k < 10";
+        this.ensureCapacity(this.size + 1);
+        this.size = LimbArithmetic.multiplyInt(this.limbs, this.size, RADIX, k,
+                this.limbs);
+    }
+
+    @Override
+    public final int divideBy10() {
+        int rem = (int) LimbArithmetic.divideInt(this.limbs, this.size, RADIX,
+                this.limbs);
+        this.size = LimbArithmetic.normalize(this.limbs, this.size);
+        return rem;
+    }
+
+    @Override
+    public final boolean isZero() {
+        return this.size == 0;
+    }
+
+    /*
+     * Word-level overrides of secondary methods -------------------------------
+     */
+
+    @Override
+    public final void setFromInt(int i) {
+        assert i >= 0 : "Violation of: i >= 0";
+        this.limbs[0] = i;
+        this.size = i == 0 ? 0 : 1;
+    }
+
+    @Override
+    public final boolean canConvertToInt() {
+        return this.size == 0 || (this.size == 1 && this.limbs[0] >= 0);
+    }
+
+    @Override
+    public final int toInt() {
+        assert this.canConvertToInt() : ""
+                + "Violation of: this <= Integer.MAX_VALUE";
+        return this.size == 0 ? 0 : this.limbs[0];
+    }
+
+    @Override
+    public final void setFromString(String s) {
+        assert s != null : "Violation of: s is not null";
+        assert this.canSetFromString(s) : ""
+                + "Violation of: there exists n: NATURAL (s = TO_STRING(n))";
+        int[] mag = LimbArithmetic.fromDecimal(s);
+        this.setLimbs(mag, mag.length);
+    }
+
+    @Override
+    public final void copyFrom(NaturalNumber n) {
+        assert n != null : "Violation of: n is not null";
+        assert n != this : "Violation of: n is not this";
+        if (n instanceof NaturalNumberLimbs) {
+            NaturalNumberLimbs localN = (NaturalNumberLimbs) n;
+            this.setLimbs(localN.limbs, localN.size);
+        } else {
+            this.setFromString(n.toString());
+        }
+    }
+
+    @Override
+    public final int compareTo(NaturalNumber n) {
+        assert n != null : "Violation of: n is not null";
+        NaturalNumberLimbs localN = valueOf(n);
+        return LimbArithmetic.compare(this.limbs, this.size, localN.limbs,
+                localN.size);
+    }
+
+    @Override
+    public final void increment() {
+        int i = 0;
+        while (i < this.size && this.limbs[i] == -1) {
+            this.limbs[i] = 0;
+            i++;
+        }
+        if (i == this.size) {
+            this.ensureCapacity(this.size + 1);
+            this.limbs[i] = 1;
+            this.size++;
+        } else {
+            this.limbs[i]++;
+        }
+    }
+
+    @Override
+    public final void decrement() {
+        assert !this.isZero() : "Violation of: this > 0";
+        int i = 0;
+        while (this.limbs[i] == 0) {
+            this.limbs[i] = -1;
+            i++;
+        }
+        this.limbs[i]--;
+        this.size = LimbArithmetic.normalize(this.limbs, this.size);
+    }
+
+    @Override
+    public final void add(NaturalNumber n) {
+        assert n != null : "Violation of: n is not null";
+        NaturalNumberLimbs localN = valueOf(n);
+        this.ensureCapacity(Math.max(this.size, localN.size) + 1);
+        this.size = LimbArithmetic.add(this.limbs, this.size, localN.limbs,
+                localN.size, this.limbs);
+    }
+
+    @Override
+    public final void subtract(NaturalNumber n) {
+        assert n != null : "Violation of: n is not null";
+        NaturalNumberLimbs localN = valueOf(n);
+        assert this.compareTo(localN) >= 0 : "Violation of: this >= n";
+        this.size = LimbArithmetic.subtract(this.limbs, this.size,
+                localN.limbs, localN.size, this.limbs);
+    }
+
+    @Override
+    public final void multiply(NaturalNumber n) {
+        assert n != null : "Violation of: n is not null";
+        NaturalNumberLimbs localN = valueOf(n);
+        int[] product = new int[Math.max(this.size + localN.size,
+                INITIAL_CAPACITY)];
+        this.size = LimbArithmetic.multiply(this.limbs, this.size,
+                localN.limbs, localN.size, product);
+        this.limbs = product;
+    }
+
+    @Override
+    public final NaturalNumber divide(NaturalNumber n) {
+        assert n != null : "Violation of: n is not null";
+        assert !n.isZero() : "Violation of: n > 0";
+        NaturalNumberLimbs localN = valueOf(n);
+        NaturalNumberLimbs remainder = (NaturalNumberLimbs) this.newInstance();
+        remainder.ensureCapacity(localN.size);
+        if (LimbArithmetic.compare(this.limbs, this.size, localN.limbs,
+                localN.size) < 0) {
+            remainder.setLimbs(this.limbs, this.size);
+            this.size = 0;
+        } else {
+            int[] quotient = new int[Math.max(this.size - localN.size + 1,
+                    INITIAL_CAPACITY)];
+            remainder.size = LimbArithmetic.divide(this.limbs, this.size,
+                    localN.limbs, localN.size, quotient, remainder.limbs);
+            this.size = LimbArithmetic.normalize(quotient,
+                    this.size - localN.size + 1);
+            this.limbs = quotient;
+        }
+        return remainder;
+    }
+
+    @Override
+    public final boolean equals(Object obj) {
+        if (obj instanceof NaturalNumberLimbs) {
+            NaturalNumberLimbs other = (NaturalNumberLimbs) obj;
+            return LimbArithmetic.compare(this.limbs, this.size, other.limbs,
+                    other.size) == 0;
+        }
+        return super.equals(obj);
+    }
+
+    @Override
+    public final int hashCode() {
+        return super.hashCode();
+    }
+
+    @Override
+    public final String toString() {
+        return LimbArithmetic.toDecimal(this.limbs, this.size);
+    }
+
+    /*
+     * Binary methods ---------------------------------------------------------
+     */
+
+    /**
+     * Reports whether {@code this} is odd, in constant time.
+     *
+     * @return true iff this mod 2 = 1
+     * @ensures isOdd = (this mod 2 = 1)
+     */
+    public final boolean isOdd() {
+        return this.size > 0 && (this.limbs[0] & 1) != 0;
+    }
+
+    /**
+     * Reports whether bit {@code i} of {@code this} is set, in constant time.
+     *
+     * @param i
+     *            bit index
+     * @return true iff bit i of this is 1
+     * @requires i >= 0
+     * @ensures testBit = ((this / 2^i) mod 2 = 1)
+     */
+    public final boolean testBit(int i) {
+        assert i >= 0 : "Violation of: i >= 0";
+        return LimbArithmetic.testBit(this.limbs, this.size, i);
+    }
+
+    /**
+     * Reports the number of bits needed to write {@code this} in binary.
+     *
+     * @return bit length of this
+     * @ensures bitLength = [smallest k >= 0 such that this < 2^k]
+     */
+    public final int bitLength() {
+        return LimbArithmetic.bitLength(this.limbs, this.size);
+    }
+
+    /**
+     * Multiplies {@code this} by 2^{@code k}.
+     *
+     * @param k
+     *            shift amount
+     * @updates this
+     * @requires k >= 0
+     * @ensures this = #this * 2^k
+     */
+    public final void shiftLeft(int k) {
+        assert k >= 0 : "Violation of: k >= 0";
+        this.ensureCapacity(this.size + (k >>> 5) + 1);
+        this.size = LimbArithmetic.shiftLeft(this.limbs, this.size, k,
+                this.limbs);
+    }
+
+    /**
+     * Divides {@code this} by 2^{@code k}, discarding the remainder.
+     *
+     * @param k
+     *            shift amount
+     * @updates this
+     * @requires k >= 0
+     * @ensures this = #this / 2^k
+     */
+    public final void shiftRight(int k) {
+        assert k >= 0 : "Violation of: k >= 0";
+        this.size = LimbArithmetic.shiftRight(this.limbs, this.size, k,
+                this.limbs);
+    }
+
+    /**
+     * Divides {@code this} by a positive {@code int} and reports the
+     * remainder.
+     *
+     * @param d
+     *            the divisor
+     * @return the remainder
+     * @updates this
+     * @requires d > 0
+     * @ensures #this = this * d + divideBy and 0 <= divideBy < d
+     */
+    public final int divideBy(int d) {
+        assert d > 0 : "Violation of: d > 0";
+        int rem = (int) LimbArithmetic.divideInt(this.limbs, this.size, d,
+                this.limbs);
+        this.size = LimbArithmetic.normalize(this.limbs, this.size);
+        return rem;
+    }
+
+    /**
+     * Reports {@code this} mod {@code d} for a positive {@code int}, with one
+     * pass of single-word remainders.
+     *
+     * @param d
+     *            the divisor
+     * @return this mod d
+     * @requires d > 0
+     * @ensures mod = this mod d
+     */
+    public final int mod(int d) {
+        assert d > 0 : "Violation of: d > 0";
+        return (int) LimbArithmetic.divideInt(this.limbs, this.size, d, null);
+    }
+
+}
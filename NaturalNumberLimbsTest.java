@@ -0,0 +1,174 @@
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import components.naturalnumber.NaturalNumber;
+import components.naturalnumber.NaturalNumber2;
+
+/**
+ * JUnit test fixture for {@code NaturalNumberLimbs}.
+ *
+ * @author Jamal Aden
+ *
+ */
+public class NaturalNumberLimbsTest {
+
+    /**
+     * The value 2^64 + 1, spanning three limbs.
+     */
+    private static final String THREE_LIMBS = "18446744073709551617";
+
+    /**
+     * A 2^128 - 1 value, four full limbs.
+     */
+    private static final String FOUR_FULL_LIMBS = ""
+            + "340282366920938463463374607431768211455";
+
+    /*
+     * Tests of constructors and conversions
+     */
+
+    @Test
+    public void testConstructor_String_RoundTrip() {
+        NaturalNumber n = new NaturalNumberLimbs(FOUR_FULL_LIMBS);
+        assertEquals(FOUR_FULL_LIMBS, n.toString());
+    }
+
+    @Test
+    public void testConstructor_Zero() {
+        NaturalNumber n = new NaturalNumberLimbs();
+        assertEquals("0", n.toString());
+        assertEquals(true, n.isZero());
+    }
+
+    @Test
+    public void testConstructor_NaturalNumber2() {
+        NaturalNumber n = new NaturalNumberLimbs(
+                new NaturalNumber2(THREE_LIMBS));
+        assertEquals(THREE_LIMBS, n.toString());
+    }
+
+    @Test
+    public void testToInt_MaxValue() {
+        NaturalNumber n = new NaturalNumberLimbs(Integer.MAX_VALUE);
+        assertEquals(true, n.canConvertToInt());
+        assertEquals(Integer.MAX_VALUE, n.toInt());
+        n.increment();
+        assertEquals(false, n.canConvertToInt());
+    }
+
+    /*
+     * Tests of kernel methods
+     */
+
+    @Test
+    public void testMultiplyBy10_DivideBy10() {
+        NaturalNumber n = new NaturalNumberLimbs(FOUR_FULL_LIMBS);
+        n.multiplyBy10(7);
+        assertEquals(FOUR_FULL_LIMBS + "7", n.toString());
+        assertEquals(7, n.divideBy10());
+        assertEquals(FOUR_FULL_LIMBS, n.toString());
+    }
+
+    /*
+     * Tests of arithmetic
+     */
+
+    @Test
+    public void testIncrement_CarryAcrossLimbs() {
+        NaturalNumber n = new NaturalNumberLimbs(FOUR_FULL_LIMBS);
+        n.increment();
+        assertEquals("340282366920938463463374607431768211456", n.toString());
+        n.decrement();
+        assertEquals(FOUR_FULL_LIMBS, n.toString());
+    }
+
+    @Test
+    public void testAdd_Subtract() {
+        NaturalNumber n = new NaturalNumberLimbs(FOUR_FULL_LIMBS);
+        NaturalNumber m = new NaturalNumberLimbs(THREE_LIMBS);
+        n.add(m);
+        assertEquals("340282366920938463481821351505477763072", n.toString());
+        n.subtract(m);
+        assertEquals(FOUR_FULL_LIMBS, n.toString());
+        assertEquals(THREE_LIMBS, m.toString());
+    }
+
+    @Test
+    public void testMultiply() {
+        NaturalNumber n = new NaturalNumberLimbs(FOUR_FULL_LIMBS);
+        NaturalNumber m = new NaturalNumberLimbs(THREE_LIMBS);
+        n.multiply(m);
+        assertEquals("6277101735386680764176071790128604879547283307822093172"
+                + "735", n.toString());
+    }
+
+    @Test
+    public void testDivide_MultiLimbDivisor() {
+        NaturalNumber n = new NaturalNumberLimbs(FOUR_FULL_LIMBS);
+        NaturalNumber m = new NaturalNumberLimbs(THREE_LIMBS);
+        NaturalNumber r = n.divide(m);
+        assertEquals("18446744073709551615", n.toString());
+        assertEquals("0", r.toString());
+    }
+
+    @Test
+    public void testDivide_WithRemainder() {
+        NaturalNumber n = new NaturalNumberLimbs("123456789012345678901234567");
+        NaturalNumber m = new NaturalNumberLimbs("9876543210987");
+        NaturalNumber r = n.divide(m);
+        assertEquals("12499999886094", n.toString());
+        assertEquals("5709891919789", r.toString());
+    }
+
+    @Test
+    public void testDivide_MixedTypes() {
+        NaturalNumber n = new NaturalNumberLimbs(100);
+        NaturalNumber r = n.divide(new NaturalNumber2(7));
+        assertEquals("14", n.toString());
+        assertEquals("2", r.toString());
+    }
+
+    @Test
+    public void testCompareTo_Equals() {
+        NaturalNumber n = new NaturalNumberLimbs(THREE_LIMBS);
+        NaturalNumber m = new NaturalNumberLimbs(FOUR_FULL_LIMBS);
+        assertEquals(true, n.compareTo(m) < 0);
+        assertEquals(true, m.compareTo(n) > 0);
+        assertEquals(new NaturalNumberLimbs(THREE_LIMBS), n);
+    }
+
+    /*
+     * Tests of binary methods
+     */
+
+    @Test
+    public void testBitAccess() {
+        NaturalNumberLimbs n = new NaturalNumberLimbs(THREE_LIMBS);
+        assertEquals(true, n.isOdd());
+        assertEquals(65, n.bitLength());
+        assertEquals(true, n.testBit(64));
+        assertEquals(false, n.testBit(63));
+        assertEquals(false, n.testBit(1000));
+    }
+
+    @Test
+    public void testShifts() {
+        NaturalNumberLimbs n = new NaturalNumberLimbs(THREE_LIMBS);
+        n.shiftLeft(63);
+        n.shiftRight(63);
+        assertEquals(THREE_LIMBS, n.toString());
+        n.shiftRight(64);
+        assertEquals("1", n.toString());
+    }
+
+    @Test
+    public void testDivideBy_Mod() {
+        NaturalNumberLimbs n = new NaturalNumberLimbs(FOUR_FULL_LIMBS);
+        assertEquals(0, n.mod(3));
+        assertEquals(FOUR_FULL_LIMBS, n.toString());
+        assertEquals(1, n.divideBy(2));
+        assertEquals("170141183460469231731687303715884105727", n.toString());
+    }
+
+}
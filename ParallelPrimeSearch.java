@@ -0,0 +1,258 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Search for the next likely prime that spreads the sieve windows above the
+ * start over the workers of a fork-join pool.
+ *
+ * <p>
+ * With T workers, worker t sieves and tests windows t, t + T, t + 2T, ... in
+ * increasing order. Every candidate has a global index (window * window size
+ * + position), and the workers share the smallest index found prime so far.
+ * A worker stops as soon as its next candidate lies above that index, so work
+ * beyond the answer is abandoned, while every candidate below it is still
+ * tested by its owner. The result is therefore the smallest likely prime in
+ * the candidate sequence, the same one the sequential search returns, no
+ * matter how the workers are scheduled.
+ * </p>
+ *
+ * <p>
+ * The same search finds the smaller prime q of a safe-prime pair q, 2q + 1,
+ * with each worker sieving both members of the pair and testing the
+ * survivors with {@code CryptoUtilities.isLikelySophieGermainSurvivor}.
+ * </p>
+ *
+ * @author Jamal Aden
+ *
+ */
+public final class ParallelPrimeSearch {
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private ParallelPrimeSearch() {
+    }
+
+    /**
+     * One worker's share of the search: every {@code stride}-th window,
+     * starting with window {@code first}.
+     */
+    private static final class Stripe extends RecursiveAction {
+
+        /**
+         * Serialization id.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * First candidate of window 0.
+         */
+        private final NaturalNumberLimbs start;
+
+        /**
+         * Index of this worker's first window.
+         */
+        private final int first;
+
+        /**
+         * Number of workers, and so the distance between this worker's
+         * windows.
+         */
+        private final int stride;
+
+        /**
+         * Smallest global candidate index found prime so far, shared by all
+         * workers.
+         */
+        private final AtomicLong best;
+
+        /**
+         * The probable-prime test survivors are decided with.
+         */
+        private final CryptoUtilities.PrimalityTest test;
+
+        /**
+         * Whether the search is for the smaller prime of a safe-prime pair.
+         */
+        private final boolean safe;
+
+        /**
+         * Builds the worker for windows first, first + stride, ...
+         *
+         * @param start
+         *            first candidate of window 0
+         * @param first
+         *            index of the first window
+         * @param stride
+         *            number of workers
+         * @param best
+         *            shared smallest prime index
+         * @param test
+         *            the probable-prime test to decide with
+         * @param safe
+         *            whether 2c + 1 must be prime along with each candidate c
+         */
+        Stripe(NaturalNumberLimbs start, int first, int stride,
+                AtomicLong best, CryptoUtilities.PrimalityTest test,
+                boolean safe) {
+            this.start = start;
+            this.first = first;
+            this.stride = stride;
+            this.best = best;
+            this.test = test;
+            this.safe = safe;
+        }
+
+        @Override
+        protected void compute() {
+            PrimeSieve sieve = new PrimeSieve(this.start,
+                    PrimeSieve.DEFAULT_WINDOW, PrimeSieve.DEFAULT_PRIME_COUNT,
+                    this.safe);
+            int window = sieve.window();
+            if (this.first > 0) {
+                sieve.advance(this.first);
+            }
+            NaturalNumberLimbs candidate = new NaturalNumberLimbs();
+            ArithmeticWorkspace workspace = new ArithmeticWorkspace();
+            long base = (long) this.first * window;
+            boolean done = false;
+            while (!done && base < this.best.get()) {
+                int survivors = 0;
+                int examined = window;
+                int i = sieve.nextSurvivor(0);
+                while (i >= 0 && !done) {
+                    if (base + i >= this.best.get()) {
+                        // Another worker already has a smaller answer
+                        examined = i;
+                        done = true;
+                    } else {
+                        survivors++;
+                        sieve.candidate(i, candidate);
+                        boolean found;
+                        if (this.safe) {
+                            found = CryptoUtilities
+                                    .isLikelySophieGermainSurvivor(candidate,
+                                            this.test, workspace);
+                        } else {
+                            found = CryptoUtilities.isLikelyPrimeSurvivor(
+                                    candidate, this.test, workspace);
+                        }
+                        if (found) {
+                            this.best.accumulateAndGet(base + i, Math::min);
+                            examined = i + 1;
+                            done = true;
+                        } else {
+                            i = sieve.nextSurvivor(i + 1);
+                        }
+                    }
+                }
+                PrimalityStatistics.recordTested(examined);
+                PrimalityStatistics.recordRejected(
+                        PrimalityStatistics.Stage.SIEVE, examined - survivors);
+                if (!done) {
+                    sieve.advance(this.stride);
+                    base += (long) this.stride * window;
+                }
+            }
+        }
+
+    }
+
+    /**
+     * Finds the smallest likely prime among start, start + 2, start + 4, ...
+     * using the workers of {@code pool}.
+     *
+     * @param start
+     *            first candidate
+     * @param pool
+     *            the pool to run the workers in
+     * @param test
+     *            the probable-prime test to decide with
+     * @return the likely prime found
+     * @requires <pre>
+     * start is odd  and
+     * start > PrimeSieve.largestPrime(PrimeSieve.DEFAULT_PRIME_COUNT)
+     * </pre>
+     * @ensures <pre>
+     * nextLikelyPrime = [smallest start + 2i, i >= 0, that is very likely
+     *                    a prime number]
+     * </pre>
+     */
+    static NaturalNumberLimbs nextLikelyPrime(NaturalNumberLimbs start,
+            ForkJoinPool pool, CryptoUtilities.PrimalityTest test) {
+        return search(start, pool, test, false);
+    }
+
+    /**
+     * Finds the smallest q among start, start + 2, start + 4, ... such that q
+     * and 2q + 1 are both likely primes, using the workers of {@code pool}.
+     *
+     * @param start
+     *            first candidate
+     * @param pool
+     *            the pool to run the workers in
+     * @param test
+     *            the probable-prime test to decide q with
+     * @return the smaller prime q of the pair found
+     * @requires <pre>
+     * start is odd  and
+     * start > PrimeSieve.largestPrime(PrimeSieve.DEFAULT_PRIME_COUNT)
+     * </pre>
+     * @ensures <pre>
+     * nextLikelySophieGermainPrime = [smallest q = start + 2i, i >= 0, such
+     *     that q and 2q + 1 are very likely prime numbers]
+     * </pre>
+     */
+    static NaturalNumberLimbs nextLikelySophieGermainPrime(
+            NaturalNumberLimbs start, ForkJoinPool pool,
+            CryptoUtilities.PrimalityTest test) {
+        return search(start, pool, test, true);
+    }
+
+    /**
+     * Runs the search for {@code nextLikelyPrime} or, with {@code safe}, for
+     * {@code nextLikelySophieGermainPrime}.
+     *
+     * @param start
+     *            first candidate
+     * @param pool
+     *            the pool to run the workers in
+     * @param test
+     *            the probable-prime test to decide with
+     * @param safe
+     *            whether 2c + 1 must be prime along with each candidate c
+     * @return the candidate found
+     */
+    private static NaturalNumberLimbs search(NaturalNumberLimbs start,
+            ForkJoinPool pool, CryptoUtilities.PrimalityTest test,
+            boolean safe) {
+        final AtomicLong best = new AtomicLong(Long.MAX_VALUE);
+        final int workers = pool.getParallelism();
+        final Stripe[] stripes = new Stripe[workers];
+        for (int t = 0; t < workers; t++) {
+            stripes[t] = new Stripe(start, t, workers, best, test, safe);
+        }
+        pool.invoke(new RecursiveAction() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected void compute() {
+                invokeAll(stripes);
+            }
+        });
+        /*
+         * best is the global index of the answer; turn it back into a number
+         */
+        long offset = 2 * best.get();
+        int[] offsetLimbs = {(int) offset, (int) (offset >>> Integer.SIZE)};
+        int[] result = new int[Math.max(start.limbCount(), 2) + 1];
+        int resultLength = LimbArithmetic.add(start.limbArray(),
+                start.limbCount(), offsetLimbs,
+                LimbArithmetic.normalize(offsetLimbs, 2), result);
+        NaturalNumberLimbs prime = new NaturalNumberLimbs();
+        prime.setLimbs(result, resultLength);
+        return prime;
+    }
+
+}
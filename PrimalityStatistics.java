@@ -0,0 +1,147 @@
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of how many candidates the primality tests examined and how many
+ * each stage rejected, for tuning the trial-division bound and judging where
+ * prime-search time goes.
+ *
+ * <p>
+ * The counters record only while {@code CryptoMetrics} is enabled; otherwise
+ * each record call is a single volatile read. Counters are striped
+ * ({@code LongAdder}), so concurrent searches can record without contending
+ * on one shared word.
+ * </p>
+ *
+ * @author Jamal Aden
+ *
+ */
+public final class PrimalityStatistics {
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private PrimalityStatistics() {
+    }
+
+    /**
+     * The stages of the primality tests and prime searches, in the order they
+     * run.
+     */
+    public enum Stage {
+        /**
+         * Even numbers above 2.
+         */
+        EVEN,
+        /**
+         * Candidates struck out by a prime sieve window before any test.
+         */
+        SIEVE,
+        /**
+         * Trial division by the small-prime table.
+         */
+        TRIAL_DIVISION,
+        /**
+         * The probabilistic witness test, or the base-2 half of Baillie-PSW.
+         */
+        WITNESS,
+        /**
+         * The strong Lucas half of Baillie-PSW.
+         */
+        LUCAS
+    }
+
+    /**
+     * Number of candidates examined.
+     */
+    private static final LongAdder TESTED = new LongAdder();
+
+    /**
+     * Number of candidates rejected, indexed by stage ordinal.
+     */
+    private static final LongAdder[] REJECTED = new LongAdder[Stage
+            .values().length];
+
+    static {
+        for (int i = 0; i < REJECTED.length; i++) {
+            REJECTED[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Records that a candidate was examined.
+     */
+    static void recordTested() {
+        if (CryptoMetrics.isEnabled()) {
+            TESTED.increment();
+        }
+    }
+
+    /**
+     * Records that a number of candidates were examined.
+     *
+     * @param count
+     *            number of candidates
+     */
+    static void recordTested(long count) {
+        if (CryptoMetrics.isEnabled()) {
+            TESTED.add(count);
+        }
+    }
+
+    /**
+     * Records that a stage rejected a candidate.
+     *
+     * @param stage
+     *            the rejecting stage
+     */
+    static void recordRejected(Stage stage) {
+        if (CryptoMetrics.isEnabled()) {
+            REJECTED[stage.ordinal()].increment();
+        }
+    }
+
+    /**
+     * Records that a stage rejected a number of candidates.
+     *
+     * @param stage
+     *            the rejecting stage
+     * @param count
+     *            number of candidates
+     */
+    static void recordRejected(Stage stage, long count) {
+        if (CryptoMetrics.isEnabled()) {
+            REJECTED[stage.ordinal()].add(count);
+        }
+    }
+
+    /**
+     * Reports the number of candidates examined since the last reset.
+     *
+     * @return candidates examined
+     */
+    public static long tested() {
+        return TESTED.sum();
+    }
+
+    /**
+     * Reports the number of candidates a stage rejected since the last reset.
+     *
+     * @param stage
+     *            the stage
+     * @return candidates rejected by stage
+     */
+    public static long rejected(Stage stage) {
+        return REJECTED[stage.ordinal()].sum();
+    }
+
+    /**
+     * Resets every counter to zero.
+     */
+    public static void reset() {
+        TESTED.reset();
+        for (LongAdder counter : REJECTED) {
+            counter.reset();
+        }
+    }
+
+}
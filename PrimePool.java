@@ -0,0 +1,350 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import components.naturalnumber.NaturalNumber;
+
+/**
+ * Bounded stock of pre-generated random primes, one shelf per bit length,
+ * kept filled by background workers so that taking a prime is usually just a
+ * dequeue.
+ *
+ * <p>
+ * Each shelf holds at most {@code highWatermark} primes. Whenever a take
+ * leaves a shelf at or below {@code lowWatermark}, the workers refill it up
+ * to the high watermark; in between they stay idle. A take from an empty
+ * shelf does not wait for the workers but generates a prime in the calling
+ * thread, so it is never slower than having no pool at all.
+ * </p>
+ *
+ * <p>
+ * The primes are random and have exactly the requested bit length with the
+ * top two bits set, so the product of two of them has exactly twice that
+ * length, as RSA key generation wants.
+ * </p>
+ *
+ * <p>
+ * The stock can be saved to a file and loaded into another pool, so that a
+ * restarted process does not have to generate it again. Loaded primes are
+ * tested again before they go on a shelf; the file is not trusted.
+ * </p>
+ *
+ * @author Jamal Aden
+ *
+ */
+public final class PrimePool implements AutoCloseable {
+
+    /**
+     * Primes of one bit length.
+     */
+    private static final class Shelf {
+
+        /**
+         * The primes on the shelf.
+         */
+        private final BlockingQueue<NaturalNumberLimbs> primes;
+
+        /**
+         * Whether a refill is in progress.
+         */
+        private final AtomicBoolean refilling = new AtomicBoolean();
+
+        /**
+         * Number of refill tasks still running.
+         */
+        private final AtomicInteger activeRefills = new AtomicInteger();
+
+        /**
+         * Builds an empty shelf.
+         *
+         * @param capacity
+         *            most primes the shelf holds
+         */
+        Shelf(int capacity) {
+            this.primes = new ArrayBlockingQueue<>(capacity);
+        }
+
+    }
+
+    /**
+     * Smallest bit length the pool serves; smaller primes are better found
+     * inline.
+     */
+    public static final int MIN_BITS = 32;
+
+    /**
+     * Shelf count at or below which a refill starts.
+     */
+    private final int lowWatermark;
+
+    /**
+     * Shelf count a refill stops at.
+     */
+    private final int highWatermark;
+
+    /**
+     * Number of background workers.
+     */
+    private final int workerCount;
+
+    /**
+     * The background workers.
+     */
+    private final ExecutorService workers;
+
+    /**
+     * Shelves by bit length.
+     */
+    private final Map<Integer, Shelf> shelves = new ConcurrentHashMap<>();
+
+    /**
+     * Whether {@code close} has been called.
+     */
+    private volatile boolean closed;
+
+    /**
+     * Builds an empty pool; shelves are created, and filled, on first use or
+     * by {@code prefill}.
+     *
+     * @param lowWatermark
+     *            shelf count at or below which a refill starts
+     * @param highWatermark
+     *            most primes kept per bit length
+     * @param workerCount
+     *            number of background workers
+     * @requires 0 <= lowWatermark < highWatermark and workerCount > 0
+     */
+    public PrimePool(int lowWatermark, int highWatermark, int workerCount) {
+        assert 0 <= lowWatermark : "Violation of: 0 <= lowWatermark";
+        assert lowWatermark < highWatermark : ""
+                + "Violation of: lowWatermark < highWatermark";
+        assert workerCount > 0 : "Violation of: workerCount > 0";
+        this.lowWatermark = lowWatermark;
+        this.highWatermark = highWatermark;
+        this.workerCount = workerCount;
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(workerCount, task -> {
+            Thread thread = new Thread(task,
+                    "prime-pool-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Generates a random likely prime of exactly {@code bits} bits whose top
+     * two bits are set, in the calling thread.
+     *
+     * @param bits
+     *            bit length of the prime
+     * @return the prime
+     * @requires bits >= MIN_BITS
+     */
+    static NaturalNumberLimbs generate(int bits) {
+        assert bits >= MIN_BITS : "Violation of: bits >= MIN_BITS";
+        int len = (bits + LimbArithmetic.LIMB_BITS - 1)
+                / LimbArithmetic.LIMB_BITS;
+        int[] top = new int[len];
+        int topLen = LimbArithmetic.shiftLeft(new int[] {1}, 1, bits - 2,
+                top);
+        NaturalNumberLimbs prime = new NaturalNumberLimbs();
+        do {
+            /*
+             * Start uniform in [2^(bits-1) + 2^(bits-2), 2^bits), then move up
+             * to the next prime; retry on the rare overshoot past 2^bits
+             */
+            int[] start = new int[len + 1];
+            int startLen = SecureRandomNumbers.uniform(top, topLen, start);
+            startLen = LimbArithmetic.add(start, startLen, top, topLen, start);
+            startLen = LimbArithmetic.add(start, startLen, top, topLen, start);
+            startLen = LimbArithmetic.add(start, startLen, top, topLen, start);
+            prime.setLimbs(start, startLen);
+            if (prime.bitLength() > bits) {
+                prime.decrement();
+            }
+            CryptoUtilities.generateNextLikelyPrime(prime);
+        } while (prime.bitLength() != bits);
+        return prime;
+    }
+
+    /**
+     * Finds the shelf for a bit length, creating it if needed.
+     *
+     * @param bits
+     *            bit length
+     * @return the shelf
+     */
+    private Shelf shelf(int bits) {
+        return this.shelves.computeIfAbsent(bits,
+                b -> new Shelf(this.highWatermark));
+    }
+
+    /**
+     * Starts the workers refilling a shelf up to the high watermark, unless a
+     * refill is already in progress.
+     *
+     * @param bits
+     *            bit length of the shelf
+     * @param shelf
+     *            the shelf
+     */
+    private void refill(int bits, Shelf shelf) {
+        if (!this.closed && shelf.refilling.compareAndSet(false, true)) {
+            shelf.activeRefills.set(this.workerCount);
+            try {
+                for (int i = 0; i < this.workerCount; i++) {
+                    this.workers.execute(() -> this.fill(bits, shelf));
+                }
+            } catch (RejectedExecutionException e) {
+                // The pool was closed meanwhile; nothing left to refill for
+                shelf.refilling.set(false);
+            }
+        }
+    }
+
+    /**
+     * Body of one refill task: adds primes until the shelf is full.
+     *
+     * @param bits
+     *            bit length of the shelf
+     * @param shelf
+     *            the shelf
+     */
+    private void fill(int bits, Shelf shelf) {
+        try {
+            while (!this.closed
+                    && shelf.primes.size() < this.highWatermark) {
+                // offer, not put: a full shelf just drops the extra prime
+                shelf.primes.offer(generate(bits));
+            }
+        } finally {
+            if (shelf.activeRefills.decrementAndGet() == 0) {
+                shelf.refilling.set(false);
+                /*
+                 * Takes may have drained the shelf while the last worker was
+                 * finishing
+                 */
+                if (shelf.primes.size() <= this.lowWatermark) {
+                    this.refill(bits, shelf);
+                }
+            }
+        }
+    }
+
+    /**
+     * Starts filling the shelf for a bit length in the background, so later
+     * takes find primes waiting.
+     *
+     * @param bits
+     *            bit length
+     * @requires bits >= MIN_BITS
+     */
+    public void prefill(int bits) {
+        assert bits >= MIN_BITS : "Violation of: bits >= MIN_BITS";
+        this.refill(bits, this.shelf(bits));
+    }
+
+    /**
+     * Removes and returns a prime of exactly {@code bits} bits, generating
+     * one in the calling thread if the shelf is empty.
+     *
+     * @param bits
+     *            bit length
+     * @return a likely prime with exactly bits bits, the top two set
+     * @requires bits >= MIN_BITS
+     */
+    public NaturalNumber take(int bits) {
+        assert bits >= MIN_BITS : "Violation of: bits >= MIN_BITS";
+        Shelf shelf = this.shelf(bits);
+        NaturalNumberLimbs prime = shelf.primes.poll();
+        if (shelf.primes.size() <= this.lowWatermark) {
+            this.refill(bits, shelf);
+        }
+        if (prime == null) {
+            prime = generate(bits);
+        }
+        return prime;
+    }
+
+    /**
+     * Reports the number of primes waiting on the shelf for a bit length.
+     *
+     * @param bits
+     *            bit length
+     * @return primes available without generating
+     */
+    public int available(int bits) {
+        Shelf shelf = this.shelves.get(bits);
+        return shelf == null ? 0 : shelf.primes.size();
+    }
+
+    /**
+     * Writes every prime now on the shelves to {@code file}, in the format of
+     * {@code NaturalNumberCodec.writeAll}, so readable by its owner only. The
+     * primes stay on the shelves.
+     *
+     * @param file
+     *            the file to write, replaced if it exists
+     * @throws IOException
+     *             if the file cannot be written
+     */
+    public void save(Path file) throws IOException {
+        assert file != null : "Violation of: file is not null";
+        List<NaturalNumber> stock = new ArrayList<>();
+        for (Shelf shelf : this.shelves.values()) {
+            stock.addAll(shelf.primes);
+        }
+        NaturalNumberCodec.writeAll(stock.toArray(new NaturalNumber[0]),
+                file);
+    }
+
+    /**
+     * Puts the primes in {@code file}, as written by {@code save}, on the
+     * shelves. A number is skipped unless it has at least {@code MIN_BITS}
+     * bits, its top two bits are set, it passes the Baillie-PSW test, and
+     * its shelf has room.
+     *
+     * @param file
+     *            the file to read
+     * @return the number of primes put on the shelves
+     * @throws IOException
+     *             if the file cannot be read or is malformed
+     */
+    public int load(Path file) throws IOException {
+        assert file != null : "Violation of: file is not null";
+        int loaded = 0;
+        for (NaturalNumber n : NaturalNumberCodec.readAll(file)) {
+            NaturalNumberLimbs prime = NaturalNumberLimbs.valueOf(n);
+            int bits = prime.bitLength();
+            if (bits >= MIN_BITS && prime.testBit(bits - 2)
+                    && CryptoUtilities.isPrime(prime,
+                            CryptoUtilities.PrimalityTest.BAILLIE_PSW)
+                    && this.shelf(bits).primes.offer(prime)) {
+                loaded++;
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * Stops the background workers; primes being generated are abandoned.
+     * Takes still work afterwards, generating inline once the shelves run
+     * out.
+     */
+    @Override
+    public void close() {
+        this.closed = true;
+        this.workers.shutdownNow();
+    }
+
+}
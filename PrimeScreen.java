@@ -0,0 +1,490 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Non-interactive primality screening of a file of numbers, one per line:
+ * the batch mode of {@code CryptoUtilities.main}.
+ *
+ * <p>
+ * The input is streamed through a channel in fixed-size chunks, and a line
+ * is kept only up to {@code MAX_LINE_CHARS} characters, so files of any
+ * length, with lines of any length, are screened in constant memory. Each
+ * number is checked with {@code isPrime1} and {@code isPrime2}, and a
+ * composite also gets its next likely prime; the checks run on a pool of
+ * workers, with at most {@code maxInFlight} numbers submitted but not yet
+ * written, so a slow number holds back the output but never lets the backlog
+ * grow. Results are written in input order, one tab-separated line per
+ * number:
+ * </p>
+ *
+ * <pre>
+ * n   isPrime1-verdict   isPrime2-verdict   next-likely-prime
+ * </pre>
+ *
+ * <p>
+ * where a verdict is {@code prime} or {@code composite} and the next likely
+ * prime is n itself when isPrime2 finds n prime. Blank lines are skipped;
+ * a line that is not a number of at least 2 is echoed with {@code invalid},
+ * and so is a line longer than {@code MAX_LINE_CHARS}, as its first
+ * {@code MAX_LINE_CHARS} characters followed by {@code ...}, the rest of it
+ * being skipped.
+ * </p>
+ *
+ * @author Jamal Aden
+ *
+ */
+public final class PrimeScreen {
+
+    /**
+     * Size of the input chunks, in bytes.
+     */
+    private static final int CHUNK_BYTES = 1 << 16;
+
+    /**
+     * Longest line kept, in characters, and so the most digits a number may
+     * have; about 217,000 bits, far beyond anything the checks could finish.
+     */
+    static final int MAX_LINE_CHARS = 1 << 16;
+
+    /**
+     * Marks a line cut short at {@code MAX_LINE_CHARS}.
+     */
+    private static final String ELLIPSIS = "...";
+
+    /**
+     * Size of the output buffer, in characters.
+     */
+    private static final int OUTPUT_BUFFER = 1 << 16;
+
+    /**
+     * Default bound on numbers in flight, per worker.
+     */
+    private static final int IN_FLIGHT_PER_WORKER = 4;
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private PrimeScreen() {
+    }
+
+    /**
+     * Totals of one screening run.
+     */
+    public static final class Summary {
+
+        /**
+         * Numbers screened, invalid lines included.
+         */
+        private final long numbers;
+
+        /**
+         * Numbers isPrime2 found prime.
+         */
+        private final long primes;
+
+        /**
+         * Input bytes read.
+         */
+        private final long bytes;
+
+        /**
+         * Wall time, in nanoseconds.
+         */
+        private final long nanos;
+
+        /**
+         * Builds a summary.
+         *
+         * @param numbers
+         *            numbers screened
+         * @param primes
+         *            numbers found prime
+         * @param bytes
+         *            input bytes read
+         * @param nanos
+         *            wall time in nanoseconds
+         */
+        Summary(long numbers, long primes, long bytes, long nanos) {
+            this.numbers = numbers;
+            this.primes = primes;
+            this.bytes = bytes;
+            this.nanos = nanos;
+        }
+
+        /**
+         * Reports the number of numbers screened, invalid lines included.
+         *
+         * @return numbers screened
+         */
+        public long numbers() {
+            return this.numbers;
+        }
+
+        /**
+         * Reports the number of numbers isPrime2 found prime.
+         *
+         * @return primes
+         */
+        public long primes() {
+            return this.primes;
+        }
+
+        /**
+         * Reports the number of input bytes read.
+         *
+         * @return bytes read
+         */
+        public long bytes() {
+            return this.bytes;
+        }
+
+        /**
+         * Reports the wall time of the run.
+         *
+         * @return nanoseconds
+         */
+        public long nanos() {
+            return this.nanos;
+        }
+
+        @Override
+        public String toString() {
+            final double nanosPerSecond = 1e9;
+            final double bytesPerMegabyte = 1 << 20;
+            double seconds = Math.max(this.nanos, 1) / nanosPerSecond;
+            return String.format(
+                    "screened %d numbers (%d prime) in %.3f s: "
+                            + "%.1f numbers/s, %.2f MB/s of input",
+                    this.numbers, this.primes, seconds,
+                    this.numbers / seconds,
+                    this.bytes / bytesPerMegabyte / seconds);
+        }
+
+    }
+
+    /**
+     * The result of screening one line.
+     */
+    private static final class Result {
+
+        /**
+         * The output line, without terminator.
+         */
+        private final String line;
+
+        /**
+         * Whether isPrime2 found the number prime.
+         */
+        private final boolean prime;
+
+        /**
+         * Builds a result.
+         *
+         * @param line
+         *            the output line
+         * @param prime
+         *            whether isPrime2 found the number prime
+         */
+        Result(String line, boolean prime) {
+            this.line = line;
+            this.prime = prime;
+        }
+
+    }
+
+    /**
+     * Splits a channel into lines, reading it one chunk at a time.
+     */
+    private static final class LineReader {
+
+        /**
+         * The input.
+         */
+        private final ReadableByteChannel channel;
+
+        /**
+         * The current chunk, in read mode.
+         */
+        private final ByteBuffer chunk = ByteBuffer
+                .allocateDirect(CHUNK_BYTES);
+
+        /**
+         * The line being assembled, at most {@code MAX_LINE_CHARS} long.
+         */
+        private final StringBuilder line = new StringBuilder();
+
+        /**
+         * Whether the last line read was longer than {@code MAX_LINE_CHARS}.
+         */
+        private boolean truncated;
+
+        /**
+         * Bytes read so far.
+         */
+        private long bytes;
+
+        /**
+         * Whether the channel is exhausted.
+         */
+        private boolean atEnd;
+
+        /**
+         * Builds a reader of {@code channel}.
+         *
+         * @param channel
+         *            the input
+         */
+        LineReader(ReadableByteChannel channel) {
+            this.channel = channel;
+            this.chunk.flip();
+        }
+
+        /**
+         * Reads the next line, without its terminator; input is ASCII. Only
+         * the first {@code MAX_LINE_CHARS} characters are kept, the rest
+         * being read and dropped.
+         *
+         * @return the line, or null at the end of the input
+         * @throws IOException
+         *             if the channel cannot be read
+         */
+        String next() throws IOException {
+            this.line.setLength(0);
+            this.truncated = false;
+            while (true) {
+                while (this.chunk.hasRemaining()) {
+                    char c = (char) (this.chunk.get() & 0xFF);
+                    if (c == '\n') {
+                        return this.line.toString();
+                    }
+                    if (c != '\r') {
+                        if (this.line.length() < MAX_LINE_CHARS) {
+                            this.line.append(c);
+                        } else {
+                            this.truncated = true;
+                        }
+                    }
+                }
+                if (this.atEnd) {
+                    return this.line.length() > 0 ? this.line.toString()
+                            : null;
+                }
+                this.chunk.clear();
+                int read = this.channel.read(this.chunk);
+                this.chunk.flip();
+                if (read < 0) {
+                    this.atEnd = true;
+                } else {
+                    this.bytes += read;
+                }
+            }
+        }
+
+        /**
+         * Reports whether the last line read was cut short.
+         *
+         * @return whether it was longer than {@code MAX_LINE_CHARS}
+         */
+        boolean truncated() {
+            return this.truncated;
+        }
+
+        /**
+         * Reports the number of bytes read so far.
+         *
+         * @return bytes read
+         */
+        long bytes() {
+            return this.bytes;
+        }
+
+    }
+
+    /**
+     * Makes the result of a line that is not a number to screen.
+     *
+     * @param text
+     *            the line as echoed
+     * @return the result
+     */
+    private static Result invalid(String text) {
+        return new Result(text + "\tinvalid", false);
+    }
+
+    /**
+     * Screens one line of input.
+     *
+     * @param text
+     *            the line, trimmed and not empty
+     * @return the result
+     */
+    private static Result screenLine(String text) {
+        boolean digits = true;
+        for (int i = 0; i < text.length() && digits; i++) {
+            char c = text.charAt(i);
+            digits = '0' <= c && c <= '9';
+        }
+        NaturalNumberLimbs n = null;
+        if (digits) {
+            int first = 0;
+            while (first < text.length() - 1 && text.charAt(first) == '0') {
+                first++;
+            }
+            n = new NaturalNumberLimbs(text.substring(first));
+        }
+        if (n == null || n.compareTo(new NaturalNumberLimbs(2)) < 0) {
+            return invalid(text);
+        }
+        StringBuilder result = new StringBuilder(n.toString());
+        result.append(CryptoUtilities.isPrime1(n) ? "\tprime" : "\tcomposite");
+        boolean prime = CryptoUtilities.isPrime2(n);
+        if (prime) {
+            result.append("\tprime\t").append(n);
+        } else {
+            NaturalNumberLimbs next = new NaturalNumberLimbs(n);
+            CryptoUtilities.generateNextLikelyPrime(next);
+            result.append("\tcomposite\t").append(next);
+        }
+        return new Result(result.toString(), prime);
+    }
+
+    /**
+     * Writes the oldest result in flight.
+     *
+     * @param inFlight
+     *            results in input order
+     * @param out
+     *            the output
+     * @return 1 if the number written was prime according to isPrime2, else 0
+     * @throws IOException
+     *             if the output cannot be written
+     */
+    private static int writeOldest(Deque<Future<Result>> inFlight,
+            Writer out) throws IOException {
+        Result result;
+        try {
+            result = inFlight.removeFirst().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while screening", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+        out.write(result.line);
+        out.write('\n');
+        return result.prime ? 1 : 0;
+    }
+
+    /**
+     * Screens every number of {@code in}, writing the results to
+     * {@code out} in input order.
+     *
+     * @param in
+     *            the input, one number per line
+     * @param out
+     *            where the results go; flushed, not closed
+     * @param workers
+     *            the executor to run the checks on
+     * @param maxInFlight
+     *            most numbers submitted but not yet written
+     * @return the totals of the run
+     * @throws IOException
+     *             if the input or output fails
+     * @requires maxInFlight > 0
+     */
+    public static Summary screen(ReadableByteChannel in, Writer out,
+            ExecutorService workers, int maxInFlight) throws IOException {
+        assert in != null : "Violation of: in is not null";
+        assert out != null : "Violation of: out is not null";
+        assert workers != null : "Violation of: workers is not null";
+        assert maxInFlight > 0 : "Violation of: maxInFlight > 0";
+
+        long start = System.nanoTime();
+        LineReader lines = new LineReader(in);
+        Deque<Future<Result>> inFlight = new ArrayDeque<>(maxInFlight);
+        long numbers = 0;
+        long primes = 0;
+        String line = lines.next();
+        while (line != null) {
+            String text = line.trim();
+            boolean truncated = lines.truncated();
+            if (!text.isEmpty() || truncated) {
+                if (inFlight.size() == maxInFlight) {
+                    primes += writeOldest(inFlight, out);
+                }
+                inFlight.addLast(workers.submit(() -> truncated
+                        ? invalid(text + ELLIPSIS)
+                        : screenLine(text)));
+                numbers++;
+            }
+            line = lines.next();
+        }
+        while (!inFlight.isEmpty()) {
+            primes += writeOldest(inFlight, out);
+        }
+        out.flush();
+        return new Summary(numbers, primes, lines.bytes(),
+                System.nanoTime() - start);
+    }
+
+    /**
+     * Main method: {@code input [output [workers [maxInFlight]]]}, where an
+     * input or output of {@code -} means standard input or output, output
+     * defaults to standard output, workers to the number of processors and
+     * maxInFlight to four per worker. The summary goes to standard error.
+     *
+     * @param args
+     *            the command-line arguments
+     * @throws IOException
+     *             if the input or output fails
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1 || args.length > 4) {
+            System.err.println("usage: --batch input [output [workers "
+                    + "[maxInFlight]]]   (- for standard input/output)");
+            return;
+        }
+        int workerCount = Runtime.getRuntime().availableProcessors();
+        if (args.length > 2) {
+            workerCount = Integer.parseInt(args[2]);
+        }
+        int maxInFlight = IN_FLIGHT_PER_WORKER * workerCount;
+        if (args.length > 3) {
+            maxInFlight = Integer.parseInt(args[3]);
+        }
+
+        ExecutorService workers = Executors.newFixedThreadPool(workerCount);
+        try (ReadableByteChannel in = args[0].equals("-")
+                ? Channels.newChannel(System.in)
+                : FileChannel.open(Paths.get(args[0]),
+                        StandardOpenOption.READ);
+                Writer out = args.length < 2 || args[1].equals("-")
+                        ? new BufferedWriter(new OutputStreamWriter(
+                                System.out, StandardCharsets.US_ASCII),
+                                OUTPUT_BUFFER)
+                        : Files.newBufferedWriter(Paths.get(args[1]),
+                                StandardCharsets.US_ASCII)) {
+            Summary summary = screen(in, out, workers, maxInFlight);
+            System.err.println(summary);
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+}
@@ -0,0 +1,332 @@
+import components.naturalnumber.NaturalNumber;
+
+/**
+ * Incremental sieve over a window of consecutive odd candidates start, start
+ * + 2, ..., start + 2 * (window - 1), striking out every multiple of the first
+ * few thousand odd primes so only the survivors need a probabilistic test.
+ *
+ * <p>
+ * The start is reduced modulo each sieving prime once, at construction. From
+ * then on the sieve keeps, per prime, the index of the first candidate in the
+ * window that the prime divides, and sliding the window forward only adjusts
+ * those indices with single-word arithmetic; no big-number operation is
+ * needed except to form the survivors themselves.
+ * </p>
+ *
+ * <p>
+ * A sieve built for safe primes also strikes out every candidate c for which
+ * 2c + 1 has a sieving prime as a factor, so its survivors are the candidates
+ * for the smaller prime q of a pair q, 2q + 1. It keeps a second index per
+ * prime for that, and costs about twice as much per window, but leaves far
+ * fewer survivors than sieving q alone.
+ * </p>
+ *
+ * @author Jamal Aden
+ *
+ */
+public final class PrimeSieve {
+
+    /**
+     * Default number of candidates per window.
+     */
+    public static final int DEFAULT_WINDOW = 4096;
+
+    /**
+     * Default number of sieving primes (the odd primes up to 17863).
+     */
+    public static final int DEFAULT_PRIME_COUNT = 2048;
+
+    /**
+     * Number of candidates per window.
+     */
+    private final int window;
+
+    /**
+     * Number of sieving primes, taken from the front of the small-prime
+     * table.
+     */
+    private final int primeCount;
+
+    /**
+     * Per sieving prime, index of the first candidate in the window it
+     * divides.
+     */
+    private final int[] offsets;
+
+    /**
+     * Per sieving prime, index of the first candidate c in the window for
+     * which it divides 2c + 1; null unless the sieve is for safe primes.
+     */
+    private final int[] doubledOffsets;
+
+    /**
+     * One bit per candidate in the window; set means composite.
+     */
+    private final long[] composite;
+
+    /**
+     * Limbs of the first candidate in the window, with one spare limb.
+     */
+    private int[] start;
+
+    /**
+     * Normalized length of {@code start}.
+     */
+    private int startLength;
+
+    /**
+     * Limbs of the last candidate formed for a {@code NaturalNumber}, with
+     * room for the start's length + 1 limbs.
+     */
+    private int[] survivor;
+
+    /**
+     * Reports the largest prime used by a sieve with the given number of
+     * sieving primes; only starts above it may be sieved.
+     *
+     * @param primeCount
+     *            number of sieving primes
+     * @return the largest sieving prime
+     */
+    public static int largestPrime(int primeCount) {
+        return SmallPrimes.oddPrimes()[primeCount - 1];
+    }
+
+    /**
+     * Builds a sieve whose first window starts at {@code start}, and sieves
+     * that window.
+     *
+     * @param start
+     *            first candidate
+     * @param window
+     *            number of candidates per window
+     * @param primeCount
+     *            number of sieving primes
+     * @requires <pre>
+     * start is odd  and  start > largestPrime(primeCount)  and
+     * window > 0  and  0 < primeCount <= [size of the small-prime table]
+     * </pre>
+     */
+    public PrimeSieve(NaturalNumber start, int window, int primeCount) {
+        this(start, window, primeCount, false);
+    }
+
+    /**
+     * Builds a sieve whose first window starts at {@code start}, and sieves
+     * that window; with {@code safe}, candidates c are also struck out when
+     * 2c + 1 has a sieving prime as a factor.
+     *
+     * @param start
+     *            first candidate
+     * @param window
+     *            number of candidates per window
+     * @param primeCount
+     *            number of sieving primes
+     * @param safe
+     *            whether to sieve 2c + 1 along with each candidate c
+     * @requires <pre>
+     * start is odd  and  start > largestPrime(primeCount)  and
+     * window > 0  and  0 < primeCount <= [size of the small-prime table]
+     * </pre>
+     */
+    public PrimeSieve(NaturalNumber start, int window, int primeCount,
+            boolean safe) {
+        assert window > 0 : "Violation of: window > 0";
+        assert 0 < primeCount
+                && primeCount <= SmallPrimes.oddPrimes().length : ""
+                        + "Violation of: 0 < primeCount <= table size";
+        NaturalNumberLimbs localStart = NaturalNumberLimbs.valueOf(start);
+        assert localStart.isOdd() : "Violation of: start is odd";
+        assert localStart.bitLength() > LimbArithmetic.LIMB_BITS
+                || (localStart.limbArray()[0]
+                        & LimbArithmetic.MASK) > largestPrime(primeCount) : ""
+                                + "Violation of: start > largestPrime";
+        this.window = window;
+        this.primeCount = primeCount;
+        this.composite = new long[(window + Long.SIZE - 1) / Long.SIZE];
+        this.startLength = localStart.limbCount();
+        this.start = new int[this.startLength + 1];
+        System.arraycopy(localStart.limbArray(), 0, this.start, 0,
+                this.startLength);
+        this.survivor = new int[this.start.length];
+        int[] primes = SmallPrimes.oddPrimes();
+        this.offsets = new int[primeCount];
+        this.doubledOffsets = safe ? new int[primeCount] : null;
+        SmallPrimes.residues(this.start, this.startLength, primeCount,
+                this.offsets);
+        for (int j = 0; j < primeCount; j++) {
+            /*
+             * start + 2i = 0 (mod p) exactly when i = -r / 2 (mod p), and
+             * (p + 1) / 2 is the inverse of 2 mod p; 2(start + 2i) + 1 = 0
+             * (mod p) exactly when start + 2i = (p - 1) / 2 (mod p)
+             */
+            long p = primes[j];
+            long r = this.offsets[j];
+            long half = (p + 1) / 2;
+            this.offsets[j] = (int) ((p - r) % p * half % p);
+            if (safe) {
+                this.doubledOffsets[j] = (int) ((half - 1 - r + p) % p * half
+                        % p);
+            }
+        }
+        this.sieve();
+    }
+
+    /**
+     * Marks the composites of the current window.
+     */
+    private void sieve() {
+        int[] primes = SmallPrimes.oddPrimes();
+        java.util.Arrays.fill(this.composite, 0L);
+        for (int j = 0; j < this.primeCount; j++) {
+            int p = primes[j];
+            for (int i = this.offsets[j]; i < this.window; i += p) {
+                this.composite[i >>> 6] |= 1L << i;
+            }
+        }
+        if (this.doubledOffsets != null) {
+            for (int j = 0; j < this.primeCount; j++) {
+                int p = primes[j];
+                for (int i = this.doubledOffsets[j]; i < this.window; i += p) {
+                    this.composite[i >>> 6] |= 1L << i;
+                }
+            }
+        }
+    }
+
+    /**
+     * Reports the number of candidates per window.
+     *
+     * @return candidates per window
+     */
+    public int window() {
+        return this.window;
+    }
+
+    /**
+     * Finds the next candidate in the current window that survived the
+     * sieve.
+     *
+     * @param from
+     *            index to search from
+     * @return index of the first survivor at or after from, or -1 if none
+     * @requires 0 <= from
+     */
+    public int nextSurvivor(int from) {
+        int i = from;
+        while (i < this.window) {
+            long free = ~this.composite[i >>> 6] & (-1L << i);
+            if (free != 0) {
+                int found = (i & -Long.SIZE) + Long.numberOfTrailingZeros(free);
+                return found < this.window ? found : -1;
+            }
+            i = (i & -Long.SIZE) + Long.SIZE;
+        }
+        return -1;
+    }
+
+    /**
+     * Reports the number of candidates in the current window that survived
+     * the sieve.
+     *
+     * @return number of survivors
+     */
+    public int survivorCount() {
+        int count = 0;
+        for (int i = this.nextSurvivor(0); i >= 0; i = this
+                .nextSurvivor(i + 1)) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Computes the limbs of candidate {@code i} of the current window,
+     * adding 2i to the start in one pass, without allocating.
+     *
+     * @param i
+     *            candidate index
+     * @param result
+     *            result, with room for the start's length + 1 limbs
+     * @return normalized length of result
+     * @requires 0 <= i < window
+     */
+    int candidate(int i, int[] result) {
+        long carry = 2L * i;
+        for (int j = 0; j < this.startLength; j++) {
+            carry += this.start[j] & LimbArithmetic.MASK;
+            result[j] = (int) carry;
+            carry >>>= LimbArithmetic.LIMB_BITS;
+        }
+        int length = this.startLength;
+        if (carry != 0) {
+            result[length] = (int) carry;
+            length++;
+        }
+        return length;
+    }
+
+    /**
+     * Sets {@code result} to candidate {@code i} of the current window, start
+     * + 2i. The limbs are formed in a buffer of the sieve, so nothing is
+     * allocated once {@code result} has room for them.
+     *
+     * @param i
+     *            candidate index
+     * @param result
+     *            the number to set
+     * @replaces result
+     * @requires 0 <= i < window
+     */
+    public void candidate(int i, NaturalNumber result) {
+        assert 0 <= i && i < this.window : "Violation of: 0 <= i < window";
+        if (this.survivor.length < this.startLength + 1) {
+            this.survivor = new int[this.start.length];
+        }
+        NaturalNumberLimbs.assign(result, this.survivor,
+                this.candidate(i, this.survivor));
+    }
+
+    /**
+     * Slides the sieve forward by whole windows and sieves the new window.
+     *
+     * @param windows
+     *            number of windows to move
+     * @requires windows > 0
+     */
+    public void advance(int windows) {
+        assert windows > 0 : "Violation of: windows > 0";
+        long step = (long) this.window * windows;
+        int[] primes = SmallPrimes.oddPrimes();
+        for (int j = 0; j < this.primeCount; j++) {
+            this.offsets[j] = (int) Math.floorMod(this.offsets[j] - step,
+                    (long) primes[j]);
+        }
+        if (this.doubledOffsets != null) {
+            for (int j = 0; j < this.primeCount; j++) {
+                this.doubledOffsets[j] = (int) Math.floorMod(
+                        this.doubledOffsets[j] - step, (long) primes[j]);
+            }
+        }
+        /*
+         * start += 2 * step, which fits in two limbs
+         */
+        long delta = 2 * step;
+        int[] deltaLimbs = {(int) delta, (int) (delta >>> Integer.SIZE)};
+        int deltaLength = LimbArithmetic.normalize(deltaLimbs, 2);
+        if (this.start.length < this.startLength + 2) {
+            int[] grown = new int[this.startLength + 2];
+            System.arraycopy(this.start, 0, grown, 0, this.startLength);
+            this.start = grown;
+        }
+        this.startLength = LimbArithmetic.add(this.start, this.startLength,
+                deltaLimbs, deltaLength, this.start);
+        if (this.start.length < this.startLength + 1) {
+            int[] grown = new int[this.startLength + 1];
+            System.arraycopy(this.start, 0, grown, 0, this.startLength);
+            this.start = grown;
+        }
+        this.sieve();
+    }
+
+}
@@ -0,0 +1,366 @@
+import components.naturalnumber.NaturalNumber;
+
+/**
+ * Montgomery arithmetic for an odd modulus that can be changed in place: the
+ * mutable counterpart of {@code MontgomeryContext}, which wraps one of these
+ * bound once, and the context an {@code ArithmeticWorkspace} rebinds to each
+ * new modulus.
+ *
+ * <p>
+ * The constants are computed with Montgomery squarings and doublings, without
+ * a division, so rebinding allocates nothing. A context of this class must be
+ * used by one thread at a time.
+ * </p>
+ *
+ * @author Jamal Aden
+ *
+ */
+final class RebindableMontgomeryContext extends ModularContext {
+
+    /**
+     * Limbs of the modulus, at least {@code width} long.
+     */
+    private final int[] modulus;
+
+    /**
+     * Number of limbs in the modulus.
+     */
+    private int width;
+
+    /**
+     * -m^(-1) mod 2^32.
+     */
+    private int mInverse;
+
+    /**
+     * R mod m, zero-padded to {@code width} limbs.
+     */
+    private final int[] rModM;
+
+    /**
+     * R^2 mod m, zero-padded to {@code width} limbs.
+     */
+    private final int[] r2ModM;
+
+    /**
+     * The value 1, zero-padded to {@code width} limbs (multiplying by it
+     * leaves Montgomery form).
+     */
+    private final int[] unit;
+
+    /**
+     * Builds an unbound context with room for moduli of up to
+     * {@code capacity} limbs; {@code bind} must be called before it is used.
+     *
+     * @param capacity
+     *            largest modulus length, in limbs
+     * @requires capacity > 0
+     */
+    RebindableMontgomeryContext(int capacity) {
+        assert capacity > 0 : "Violation of: capacity > 0";
+        this.modulus = new int[capacity];
+        this.rModM = new int[capacity];
+        this.r2ModM = new int[capacity];
+        this.unit = new int[capacity];
+    }
+
+    /**
+     * Rebinds this context to the modulus with limbs {@code m}.
+     *
+     * @param m
+     *            limbs of the modulus
+     * @param mLen
+     *            normalized length of m, at most the capacity
+     * @param t
+     *            scratch of {@code scratchLength(mLen)} limbs
+     * @requires m > 1 and m is odd
+     */
+    void bind(int[] m, int mLen, int[] t) {
+        assert mLen <= this.modulus.length : ""
+                + "Violation of: mLen <= capacity";
+        assert (m[0] & 1) == 1 : "Violation of: m is odd";
+        assert LimbArithmetic.bitLength(m, mLen) > 1 : "Violation of: m > 1";
+        System.arraycopy(m, 0, this.modulus, 0, mLen);
+        this.width = mLen;
+        this.mInverse = negativeInverse(m[0]);
+        for (int i = 0; i < mLen; i++) {
+            this.rModM[i] = 0;
+            this.unit[i] = 0;
+        }
+        this.unit[0] = 1;
+
+        /*
+         * R mod m: the largest power of two below m, doubled up to R
+         */
+        int bits = LimbArithmetic.bitLength(m, mLen);
+        int rBits = mLen * LimbArithmetic.LIMB_BITS;
+        this.rModM[(bits - 1) / LimbArithmetic.LIMB_BITS] = 1 << (bits - 1);
+        for (int i = bits - 1; i < rBits; i++) {
+            this.twice(this.rModM);
+        }
+
+        /*
+         * R^2 mod m is the Montgomery form of 2^rBits: start from the form
+         * of 2 and run left to right over the bits of rBits, squaring for
+         * each bit and doubling for each 1
+         */
+        System.arraycopy(this.rModM, 0, this.r2ModM, 0, mLen);
+        this.twice(this.r2ModM);
+        for (int i = Integer.SIZE - 2
+                - Integer.numberOfLeadingZeros(rBits); i >= 0; i--) {
+            this.multiply(this.r2ModM, this.r2ModM, this.r2ModM, t);
+            if ((rBits & (1 << i)) != 0) {
+                this.twice(this.r2ModM);
+            }
+        }
+    }
+
+    /**
+     * Replaces x by 2x mod m.
+     *
+     * @param x
+     *            residue below m, {@code width} limbs
+     */
+    private void twice(int[] x) {
+        final long mask = LimbArithmetic.MASK;
+        final int shift = LimbArithmetic.LIMB_BITS;
+        int k = this.width;
+        int carry = x[k - 1] >>> (shift - 1);
+        for (int j = k - 1; j > 0; j--) {
+            x[j] = (x[j] << 1) | (x[j - 1] >>> (shift - 1));
+        }
+        x[0] <<= 1;
+        if (carry != 0 || LimbArithmetic.compare(x,
+                LimbArithmetic.normalize(x, k), this.modulus, k) >= 0) {
+            long borrow = 0;
+            for (int j = 0; j < k; j++) {
+                long diff = (x[j] & mask) - (this.modulus[j] & mask) + borrow;
+                x[j] = (int) diff;
+                borrow = diff >> shift;
+            }
+        }
+    }
+
+    /**
+     * Computes -a^(-1) mod 2^32 for odd a by Newton iteration; each step
+     * doubles the number of correct low bits, starting from 3.
+     *
+     * @param a
+     *            odd limb
+     * @return -a^(-1) mod 2^32
+     */
+    private static int negativeInverse(int a) {
+        int inv = a;
+        final int newtonSteps = 4;
+        for (int i = 0; i < newtonSteps; i++) {
+            inv *= 2 - a * inv;
+        }
+        return -inv;
+    }
+
+    @Override
+    public NaturalNumber modulus() {
+        NaturalNumberLimbs m = new NaturalNumberLimbs();
+        m.setLimbs(this.modulus, this.width);
+        return m;
+    }
+
+    /**
+     * Reports the longest modulus this context has room for.
+     *
+     * @return capacity in limbs
+     */
+    int capacity() {
+        return this.modulus.length;
+    }
+
+    @Override
+    int width() {
+        return this.width;
+    }
+
+    @Override
+    int scratchLength() {
+        return scratchLength(this.width);
+    }
+
+    /**
+     * Reports the scratch length of a context bound to a modulus of
+     * {@code width} limbs: the double-width square, with a limb to spare,
+     * and the squaring's own scratch.
+     *
+     * @param width
+     *            modulus length, in limbs
+     * @return scratch length in limbs
+     */
+    static int scratchLength(int width) {
+        return 2 * width + 1 + LimbArithmetic.multiplyScratchLength(width);
+    }
+
+    /**
+     * Computes r = x * y * R^(-1) mod m (Montgomery product, coarsely
+     * integrated operand scanning). When x and y are the same array and the
+     * modulus is long enough for Karatsuba's method to square faster, the
+     * square is computed first and then reduced; below that, the single
+     * interleaved pass is faster than a square followed by a separate
+     * reduction.
+     *
+     * @param x
+     *            first factor, below m, {@code width} limbs
+     * @param y
+     *            second factor, below m, {@code width} limbs
+     * @param r
+     *            result, {@code width} limbs; may be x or y
+     * @param t
+     *            scratch of {@code scratchLength()} limbs
+     */
+    @Override
+    void multiply(int[] x, int[] y, int[] r, int[] t) {
+        final long mask = LimbArithmetic.MASK;
+        final int shift = LimbArithmetic.LIMB_BITS;
+        int k = this.width;
+        if (x == y && k >= MultiplyArithmetic.KARATSUBA_SQUARE_THRESHOLD) {
+            LimbArithmetic.multiply(x, k, x, k, t, t, 2 * k + 1);
+            t[2 * k] = 0;
+            this.reduce(t, r);
+            return;
+        }
+        int[] m = this.modulus;
+        long inv = this.mInverse & mask;
+        for (int i = 0; i < k + 2; i++) {
+            t[i] = 0;
+        }
+        for (int i = 0; i < k; i++) {
+            long yi = y[i] & mask;
+            long c = 0;
+            for (int j = 0; j < k; j++) {
+                c += (x[j] & mask) * yi + (t[j] & mask);
+                t[j] = (int) c;
+                c >>>= shift;
+            }
+            c += t[k] & mask;
+            t[k] = (int) c;
+            t[k + 1] = (int) (c >>> shift);
+
+            long q = ((t[0] & mask) * inv) & mask;
+            c = ((q * (m[0] & mask)) + (t[0] & mask)) >>> shift;
+            for (int j = 1; j < k; j++) {
+                c += q * (m[j] & mask) + (t[j] & mask);
+                t[j - 1] = (int) c;
+                c >>>= shift;
+            }
+            c += t[k] & mask;
+            t[k - 1] = (int) c;
+            t[k] = t[k + 1] + (int) (c >>> shift);
+        }
+        this.subtractModulus(t, r);
+    }
+
+    /**
+     * Computes r = t * R^(-1) mod m by word-by-word Montgomery reduction.
+     *
+     * @param t
+     *            the value, below m R, in 2k + 1 limbs; destroyed
+     * @param r
+     *            result, {@code width} limbs
+     */
+    private void reduce(int[] t, int[] r) {
+        final long mask = LimbArithmetic.MASK;
+        final int shift = LimbArithmetic.LIMB_BITS;
+        int k = this.width;
+        int[] m = this.modulus;
+        long inv = this.mInverse & mask;
+        for (int i = 0; i < k; i++) {
+            long q = ((t[i] & mask) * inv) & mask;
+            long c = 0;
+            for (int j = 0; j < k; j++) {
+                c += q * (m[j] & mask) + (t[i + j] & mask);
+                t[i + j] = (int) c;
+                c >>>= shift;
+            }
+            for (int j = i + k; c != 0; j++) {
+                c += t[j] & mask;
+                t[j] = (int) c;
+                c >>>= shift;
+            }
+        }
+        System.arraycopy(t, k, t, 0, k + 1);
+        this.subtractModulus(t, r);
+    }
+
+    /**
+     * Brings a reduced value below m: r = t - m if t &gt;= m, else r = t.
+     *
+     * @param t
+     *            the value, below 2m, in k + 1 limbs
+     * @param r
+     *            result, {@code width} limbs
+     */
+    private void subtractModulus(int[] t, int[] r) {
+        final long mask = LimbArithmetic.MASK;
+        final int shift = LimbArithmetic.LIMB_BITS;
+        int k = this.width;
+        int[] m = this.modulus;
+        if (t[k] != 0 || LimbArithmetic.compare(t,
+                LimbArithmetic.normalize(t, k), m, k) >= 0) {
+            long borrow = 0;
+            for (int j = 0; j < k; j++) {
+                long diff = (t[j] & mask) - (m[j] & mask) + borrow;
+                r[j] = (int) diff;
+                borrow = diff >> shift;
+            }
+        } else {
+            System.arraycopy(t, 0, r, 0, k);
+        }
+    }
+
+    /**
+     * Converts a into Montgomery form, r = a * R mod m.
+     *
+     * @param a
+     *            the value, of any size
+     * @param aLen
+     *            its normalized length
+     * @param r
+     *            result, {@code width} limbs
+     * @param t
+     *            scratch of {@code scratchLength()} limbs
+     */
+    @Override
+    void toResidue(int[] a, int aLen, int[] r, int[] t) {
+        int[] reduced = r;
+        if (LimbArithmetic.compare(a, aLen, this.modulus, this.width) >= 0) {
+            LimbArithmetic.divide(a, aLen, this.modulus, this.width, null,
+                    reduced);
+        } else {
+            System.arraycopy(a, 0, reduced, 0, aLen);
+        }
+        int len = LimbArithmetic.normalize(reduced,
+                Math.min(aLen, this.width));
+        for (int i = len; i < this.width; i++) {
+            reduced[i] = 0;
+        }
+        this.multiply(reduced, this.r2ModM, r, t);
+    }
+
+    /**
+     * Converts x out of Montgomery form, r = x * R^(-1) mod m.
+     *
+     * @param x
+     *            Montgomery residue, {@code width} limbs
+     * @param r
+     *            result, {@code width} limbs; may be x
+     * @param t
+     *            scratch of {@code scratchLength()} limbs
+     */
+    @Override
+    void fromResidue(int[] x, int[] r, int[] t) {
+        this.multiply(x, this.unit, r, t);
+    }
+
+    @Override
+    void one(int[] r) {
+        System.arraycopy(this.rModM, 0, r, 0, this.width);
+    }
+
+}
@@ -0,0 +1,173 @@
+import components.naturalnumber.NaturalNumber;
+
+/**
+ * The RSA primitives: encryption and signature verification with a public
+ * key, decryption and signing with a private key in CRT form. Messages,
+ * ciphertexts and signatures are numbers in [0, n); padding is the caller's
+ * business.
+ *
+ * <p>
+ * Private-key operations use the Chinese Remainder Theorem: two
+ * exponentiations modulo p and q with the half-size exponents dP and dQ,
+ * recombined with Garner's formula m = m2 + q * (qInv * (m1 - m2) mod p).
+ * Each costs about an eighth of one full-size exponentiation, so the pair
+ * runs three to four times faster. A fault in either half (a glitched
+ * multiply, a corrupted key) would make the result leak a factor of n, so
+ * every result is re-encrypted with the public exponent and checked against
+ * the input before it is released.
+ * </p>
+ *
+ * @author Jamal Aden
+ *
+ */
+public final class Rsa {
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private Rsa() {
+    }
+
+    /**
+     * Encrypts a message with a public key.
+     *
+     * @param m
+     *            the message, replaced by the ciphertext
+     * @param key
+     *            the public key
+     * @updates m
+     * @requires m < [modulus of key]
+     * @ensures m = #m ^ e mod n
+     */
+    public static void encrypt(NaturalNumber m, RsaPublicKey key) {
+        assert m != null : "Violation of: m is not null";
+        assert key != null : "Violation of: key is not null";
+        assert m.compareTo(key.n()) < 0 : "Violation of: m < n";
+
+        key.context().powerMod(m, key.e());
+    }
+
+    /**
+     * Decrypts a ciphertext with a private key.
+     *
+     * @param c
+     *            the ciphertext, replaced by the message
+     * @param key
+     *            the private key
+     * @updates c
+     * @requires c < [modulus of key]
+     * @ensures c = #c ^ d mod n
+     * @throws IllegalStateException
+     *             if the result fails the re-encryption check; c is then
+     *             unchanged
+     */
+    public static void decrypt(NaturalNumber c, RsaPrivateCrtKey key) {
+        assert c != null : "Violation of: c is not null";
+        assert key != null : "Violation of: key is not null";
+        assert c.compareTo(key.publicKey().n()) < 0 : "Violation of: c < n";
+
+        privateOperation(c, key);
+    }
+
+    /**
+     * Signs a message (its padded digest) with a private key.
+     *
+     * @param m
+     *            the message representative, replaced by the signature
+     * @param key
+     *            the private key
+     * @updates m
+     * @requires m < [modulus of key]
+     * @ensures m = #m ^ d mod n
+     * @throws IllegalStateException
+     *             if the result fails the re-encryption check; m is then
+     *             unchanged
+     */
+    public static void sign(NaturalNumber m, RsaPrivateCrtKey key) {
+        assert m != null : "Violation of: m is not null";
+        assert key != null : "Violation of: key is not null";
+        assert m.compareTo(key.publicKey().n()) < 0 : "Violation of: m < n";
+
+        privateOperation(m, key);
+    }
+
+    /**
+     * Reports whether {@code s} is a valid signature of {@code m}.
+     *
+     * @param s
+     *            the signature
+     * @param m
+     *            the message representative
+     * @param key
+     *            the public key
+     * @return true iff s ^ e mod n = m
+     * @requires s < [modulus of key]
+     */
+    public static boolean verify(NaturalNumber s, NaturalNumber m,
+            RsaPublicKey key) {
+        assert s != null : "Violation of: s is not null";
+        assert m != null : "Violation of: m is not null";
+        assert key != null : "Violation of: key is not null";
+        assert s.compareTo(key.n()) < 0 : "Violation of: s < n";
+
+        NaturalNumberLimbs check = RsaPublicKey.copyOf(s);
+        key.context().powerMod(check, key.e());
+        return check.compareTo(m) == 0;
+    }
+
+    /**
+     * Computes x ^ d mod n by the Chinese Remainder Theorem and checks the
+     * result by re-encrypting it.
+     *
+     * @param x
+     *            the input, replaced by the result
+     * @param key
+     *            the private key
+     * @updates x
+     * @requires x < [modulus of key]
+     * @ensures x = #x ^ d mod n
+     */
+    private static void privateOperation(NaturalNumber x,
+            RsaPrivateCrtKey key) {
+        NaturalNumberLimbs p = key.p();
+        NaturalNumberLimbs input = RsaPublicKey.copyOf(x);
+
+        /*
+         * m1 = x ^ dP mod p and m2 = x ^ dQ mod q; the contexts reduce x
+         * modulo p and q on the way in
+         */
+        NaturalNumberLimbs m1 = RsaPublicKey.copyOf(input);
+        key.contextP().powerMod(m1, key.dP());
+        NaturalNumberLimbs m2 = RsaPublicKey.copyOf(input);
+        key.contextQ().powerMod(m2, key.dQ());
+
+        /*
+         * Garner: h = qInv * (m1 - m2) mod p, result = m2 + q * h
+         */
+        NaturalNumberLimbs h = RsaPublicKey.copyOf(m2);
+        NaturalNumber m2ModP = h.divide(p);
+        h.copyFrom(m1);
+        if (h.compareTo(m2ModP) < 0) {
+            h.add(p);
+        }
+        h.subtract(m2ModP);
+        h.multiply(key.qInv());
+        h = NaturalNumberLimbs.valueOf(h.divide(p));
+        h.multiply(key.q());
+        h.add(m2);
+
+        /*
+         * Fault check: release the result only if it encrypts back to the
+         * input
+         */
+        RsaPublicKey publicKey = key.publicKey();
+        NaturalNumberLimbs check = RsaPublicKey.copyOf(h);
+        publicKey.context().powerMod(check, publicKey.e());
+        if (check.compareTo(input) != 0) {
+            throw new IllegalStateException(
+                    "RSA private-key result failed the re-encryption check");
+        }
+        NaturalNumberLimbs.assign(x, h.limbArray(), h.limbCount());
+    }
+
+}
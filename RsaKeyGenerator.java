@@ -0,0 +1,178 @@
+import components.naturalnumber.NaturalNumber;
+
+/**
+ * Generates RSA key pairs of a fixed size and public exponent, drawing the
+ * prime factors from a {@code PrimePool} when one is given.
+ *
+ * <p>
+ * The primes p and q have exactly half the key size each, with their top
+ * two bits set, so n = p * q has exactly the key size. A prime is skipped if
+ * it has gcd(e, p - 1) > 1, and q is drawn again if it lies too close to p.
+ * The private exponent is d = e^-1 mod lcm(p - 1, q - 1), the smallest one
+ * that works, and the CRT values are derived from it.
+ * </p>
+ *
+ * @author Jamal Aden
+ *
+ */
+public final class RsaKeyGenerator {
+
+    /**
+     * The usual public exponent, 2^16 + 1.
+     */
+    public static final int DEFAULT_PUBLIC_EXPONENT = 65537;
+
+    /**
+     * Smallest key size supported.
+     */
+    public static final int MIN_BITS = 2 * PrimePool.MIN_BITS;
+
+    /**
+     * |p - q| must exceed 2^(bits / 2 - MIN_DISTANCE_SHORTFALL), as in FIPS
+     * 186, so that Fermat factoring cannot find p and q.
+     */
+    private static final int MIN_DISTANCE_SHORTFALL = 100;
+
+    /**
+     * Key size in bits.
+     */
+    private final int bits;
+
+    /**
+     * The public exponent.
+     */
+    private final NaturalNumberLimbs e;
+
+    /**
+     * Where primes come from, or null to generate them inline.
+     */
+    private final PrimePool pool;
+
+    /**
+     * Builds a generator of {@code bits}-bit keys with public exponent 65537
+     * that finds its primes inline.
+     *
+     * @param bits
+     *            key size
+     * @requires bits >= MIN_BITS and bits is even
+     */
+    public RsaKeyGenerator(int bits) {
+        this(bits, new NaturalNumberLimbs(DEFAULT_PUBLIC_EXPONENT), null);
+    }
+
+    /**
+     * Builds a generator of {@code bits}-bit keys with public exponent 65537
+     * that takes its primes from {@code pool}.
+     *
+     * @param bits
+     *            key size
+     * @param pool
+     *            the pool to take primes from
+     * @requires bits >= MIN_BITS and bits is even
+     */
+    public RsaKeyGenerator(int bits, PrimePool pool) {
+        this(bits, new NaturalNumberLimbs(DEFAULT_PUBLIC_EXPONENT), pool);
+    }
+
+    /**
+     * Builds a generator of {@code bits}-bit keys with public exponent
+     * {@code e} that takes its primes from {@code pool}, or finds them inline
+     * if pool is null.
+     *
+     * @param bits
+     *            key size
+     * @param e
+     *            the public exponent
+     * @param pool
+     *            the pool to take primes from, or null
+     * @requires bits >= MIN_BITS and bits is even and e > 1 and e is odd
+     */
+    public RsaKeyGenerator(int bits, NaturalNumber e, PrimePool pool) {
+        assert bits >= MIN_BITS : "Violation of: bits >= MIN_BITS";
+        assert bits % 2 == 0 : "Violation of: bits is even";
+        this.bits = bits;
+        this.e = RsaPublicKey.copyOf(e);
+        assert this.e.bitLength() > 1 && this.e.isOdd() : ""
+                + "Violation of: e > 1 and e is odd";
+        this.pool = pool;
+    }
+
+    /**
+     * Gets a prime p of half the key size with gcd(e, p - 1) = 1.
+     *
+     * @return the prime
+     */
+    private NaturalNumberLimbs nextPrime() {
+        int primeBits = this.bits / 2;
+        NaturalNumberLimbs p;
+        boolean suitable;
+        do {
+            if (this.pool == null) {
+                p = PrimePool.generate(primeBits);
+            } else {
+                p = NaturalNumberLimbs.valueOf(this.pool.take(primeBits));
+            }
+            NaturalNumber pMinusOne = RsaPublicKey.copyOf(p);
+            pMinusOne.decrement();
+            NaturalNumber g = RsaPublicKey.copyOf(this.e);
+            CryptoUtilities.reduceToGCD(g, pMinusOne);
+            suitable = g.compareTo(new NaturalNumberLimbs(1)) == 0;
+        } while (!suitable);
+        return p;
+    }
+
+    /**
+     * Generates a new key pair.
+     *
+     * @return the key pair
+     * @ensures <pre>
+     * [generateKeyPair is a new key pair whose modulus has exactly the key
+     *  size in bits and whose public exponent is e]
+     * </pre>
+     */
+    public RsaKeyPair generateKeyPair() {
+        NaturalNumberLimbs p = this.nextPrime();
+        NaturalNumberLimbs q;
+        NaturalNumberLimbs distance = new NaturalNumberLimbs();
+        do {
+            q = this.nextPrime();
+            if (p.compareTo(q) < 0) {
+                NaturalNumberLimbs t = p;
+                p = q;
+                q = t;
+            }
+            distance.copyFrom(p);
+            distance.subtract(q);
+        } while (distance.bitLength() <= this.bits / 2
+                - MIN_DISTANCE_SHORTFALL || distance.isZero());
+
+        NaturalNumberLimbs n = RsaPublicKey.copyOf(p);
+        n.multiply(q);
+        NaturalNumberLimbs pMinusOne = RsaPublicKey.copyOf(p);
+        pMinusOne.decrement();
+        NaturalNumberLimbs qMinusOne = RsaPublicKey.copyOf(q);
+        qMinusOne.decrement();
+
+        /*
+         * lambda = lcm(p - 1, q - 1) = (p - 1) * (q - 1) / gcd(p - 1, q - 1)
+         */
+        NaturalNumberLimbs lambda = RsaPublicKey.copyOf(pMinusOne);
+        lambda.multiply(qMinusOne);
+        NaturalNumber g = RsaPublicKey.copyOf(pMinusOne);
+        CryptoUtilities.reduceToGCD(g, RsaPublicKey.copyOf(qMinusOne));
+        lambda.divide(g);
+
+        NaturalNumberLimbs d = RsaPublicKey.copyOf(this.e);
+        CryptoUtilities.modInverse(d, lambda);
+        NaturalNumberLimbs dP = RsaPublicKey.copyOf(d);
+        dP = NaturalNumberLimbs.valueOf(dP.divide(pMinusOne));
+        NaturalNumberLimbs dQ = RsaPublicKey.copyOf(d);
+        dQ = NaturalNumberLimbs.valueOf(dQ.divide(qMinusOne));
+        NaturalNumberLimbs qInv = RsaPublicKey.copyOf(q);
+        CryptoUtilities.modInverse(qInv, p);
+
+        return new RsaKeyPair(
+                new RsaPrivateCrtKey(n, this.e, d, p, q, dP, dQ, qInv));
+    }
+
+}
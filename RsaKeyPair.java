@@ -0,0 +1,49 @@
+/**
+ * An RSA public key together with its private key.
+ *
+ * @author Jamal Aden
+ *
+ */
+public final class RsaKeyPair {
+
+    /**
+     * The public key.
+     */
+    private final RsaPublicKey publicKey;
+
+    /**
+     * The private key.
+     */
+    private final RsaPrivateCrtKey privateKey;
+
+    /**
+     * Pairs up a private key with its public half.
+     *
+     * @param privateKey
+     *            the private key
+     */
+    public RsaKeyPair(RsaPrivateCrtKey privateKey) {
+        assert privateKey != null : "Violation of: privateKey is not null";
+        this.publicKey = privateKey.publicKey();
+        this.privateKey = privateKey;
+    }
+
+    /**
+     * Reports the public key.
+     *
+     * @return the public key
+     */
+    public RsaPublicKey publicKey() {
+        return this.publicKey;
+    }
+
+    /**
+     * Reports the private key.
+     *
+     * @return the private key
+     */
+    public RsaPrivateCrtKey privateKey() {
+        return this.privateKey;
+    }
+
+}
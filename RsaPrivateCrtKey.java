@@ -0,0 +1,473 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import components.naturalnumber.NaturalNumber;
+
+/**
+ * RSA private key in Chinese Remainder Theorem form: the modulus n = p * q,
+ * the exponents e and d, and the values dP = d mod (p - 1), dQ = d mod (q -
+ * 1) and qInv = q^-1 mod p that let private-key operations work modulo p and
+ * q separately (the RSAPrivateKey fields of PKCS #1).
+ *
+ * <p>
+ * Keys are immutable. The constructor copies its arguments and the accessors
+ * return fresh copies, so a key may be shared between threads freely. The
+ * Montgomery contexts for p and q are built once, on first use, and cached.
+ * </p>
+ *
+ * <p>
+ * A key is stored as the DER encoding of the PKCS #1 RSAPrivateKey
+ * structure, version 0 (two primes), and a key set as one DER SEQUENCE of
+ * those, through {@code NaturalNumberCodec}.
+ * </p>
+ *
+ * @author Jamal Aden
+ *
+ */
+public final class RsaPrivateCrtKey {
+
+    /**
+     * The modulus n.
+     */
+    private final NaturalNumberLimbs modulus;
+
+    /**
+     * The public exponent e.
+     */
+    private final NaturalNumberLimbs publicExponent;
+
+    /**
+     * The private exponent d.
+     */
+    private final NaturalNumberLimbs privateExponent;
+
+    /**
+     * The first prime factor p of n.
+     */
+    private final NaturalNumberLimbs prime1;
+
+    /**
+     * The second prime factor q of n.
+     */
+    private final NaturalNumberLimbs prime2;
+
+    /**
+     * dP = d mod (p - 1).
+     */
+    private final NaturalNumberLimbs exponent1;
+
+    /**
+     * dQ = d mod (q - 1).
+     */
+    private final NaturalNumberLimbs exponent2;
+
+    /**
+     * qInv = q^-1 mod p.
+     */
+    private final NaturalNumberLimbs coefficient;
+
+    /**
+     * The public half of this key.
+     */
+    private final RsaPublicKey publicKey;
+
+    /**
+     * Montgomery context for p, built on first use.
+     */
+    private volatile MontgomeryContext contextP;
+
+    /**
+     * Montgomery context for q, built on first use.
+     */
+    private volatile MontgomeryContext contextQ;
+
+    /**
+     * Builds the private key from all of its components.
+     *
+     * @param n
+     *            the modulus
+     * @param e
+     *            the public exponent
+     * @param d
+     *            the private exponent
+     * @param p
+     *            the first prime factor of n
+     * @param q
+     *            the second prime factor of n
+     * @param dP
+     *            d mod (p - 1)
+     * @param dQ
+     *            d mod (q - 1)
+     * @param qInv
+     *            q^-1 mod p
+     * @requires <pre>
+     * n = p * q  and  [p and q are distinct odd primes]  and
+     * (e * d) mod lcm(p - 1, q - 1) = 1  and
+     * dP = d mod (p - 1)  and  dQ = d mod (q - 1)  and
+     * (q * qInv) mod p = 1  and  0 < qInv < p
+     * </pre>
+     */
+    public RsaPrivateCrtKey(NaturalNumber n, NaturalNumber e, NaturalNumber d,
+            NaturalNumber p, NaturalNumber q, NaturalNumber dP,
+            NaturalNumber dQ, NaturalNumber qInv) {
+        this.modulus = RsaPublicKey.copyOf(n);
+        this.publicExponent = RsaPublicKey.copyOf(e);
+        this.privateExponent = RsaPublicKey.copyOf(d);
+        this.prime1 = RsaPublicKey.copyOf(p);
+        this.prime2 = RsaPublicKey.copyOf(q);
+        this.exponent1 = RsaPublicKey.copyOf(dP);
+        this.exponent2 = RsaPublicKey.copyOf(dQ);
+        this.coefficient = RsaPublicKey.copyOf(qInv);
+        this.publicKey = new RsaPublicKey(this.modulus, this.publicExponent);
+        assert this.prime1.isOdd() && this.prime2.isOdd() : ""
+                + "Violation of: p and q are odd";
+        assert !this.coefficient.isZero()
+                && this.coefficient.compareTo(this.prime1) < 0 : ""
+                        + "Violation of: 0 < qInv < p";
+    }
+
+    /**
+     * The fields of the key in the order of the RSAPrivateKey structure,
+     * after its version.
+     *
+     * @return n, e, d, p, q, dP, dQ and qInv
+     */
+    private NaturalNumberLimbs[] fields() {
+        return new NaturalNumberLimbs[] {this.modulus, this.publicExponent,
+            this.privateExponent, this.prime1, this.prime2, this.exponent1,
+            this.exponent2, this.coefficient};
+    }
+
+    /**
+     * Reports the length of the contents of the RSAPrivateKey SEQUENCE.
+     *
+     * @return length in bytes
+     */
+    private int contentLength() {
+        int length = NaturalNumberCodec.encodedLength(new NaturalNumberLimbs());
+        for (NaturalNumberLimbs field : this.fields()) {
+            length += NaturalNumberCodec
+                    .elementLength(NaturalNumberCodec.contentLength(field));
+        }
+        return length;
+    }
+
+    /**
+     * Reports the number of bytes {@code encode} takes.
+     *
+     * @return length of the DER RSAPrivateKey for this key
+     */
+    public int encodedLength() {
+        return NaturalNumberCodec.elementLength(this.contentLength());
+    }
+
+    /**
+     * Writes this key as a DER RSAPrivateKey (PKCS #1, version 0) at the
+     * position of {@code buffer}, and moves the position past it.
+     *
+     * @param buffer
+     *            the buffer to write to
+     * @updates buffer
+     * @requires buffer.remaining() >= encodedLength()
+     */
+    public void encode(ByteBuffer buffer) {
+        assert buffer != null : "Violation of: buffer is not null";
+        assert buffer.remaining() >= this.encodedLength() : ""
+                + "Violation of: buffer.remaining() >= encodedLength()";
+        NaturalNumberCodec.writeHeader(NaturalNumberCodec.SEQUENCE,
+                this.contentLength(), buffer);
+        NaturalNumberCodec.write(new NaturalNumberLimbs(), buffer);
+        for (NaturalNumberLimbs field : this.fields()) {
+            NaturalNumberCodec.write(field, buffer);
+        }
+    }
+
+    /**
+     * Reads a DER RSAPrivateKey (PKCS #1, version 0) at the position of
+     * {@code buffer}, and moves the position past it. Besides the encoding,
+     * only what the constructor relies on is checked: n = p * q, p and q odd,
+     * 0 < qInv < p and e > 1; the primes and exponents are taken on trust.
+     *
+     * @param buffer
+     *            the buffer to read from
+     * @return the key read
+     * @throws IllegalArgumentException
+     *             if the bytes are not such a key; the position is then
+     *             unspecified
+     * @updates buffer
+     */
+    public static RsaPrivateCrtKey decode(ByteBuffer buffer) {
+        assert buffer != null : "Violation of: buffer is not null";
+        int length = NaturalNumberCodec.readHeader(NaturalNumberCodec.SEQUENCE,
+                buffer);
+        int end = buffer.position() + length;
+        if (!NaturalNumberCodec.read(buffer).isZero()) {
+            throw new IllegalArgumentException(
+                    "Only two-prime (version 0) RSAPrivateKey is supported");
+        }
+        NaturalNumber n = readField(buffer, end);
+        NaturalNumber e = readField(buffer, end);
+        NaturalNumber d = readField(buffer, end);
+        NaturalNumber p = readField(buffer, end);
+        NaturalNumber q = readField(buffer, end);
+        NaturalNumber dP = readField(buffer, end);
+        NaturalNumber dQ = readField(buffer, end);
+        NaturalNumber qInv = readField(buffer, end);
+        if (buffer.position() != end) {
+            throw new IllegalArgumentException("Extra data in RSAPrivateKey");
+        }
+        NaturalNumber product = RsaPublicKey.copyOf(p);
+        product.multiply(q);
+        if (CryptoUtilities.isEven(p) || CryptoUtilities.isEven(q)
+                || product.compareTo(n) != 0
+                || e.compareTo(new NaturalNumberLimbs(1)) <= 0
+                || qInv.isZero() || qInv.compareTo(p) >= 0) {
+            throw new IllegalArgumentException("Inconsistent RSAPrivateKey");
+        }
+        return new RsaPrivateCrtKey(n, e, d, p, q, dP, dQ, qInv);
+    }
+
+    /**
+     * Reads the next INTEGER of an RSAPrivateKey.
+     *
+     * @param buffer
+     *            the buffer to read from
+     * @param end
+     *            position just past the RSAPrivateKey
+     * @return the number read
+     * @throws IllegalArgumentException
+     *             if the key ends first, or the bytes are not an INTEGER
+     * @updates buffer
+     */
+    private static NaturalNumber readField(ByteBuffer buffer, int end) {
+        if (buffer.position() >= end) {
+            throw new IllegalArgumentException("Truncated RSAPrivateKey");
+        }
+        return NaturalNumberCodec.read(buffer);
+    }
+
+    /**
+     * Writes {@code keys} to {@code file}, replacing it with a file only its
+     * owner can read, as one DER SEQUENCE of RSAPrivateKeys.
+     *
+     * @param keys
+     *            the keys to write
+     * @param file
+     *            the file to write
+     * @throws IOException
+     *             if the file cannot be written, or the keys would not fit
+     *             in 2 GiB
+     */
+    public static void writeAll(RsaPrivateCrtKey[] keys, Path file)
+            throws IOException {
+        assert keys != null : "Violation of: keys is not null";
+        assert file != null : "Violation of: file is not null";
+        long contentLength = 0;
+        for (RsaPrivateCrtKey key : keys) {
+            contentLength += key.encodedLength();
+        }
+        NaturalNumberCodec.writeSequence(file, contentLength, buffer -> {
+            for (RsaPrivateCrtKey key : keys) {
+                key.encode(buffer);
+            }
+        });
+    }
+
+    /**
+     * Reads the keys written to {@code file} by {@code writeAll}.
+     *
+     * @param file
+     *            the file to read
+     * @return the keys, in the order they were written
+     * @throws IOException
+     *             if the file cannot be read or does not hold such keys
+     */
+    public static RsaPrivateCrtKey[] readAll(Path file) throws IOException {
+        assert file != null : "Violation of: file is not null";
+        ByteBuffer buffer = NaturalNumberCodec.open(file);
+        List<RsaPrivateCrtKey> keys = new ArrayList<>();
+        try {
+            int end = NaturalNumberCodec.readSequence(buffer);
+            while (buffer.position() < end) {
+                keys.add(decode(buffer));
+            }
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Malformed key file " + file, e);
+        }
+        return keys.toArray(new RsaPrivateCrtKey[0]);
+    }
+
+    /**
+     * Reports the modulus.
+     *
+     * @return n
+     */
+    public NaturalNumber modulus() {
+        return RsaPublicKey.copyOf(this.modulus);
+    }
+
+    /**
+     * Reports the public exponent.
+     *
+     * @return e
+     */
+    public NaturalNumber publicExponent() {
+        return RsaPublicKey.copyOf(this.publicExponent);
+    }
+
+    /**
+     * Reports the private exponent.
+     *
+     * @return d
+     */
+    public NaturalNumber privateExponent() {
+        return RsaPublicKey.copyOf(this.privateExponent);
+    }
+
+    /**
+     * Reports the first prime factor of n.
+     *
+     * @return p
+     */
+    public NaturalNumber prime1() {
+        return RsaPublicKey.copyOf(this.prime1);
+    }
+
+    /**
+     * Reports the second prime factor of n.
+     *
+     * @return q
+     */
+    public NaturalNumber prime2() {
+        return RsaPublicKey.copyOf(this.prime2);
+    }
+
+    /**
+     * Reports the CRT exponent for p.
+     *
+     * @return dP = d mod (p - 1)
+     */
+    public NaturalNumber exponent1() {
+        return RsaPublicKey.copyOf(this.exponent1);
+    }
+
+    /**
+     * Reports the CRT exponent for q.
+     *
+     * @return dQ = d mod (q - 1)
+     */
+    public NaturalNumber exponent2() {
+        return RsaPublicKey.copyOf(this.exponent2);
+    }
+
+    /**
+     * Reports the CRT coefficient.
+     *
+     * @return qInv = q^-1 mod p
+     */
+    public NaturalNumber coefficient() {
+        return RsaPublicKey.copyOf(this.coefficient);
+    }
+
+    /**
+     * Reports the size of the key, the bit length of n.
+     *
+     * @return bit length of n
+     */
+    public int bitLength() {
+        return this.modulus.bitLength();
+    }
+
+    /**
+     * Reports the public half of this key.
+     *
+     * @return the public key (n, e)
+     */
+    public RsaPublicKey publicKey() {
+        return this.publicKey;
+    }
+
+    /**
+     * Gives read access to p, for the RSA routines in this package; callers
+     * must not modify it.
+     *
+     * @return p
+     */
+    NaturalNumberLimbs p() {
+        return this.prime1;
+    }
+
+    /**
+     * Gives read access to q, for the RSA routines in this package; callers
+     * must not modify it.
+     *
+     * @return q
+     */
+    NaturalNumberLimbs q() {
+        return this.prime2;
+    }
+
+    /**
+     * Gives read access to dP, for the RSA routines in this package; callers
+     * must not modify it.
+     *
+     * @return dP
+     */
+    NaturalNumberLimbs dP() {
+        return this.exponent1;
+    }
+
+    /**
+     * Gives read access to dQ, for the RSA routines in this package; callers
+     * must not modify it.
+     *
+     * @return dQ
+     */
+    NaturalNumberLimbs dQ() {
+        return this.exponent2;
+    }
+
+    /**
+     * Gives read access to qInv, for the RSA routines in this package;
+     * callers must not modify it.
+     *
+     * @return qInv
+     */
+    NaturalNumberLimbs qInv() {
+        return this.coefficient;
+    }
+
+    /**
+     * Gives the Montgomery context for p, building it on first use.
+     *
+     * @return the context for p
+     */
+    MontgomeryContext contextP() {
+        MontgomeryContext result = this.contextP;
+        if (result == null) {
+            // A racing thread may build its own; either one will do
+            result = new MontgomeryContext(this.prime1);
+            this.contextP = result;
+        }
+        return result;
+    }
+
+    /**
+     * Gives the Montgomery context for q, building it on first use.
+     *
+     * @return the context for q
+     */
+    MontgomeryContext contextQ() {
+        MontgomeryContext result = this.contextQ;
+        if (result == null) {
+            // A racing thread may build its own; either one will do
+            result = new MontgomeryContext(this.prime2);
+            this.contextQ = result;
+        }
+        return result;
+    }
+
+}
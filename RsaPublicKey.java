@@ -0,0 +1,200 @@
+import java.nio.ByteBuffer;
+
+import components.naturalnumber.NaturalNumber;
+
+/**
+ * RSA public key: the modulus n and the public exponent e.
+ *
+ * <p>
+ * Keys are immutable. The constructor copies its arguments and the accessors
+ * return fresh copies, so a key may be shared between threads freely. The
+ * modular context for n is built once, on first use, and cached.
+ * </p>
+ *
+ * <p>
+ * A key is stored as the DER encoding of the PKCS #1 RSAPublicKey structure,
+ * through {@code NaturalNumberCodec}.
+ * </p>
+ *
+ * @author Jamal Aden
+ *
+ */
+public final class RsaPublicKey {
+
+    /**
+     * The modulus n.
+     */
+    private final NaturalNumberLimbs modulus;
+
+    /**
+     * The public exponent e.
+     */
+    private final NaturalNumberLimbs publicExponent;
+
+    /**
+     * Modular context for n, built on first use.
+     */
+    private volatile ModularContext context;
+
+    /**
+     * Builds the public key (n, e).
+     *
+     * @param n
+     *            the modulus
+     * @param e
+     *            the public exponent
+     * @requires n > 1 and e > 1
+     */
+    public RsaPublicKey(NaturalNumber n, NaturalNumber e) {
+        this.modulus = copyOf(n);
+        this.publicExponent = copyOf(e);
+        assert this.modulus.bitLength() > 1 : "Violation of: n > 1";
+        assert this.publicExponent.bitLength() > 1 : "Violation of: e > 1";
+    }
+
+    /**
+     * Copies a number into a new {@code NaturalNumberLimbs}.
+     *
+     * @param n
+     *            the number to copy
+     * @return a copy of n
+     */
+    static NaturalNumberLimbs copyOf(NaturalNumber n) {
+        NaturalNumberLimbs copy = new NaturalNumberLimbs();
+        copy.copyFrom(n);
+        return copy;
+    }
+
+    /**
+     * Reports the length of the contents of the RSAPublicKey SEQUENCE.
+     *
+     * @return length in bytes
+     */
+    private int contentLength() {
+        return NaturalNumberCodec.encodedLength(this.modulus)
+                + NaturalNumberCodec.encodedLength(this.publicExponent);
+    }
+
+    /**
+     * Reports the number of bytes {@code encode} takes.
+     *
+     * @return length of the DER RSAPublicKey for this key
+     */
+    public int encodedLength() {
+        return NaturalNumberCodec.elementLength(this.contentLength());
+    }
+
+    /**
+     * Writes this key as a DER RSAPublicKey (PKCS #1) at the position of
+     * {@code buffer}, and moves the position past it.
+     *
+     * @param buffer
+     *            the buffer to write to
+     * @updates buffer
+     * @requires buffer.remaining() >= encodedLength()
+     */
+    public void encode(ByteBuffer buffer) {
+        assert buffer != null : "Violation of: buffer is not null";
+        assert buffer.remaining() >= this.encodedLength() : ""
+                + "Violation of: buffer.remaining() >= encodedLength()";
+        NaturalNumberCodec.writeHeader(NaturalNumberCodec.SEQUENCE,
+                this.contentLength(), buffer);
+        NaturalNumberCodec.write(this.modulus, buffer);
+        NaturalNumberCodec.write(this.publicExponent, buffer);
+    }
+
+    /**
+     * Reads a DER RSAPublicKey (PKCS #1) at the position of {@code buffer},
+     * and moves the position past it.
+     *
+     * @param buffer
+     *            the buffer to read from
+     * @return the key read
+     * @throws IllegalArgumentException
+     *             if the bytes are not such a key, or n or e is not above 1;
+     *             the position is then unspecified
+     * @updates buffer
+     */
+    public static RsaPublicKey decode(ByteBuffer buffer) {
+        assert buffer != null : "Violation of: buffer is not null";
+        int length = NaturalNumberCodec.readHeader(NaturalNumberCodec.SEQUENCE,
+                buffer);
+        int end = buffer.position() + length;
+        NaturalNumber n = NaturalNumberCodec.read(buffer);
+        NaturalNumber e = NaturalNumberCodec.read(buffer);
+        if (buffer.position() != end) {
+            throw new IllegalArgumentException("Malformed RSAPublicKey");
+        }
+        NaturalNumber one = new NaturalNumberLimbs(1);
+        if (n.compareTo(one) <= 0 || e.compareTo(one) <= 0) {
+            throw new IllegalArgumentException("Inconsistent RSAPublicKey");
+        }
+        return new RsaPublicKey(n, e);
+    }
+
+    /**
+     * Reports the modulus.
+     *
+     * @return n
+     */
+    public NaturalNumber modulus() {
+        return copyOf(this.modulus);
+    }
+
+    /**
+     * Reports the public exponent.
+     *
+     * @return e
+     */
+    public NaturalNumber publicExponent() {
+        return copyOf(this.publicExponent);
+    }
+
+    /**
+     * Reports the size of the key, the bit length of n.
+     *
+     * @return bit length of n
+     */
+    public int bitLength() {
+        return this.modulus.bitLength();
+    }
+
+    /**
+     * Gives read access to the modulus, for the RSA routines in this package;
+     * callers must not modify it.
+     *
+     * @return n
+     */
+    NaturalNumberLimbs n() {
+        return this.modulus;
+    }
+
+    /**
+     * Gives read access to the public exponent, for the RSA routines in this
+     * package; callers must not modify it.
+     *
+     * @return e
+     */
+    NaturalNumberLimbs e() {
+        return this.publicExponent;
+    }
+
+    /**
+     * Gives the modular context for n, building it on first use.
+     *
+     * @return the context for n
+     */
+    ModularContext context() {
+        ModularContext result = this.context;
+        if (result == null) {
+            /*
+             * Threads racing here may each build a context; they are all
+             * equivalent, so whichever is stored last is fine
+             */
+            result = ModularContext.create(this.modulus);
+            this.context = result;
+        }
+        return result;
+    }
+
+}
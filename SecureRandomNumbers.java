@@ -0,0 +1,201 @@
+import java.security.SecureRandom;
+
+/**
+ * Uniform random numbers in [0, n] drawn from a cryptographically secure
+ * generator, one limb buffer at a time.
+ *
+ * <p>
+ * Each value is made from one bulk draw of just enough random bytes for the
+ * bit length of n, with the bits above that length cleared; a value greater
+ * than n is drawn again. Since n has its top bit set, at least half of all
+ * draws land in range, so the expected number of draws per value is under
+ * 2. Each thread gets its own {@code SecureRandom}, so threads drawing at the
+ * same time do not contend on a shared generator.
+ * </p>
+ *
+ * <p>
+ * {@code SecureRandom.nextBytes} allocates on every call, so the overload
+ * used by an {@code ArithmeticWorkspace} instead draws from a ChaCha20
+ * generator that the workspace owns, keyed from and periodically reseeded
+ * from {@code SecureRandom}, with fast key erasure.
+ * </p>
+ *
+ * @author Jamal Aden
+ *
+ */
+public final class SecureRandomNumbers {
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private SecureRandomNumbers() {
+    }
+
+    /**
+     * Number of bytes in a limb.
+     */
+    private static final int LIMB_BYTES = LimbArithmetic.LIMB_BITS / Byte.SIZE;
+
+    /**
+     * Source of random bytes, one generator per thread.
+     */
+    private static final ThreadLocal<SecureRandom> GENERATORS = ThreadLocal
+            .withInitial(SecureRandom::new);
+
+    /**
+     * Sets each {@code r[k]} to a number uniformly distributed in [0, n],
+     * independently of the others.
+     *
+     * @param n
+     *            limbs of the top end of the interval
+     * @param nLen
+     *            normalized length of n
+     * @param r
+     *            results, each with room for nLen limbs
+     * @requires nLen > 0
+     * @ensures [each r[k] holds nLen limbs of a number uniformly distributed
+     *          in [0, n]]
+     */
+    static void uniform(int[] n, int nLen, int[][] r) {
+        assert nLen > 0 : "Violation of: n > 0";
+        SecureRandom random = GENERATORS.get();
+        int valueBytes = valueBytes(n, nLen);
+        int[] pending = new int[r.length];
+        for (int k = 0; k < r.length; k++) {
+            pending[k] = k;
+        }
+        int pendingCount = r.length;
+        while (pendingCount > 0) {
+            byte[] bytes = new byte[pendingCount * valueBytes];
+            random.nextBytes(bytes);
+            pendingCount = decode(n, nLen, bytes, r, pending, pendingCount);
+        }
+    }
+
+    /**
+     * Sets each of {@code r[0..count)} to a number uniformly distributed in
+     * [0, n], like {@code uniform(n, nLen, r)}, but drawing the limbs from
+     * {@code random}, so that nothing is allocated.
+     *
+     * @param n
+     *            limbs of the top end of the interval
+     * @param nLen
+     *            normalized length of n
+     * @param r
+     *            results, the first count with room for nLen limbs each
+     * @param count
+     *            number of results wanted
+     * @param random
+     *            the generator to draw from
+     * @requires nLen > 0
+     * @ensures [each of r[0..count) holds nLen limbs of a number uniformly
+     *          distributed in [0, n]]
+     */
+    static void uniform(int[] n, int nLen, int[][] r, int count,
+            ChaCha20Random random) {
+        assert nLen > 0 : "Violation of: n > 0";
+        int bits = LimbArithmetic.bitLength(n, nLen);
+        int topBits = bits - (nLen - 1) * LimbArithmetic.LIMB_BITS;
+        int topMask = -1 >>> (LimbArithmetic.LIMB_BITS - topBits);
+        for (int k = 0; k < count; k++) {
+            int[] value = r[k];
+            do {
+                random.nextInts(value, nLen);
+                value[nLen - 1] &= topMask;
+            } while (LimbArithmetic.compare(value,
+                    LimbArithmetic.normalize(value, nLen), n, nLen) > 0);
+        }
+    }
+
+    /**
+     * Makes a new generator for {@code uniform(n, nLen, r, count, random)},
+     * keyed from, and reseeding from, this thread's {@code SecureRandom}.
+     *
+     * @return the generator
+     */
+    static ChaCha20Random newGenerator() {
+        return new ChaCha20Random(GENERATORS.get());
+    }
+
+    /**
+     * Reports the number of random bytes one value in [0, n] is made from.
+     *
+     * @param n
+     *            limbs of the top end of the interval
+     * @param nLen
+     *            normalized length of n
+     * @return bytes per value
+     */
+    private static int valueBytes(int[] n, int nLen) {
+        return (LimbArithmetic.bitLength(n, nLen) + Byte.SIZE - 1)
+                / Byte.SIZE;
+    }
+
+    /**
+     * Turns consecutive runs of {@code bytes} into the pending values, and
+     * moves the ones that came out greater than n to the front of
+     * {@code pending} to be drawn again.
+     *
+     * @param n
+     *            limbs of the top end of the interval
+     * @param nLen
+     *            normalized length of n
+     * @param bytes
+     *            random bytes, {@code valueBytes(n, nLen)} per pending value
+     * @param r
+     *            results
+     * @param pending
+     *            indices into r of the values still to draw
+     * @param pendingCount
+     *            number of entries of pending in use
+     * @return number of values rejected, now first in pending
+     */
+    private static int decode(int[] n, int nLen, byte[] bytes, int[][] r,
+            int[] pending, int pendingCount) {
+        int bits = LimbArithmetic.bitLength(n, nLen);
+        int topBits = bits - (nLen - 1) * LimbArithmetic.LIMB_BITS;
+        int topMask = -1 >>> (LimbArithmetic.LIMB_BITS - topBits);
+        int valueBytes = (bits + Byte.SIZE - 1) / Byte.SIZE;
+        int rejected = 0;
+        for (int j = 0; j < pendingCount; j++) {
+            int[] value = r[pending[j]];
+            int offset = j * valueBytes;
+            for (int i = 0; i < nLen; i++) {
+                int limb = 0;
+                for (int b = 0; b < LIMB_BYTES; b++) {
+                    int index = i * LIMB_BYTES + b;
+                    if (index < valueBytes) {
+                        limb |= (bytes[offset + index] & 0xFF) << (b
+                                * Byte.SIZE);
+                    }
+                }
+                value[i] = limb;
+            }
+            value[nLen - 1] &= topMask;
+            if (LimbArithmetic.compare(value,
+                    LimbArithmetic.normalize(value, nLen), n, nLen) > 0) {
+                pending[rejected] = pending[j];
+                rejected++;
+            }
+        }
+        return rejected;
+    }
+
+    /**
+     * Computes a number uniformly distributed in [0, n].
+     *
+     * @param n
+     *            limbs of the top end of the interval
+     * @param nLen
+     *            normalized length of n
+     * @param r
+     *            result, with room for nLen limbs
+     * @return normalized length of r
+     * @requires nLen > 0
+     */
+    static int uniform(int[] n, int nLen, int[] r) {
+        uniform(n, nLen, new int[][] {r});
+        return LimbArithmetic.normalize(r, nLen);
+    }
+
+}
@@ -0,0 +1,212 @@
+import components.naturalnumber.NaturalNumber;
+
+/**
+ * Table of small odd primes and the trial-division stage that runs in front
+ * of the probabilistic primality tests.
+ *
+ * <p>
+ * The table holds every odd prime below {@code TABLE_LIMIT}, sieved once when
+ * the class is loaded. For trial division the primes are packed into groups
+ * whose product fits in one positive {@code int}, so a candidate of k limbs
+ * costs k single-word remainders per group rather than per prime.
+ * </p>
+ *
+ * @author Jamal Aden
+ *
+ */
+public final class SmallPrimes {
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private SmallPrimes() {
+    }
+
+    /**
+     * Exclusive upper limit of the primes in the table.
+     */
+    public static final int TABLE_LIMIT = 1 << 16;
+
+    /**
+     * Default trial-division bound.
+     */
+    public static final int DEFAULT_BOUND = 1000;
+
+    /**
+     * Odd primes below {@code TABLE_LIMIT}, ascending.
+     */
+    private static final int[] PRIMES = sieveOddPrimes(TABLE_LIMIT);
+
+    /**
+     * Products of consecutive runs of {@code PRIMES}, each below 2^31.
+     */
+    private static final int[] GROUP_PRODUCTS;
+
+    /**
+     * Index into {@code PRIMES} of the first prime of each group, plus a
+     * final entry equal to the number of primes.
+     */
+    private static final int[] GROUP_STARTS;
+
+    static {
+        int[] products = new int[PRIMES.length];
+        int[] starts = new int[PRIMES.length + 1];
+        int groups = 0;
+        int i = 0;
+        while (i < PRIMES.length) {
+            starts[groups] = i;
+            long product = PRIMES[i];
+            i++;
+            while (i < PRIMES.length
+                    && product * PRIMES[i] <= Integer.MAX_VALUE) {
+                product *= PRIMES[i];
+                i++;
+            }
+            products[groups] = (int) product;
+            groups++;
+        }
+        starts[groups] = PRIMES.length;
+        GROUP_PRODUCTS = new int[groups];
+        System.arraycopy(products, 0, GROUP_PRODUCTS, 0, groups);
+        GROUP_STARTS = new int[groups + 1];
+        System.arraycopy(starts, 0, GROUP_STARTS, 0, groups + 1);
+    }
+
+    /**
+     * Current trial-division bound.
+     */
+    private static volatile int bound = DEFAULT_BOUND;
+
+    /**
+     * Sieves the odd primes below a limit.
+     *
+     * @param limit
+     *            exclusive upper limit
+     * @return the odd primes below limit, ascending
+     */
+    private static int[] sieveOddPrimes(int limit) {
+        boolean[] composite = new boolean[limit];
+        int count = 0;
+        for (int p = 3; p < limit; p += 2) {
+            if (!composite[p]) {
+                count++;
+                for (long q = (long) p * p; q < limit; q += 2 * p) {
+                    composite[(int) q] = true;
+                }
+            }
+        }
+        int[] primes = new int[count];
+        int k = 0;
+        for (int p = 3; p < limit; p += 2) {
+            if (!composite[p]) {
+                primes[k] = p;
+                k++;
+            }
+        }
+        return primes;
+    }
+
+    /**
+     * Gives read access to the table of odd primes; callers must not modify
+     * it.
+     *
+     * @return odd primes below {@code TABLE_LIMIT}, ascending
+     */
+    static int[] oddPrimes() {
+        return PRIMES;
+    }
+
+    /**
+     * Reports the bound used by the trial-division stage.
+     *
+     * @return the current trial-division bound
+     */
+    public static int trialDivisionBound() {
+        return bound;
+    }
+
+    /**
+     * Sets the bound used by the trial-division stage; candidates are checked
+     * against every odd prime up to it.
+     *
+     * @param newBound
+     *            the new bound
+     * @requires 3 <= newBound <= TABLE_LIMIT
+     */
+    public static void setTrialDivisionBound(int newBound) {
+        assert 3 <= newBound : "Violation of: 3 <= newBound";
+        assert newBound <= TABLE_LIMIT : ""
+                + "Violation of: newBound <= TABLE_LIMIT";
+        bound = newBound;
+    }
+
+    /**
+     * Computes n mod p for each of the first {@code count} odd primes in the
+     * table, one grouped single-word pass over n per group.
+     *
+     * @param n
+     *            limbs of the number
+     * @param len
+     *            normalized length of n
+     * @param count
+     *            number of primes, at most {@code oddPrimes().length}
+     * @param residues
+     *            result: residues[i] = n mod oddPrimes()[i] for i < count
+     */
+    static void residues(int[] n, int len, int count, int[] residues) {
+        for (int g = 0; g < GROUP_PRODUCTS.length
+                && GROUP_STARTS[g] < count; g++) {
+            int r = (int) LimbArithmetic.divideInt(n, len, GROUP_PRODUCTS[g],
+                    null);
+            for (int i = GROUP_STARTS[g]; i < GROUP_STARTS[g + 1]
+                    && i < count; i++) {
+                residues[i] = r % PRIMES[i];
+            }
+        }
+    }
+
+    /**
+     * Finds the smallest odd prime p <= limit dividing n, other than n itself.
+     *
+     * @param n
+     *            limbs of the number to check
+     * @param len
+     *            normalized length of n
+     * @param limit
+     *            largest prime to try, at most {@code TABLE_LIMIT}
+     * @return the factor found, or 0 if there is none
+     */
+    static int smallFactor(int[] n, int len, int limit) {
+        long single = len == 1 ? n[0] & LimbArithmetic.MASK : -1;
+        for (int g = 0; g < GROUP_PRODUCTS.length
+                && PRIMES[GROUP_STARTS[g]] <= limit; g++) {
+            int r = (int) LimbArithmetic.divideInt(n, len, GROUP_PRODUCTS[g],
+                    null);
+            for (int i = GROUP_STARTS[g]; i < GROUP_STARTS[g + 1]
+                    && PRIMES[i] <= limit; i++) {
+                if (r % PRIMES[i] == 0 && PRIMES[i] != single) {
+                    return PRIMES[i];
+                }
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Finds the smallest odd prime p up to the trial-division bound that
+     * divides n, other than n itself.
+     *
+     * @param n
+     *            the number to check
+     * @return the factor found, or 0 if there is none
+     * @ensures <pre>
+     * smallFactor = [smallest odd prime p <= trialDivisionBound() such that
+     *                p divides n and p < n, or 0 if there is no such p]
+     * </pre>
+     */
+    public static int smallFactor(NaturalNumber n) {
+        NaturalNumberLimbs localN = NaturalNumberLimbs.valueOf(n);
+        return smallFactor(localN.limbArray(), localN.limbCount(), bound);
+    }
+
+}
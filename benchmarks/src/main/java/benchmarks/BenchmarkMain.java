@@ -0,0 +1,71 @@
+package benchmarks;
+
+import java.io.IOException;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC profiler attached, for allocation rates,
+ * and writes the results as JSON for comparing runs. Any JMH command-line
+ * option may still be given (for example a benchmark pattern, {@code -p
+ * bits=2048}, or {@code -rff other.json}); these defaults only fill in what
+ * is not.
+ *
+ * @author Jamal Aden
+ *
+ */
+public final class BenchmarkMain {
+
+    /**
+     * Results file used unless {@code -rff} names another.
+     */
+    private static final String DEFAULT_RESULT_FILE = "jmh-result.json";
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private BenchmarkMain() {
+    }
+
+    /**
+     * Main method.
+     *
+     * @param args
+     *            JMH command-line options
+     * @throws CommandLineOptionException
+     *             if the options cannot be parsed
+     * @throws RunnerException
+     *             if a benchmark fails
+     * @throws IOException
+     *             if JMH cannot write its listing
+     */
+    public static void main(String[] args) throws CommandLineOptionException,
+            RunnerException, IOException {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        if (commandLine.shouldHelp() || commandLine.shouldList()
+                || commandLine.shouldListProfilers()
+                || commandLine.shouldListResultFormats()) {
+            // Informational runs: let JMH's own entry point answer them
+            org.openjdk.jmh.Main.main(args);
+            return;
+        }
+        OptionsBuilder builder = new OptionsBuilder();
+        builder.parent(commandLine);
+        if (commandLine.getProfilers().isEmpty()) {
+            builder.addProfiler(GCProfiler.class);
+        }
+        builder.resultFormat(
+                commandLine.getResultFormat().orElse(ResultFormatType.JSON));
+        builder.result(commandLine.getResult().orElse(DEFAULT_RESULT_FILE));
+        Options options = builder.build();
+        new Runner(options).run();
+    }
+
+}
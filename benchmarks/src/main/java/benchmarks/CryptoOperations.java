@@ -0,0 +1,438 @@
+package benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+import components.naturalnumber.NaturalNumber;
+
+/**
+ * Calls into the library under benchmark.
+ *
+ * <p>
+ * The library lives in the unnamed package, which no named package can
+ * import, and JMH refuses to generate benchmarks in the unnamed package. So
+ * the entry points are looked up once, by name, into {@code static final}
+ * method handles; the JIT treats those as constants and inlines calls
+ * through {@code invokeExact} as it would direct calls.
+ * </p>
+ *
+ * @author Jamal Aden
+ *
+ */
+final class CryptoOperations {
+
+    /**
+     * The class holding the operations.
+     */
+    private static final Class<?> UTILITIES = load("CryptoUtilities");
+
+    /**
+     * {@code new NaturalNumberLimbs(String)}.
+     */
+    private static final MethodHandle NEW_NUMBER = constructor(
+            load("NaturalNumberLimbs"), String.class);
+
+    /**
+     * The class of the scratch workspaces, which the handles below see as
+     * plain {@code Object}s.
+     */
+    private static final Class<?> WORKSPACE = load("ArithmeticWorkspace");
+
+    /**
+     * {@code new ArithmeticWorkspace(int)}.
+     */
+    private static final MethodHandle NEW_WORKSPACE = constructor(WORKSPACE,
+            int.class).asType(MethodType.methodType(Object.class, int.class));
+
+    /**
+     * {@code CryptoUtilities.powerMod(n, p, m)}.
+     */
+    private static final MethodHandle POWER_MOD = operation("powerMod",
+            void.class, NaturalNumber.class, NaturalNumber.class,
+            NaturalNumber.class);
+
+    /**
+     * {@code CryptoUtilities.powerMod(n, p, m, workspace)}.
+     */
+    private static final MethodHandle POWER_MOD_IN = operation("powerMod",
+            void.class, NaturalNumber.class, NaturalNumber.class,
+            NaturalNumber.class, WORKSPACE);
+
+    /**
+     * {@code CryptoUtilities.multiPowerMod(n, p, m, result)}.
+     */
+    private static final MethodHandle MULTI_POWER_MOD = operation(
+            "multiPowerMod", void.class, NaturalNumber[].class,
+            NaturalNumber[].class, NaturalNumber.class, NaturalNumber.class);
+
+    /**
+     * {@code CryptoUtilities.isWitnessToCompositeness(w, n, workspace)}.
+     */
+    private static final MethodHandle IS_WITNESS_IN = operation(
+            "isWitnessToCompositeness", boolean.class, NaturalNumber.class,
+            NaturalNumber.class, WORKSPACE);
+
+    /**
+     * {@code CryptoUtilities.reduceToGCD(n, m)}.
+     */
+    private static final MethodHandle REDUCE_TO_GCD = operation("reduceToGCD",
+            void.class, NaturalNumber.class, NaturalNumber.class);
+
+    /**
+     * {@code CryptoUtilities.randomNumber(n)}.
+     */
+    private static final MethodHandle RANDOM_NUMBER = operation(
+            "randomNumber", NaturalNumber.class, NaturalNumber.class);
+
+    /**
+     * {@code CryptoUtilities.isPrime1(n)}.
+     */
+    private static final MethodHandle IS_PRIME1 = operation("isPrime1",
+            boolean.class, NaturalNumber.class);
+
+    /**
+     * {@code CryptoUtilities.isPrime2(n)}.
+     */
+    private static final MethodHandle IS_PRIME2 = operation("isPrime2",
+            boolean.class, NaturalNumber.class);
+
+    /**
+     * {@code CryptoUtilities.isPrime2(n, workspace)}.
+     */
+    private static final MethodHandle IS_PRIME2_IN = operation("isPrime2",
+            boolean.class, NaturalNumber.class, WORKSPACE);
+
+    /**
+     * {@code CryptoUtilities.generateNextLikelyPrime(n)}.
+     */
+    private static final MethodHandle GENERATE_NEXT_LIKELY_PRIME = operation(
+            "generateNextLikelyPrime", void.class, NaturalNumber.class);
+
+    /**
+     * {@code CryptoUtilities.generateNextLikelySafePrime(n)}.
+     */
+    private static final MethodHandle GENERATE_NEXT_LIKELY_SAFE_PRIME =
+            operation("generateNextLikelySafePrime", void.class,
+                    NaturalNumber.class);
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private CryptoOperations() {
+    }
+
+    /**
+     * Loads a class of the library.
+     *
+     * @param name
+     *            binary name of the class
+     * @return the class
+     */
+    private static Class<?> load(String name) {
+        try {
+            return Class.forName(name);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException(
+                    "Library class " + name + " is not on the class path", e);
+        }
+    }
+
+    /**
+     * Looks up a public constructor.
+     *
+     * @param type
+     *            the class
+     * @param parameter
+     *            the one parameter type
+     * @return handle returning the new object as a NaturalNumber, or as
+     *         {@code type} if that is not a NaturalNumber
+     */
+    private static MethodHandle constructor(Class<?> type,
+            Class<?> parameter) {
+        try {
+            MethodHandle handle = MethodHandles.publicLookup().findConstructor(
+                    type, MethodType.methodType(void.class, parameter));
+            if (NaturalNumber.class.isAssignableFrom(type)) {
+                handle = handle.asType(MethodType
+                        .methodType(NaturalNumber.class, parameter));
+            }
+            return handle;
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Looks up a public static method of CryptoUtilities, with any
+     * {@code ArithmeticWorkspace} parameter seen as an {@code Object}.
+     *
+     * @param name
+     *            method name
+     * @param returnType
+     *            its return type
+     * @param parameterTypes
+     *            its parameter types
+     * @return the handle
+     */
+    private static MethodHandle operation(String name, Class<?> returnType,
+            Class<?>... parameterTypes) {
+        try {
+            MethodType type = MethodType.methodType(returnType,
+                    parameterTypes);
+            return MethodHandles.publicLookup()
+                    .findStatic(UTILITIES, name, type)
+                    .asType(type.changeParameterType(parameterTypes.length - 1,
+                            erase(parameterTypes[parameterTypes.length - 1])));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Erases the workspace type to {@code Object}.
+     *
+     * @param type
+     *            a parameter type
+     * @return {@code Object} for the workspace type, otherwise type
+     */
+    private static Class<?> erase(Class<?> type) {
+        return type == WORKSPACE ? Object.class : type;
+    }
+
+    /**
+     * Passes on what a library call threw.
+     *
+     * @param t
+     *            the throwable
+     * @return never returns; declared so callers can write
+     *         {@code throw rethrow(t)}
+     */
+    private static RuntimeException rethrow(Throwable t) {
+        if (t instanceof RuntimeException) {
+            throw (RuntimeException) t;
+        }
+        if (t instanceof Error) {
+            throw (Error) t;
+        }
+        throw new IllegalStateException(t);
+    }
+
+    /**
+     * Makes a new library number from its decimal digits.
+     *
+     * @param digits
+     *            decimal representation
+     * @return the number
+     */
+    static NaturalNumber newNumber(String digits) {
+        try {
+            return (NaturalNumber) NEW_NUMBER.invokeExact(digits);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    /**
+     * Calls {@code CryptoUtilities.powerMod(n, p, m)}.
+     *
+     * @param n
+     *            number to be raised to a power
+     * @param p
+     *            the power
+     * @param m
+     *            the modulus
+     */
+    static void powerMod(NaturalNumber n, NaturalNumber p, NaturalNumber m) {
+        try {
+            POWER_MOD.invokeExact(n, p, m);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    /**
+     * Makes a new scratch workspace sized for operands of {@code bits} bits.
+     *
+     * @param bits
+     *            operand size
+     * @return the workspace
+     */
+    static Object newWorkspace(int bits) {
+        try {
+            return (Object) NEW_WORKSPACE.invokeExact(bits);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    /**
+     * Calls {@code CryptoUtilities.powerMod(n, p, m, workspace)}.
+     *
+     * @param n
+     *            number to be raised to a power
+     * @param p
+     *            the power
+     * @param m
+     *            the modulus
+     * @param workspace
+     *            a workspace from {@code newWorkspace}
+     */
+    static void powerMod(NaturalNumber n, NaturalNumber p, NaturalNumber m,
+            Object workspace) {
+        try {
+            POWER_MOD_IN.invokeExact(n, p, m, workspace);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    /**
+     * Calls {@code CryptoUtilities.multiPowerMod(n, p, m, result)}.
+     *
+     * @param n
+     *            the bases
+     * @param p
+     *            the powers, one per base
+     * @param m
+     *            the modulus
+     * @param result
+     *            where the product of the powers goes
+     */
+    static void multiPowerMod(NaturalNumber[] n, NaturalNumber[] p,
+            NaturalNumber m, NaturalNumber result) {
+        try {
+            MULTI_POWER_MOD.invokeExact(n, p, m, result);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    /**
+     * Calls {@code CryptoUtilities.isWitnessToCompositeness(w, n,
+     * workspace)}.
+     *
+     * @param w
+     *            witness candidate
+     * @param n
+     *            number being checked
+     * @param workspace
+     *            a workspace from {@code newWorkspace}
+     * @return the result
+     */
+    static boolean isWitnessToCompositeness(NaturalNumber w, NaturalNumber n,
+            Object workspace) {
+        try {
+            return (boolean) IS_WITNESS_IN.invokeExact(w, n, workspace);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    /**
+     * Calls {@code CryptoUtilities.reduceToGCD(n, m)}.
+     *
+     * @param n
+     *            one number
+     * @param m
+     *            the other number
+     */
+    static void reduceToGCD(NaturalNumber n, NaturalNumber m) {
+        try {
+            REDUCE_TO_GCD.invokeExact(n, m);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    /**
+     * Calls {@code CryptoUtilities.randomNumber(n)}.
+     *
+     * @param n
+     *            top of the range
+     * @return the random number
+     */
+    static NaturalNumber randomNumber(NaturalNumber n) {
+        try {
+            return (NaturalNumber) RANDOM_NUMBER.invokeExact(n);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    /**
+     * Calls {@code CryptoUtilities.isPrime1(n)}.
+     *
+     * @param n
+     *            number to be checked
+     * @return the result
+     */
+    static boolean isPrime1(NaturalNumber n) {
+        try {
+            return (boolean) IS_PRIME1.invokeExact(n);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    /**
+     * Calls {@code CryptoUtilities.isPrime2(n)}.
+     *
+     * @param n
+     *            number to be checked
+     * @return the result
+     */
+    static boolean isPrime2(NaturalNumber n) {
+        try {
+            return (boolean) IS_PRIME2.invokeExact(n);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    /**
+     * Calls {@code CryptoUtilities.isPrime2(n, workspace)}.
+     *
+     * @param n
+     *            number to be checked
+     * @param workspace
+     *            a workspace from {@code newWorkspace}
+     * @return the result
+     */
+    static boolean isPrime2(NaturalNumber n, Object workspace) {
+        try {
+            return (boolean) IS_PRIME2_IN.invokeExact(n, workspace);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    /**
+     * Calls {@code CryptoUtilities.generateNextLikelyPrime(n)}.
+     *
+     * @param n
+     *            starting number, replaced by the next likely prime
+     */
+    static void generateNextLikelyPrime(NaturalNumber n) {
+        try {
+            GENERATE_NEXT_LIKELY_PRIME.invokeExact(n);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    /**
+     * Calls {@code CryptoUtilities.generateNextLikelySafePrime(n)}.
+     *
+     * @param n
+     *            starting number, replaced by the next likely safe prime
+     */
+    static void generateNextLikelySafePrime(NaturalNumber n) {
+        try {
+            GENERATE_NEXT_LIKELY_SAFE_PRIME.invokeExact(n);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+}
@@ -0,0 +1,283 @@
+package benchmarks;
+
+import java.math.BigInteger;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import components.naturalnumber.NaturalNumber;
+
+/**
+ * Throughput and average time of the {@code CryptoUtilities} hot paths at
+ * key-sized operands.
+ *
+ * <p>
+ * Operands are drawn once per trial from a generator seeded with the size, so
+ * every run of a given size works on the same numbers. Operations that
+ * update their arguments work on a copy, refreshed on each call; the copy
+ * costs a few hundred nanoseconds at most, well below any of the operations.
+ * </p>
+ *
+ * <p>
+ * The {@code InWorkspace} variants run the same operation in one
+ * {@code ArithmeticWorkspace} per benchmark thread; with {@code -prof gc},
+ * their {@code gc.alloc.rate.norm} against the plain variant's shows what
+ * the workspace saves per call.
+ * </p>
+ *
+ * @author Jamal Aden
+ *
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class CryptoUtilitiesBenchmark {
+
+    /**
+     * Operand size in bits.
+     */
+    @Param({"256", "512", "1024", "2048", "4096"})
+    public int bits;
+
+    /**
+     * Odd modulus with exactly {@code bits} bits.
+     */
+    private NaturalNumber modulus;
+
+    /**
+     * Exponent with up to {@code bits} bits.
+     */
+    private NaturalNumber exponent;
+
+    /**
+     * Base below the modulus.
+     */
+    private NaturalNumber base;
+
+    /**
+     * Two bases below the modulus, the first of them {@code base}.
+     */
+    private NaturalNumber[] bases;
+
+    /**
+     * Two exponents with up to {@code bits} bits, the first of them
+     * {@code exponent}.
+     */
+    private NaturalNumber[] exponents;
+
+    /**
+     * First GCD operand.
+     */
+    private NaturalNumber gcdFirst;
+
+    /**
+     * Second GCD operand.
+     */
+    private NaturalNumber gcdSecond;
+
+    /**
+     * 2^bits, the range of the random numbers.
+     */
+    private NaturalNumber range;
+
+    /**
+     * A prime with exactly {@code bits} bits; the primality tests do all of
+     * their rounds on it.
+     */
+    private NaturalNumber prime;
+
+    /**
+     * Odd start of the prime search, with exactly {@code bits} bits.
+     */
+    private NaturalNumber start;
+
+    /**
+     * The witness 2.
+     */
+    private NaturalNumber two;
+
+    /**
+     * Scratch workspace of this benchmark thread.
+     */
+    private Object workspace;
+
+    /**
+     * Working copy for the operations that update their first argument.
+     */
+    private NaturalNumber work;
+
+    /**
+     * Working copy for the operations that update their second argument.
+     */
+    private NaturalNumber otherWork;
+
+    /**
+     * Draws the operands for this size.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(this.bits);
+        BigInteger m = new BigInteger(this.bits, random).setBit(this.bits - 1)
+                .setBit(0);
+        this.modulus = number(m);
+        this.exponent = number(new BigInteger(this.bits, random));
+        this.base = number(new BigInteger(this.bits, random).mod(m));
+        this.gcdFirst = number(new BigInteger(this.bits, random));
+        this.gcdSecond = number(new BigInteger(this.bits, random));
+        this.range = number(BigInteger.ONE.shiftLeft(this.bits));
+        this.prime = number(BigInteger.probablePrime(this.bits, random));
+        this.start = number(new BigInteger(this.bits, random)
+                .setBit(this.bits - 1).setBit(0));
+        this.bases = new NaturalNumber[] {this.base,
+            number(new BigInteger(this.bits, random).mod(m))};
+        this.exponents = new NaturalNumber[] {this.exponent,
+            number(new BigInteger(this.bits, random))};
+        this.two = CryptoOperations.newNumber("2");
+        this.workspace = CryptoOperations.newWorkspace(this.bits);
+        this.work = CryptoOperations.newNumber("0");
+        this.otherWork = CryptoOperations.newNumber("0");
+    }
+
+    /**
+     * Converts a BigInteger into a library number.
+     *
+     * @param value
+     *            the value
+     * @return the same value as a library number
+     */
+    private static NaturalNumber number(BigInteger value) {
+        return CryptoOperations.newNumber(value.toString());
+    }
+
+    /**
+     * Full-size modular exponentiation, base^exponent mod modulus.
+     *
+     * @return the power
+     */
+    @Benchmark
+    public NaturalNumber powerMod() {
+        this.work.copyFrom(this.base);
+        CryptoOperations.powerMod(this.work, this.exponent, this.modulus);
+        return this.work;
+    }
+
+    /**
+     * {@code powerMod} in the thread's workspace.
+     *
+     * @return the power
+     */
+    @Benchmark
+    public NaturalNumber powerModInWorkspace() {
+        this.work.copyFrom(this.base);
+        CryptoOperations.powerMod(this.work, this.exponent, this.modulus,
+                this.workspace);
+        return this.work;
+    }
+
+    /**
+     * Product of two full-size powers, base^exponent * base'^exponent' mod
+     * modulus, in one interleaved exponentiation; compare with twice
+     * {@code powerMod}.
+     *
+     * @return the product
+     */
+    @Benchmark
+    public NaturalNumber multiPowerMod() {
+        CryptoOperations.multiPowerMod(this.bases, this.exponents,
+                this.modulus, this.work);
+        return this.work;
+    }
+
+    /**
+     * GCD of two full-size numbers.
+     *
+     * @return the GCD
+     */
+    @Benchmark
+    public NaturalNumber reduceToGCD() {
+        this.work.copyFrom(this.gcdFirst);
+        this.otherWork.copyFrom(this.gcdSecond);
+        CryptoOperations.reduceToGCD(this.work, this.otherWork);
+        return this.work;
+    }
+
+    /**
+     * Uniform random number in [0, 2^bits].
+     *
+     * @return the random number
+     */
+    @Benchmark
+    public NaturalNumber randomNumber() {
+        return CryptoOperations.randomNumber(this.range);
+    }
+
+    /**
+     * Fermat test of a prime with witness 2.
+     *
+     * @return the verdict
+     */
+    @Benchmark
+    public boolean isPrime1() {
+        return CryptoOperations.isPrime1(this.prime);
+    }
+
+    /**
+     * Miller-Rabin test of a prime, all rounds.
+     *
+     * @return the verdict
+     */
+    @Benchmark
+    public boolean isPrime2() {
+        return CryptoOperations.isPrime2(this.prime);
+    }
+
+    /**
+     * {@code isPrime2} in the thread's workspace.
+     *
+     * @return the verdict
+     */
+    @Benchmark
+    public boolean isPrime2InWorkspace() {
+        return CryptoOperations.isPrime2(this.prime, this.workspace);
+    }
+
+    /**
+     * Fermat witness test of a prime with witness 2, in the thread's
+     * workspace.
+     *
+     * @return the verdict
+     */
+    @Benchmark
+    public boolean isWitnessToCompositenessInWorkspace() {
+        return CryptoOperations.isWitnessToCompositeness(this.two, this.prime,
+                this.workspace);
+    }
+
+    /**
+     * Search for the next likely prime from a fixed odd start.
+     *
+     * @return the prime found
+     */
+    @Benchmark
+    public NaturalNumber generateNextLikelyPrime() {
+        this.work.copyFrom(this.start);
+        CryptoOperations.generateNextLikelyPrime(this.work);
+        return this.work;
+    }
+
+}
@@ -0,0 +1,167 @@
+package benchmarks;
+
+import java.math.BigInteger;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import components.naturalnumber.NaturalNumber;
+
+/**
+ * Crossover points of the multiplication algorithms: the time of a product
+ * and of a square of {@code limbs}-limb numbers, with the top level done by
+ * the given algorithm.
+ *
+ * <p>
+ * The library reads its thresholds from system properties once, when it
+ * first multiplies, and JMH runs every parameter combination in a fresh fork,
+ * so the setup picks the algorithm by setting the properties before anything
+ * else. {@code SCHOOLBOOK} turns both recursive methods off;
+ * {@code KARATSUBA} turns Toom-3 off and starts Karatsuba at {@code limbs},
+ * or lower if {@code -Dcryptoutilities.karatsubaThreshold} (or its square
+ * counterpart) is passed to the fork; {@code TOOM3} starts Toom-3 at
+ * {@code limbs} and leaves Karatsuba below it at its threshold. The
+ * Karatsuba threshold is the smallest size at which {@code KARATSUBA} beats
+ * {@code SCHOOLBOOK}; with that threshold passed in, the Toom-3 threshold is
+ * the smallest size at which {@code TOOM3} beats {@code KARATSUBA}.
+ * </p>
+ *
+ * @author Jamal Aden
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MultiplyBenchmark {
+
+    /**
+     * Operand size in 32-bit limbs.
+     */
+    @Param({"32", "64", "96", "128", "192", "256", "384", "512", "768", "1024"})
+    public int limbs;
+
+    /**
+     * Algorithm of the top level.
+     */
+    @Param({"SCHOOLBOOK", "KARATSUBA", "TOOM3"})
+    public String algorithm;
+
+    /**
+     * First factor, and the number squared.
+     */
+    private NaturalNumber first;
+
+    /**
+     * Second factor.
+     */
+    private NaturalNumber second;
+
+    /**
+     * Working copy, which the product replaces.
+     */
+    private NaturalNumber work;
+
+    /**
+     * Sets the thresholds for the algorithm and draws the operands.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        String above = String.valueOf(this.limbs + 1);
+        switch (this.algorithm) {
+            case "SCHOOLBOOK":
+                setThreshold("karatsubaThreshold", above);
+                setThreshold("karatsubaSquareThreshold", above);
+                setThreshold("toomThreshold", above);
+                setThreshold("toomSquareThreshold", above);
+                break;
+            case "KARATSUBA":
+                lowerThreshold("karatsubaThreshold", this.limbs);
+                lowerThreshold("karatsubaSquareThreshold", this.limbs);
+                setThreshold("toomThreshold", above);
+                setThreshold("toomSquareThreshold", above);
+                break;
+            case "TOOM3":
+                setThreshold("toomThreshold", String.valueOf(this.limbs));
+                setThreshold("toomSquareThreshold",
+                        String.valueOf(this.limbs));
+                break;
+            default:
+                throw new IllegalArgumentException(this.algorithm);
+        }
+        Random random = new Random(this.limbs);
+        int bits = this.limbs * Integer.SIZE;
+        this.first = CryptoOperations.newNumber(
+                new BigInteger(bits, random).setBit(bits - 1).toString());
+        this.second = CryptoOperations.newNumber(
+                new BigInteger(bits, random).setBit(bits - 1).toString());
+        this.work = CryptoOperations.newNumber("0");
+    }
+
+    /**
+     * Sets one of the library's threshold properties.
+     *
+     * @param name
+     *            the threshold's name, without the prefix
+     * @param value
+     *            its value in limbs
+     */
+    private static void setThreshold(String name, String value) {
+        System.setProperty("cryptoutilities." + name, value);
+    }
+
+    /**
+     * Sets one of the library's threshold properties to {@code limbs},
+     * unless the fork was given a lower value.
+     *
+     * @param name
+     *            the threshold's name, without the prefix
+     * @param limbs
+     *            the highest value wanted
+     */
+    private static void lowerThreshold(String name, int limbs) {
+        Integer given = Integer.getInteger("cryptoutilities." + name);
+        if (given == null || given > limbs) {
+            setThreshold(name, String.valueOf(limbs));
+        }
+    }
+
+    /**
+     * Product of two {@code limbs}-limb numbers.
+     *
+     * @return the product
+     */
+    @Benchmark
+    public NaturalNumber multiply() {
+        this.work.copyFrom(this.first);
+        this.work.multiply(this.second);
+        return this.work;
+    }
+
+    /**
+     * Square of a {@code limbs}-limb number.
+     *
+     * @return the square
+     */
+    @Benchmark
+    public NaturalNumber square() {
+        this.work.copyFrom(this.first);
+        this.work.multiply(this.work);
+        return this.work;
+    }
+
+}
@@ -0,0 +1,102 @@
+package benchmarks;
+
+import java.math.BigInteger;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import components.naturalnumber.NaturalNumber;
+
+/**
+ * Safe-prime search from a fixed start of {@code bits} bits, set against the
+ * loop it replaces: next likely prime q, then a test of 2q + 1, until both
+ * are prime. Safe primes are sparse enough that the sizes stop at 1024 bits;
+ * even there a single search takes seconds.
+ *
+ * @author Jamal Aden
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SafePrimeBenchmark {
+
+    /**
+     * Size of the safe prime in bits.
+     */
+    @Param({"256", "512", "1024"})
+    public int bits;
+
+    /**
+     * Start of the search, with exactly {@code bits} bits.
+     */
+    private NaturalNumber start;
+
+    /**
+     * Working copy, which the search replaces.
+     */
+    private NaturalNumber work;
+
+    /**
+     * Draws the start for this size.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(this.bits);
+        this.start = CryptoOperations.newNumber(new BigInteger(this.bits,
+                random).setBit(this.bits - 1).toString());
+        this.work = CryptoOperations.newNumber("0");
+    }
+
+    /**
+     * The joint search of {@code generateNextLikelySafePrime}.
+     *
+     * @return the safe prime found
+     */
+    @Benchmark
+    public NaturalNumber generateNextLikelySafePrime() {
+        this.work.copyFrom(this.start);
+        CryptoOperations.generateNextLikelySafePrime(this.work);
+        return this.work;
+    }
+
+    /**
+     * Safe-prime search built from {@code generateNextLikelyPrime}: each
+     * likely prime q above start / 2 in turn, until {@code isPrime2} passes
+     * 2q + 1.
+     *
+     * @return the safe prime found
+     */
+    @Benchmark
+    public NaturalNumber nextLikelyPrimeLoop() {
+        NaturalNumber two = CryptoOperations.newNumber("2");
+        this.work.copyFrom(this.start);
+        this.work.divide(two);
+        NaturalNumber p = CryptoOperations.newNumber("0");
+        boolean found = false;
+        while (!found) {
+            CryptoOperations.generateNextLikelyPrime(this.work);
+            p.copyFrom(this.work);
+            p.multiply(two);
+            p.increment();
+            found = CryptoOperations.isPrime2(p);
+        }
+        return p;
+    }
+
+}
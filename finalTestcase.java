@@ -1,5 +1,26 @@
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+
 import org.junit.Test;
 
 import components.naturalnumber.NaturalNumber;
@@ -37,6 +58,45 @@ public class finalTestcase {
         assertEquals(mExpected, m);
     }
 
+    @Test
+    public void testReduceToGCD_Limbs_MultiWord() {
+        NaturalNumber n = new NaturalNumberLimbs("1197530853419753085341931");
+        NaturalNumber nExpected = new NaturalNumberLimbs(291);
+        NaturalNumber m = new NaturalNumberLimbs("9580246914658024691465739");
+        NaturalNumber mExpected = new NaturalNumberLimbs(0);
+        CryptoUtilities.reduceToGCD(n, m);
+        assertEquals(nExpected, n);
+        assertEquals(mExpected, m);
+    }
+
+    @Test
+    public void testExtendedGCD_240_46() {
+        NaturalNumber n = new NaturalNumber2(240);
+        NaturalNumber nExpected = new NaturalNumber2(2);
+        NaturalNumber m = new NaturalNumber2(46);
+        NaturalNumber mExpected = new NaturalNumber2(0);
+        NaturalNumber x = new NaturalNumber2(5);
+        NaturalNumber xExpected = new NaturalNumber2(14);
+        NaturalNumber y = new NaturalNumber2();
+        NaturalNumber yExpected = new NaturalNumber2(73);
+        CryptoUtilities.extendedGCD(n, m, x, y);
+        assertEquals(nExpected, n);
+        assertEquals(mExpected, m);
+        assertEquals(xExpected, x);
+        assertEquals(yExpected, y);
+    }
+
+    @Test
+    public void testModInverse_17_3120() {
+        NaturalNumber n = new NaturalNumberLimbs(17);
+        NaturalNumber nExpected = new NaturalNumberLimbs(2753);
+        NaturalNumber m = new NaturalNumberLimbs(3120);
+        NaturalNumber mExpected = new NaturalNumberLimbs(3120);
+        CryptoUtilities.modInverse(n, m);
+        assertEquals(nExpected, n);
+        assertEquals(mExpected, m);
+    }
+
     /*
      * Tests of isEven
      */
@@ -59,6 +119,15 @@ public class finalTestcase {
         assertEquals(false, result);
     }
 
+    @Test
+    public void testIsEven_Limbs_2pow64() {
+        NaturalNumber n = new NaturalNumberLimbs("18446744073709551616");
+        NaturalNumber nExpected = new NaturalNumberLimbs("18446744073709551616");
+        boolean result = CryptoUtilities.isEven(n);
+        assertEquals(nExpected, n);
+        assertEquals(true, result);
+    }
+
     /*
      * Tests of powerMod
      */
@@ -251,4 +320,974 @@ public class finalTestcase {
         assertEquals(mExpected, m);
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testPowerMod_Limbs_17_18_19() {
+        NaturalNumber n = new NaturalNumberLimbs(17);
+        NaturalNumber nExpected = new NaturalNumberLimbs(1);
+        NaturalNumber p = new NaturalNumberLimbs(18);
+        NaturalNumber pExpected = new NaturalNumberLimbs(18);
+        NaturalNumber m = new NaturalNumberLimbs(19);
+        NaturalNumber mExpected = new NaturalNumberLimbs(19);
+        CryptoUtilities.powerMod(n, p, m);
+        assertEquals(nExpected, n);
+        assertEquals(pExpected, p);
+        assertEquals(mExpected, m);
+    }
+
+    @Test
+    public void testPowerMod_Context_123456789_987654321_2pow127minus1() {
+        NaturalNumber n = new NaturalNumberLimbs(123456789);
+        NaturalNumber nExpected = new NaturalNumberLimbs(
+                "54332918125842946475806989909357123968");
+        NaturalNumber p = new NaturalNumberLimbs(987654321);
+        NaturalNumber pExpected = new NaturalNumberLimbs(987654321);
+        NaturalNumber m = new NaturalNumberLimbs(
+                "170141183460469231731687303715884105727");
+        MontgomeryContext context = new MontgomeryContext(m);
+        CryptoUtilities.powerMod(n, p, context);
+        assertEquals(nExpected, n);
+        assertEquals(pExpected, p);
+    }
+
+    @Test
+    public void testPowerMod_7_2pow200plus12345_10pow30() {
+        NaturalNumber n = new NaturalNumber2(7);
+        NaturalNumber nExpected = new NaturalNumber2(
+                "11374449949214121896032824007");
+        NaturalNumber p = new NaturalNumberLimbs("1606938044258990275541962092"
+                + "341162602522202993782792835313721");
+        NaturalNumber pExpected = new NaturalNumberLimbs("16069380442589902755"
+                + "41962092341162602522202993782792835313721");
+        NaturalNumber m = new NaturalNumber2("1000000000000000000000000000000");
+        NaturalNumber mExpected = new NaturalNumber2(
+                "1000000000000000000000000000000");
+        CryptoUtilities.powerMod(n, p, m);
+        assertEquals(nExpected, n);
+        assertEquals(pExpected, p);
+        assertEquals(mExpected, m);
+    }
+
+    /*
+     * Tests of isWitnessToCompositeness
+     */
+
+    @Test
+    public void testIsWitnessToCompositeness_Context_3_2pow127minus1() {
+        NaturalNumber w = new NaturalNumberLimbs(3);
+        NaturalNumber n = new NaturalNumberLimbs(
+                "170141183460469231731687303715884105727");
+        NaturalNumber nExpected = new NaturalNumberLimbs(
+                "170141183460469231731687303715884105727");
+        MontgomeryContext context = new MontgomeryContext(n);
+        boolean result = CryptoUtilities.isWitnessToCompositeness(w, n,
+                context);
+        assertEquals(nExpected, n);
+        assertEquals(false, result);
+    }
+
+    @Test
+    public void testIsWitnessToCompositeness_2_561() {
+        NaturalNumber w = new NaturalNumber2(2);
+        NaturalNumber n = new NaturalNumber2(561);
+        NaturalNumber nExpected = new NaturalNumber2(561);
+        boolean result = CryptoUtilities.isWitnessToCompositeness(w, n);
+        assertEquals(nExpected, n);
+        assertEquals(false, result);
+    }
+
+    /*
+     * Tests of isPrime2
+     */
+
+    @Test
+    public void testIsPrime2_3215031751() {
+        NaturalNumber n = new NaturalNumberLimbs("3215031751");
+        NaturalNumber nExpected = new NaturalNumberLimbs("3215031751");
+        boolean result = CryptoUtilities.isPrime2(n);
+        assertEquals(nExpected, n);
+        assertEquals(false, result);
+    }
+
+    @Test
+    public void testIsPrime2_2pow127minus1() {
+        NaturalNumber n = new NaturalNumberLimbs(
+                "170141183460469231731687303715884105727");
+        NaturalNumber nExpected = new NaturalNumberLimbs(
+                "170141183460469231731687303715884105727");
+        boolean result = CryptoUtilities.isPrime2(n);
+        assertEquals(nExpected, n);
+        assertEquals(true, result);
+    }
+
+    @Test
+    public void testMillerRabin_StrongLiar_2_2047() {
+        MillerRabin test = new MillerRabin(new NaturalNumber2(2047));
+        assertEquals(false, test.isStrongWitness(new NaturalNumber2(2)));
+        assertEquals(true, test.isStrongWitness(new NaturalNumber2(3)));
+        assertEquals(false, test.isProbablePrime());
+    }
+
+    @Test
+    public void testIsPrime2_WorstCaseComposite_1600Bits() {
+        /*
+         * n = p(2p - 1) with both factors prime: about 1 base in 4 is a
+         * strong liar, so 4 rounds would pass it once in 256 calls
+         */
+        NaturalNumber p = new NaturalNumberLimbs(2);
+        p.power(799);
+        p.add(new NaturalNumberLimbs(27779));
+        NaturalNumber n = new NaturalNumberLimbs(p);
+        n.add(p);
+        n.decrement();
+        n.multiply(p);
+        assertEquals(4, MillerRabin.roundsFor(1600, true));
+        assertEquals(MillerRabin.WORST_CASE_ROUNDS,
+                MillerRabin.roundsFor(1600, false));
+        ArithmeticWorkspace workspace = new ArithmeticWorkspace(1600);
+        int passed = 0;
+        for (int i = 0; i < 1000; i++) {
+            if (CryptoUtilities.isPrime2(n, workspace)) {
+                passed++;
+            }
+        }
+        assertEquals(0, passed);
+        assertEquals(true, CryptoUtilities.isPrime2(p, workspace));
+    }
+
+    @Test
+    public void testIsPrime2_997times1000003_TrialDivision() {
+        boolean wasEnabled = CryptoMetrics.isEnabled();
+        CryptoMetrics.setEnabled(true);
+        try {
+            NaturalNumber n = new NaturalNumberLimbs("997002991");
+            NaturalNumber nExpected = new NaturalNumberLimbs("997002991");
+            long before = PrimalityStatistics
+                    .rejected(PrimalityStatistics.Stage.TRIAL_DIVISION);
+            boolean result = CryptoUtilities.isPrime2(n);
+            long after = PrimalityStatistics
+                    .rejected(PrimalityStatistics.Stage.TRIAL_DIVISION);
+            assertEquals(nExpected, n);
+            assertEquals(false, result);
+            assertEquals(true, after > before);
+        } finally {
+            CryptoMetrics.setEnabled(wasEnabled);
+        }
+    }
+
+    @Test
+    public void testSmallFactor_997times1000003() {
+        NaturalNumber n = new NaturalNumberLimbs("997002991");
+        assertEquals(997, SmallPrimes.smallFactor(n));
+    }
+
+    @Test
+    public void testSmallFactor_997() {
+        NaturalNumber n = new NaturalNumberLimbs(997);
+        assertEquals(0, SmallPrimes.smallFactor(n));
+    }
+
+    @Test
+    public void testGenerateNextLikelyPrime_1000003() {
+        NaturalNumber n = new NaturalNumberLimbs(1000003);
+        NaturalNumber nExpected = new NaturalNumberLimbs(1000033);
+        CryptoUtilities.generateNextLikelyPrime(n);
+        assertEquals(nExpected, n);
+    }
+
+    @Test
+    public void testGenerateNextLikelyPrime_2pow64_Sieve() {
+        boolean wasEnabled = CryptoMetrics.isEnabled();
+        CryptoMetrics.setEnabled(true);
+        try {
+            NaturalNumber n = new NaturalNumberLimbs("18446744073709551616");
+            NaturalNumber nExpected = new NaturalNumberLimbs(
+                    "18446744073709551629");
+            long before = PrimalityStatistics
+                    .rejected(PrimalityStatistics.Stage.SIEVE);
+            CryptoUtilities.generateNextLikelyPrime(n);
+            long after = PrimalityStatistics
+                    .rejected(PrimalityStatistics.Stage.SIEVE);
+            assertEquals(nExpected, n);
+            assertEquals(true, after > before);
+        } finally {
+            CryptoMetrics.setEnabled(wasEnabled);
+        }
+    }
+
+    @Test
+    public void testPrimeSieve_Candidate_CarryIntoNewLimb() {
+        PrimeSieve sieve = new PrimeSieve(new NaturalNumberLimbs(
+                "18446744073709551611"), 64, 16);
+        NaturalNumber c = new NaturalNumberLimbs();
+        sieve.candidate(0, c);
+        assertEquals("18446744073709551611", c.toString());
+        sieve.candidate(5, c);
+        assertEquals("18446744073709551621", c.toString());
+        NaturalNumber d = new NaturalNumber2();
+        sieve.candidate(63, d);
+        assertEquals("18446744073709551737", d.toString());
+    }
+
+    @Test
+    public void testGenerateNextLikelyPrime_Parallel_2pow64() {
+        NaturalNumber n = new NaturalNumberLimbs("18446744073709551616");
+        NaturalNumber nExpected = new NaturalNumberLimbs(
+                "18446744073709551629");
+        ForkJoinPool pool = new ForkJoinPool(4);
+        CryptoUtilities.generateNextLikelyPrime(n, pool);
+        pool.shutdown();
+        assertEquals(nExpected, n);
+    }
+
+    @Test
+    public void testGenerateNextLikelyPrime_Parallel_10pow20_NaturalNumber2() {
+        NaturalNumber n = new NaturalNumber2("100000000000000000000");
+        NaturalNumber nExpected = new NaturalNumber2("100000000000000000039");
+        ForkJoinPool pool = new ForkJoinPool(3);
+        CryptoUtilities.generateNextLikelyPrime(n, pool);
+        pool.shutdown();
+        assertEquals(nExpected, n);
+    }
+
+    @Test
+    public void testIsPrime2_Executor_2pow127minus1() {
+        NaturalNumber n = new NaturalNumberLimbs(
+                "170141183460469231731687303715884105727");
+        NaturalNumber nExpected = new NaturalNumberLimbs(
+                "170141183460469231731687303715884105727");
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        boolean result = CryptoUtilities.isPrime2(n, executor);
+        executor.shutdown();
+        assertEquals(nExpected, n);
+        assertEquals(true, result);
+    }
+
+    @Test
+    public void testIsPrime2_Executor_2pow128plus1() {
+        NaturalNumber n = new NaturalNumber2(
+                "340282366920938463463374607431768211457");
+        NaturalNumber nExpected = new NaturalNumber2(
+                "340282366920938463463374607431768211457");
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        boolean result = CryptoUtilities.isPrime2(n, executor);
+        executor.shutdown();
+        assertEquals(nExpected, n);
+        assertEquals(false, result);
+    }
+
+    @Test
+    public void testRandomNumber_1000_Range() {
+        NaturalNumber n = new NaturalNumber2(1000);
+        NaturalNumber nExpected = new NaturalNumber2(1000);
+        NaturalNumber result = CryptoUtilities.randomNumber(n);
+        assertEquals(nExpected, n);
+        assertEquals(true, result.compareTo(n) <= 0);
+    }
+
+    @Test
+    public void testRandomNumbers_2pow64_Batch() {
+        NaturalNumber n = new NaturalNumberLimbs("18446744073709551616");
+        NaturalNumber nExpected = new NaturalNumberLimbs(
+                "18446744073709551616");
+        final int count = 100;
+        NaturalNumber[] result = CryptoUtilities.randomNumbers(n, count);
+        assertEquals(nExpected, n);
+        assertEquals(count, result.length);
+        for (NaturalNumber x : result) {
+            assertEquals(true, x.compareTo(n) <= 0);
+        }
+    }
+
+    @Test
+    public void testRsaKeyGenerator_512_Pool() {
+        PrimePool pool = new PrimePool(1, 4, 2);
+        RsaKeyGenerator generator = new RsaKeyGenerator(512, pool);
+        RsaPrivateCrtKey key = generator.generateKeyPair().privateKey();
+        pool.close();
+        NaturalNumber n = key.prime1();
+        n.multiply(key.prime2());
+        assertEquals(512, key.bitLength());
+        assertEquals(key.modulus(), n);
+        NaturalNumber qTimesQInv = key.prime2();
+        qTimesQInv.multiply(key.coefficient());
+        NaturalNumber one = qTimesQInv.divide(key.prime1());
+        assertEquals(new NaturalNumberLimbs(1), one);
+    }
+
+    /**
+     * The textbook key p = 61, q = 53, e = 17, d = e^-1 mod lcm(60, 52).
+     *
+     * @return the key
+     */
+    private static RsaPrivateCrtKey toyKey() {
+        return new RsaPrivateCrtKey(new NaturalNumber2(3233),
+                new NaturalNumber2(17), new NaturalNumber2(413),
+                new NaturalNumber2(61), new NaturalNumber2(53),
+                new NaturalNumber2(53), new NaturalNumber2(49),
+                new NaturalNumber2(38));
+    }
+
+    @Test
+    public void testRsaEncrypt_65_ToyKey() {
+        NaturalNumber m = new NaturalNumber2(65);
+        NaturalNumber mExpected = new NaturalNumber2(2790);
+        Rsa.encrypt(m, toyKey().publicKey());
+        assertEquals(mExpected, m);
+    }
+
+    @Test
+    public void testRsaDecrypt_2790_ToyKey() {
+        NaturalNumber c = new NaturalNumberLimbs(2790);
+        NaturalNumber cExpected = new NaturalNumberLimbs(65);
+        Rsa.decrypt(c, toyKey());
+        assertEquals(cExpected, c);
+    }
+
+    @Test
+    public void testRsaSignVerify_123_ToyKey() {
+        NaturalNumber s = new NaturalNumber2(123);
+        NaturalNumber sExpected = new NaturalNumber2(2746);
+        NaturalNumber m = new NaturalNumber2(123);
+        NaturalNumber mExpected = new NaturalNumber2(123);
+        Rsa.sign(s, toyKey());
+        boolean result = Rsa.verify(s, m, toyKey().publicKey());
+        assertEquals(sExpected, s);
+        assertEquals(mExpected, m);
+        assertEquals(true, result);
+    }
+
+    @Test
+    public void testPowerMod_Batch_17_3233() {
+        NaturalNumber[] n = {new NaturalNumber2(0), new NaturalNumber2(1),
+            new NaturalNumberLimbs(65), new NaturalNumber2(123),
+            new NaturalNumberLimbs(3232)};
+        NaturalNumber[] results = new NaturalNumber[n.length];
+        for (int i = 0; i < results.length; i++) {
+            results[i] = new NaturalNumberLimbs();
+        }
+        NaturalNumber p = new NaturalNumber2(17);
+        NaturalNumber pExpected = new NaturalNumber2(17);
+        NaturalNumber m = new NaturalNumber2(3233);
+        NaturalNumber mExpected = new NaturalNumber2(3233);
+        CryptoUtilities.powerMod(n, p, m, results);
+        assertEquals("0", results[0].toString());
+        assertEquals("1", results[1].toString());
+        assertEquals("2790", results[2].toString());
+        assertEquals("855", results[3].toString());
+        assertEquals("3232", results[4].toString());
+        assertEquals("65", n[2].toString());
+        assertEquals(pExpected, p);
+        assertEquals(mExpected, m);
+    }
+
+    @Test
+    public void testPowerMod_Batch_InPlace_10_1000_Pool() {
+        NaturalNumber[] n = {new NaturalNumberLimbs(2), new NaturalNumber2(3),
+            new NaturalNumberLimbs(7), new NaturalNumber2(999999)};
+        NaturalNumber p = new NaturalNumber2(10);
+        NaturalNumber pExpected = new NaturalNumber2(10);
+        ModularContext context = new DivisionContext(new NaturalNumber2(1000));
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            context.powerMod(n, p, n, pool);
+        } finally {
+            pool.shutdown();
+        }
+        assertEquals("24", n[0].toString());
+        assertEquals("49", n[1].toString());
+        assertEquals("249", n[2].toString());
+        assertEquals("1", n[3].toString());
+        assertEquals(pExpected, p);
+    }
+
+    @Test
+    public void testFixedBasePowerTable_3_1000003() {
+        NaturalNumber g = new NaturalNumber2(3);
+        NaturalNumber gExpected = new NaturalNumber2(3);
+        NaturalNumber m = new NaturalNumber2(1000003);
+        NaturalNumber mExpected = new NaturalNumber2(1000003);
+        FixedBasePowerTable table = new FixedBasePowerTable(g, m, 16);
+        NaturalNumber p = new NaturalNumber2(1000);
+        NaturalNumber pExpected = new NaturalNumber2(1000);
+        NaturalNumber result = new NaturalNumberLimbs();
+        table.powerMod(p, result);
+        assertEquals("73216", result.toString());
+        assertEquals(pExpected, p);
+        p.setFromInt(0);
+        table.powerMod(p, result);
+        assertEquals("1", result.toString());
+        p.setFromInt(65535);
+        table.powerMod(p, result);
+        assertEquals("720752", result.toString());
+        assertEquals(gExpected, g);
+        assertEquals(mExpected, m);
+    }
+
+    @Test
+    public void testFixedBasePowerTable_TinyExponentBits() {
+        NaturalNumber g = new NaturalNumber2(3);
+        NaturalNumber m = new NaturalNumberLimbs(1000003);
+        for (int bits = 1; bits <= 6; bits++) {
+            FixedBasePowerTable table = new FixedBasePowerTable(g, m, bits);
+            for (int e = 0; e <= (1 << bits) + 1; e++) {
+                NaturalNumber p = new NaturalNumber2(e);
+                NaturalNumber result = new NaturalNumberLimbs();
+                table.powerMod(p, result);
+                NaturalNumber expected = new NaturalNumberLimbs(3);
+                CryptoUtilities.powerMod(expected, p, m);
+                assertEquals(bits + " " + e, expected.toString(),
+                        result.toString());
+            }
+        }
+    }
+
+    @Test
+    public void testFixedBasePowerTable_7_1000_LongExponent() {
+        NaturalNumber m = new NaturalNumberLimbs(1000);
+        ModularContext context = new DivisionContext(m);
+        FixedBasePowerTable table = new FixedBasePowerTable(
+                new NaturalNumber2(7), context, 8, 2, 2);
+        NaturalNumber p = new NaturalNumber2("1099511627781");
+        NaturalNumber pExpected = new NaturalNumber2("1099511627781");
+        NaturalNumber result = new NaturalNumber2();
+        table.powerMod(p, result);
+        assertEquals("7", result.toString());
+        assertEquals(pExpected, p);
+        assertEquals(6, table.tableEntries());
+    }
+
+    @Test
+    public void testCryptoMetrics_PowerMod_IsPrime2_Enabled() {
+        boolean wasEnabled = CryptoMetrics.isEnabled();
+        CryptoMetrics.setEnabled(true);
+        try {
+            CryptoMetrics.Snapshot before = CryptoMetrics.snapshot();
+            NaturalNumber n = new NaturalNumber2(3);
+            CryptoUtilities.powerMod(n, new NaturalNumber2(1000),
+                    new NaturalNumber2(1000003));
+            boolean result = CryptoUtilities
+                    .isPrime2(new NaturalNumber2("18446744073709551629"));
+            CryptoMetrics.Snapshot after = CryptoMetrics.snapshot();
+            assertEquals("73216", n.toString());
+            assertEquals(true, result);
+            assertEquals(true,
+                    after.getExponentiations() > before.getExponentiations());
+            assertEquals(true, after.getModularMultiplications() > before
+                    .getModularMultiplications());
+            assertEquals(true,
+                    after.getWitnessTests() > before.getWitnessTests());
+            assertEquals(true, after.getPowerModLatency().getCount() > before
+                    .getPowerModLatency().getCount());
+            assertEquals(before.getPrimalityTestLatency().getCount() + 1,
+                    after.getPrimalityTestLatency().getCount());
+        } finally {
+            CryptoMetrics.setEnabled(wasEnabled);
+        }
+    }
+
+    @Test
+    public void testCryptoMetrics_Disabled_NoCounts() {
+        boolean wasEnabled = CryptoMetrics.isEnabled();
+        CryptoMetrics.setEnabled(false);
+        try {
+            CryptoMetrics.Snapshot before = CryptoMetrics.snapshot();
+            NaturalNumber n = new NaturalNumber2(1000000);
+            CryptoUtilities.generateNextLikelyPrime(n);
+            CryptoMetrics.Snapshot after = CryptoMetrics.snapshot();
+            assertEquals("1000003", n.toString());
+            assertEquals(before.getExponentiations(),
+                    after.getExponentiations());
+            assertEquals(before.getTimePerPrime().getCount(),
+                    after.getTimePerPrime().getCount());
+            assertEquals(before.getCandidatesTested(),
+                    after.getCandidatesTested());
+            assertEquals(before.getCandidatesRejected(),
+                    after.getCandidatesRejected());
+        } finally {
+            CryptoMetrics.setEnabled(wasEnabled);
+        }
+    }
+
+    @Test
+    public void testPrimeScreen_Screen_InOrder() throws IOException {
+        byte[] input = "91\r\n\n97\nx1\n1000000\n0013"
+                .getBytes(StandardCharsets.US_ASCII);
+        StringWriter out = new StringWriter();
+        ExecutorService workers = Executors.newFixedThreadPool(2);
+        PrimeScreen.Summary summary;
+        try {
+            summary = PrimeScreen.screen(
+                    Channels.newChannel(new ByteArrayInputStream(input)), out,
+                    workers, 2);
+        } finally {
+            workers.shutdown();
+        }
+        assertEquals("91\tcomposite\tcomposite\t97\n"
+                + "97\tprime\tprime\t97\n" + "x1\tinvalid\n"
+                + "1000000\tcomposite\tcomposite\t1000003\n"
+                + "13\tprime\tprime\t13\n", out.toString());
+        assertEquals(5, summary.numbers());
+        assertEquals(2, summary.primes());
+        assertEquals(input.length, summary.bytes());
+    }
+
+    @Test
+    public void testPrimeScreen_Screen_OverlongLines() throws IOException {
+        StringBuilder digits = new StringBuilder();
+        for (int i = 0; i < PrimeScreen.MAX_LINE_CHARS; i++) {
+            digits.append('7');
+        }
+        String kept = digits.toString();
+        byte[] input = (kept + "123\n97\n" + kept + "1")
+                .getBytes(StandardCharsets.US_ASCII);
+        StringWriter out = new StringWriter();
+        ExecutorService workers = Executors.newFixedThreadPool(2);
+        PrimeScreen.Summary summary;
+        try {
+            summary = PrimeScreen.screen(
+                    Channels.newChannel(new ByteArrayInputStream(input)), out,
+                    workers, 2);
+        } finally {
+            workers.shutdown();
+        }
+        assertEquals(kept + "...\tinvalid\n" + "97\tprime\tprime\t97\n"
+                + kept + "...\tinvalid\n", out.toString());
+        assertEquals(3, summary.numbers());
+        assertEquals(1, summary.primes());
+        assertEquals(input.length, summary.bytes());
+    }
+
+    @Test
+    public void testBarrettContext_PowerMod_2pow64() {
+        NaturalNumber n = new NaturalNumber2(123456789);
+        NaturalNumber p = new NaturalNumber2(987654321);
+        NaturalNumber pExpected = new NaturalNumber2(987654321);
+        ModularContext context = new BarrettContext(
+                new NaturalNumber2("18446744073709551616"));
+        context.powerMod(n, p);
+        assertEquals("2707128288486860373", n.toString());
+        assertEquals(pExpected, p);
+    }
+
+    @Test
+    public void testModularContext_Create_AllStrategies_2pow89minus1() {
+        NaturalNumber m = new NaturalNumber2("618970019642690137449562111");
+        NaturalNumber mExpected = new NaturalNumber2(
+                "618970019642690137449562111");
+        for (ModularContext.Reduction strategy : ModularContext.Reduction
+                .values()) {
+            NaturalNumber n = new NaturalNumber2(123456789);
+            ModularContext.create(m, strategy).powerMod(n,
+                    new NaturalNumber2(987654321));
+            assertEquals("64670317054782542704290018", n.toString());
+        }
+        assertEquals(mExpected, m);
+    }
+
+    @Test
+    public void testPowerMod_Workspace_OddAndEvenModulus() {
+        ArithmeticWorkspace workspace = new ArithmeticWorkspace();
+        NaturalNumber p = new NaturalNumberLimbs(987654321);
+        NaturalNumber pExpected = new NaturalNumberLimbs(987654321);
+        NaturalNumber odd = new NaturalNumberLimbs(
+                "618970019642690137449562111");
+        NaturalNumber even = new NaturalNumber2("18446744073709551616");
+        NaturalNumber n = new NaturalNumberLimbs(123456789);
+        CryptoUtilities.powerMod(n, p, odd, workspace);
+        assertEquals("64670317054782542704290018", n.toString());
+        n = new NaturalNumber2(123456789);
+        CryptoUtilities.powerMod(n, p, even, workspace);
+        assertEquals("2707128288486860373", n.toString());
+        assertEquals(pExpected, p);
+        assertEquals("618970019642690137449562111", odd.toString());
+    }
+
+    @Test
+    public void testIsPrime2_Workspace_Reused() {
+        ArithmeticWorkspace workspace = new ArithmeticWorkspace(64);
+        String[] numbers = {"170141183460469231731687303715884105727", "561",
+            "618970019642690137449562111", "147573952589676412927", "97",
+            "2"};
+        boolean[] expected = {true, false, true, false, true, true};
+        for (int i = 0; i < numbers.length; i++) {
+            NaturalNumber n = new NaturalNumberLimbs(numbers[i]);
+            assertEquals(numbers[i], expected[i],
+                    CryptoUtilities.isPrime2(n, workspace));
+            assertEquals(numbers[i], n.toString());
+        }
+        NaturalNumber two = new NaturalNumberLimbs(2);
+        assertEquals(false, CryptoUtilities.isWitnessToCompositeness(two,
+                new NaturalNumberLimbs(341), workspace));
+        assertEquals(true, CryptoUtilities.isWitnessToCompositeness(two,
+                new NaturalNumber2(9), workspace));
+        assertEquals("2", two.toString());
+    }
+
+    @Test
+    public void testChaCha20Random_Rfc8439BlockVector() {
+        int[] input = {0x61707865, 0x3320646e, 0x79622d32, 0x6b206574, 0, 0,
+            0, 0, 0, 0, 0, 0, 1, 0x09000000, 0x4a000000, 0};
+        for (int i = 0; i < 8; i++) {
+            input[4 + i] = 0x03020100 + i * 0x04040404;
+        }
+        int[] block = new int[16];
+        ChaCha20Random.block(input, block, 0);
+        int[] expected = {0xe4e7f110, 0x15593bd1, 0x1fdd0f50, 0xc47120a3,
+            0xc7f4d1c7, 0x0368c033, 0x9aaa2204, 0x4e6cd4c3, 0x466482d2,
+            0x09aa9f07, 0x05d7c214, 0xa2028bd9, 0xd19c12b5, 0xb94e16de,
+            0xe883d0cb, 0x4e3c50a2};
+        assertArrayEquals(expected, block);
+    }
+
+    @Test
+    public void testChaCha20Random_FastKeyErasure()
+            throws NoSuchAlgorithmException {
+        byte[] seed = {1, 2, 3};
+        SecureRandom source = SecureRandom.getInstance("SHA1PRNG");
+        source.setSeed(seed);
+        ChaCha20Random random = new ChaCha20Random(source);
+        SecureRandom copy = SecureRandom.getInstance("SHA1PRNG");
+        copy.setSeed(seed);
+        byte[] key = new byte[32];
+        copy.nextBytes(key);
+        int[] state = {0x61707865, 0x3320646e, 0x79622d32, 0x6b206574, 0, 0,
+            0, 0, 0, 0, 0, 0, 0, 0, 0, 0};
+        ByteBuffer.wrap(key).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer()
+                .get(state, 4, 8);
+        int words = ChaCha20Random.BLOCKS * ChaCha20Random.BLOCK_WORDS;
+        int[] drawn = new int[words - 8];
+        int[] blocks = new int[words];
+        for (int refill = 0; refill < 3; refill++) {
+            random.nextInts(drawn, drawn.length);
+            for (int b = 0; b < ChaCha20Random.BLOCKS; b++) {
+                state[12] = b;
+                ChaCha20Random.block(state, blocks, b * 16);
+            }
+            assertArrayEquals(Arrays.copyOfRange(blocks, 8, words), drawn);
+            System.arraycopy(blocks, 0, state, 4, 8);
+        }
+    }
+
+    @Test
+    public void testBatchGcd_Gcds_SharedPrimes() throws IOException {
+        int[] moduli = {3233, 4087, 8633, 4757, 8633};
+        NaturalNumber[] n = new NaturalNumber[moduli.length];
+        for (int i = 0; i < moduli.length; i++) {
+            n[i] = new NaturalNumber2(moduli[i]);
+        }
+        NaturalNumber[] g = new BatchGcd().gcds(n);
+        String[] expected = {"61", "4087", "8633", "67", "8633"};
+        for (int i = 0; i < moduli.length; i++) {
+            assertEquals(expected[i], g[i].toString());
+            assertEquals(new NaturalNumber2(moduli[i]), n[i]);
+        }
+    }
+
+    @Test
+    public void testBatchGcd_Gcds_SpilledLevels() throws IOException {
+        Path directory = Files.createTempDirectory("batchgcd");
+        String[] moduli = {"1427247692705959880439315947500961989719490561",
+            "27606985387162255149739023449107931668458716142620601169954803"
+                    + "000803329",
+            "100433627766186892221372630609062766858404681029709092356097",
+            "1000036000099"};
+        NaturalNumber[] n = new NaturalNumber[moduli.length];
+        for (int i = 0; i < moduli.length; i++) {
+            n[i] = new NaturalNumberLimbs(moduli[i]);
+        }
+        NaturalNumber[] g = new BatchGcd(ForkJoinPool.commonPool(), 0,
+                directory).gcds(n);
+        assertEquals("618970019642690137449562111", g[0].toString());
+        assertEquals("162259276829213363391578010288127", g[1].toString());
+        assertEquals(moduli[2], g[2].toString());
+        assertEquals("1", g[3].toString());
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(0, files.count());
+        }
+        Files.delete(directory);
+    }
+
+    @Test
+    public void testBatchGcd_Gcds_IteratorSpilledMidway() throws IOException {
+        Path directory = Files.createTempDirectory("batchgcd");
+        String[] moduli = {"1000036000099",
+            "1427247692705959880439315947500961989719490561",
+            "27606985387162255149739023449107931668458716142620601169954803"
+                    + "000803329",
+            "100433627766186892221372630609062766858404681029709092356097"};
+        List<String> g = new ArrayList<>();
+        new BatchGcd(ForkJoinPool.commonPool(), 2 * Integer.BYTES, directory)
+                .gcds(Stream.of(moduli).map(NaturalNumberLimbs::new)
+                        .iterator(), gcd -> g.add(gcd.toString()));
+        assertEquals(Arrays.asList("1", "618970019642690137449562111",
+                "162259276829213363391578010288127", moduli[3]), g);
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(0, files.count());
+        }
+        Files.delete(directory);
+    }
+
+    @Test
+    public void testDivideArithmetic_NewtonMatchesAlgorithmD() {
+        int[][] lengths = {{3300, 1600}, {3600, 2000}, {3300, 1600}};
+        for (int c = 0; c < lengths.length; c++) {
+            int aLen = lengths[c][0];
+            int bLen = lengths[c][1];
+            int[] a = new int[aLen];
+            int[] b = new int[bLen];
+            for (int i = 0; i < aLen; i++) {
+                a[i] = c < 2 ? (i + 1) * 0x9E3779B9 : -1;
+            }
+            for (int i = 0; i < bLen; i++) {
+                b[i] = c < 2 ? (i + c) * 0x7FEB352D ^ i >>> 3 : -1;
+            }
+            int[] q = new int[aLen - bLen + 1];
+            int[] r = new int[bLen];
+            int rLen = DivideArithmetic.divide(a, aLen, b, bLen, q, r);
+            int[] expectedQ = new int[aLen - bLen + 1];
+            int[] expectedR = new int[bLen];
+            int expectedRLen = LimbArithmetic.divide(a, aLen, b, bLen,
+                    expectedQ, expectedR);
+            assertArrayEquals(expectedQ, q);
+            assertEquals(expectedRLen, rLen);
+            assertArrayEquals(expectedR, r);
+        }
+    }
+
+    @Test
+    public void testBailliePsw_StrongPseudoprimes() {
+        boolean wasEnabled = CryptoMetrics.isEnabled();
+        CryptoMetrics.setEnabled(true);
+        try {
+            long before = PrimalityStatistics
+                    .rejected(PrimalityStatistics.Stage.LUCAS);
+            BailliePsw liarTo2357 = new BailliePsw(new NaturalNumber2(
+                    "3215031751"));
+            assertEquals(false, liarTo2357.isProbablePrime());
+            long after = PrimalityStatistics
+                    .rejected(PrimalityStatistics.Stage.LUCAS);
+            assertEquals(true, after > before);
+            BailliePsw lucasLiar = new BailliePsw(new NaturalNumber2(5459));
+            assertEquals(false, lucasLiar.isProbablePrime());
+            BailliePsw prime = new BailliePsw(new NaturalNumberLimbs(
+                    "170141183460469231731687303715884105727"));
+            assertEquals(true, prime.isProbablePrime());
+        } finally {
+            CryptoMetrics.setEnabled(wasEnabled);
+        }
+    }
+
+    @Test
+    public void testGenerateNextLikelyPrime_EachTest_2pow128() {
+        for (CryptoUtilities.PrimalityTest test : CryptoUtilities.PrimalityTest
+                .values()) {
+            NaturalNumber n = new NaturalNumberLimbs(
+                    "340282366920938463463374607431768211456");
+            CryptoUtilities.generateNextLikelyPrime(n, test);
+            assertEquals("340282366920938463463374607431768211507",
+                    n.toString());
+            assertEquals(true, CryptoUtilities.isPrime(n, test));
+        }
+        assertEquals(false, CryptoUtilities.isPrime(
+                new NaturalNumber2("1000036000099"),
+                CryptoUtilities.PrimalityTest.BAILLIE_PSW));
+    }
+
+    @Test
+    public void testMultiPowerMod_TwoPairs_OddAndEvenModulus() {
+        NaturalNumber[] n = {new NaturalNumberLimbs(123456789),
+            new NaturalNumber2(555)};
+        NaturalNumber[] p = {new NaturalNumberLimbs(987654321),
+            new NaturalNumber2("1180591620717411303427")};
+        NaturalNumber result = new NaturalNumberLimbs();
+        CryptoUtilities.multiPowerMod(n, p,
+                new NaturalNumberLimbs("618970019642690137449562111"), result);
+        assertEquals("563161545032017778145305093", result.toString());
+        CryptoUtilities.multiPowerMod(n, p,
+                new NaturalNumber2("18446744073709551616"), result);
+        assertEquals("15895408886098099919", result.toString());
+        assertEquals("123456789", n[0].toString());
+        assertEquals("1180591620717411303427", p[1].toString());
+    }
+
+    @Test
+    public void testMultiPowerMod_ZeroExponentAndUnevenLengths() {
+        NaturalNumber[] n = {new NaturalNumberLimbs(2),
+            new NaturalNumberLimbs(7), new NaturalNumber2(3)};
+        NaturalNumber[] p = {new NaturalNumberLimbs(0),
+            new NaturalNumberLimbs("1000000000000000000000000000000"),
+            new NaturalNumber2(5)};
+        NaturalNumber result = new NaturalNumberLimbs(42);
+        CryptoUtilities.multiPowerMod(n, p, new NaturalNumberLimbs(1000003),
+                result);
+        assertEquals("606125", result.toString());
+        CryptoUtilities.multiPowerMod(new NaturalNumber[0],
+                new NaturalNumber[0], new NaturalNumberLimbs(1000003), result);
+        assertEquals("1", result.toString());
+    }
+
+    @Test
+    public void testMultiply_Repunits_KaratsubaAndToomSizes() {
+        NaturalNumber a = new NaturalNumberLimbs("9".repeat(9000));
+        NaturalNumber b = new NaturalNumberLimbs("9".repeat(8000));
+        a.multiply(b);
+        assertEquals("9".repeat(7999) + "8" + "9".repeat(1000)
+                + "0".repeat(7999) + "1", a.toString());
+        b.multiply(b);
+        assertEquals("9".repeat(7999) + "8" + "0".repeat(7999) + "1",
+                b.toString());
+    }
+
+    @Test
+    public void testPowerMod_4096BitModulus_KaratsubaSquares() {
+        NaturalNumber m = new NaturalNumberLimbs(2);
+        m.power(4096);
+        m.decrement();
+        NaturalNumber n = new NaturalNumberLimbs(2);
+        NaturalNumber p = new NaturalNumberLimbs("1" + "0".repeat(2000));
+        p.add(new NaturalNumberLimbs(5));
+        CryptoUtilities.powerMod(n, p, m);
+        assertEquals("32", n.toString());
+        n.setFromInt(3);
+        m.increment();
+        p.setFromInt(4096);
+        CryptoUtilities.powerMod(n, p, m);
+        NaturalNumber expected = new NaturalNumberLimbs(3);
+        expected.power(4096);
+        assertEquals(expected.divide(m).toString(), n.toString());
+    }
+
+    @Test
+    public void testGenerateNextLikelySafePrime_BelowAndAboveSieve() {
+        String[][] cases = {{"2", "5"}, {"6", "7"}, {"8", "11"}, {"24", "47"},
+            {"48", "59"}, {"35000", "35159"},
+            {"18446744073709551616", "18446744073709554719"}};
+        for (String[] c : cases) {
+            NaturalNumber n = new NaturalNumberLimbs(c[0]);
+            CryptoUtilities.generateNextLikelySafePrime(n);
+            assertEquals(c[1], n.toString());
+            n = new NaturalNumber2(c[0]);
+            CryptoUtilities.generateNextLikelySafePrime(n,
+                    CryptoUtilities.PrimalityTest.MILLER_RABIN);
+            assertEquals(c[1], n.toString());
+        }
+    }
+
+    @Test
+    public void testGenerateNextLikelySafePrime_PoolMatchesSequential() {
+        ForkJoinPool pool = new ForkJoinPool(3);
+        try {
+            NaturalNumber n = new NaturalNumberLimbs(
+                    "340282366920938463463374607431768211456");
+            NaturalNumber m = new NaturalNumberLimbs(n);
+            CryptoUtilities.generateNextLikelySafePrime(n, pool);
+            CryptoUtilities.generateNextLikelySafePrime(m);
+            assertEquals("340282366920938463463374607431768223907",
+                    n.toString());
+            assertEquals(n.toString(), m.toString());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testNaturalNumberCodec_DerBytesAndDirectBuffer() {
+        String[] values = {"0", "127", "128", "256"};
+        byte[][] expected = {{2, 1, 0}, {2, 1, 127}, {2, 2, 0, -128},
+            {2, 2, 1, 0}};
+        for (int i = 0; i < values.length; i++) {
+            NaturalNumber n = new NaturalNumber2(values[i]);
+            ByteBuffer buffer = ByteBuffer
+                    .allocate(NaturalNumberCodec.encodedLength(n));
+            NaturalNumberCodec.write(n, buffer);
+            assertArrayEquals(expected[i], buffer.array());
+            buffer.flip();
+            assertEquals(values[i],
+                    NaturalNumberCodec.read(buffer).toString());
+        }
+        NaturalNumber big = new NaturalNumberLimbs(2);
+        big.power(4100);
+        big.decrement();
+        ByteBuffer direct = ByteBuffer.allocateDirect(600)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        NaturalNumberCodec.write(big, direct);
+        assertEquals(NaturalNumberCodec.encodedLength(big), direct.position());
+        direct.flip();
+        NaturalNumber result = new NaturalNumber2(7);
+        NaturalNumberCodec.read(direct, result);
+        assertEquals(big.toString(), result.toString());
+        assertEquals(0, direct.remaining());
+    }
+
+    @Test
+    public void testNaturalNumberCodec_RejectsMalformed() {
+        byte[][] malformed = {{2, 1, -1}, {2, 2, 0, 1}, {2, 0}, {2, 2, 1},
+            {4, 1, 1}, {2, -127, 1, 1}};
+        int rejected = 0;
+        for (byte[] bytes : malformed) {
+            try {
+                NaturalNumberCodec.read(ByteBuffer.wrap(bytes));
+            } catch (IllegalArgumentException e) {
+                rejected++;
+            }
+        }
+        assertEquals(malformed.length, rejected);
+    }
+
+    @Test
+    public void testRsaPrivateCrtKey_WriteAll_OwnerOnlyFile()
+            throws IOException {
+        Path directory = Files.createTempDirectory("keys");
+        Path file = directory.resolve("keys.der");
+        boolean posix = directory.getFileSystem()
+                .supportedFileAttributeViews().contains("posix");
+        try {
+            Files.write(file, new byte[] {1, 2, 3});
+            if (posix) {
+                Files.setPosixFilePermissions(file,
+                        PosixFilePermissions.fromString("rw-rw-rw-"));
+            }
+            RsaPrivateCrtKey.writeAll(new RsaPrivateCrtKey[] {toyKey()},
+                    file);
+            if (posix) {
+                assertEquals(PosixFilePermissions.fromString("rw-------"),
+                        Files.getPosixFilePermissions(file));
+            }
+            assertEquals("38", RsaPrivateCrtKey.readAll(file)[0]
+                    .coefficient().toString());
+            try (Stream<Path> files = Files.list(directory)) {
+                assertEquals(1, files.count());
+            }
+        } finally {
+            Files.deleteIfExists(file);
+            Files.delete(directory);
+        }
+    }
+
+    @Test
+    public void testNaturalNumberCodec_KeyAndNumberFiles() throws IOException {
+        Path file = Files.createTempFile("codec", ".der");
+        try {
+            RsaPrivateCrtKey[] keys = {toyKey(), toyKey()};
+            RsaPrivateCrtKey.writeAll(keys, file);
+            RsaPrivateCrtKey[] read = RsaPrivateCrtKey.readAll(file);
+            assertEquals(2, read.length);
+            assertEquals("38", read[1].coefficient().toString());
+            NaturalNumber c = new NaturalNumber2(2790);
+            Rsa.decrypt(c, read[0]);
+            assertEquals("65", c.toString());
+            NaturalNumber[] numbers = {new NaturalNumber2(0),
+                new NaturalNumberLimbs("18446744073709551616"),
+                new NaturalNumber2(255)};
+            NaturalNumberCodec.writeAll(numbers, file);
+            NaturalNumber[] back = NaturalNumberCodec.readAll(file);
+            assertEquals(3, back.length);
+            for (int i = 0; i < numbers.length; i++) {
+                assertEquals(numbers[i].toString(), back[i].toString());
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+}